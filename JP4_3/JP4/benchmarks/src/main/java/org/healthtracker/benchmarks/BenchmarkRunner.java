@@ -0,0 +1,33 @@
+package org.healthtracker.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once per thread count and writes the results of each run as JSON.
+ * Usage: java -jar benchmarks.jar [include regex]
+ * Settings, overridable with -Dbench.* system properties:
+ * bench.threads  Comma separated thread counts (default 1,4,16).
+ * bench.output   Directory of the result files, named results-&lt;threads&gt;t.json (default the working directory).
+ * Any JMH option can still be used by running org.openjdk.jmh.Main from the same jar instead.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "org\\.healthtracker\\.benchmarks\\..*";
+        String outputDir = System.getProperty("bench.output", ".");
+        for (String threads : System.getProperty("bench.threads", "1,4,16").split(",")) {
+            int threadCount = Integer.parseInt(threads.trim());
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threadCount)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(outputDir + "/results-" + threadCount + "t.json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
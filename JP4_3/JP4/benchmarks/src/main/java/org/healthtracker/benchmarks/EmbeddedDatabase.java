@@ -0,0 +1,159 @@
+package org.healthtracker.benchmarks;
+
+import org.healthtracker.db.DailyRollups;
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.db.TableRegistry;
+import org.healthtracker.tracking.ActivityTable;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.tracking.DietActivity;
+import org.healthtracker.tracking.ExerciseActivity;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.tracking.MentalHealthActivity;
+import org.healthtracker.tracking.StepActivity;
+import org.healthtracker.tracking.WaterIntakeActivity;
+import org.healthtracker.user.User;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+
+/**
+ * In-process H2 database in MySQL compatibility mode, used so the benchmarks run offline.
+ * The application is pointed at it through the -Dhealthtracker.db.* system properties,
+ * which must be set before DatabaseHelper creates its connection pool.
+ */
+final class EmbeddedDatabase {
+    static final String URL = "jdbc:h2:mem:healthtracker;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    static final String PASSWORD = "benchmark"; // Password of every benchmark user
+
+    private static final String CREATE_USERS_SQL = "CREATE TABLE IF NOT EXISTS users ("
+            + "id INT AUTO_INCREMENT PRIMARY KEY, "
+            + "username VARCHAR(255) NOT NULL UNIQUE, "
+            + "password VARCHAR(255) NOT NULL, "
+            + "name VARCHAR(255), "
+            + "age INT, "
+            + "gender CHAR(1), "
+            + "weight DOUBLE, "
+            + "height DOUBLE)";
+
+    private EmbeddedDatabase() {
+    }
+
+    /**
+     * Points the application at the embedded database, turns off the echo of tracked activities and creates the users table.
+     * return A DatabaseHelper connected to the embedded database.
+     */
+    static DatabaseHelper start() throws SQLException {
+        System.setProperty("healthtracker.db.url", URL);
+        System.setProperty("healthtracker.db.user", "sa");
+        System.setProperty("healthtracker.db.password", "");
+        System.setProperty("healthtracker.throttle.enabled", "false"); // The login benchmarks repeat one user's login
+        FitnessActivity.setEcho(false); // Printing every tracked activity would be measured along with the database work
+        DatabaseHelper dbHelper = new DatabaseHelper();
+        try (Connection conn = dbHelper.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(CREATE_USERS_SQL);
+        }
+        return dbHelper;
+    }
+
+    /**
+     * Drops every table and closes the connection pool, so the next trial starts from an empty database.
+     */
+    static void stop(DatabaseHelper dbHelper) throws SQLException {
+        try (Connection conn = dbHelper.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP ALL OBJECTS");
+        } finally {
+            TableRegistry.invalidateAll();
+            DatabaseHelper.shutdownPool();
+        }
+    }
+
+    /**
+     * Registers a new user with a fixed password.
+     */
+    static User createUser(DatabaseHelper dbHelper, String username) throws SQLException {
+        int id = dbHelper.addUser(username, PASSWORD, "Benchmark User", 30, 'O', 70.0, 175.0);
+        return new User(id, username, PASSWORD, dbHelper);
+    }
+
+    /**
+     * Inserts rows of one activity type for a user, spread over the given number of days up to today,
+     * and rebuilds the user's daily rollups.
+     */
+    static void seed(DatabaseHelper dbHelper, User user, ActivityType type, int rows, int days) throws SQLException {
+        ActivityTable table = ActivityTable.of(type, user);
+        LocalDate today = LocalDate.now();
+        try (Connection conn = dbHelper.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(table.createSql());
+            }
+            TableRegistry.markVerified(table.getName());
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(table.insertSql())) {
+                for (int i = 0; i < rows; i++) {
+                    int index = table.bindUser(pstmt, 1);
+                    pstmt.setDate(index++, java.sql.Date.valueOf(today.minusDays(i % days)));
+                    for (Object value : sampleValues(type, i)) {
+                        pstmt.setObject(index++, value);
+                    }
+                    pstmt.setNull(index, Types.VARCHAR); // No event id
+                    pstmt.addBatch();
+                    if ((i + 1) % 1_000 == 0) {
+                        pstmt.executeBatch();
+                    }
+                }
+                pstmt.executeBatch();
+                conn.commit();
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        DailyRollups.rebuild(dbHelper, user);
+    }
+
+    /**
+     * Creates an activity of the given type with sample values, ready to be tracked.
+     */
+    static FitnessActivity newActivity(ActivityType type, User user, int i) {
+        Object[] values = sampleValues(type, i);
+        switch (type) {
+            case DIET:
+                return new DietActivity((String) values[0], (Integer) values[1], user);
+            case EXERCISE:
+                return new ExerciseActivity("Running", (Integer) values[0], (Integer) values[1], user);
+            case MENTAL_HEALTH:
+                return new MentalHealthActivity("Mental Health", (Integer) values[0], (Double) values[1], user);
+            case STEPS:
+                return new StepActivity((Integer) values[0], user);
+            case WATER_INTAKE:
+                return new WaterIntakeActivity((Double) values[0], user);
+            default:
+                throw new IllegalArgumentException("Unknown activity type: " + type);
+        }
+    }
+
+    /**
+     * Returns deterministic sample values in the column order of the activity type.
+     */
+    private static Object[] sampleValues(ActivityType type, int i) {
+        switch (type) {
+            case DIET:
+                return new Object[]{"Meal " + (i % 50), 100 + i % 700};
+            case EXERCISE:
+                return new Object[]{10 + i % 80, 50 + i % 600};
+            case MENTAL_HEALTH:
+                return new Object[]{1 + i % 5, 4.0 + (i % 9) * 0.5};
+            case STEPS:
+                return new Object[]{500 + i % 15_000};
+            case WATER_INTAKE:
+                return new Object[]{0.25 + (i % 8) * 0.25};
+            default:
+                throw new IllegalArgumentException("Unknown activity type: " + type);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.healthtracker.benchmarks;
+
+import org.healthtracker.tracking.EventIdFilter;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.tracking.StepActivity;
+import org.healthtracker.user.User;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput and accuracy of the in-memory event id filter checked by FitnessActivity.track(), run with
+ * 1, 4 and 16 threads by BenchmarkRunner. No database is involved.
+ * newEvents offers event ids never seen before, so every call adds a key and the buckets rotate as they fill;
+ * each one the filter rejects is a false positive, reported as the falsePositives counter (expected 0 with
+ * 64-bit fingerprints). retries offers event ids already added, as clients resending a request do; each one
+ * the filter accepts is a missed duplicate, reported as missedDuplicates, which the store would still catch.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventIdFilterBenchmark {
+    private static final int EVENTS_PER_THREAD = 8_192; // 16 threads stay within one bucket of the default capacity
+
+    /**
+     * Activities with event ids, one user per benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Events {
+        private static final AtomicInteger threads = new AtomicInteger();
+
+        FitnessActivity[] activities;
+        long day;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            int thread = threads.getAndIncrement();
+            User user = new User(thread + 1, "device" + thread, null, null);
+            day = LocalDate.now().toEpochDay();
+            activities = new FitnessActivity[EVENTS_PER_THREAD];
+            for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+                activities[i] = new StepActivity(1_000 + i, user);
+                activities[i].setEventId("reading-" + thread + "-" + i);
+                activities[i].setDate(LocalDate.ofEpochDay(day));
+            }
+        }
+
+        /**
+         * Returns the next activity. For newEvents, every pass moves the activities to another day, which makes
+         * their keys new again without building strings in the measured loop.
+         */
+        FitnessActivity next(boolean fresh) {
+            int i = next++ & (EVENTS_PER_THREAD - 1);
+            if (fresh && i == 0) {
+                LocalDate date = LocalDate.ofEpochDay(--day);
+                for (FitnessActivity activity : activities) {
+                    activity.setDate(date);
+                }
+            }
+            return activities[i];
+        }
+    }
+
+    /**
+     * Events the filter got wrong, summed over the threads and reported next to the throughput.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Errors {
+        public long falsePositives;
+        public long missedDuplicates;
+    }
+
+    /**
+     * Adds every activity of the thread once, so retries only offers event ids the filter has seen.
+     */
+    @State(Scope.Thread)
+    public static class Seen {
+        @Setup(Level.Iteration)
+        public void setUp(Events events) {
+            for (FitnessActivity activity : events.activities) {
+                EventIdFilter.tryAdd(activity);
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean newEvents(Events events, Errors errors) {
+        boolean added = EventIdFilter.tryAdd(events.next(true));
+        if (!added) {
+            errors.falsePositives++;
+        }
+        return added;
+    }
+
+    @Benchmark
+    public boolean retries(Events events, Seen seen, Errors errors) {
+        boolean added = EventIdFilter.tryAdd(events.next(false));
+        if (added) {
+            errors.missedDuplicates++;
+        }
+        return added;
+    }
+}
@@ -0,0 +1,76 @@
+package org.healthtracker.benchmarks;
+
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.db.StorageMode;
+import org.healthtracker.io.ActivityExporter;
+import org.healthtracker.io.ExportFormat;
+import org.healthtracker.io.ExportReport;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.user.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the export of a history of ROWS_PER_TYPE activities of every type, in both formats,
+ * exporting the types one after another (1) or all at once (5).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExportBenchmark {
+    private static final int ROWS_PER_TYPE = 200_000;
+
+    @Param({"CSV_GZIP", "COLUMNAR"})
+    public ExportFormat format;
+
+    @Param({"1", "5"})
+    public int parallelism;
+
+    @Param({"PER_USER_TABLES", "CONSOLIDATED"})
+    public StorageMode layout;
+
+    private DatabaseHelper dbHelper;
+    private User user;
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        dbHelper = EmbeddedDatabase.start();
+        DatabaseHelper.setStorageMode(layout);
+        user = EmbeddedDatabase.createUser(dbHelper, "exporter");
+        for (ActivityType type : ActivityType.values()) {
+            EmbeddedDatabase.seed(dbHelper, user, type, ROWS_PER_TYPE, 3 * 365);
+        }
+        directory = Files.createTempDirectory("healthtracker-export");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        EmbeddedDatabase.stop(dbHelper);
+    }
+
+    @Benchmark
+    public ExportReport exportAll() throws IOException, SQLException {
+        return new ActivityExporter(dbHelper, parallelism).exportAll(user, directory, format);
+    }
+}
@@ -0,0 +1,137 @@
+package org.healthtracker.benchmarks;
+
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.db.StorageMode;
+import org.healthtracker.io.ActivityImporter;
+import org.healthtracker.io.ImportFormat;
+import org.healthtracker.io.ImportReport;
+import org.healthtracker.user.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the import of a history of ROWS activities, spread over all five types and three years,
+ * for several batch sizes and numbers of saving threads. Rows per second is ROWS divided by the score.
+ * Each import starts from an empty history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ImportBenchmark {
+    private static final int ROWS = 100_000;
+    private static final int DAYS = 3 * 365;
+
+    @Param({"100", "1000"})
+    public int batchSize;
+
+    @Param({"1", "2", "4"})
+    public int parallelism;
+
+    @Param({"PER_USER_TABLES", "CONSOLIDATED"})
+    public StorageMode layout;
+
+    @Param({"CSV", "JSON"})
+    public ImportFormat format;
+
+    private DatabaseHelper dbHelper;
+    private User user;
+    private String file; // The whole file, so the benchmark measures parsing and saving and not the disk
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dbHelper = EmbeddedDatabase.start();
+        DatabaseHelper.setStorageMode(layout);
+        user = EmbeddedDatabase.createUser(dbHelper, "importer");
+        file = format == ImportFormat.JSON ? json() : csv();
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearRows() throws SQLException {
+        dbHelper.resetUserData(user);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        EmbeddedDatabase.stop(dbHelper);
+    }
+
+    @Benchmark
+    public ImportReport importHistory() throws IOException, SQLException {
+        return new ActivityImporter(dbHelper, batchSize, parallelism).importFrom(user, new StringReader(file), format, null);
+    }
+
+    private static String csv() {
+        StringBuilder csv = new StringBuilder("type,date,food_item,calories,duration,calories_burned,mood,sleep_hours,steps,liters\n");
+        LocalDate first = LocalDate.now().minusDays(DAYS);
+        for (int i = 0; i < ROWS; i++) {
+            LocalDate day = first.plusDays(i % DAYS);
+            switch (i % 5) {
+                case 0:
+                    csv.append("diet,").append(day).append(",\"Oatmeal, with berries\",").append(200 + i % 400).append(",,,,,,\n");
+                    break;
+                case 1:
+                    csv.append("exercise,").append(day).append(",,,").append(10 + i % 80).append(',').append(100 + i % 500).append(",,,,\n");
+                    break;
+                case 2:
+                    csv.append("mental_health,").append(day).append(",,,,,").append(1 + i % 5).append(',').append(5 + i % 5).append(",,\n");
+                    break;
+                case 3:
+                    csv.append("steps,").append(day).append(",,,,,,,").append(1_000 + i % 15_000).append(",\n");
+                    break;
+                default:
+                    csv.append("water_intake,").append(day).append(",,,,,,,,").append(0.25 * (1 + i % 12)).append('\n');
+                    break;
+            }
+        }
+        return csv.toString();
+    }
+
+    private static String json() {
+        StringBuilder json = new StringBuilder("[\n");
+        LocalDate first = LocalDate.now().minusDays(DAYS);
+        for (int i = 0; i < ROWS; i++) {
+            LocalDate day = first.plusDays(i % DAYS);
+            json.append(i == 0 ? "" : ",\n").append("{\"date\": \"").append(day).append("\", ");
+            switch (i % 5) {
+                case 0:
+                    json.append("\"type\": \"diet\", \"food_item\": \"Oatmeal, with berries\", \"calories\": ").append(200 + i % 400);
+                    break;
+                case 1:
+                    json.append("\"type\": \"exercise\", \"duration\": ").append(10 + i % 80)
+                            .append(", \"calories_burned\": ").append(100 + i % 500);
+                    break;
+                case 2:
+                    json.append("\"type\": \"mental_health\", \"mood\": ").append(1 + i % 5).append(", \"sleep_hours\": ").append(5 + i % 5);
+                    break;
+                case 3:
+                    json.append("\"type\": \"steps\", \"steps\": ").append(1_000 + i % 15_000);
+                    break;
+                default:
+                    json.append("\"type\": \"water_intake\", \"liters\": ").append(0.25 * (1 + i % 12));
+                    break;
+            }
+            json.append('}');
+        }
+        return json.append("\n]\n").toString();
+    }
+}
@@ -0,0 +1,186 @@
+package org.healthtracker.benchmarks;
+
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.metrics.Metrics;
+import org.healthtracker.metrics.Timer;
+import org.healthtracker.server.IngestServer;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.tracking.DurabilityMode;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.user.User;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load generator for the IngestServer: client threads post batches of step, water and exercise events as
+ * newline-delimited JSON for a fixed time, backing off as told by 429 responses, then print the throughput,
+ * the request latency percentiles and the count of each response status.
+ * Without -Dload.url it starts an IngestServer on a free loopback port, backed by the embedded H2 database
+ * with one registered user per client, and checks at the end that every event reported as saved is in the database.
+ * Usage: java -cp benchmarks.jar org.healthtracker.benchmarks.IngestLoadGenerator
+ * Settings, overridable with -Dload.* system properties:
+ * load.url       URL of a running server's /activities endpoint (default: start one in process).
+ * load.username  User to post as with load.url; load.password its password.
+ * load.clients   Concurrent clients (default 32).
+ * load.batch     Events per request (default 100).
+ * load.seconds   Duration of the run (default 20).
+ */
+public class IngestLoadGenerator {
+    private static final int CLIENTS = Integer.getInteger("load.clients", 32);
+    private static final int BATCH = Integer.getInteger("load.batch", 100);
+    private static final int SECONDS = Integer.getInteger("load.seconds", 20);
+    private static final Pattern SAVED = Pattern.compile("\"saved\":(\\d+)");
+
+    private static final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private static final Timer requestTimer = Metrics.timer("load.request");
+    private static final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    private static final LongAdder savedEvents = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+        String url = System.getProperty("load.url");
+        DatabaseHelper dbHelper = null;
+        IngestServer server = null;
+        List<String> credentials = new ArrayList<>();
+        List<User> users = new ArrayList<>();
+        if (url == null) {
+            dbHelper = EmbeddedDatabase.start();
+            FitnessActivity.setDurabilityMode(DurabilityMode.BUFFERED);
+            for (int i = 0; i < CLIENTS; i++) {
+                String username = "gateway" + i;
+                users.add(EmbeddedDatabase.createUser(dbHelper, username));
+                credentials.add(username + ":" + EmbeddedDatabase.PASSWORD);
+            }
+            server = new IngestServer(dbHelper, new InetSocketAddress("127.0.0.1", 0));
+            server.start();
+            url = "http://127.0.0.1:" + server.getAddress().getPort() + "/activities";
+        } else {
+            credentials.add(System.getProperty("load.username") + ":" + System.getProperty("load.password"));
+        }
+
+        long deadline = System.nanoTime() + SECONDS * 1_000_000_000L;
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            String authorization = "Basic " + Base64.getEncoder().encodeToString(
+                    credentials.get(i % credentials.size()).getBytes(StandardCharsets.UTF_8));
+            URI uri = URI.create(url);
+            int clientId = i;
+            Thread t = new Thread(() -> runClient(uri, authorization, clientId, deadline), "load-client-" + i);
+            t.start();
+            clients.add(t);
+        }
+        for (Thread t : clients) {
+            t.join();
+        }
+
+        long requests = requestTimer.snapshot().getCount();
+        System.out.printf("%d clients, %d events per request, %d s%n", CLIENTS, BATCH, SECONDS);
+        System.out.printf("%,.0f requests/s, %,.0f saved events/s%n", requests / (double) SECONDS,
+                savedEvents.sum() / (double) SECONDS);
+        System.out.println(requestTimer.snapshot());
+        System.out.println("Statuses: " + new TreeMap<>(statuses));
+        if (server != null) {
+            server.stop(1);
+            verify(dbHelper, users);
+            EmbeddedDatabase.stop(dbHelper);
+        }
+    }
+
+    /**
+     * Posts batches until the deadline. A 429 makes the client wait as long as Retry-After says.
+     */
+    private static void runClient(URI uri, String authorization, int clientId, long deadline) {
+        int sequence = 0;
+        while (System.nanoTime() < deadline) {
+            HttpRequest request = HttpRequest.newBuilder(uri)
+                    .header("Authorization", authorization)
+                    .header("Content-Type", "application/x-ndjson")
+                    .timeout(Duration.ofSeconds(60))
+                    .POST(HttpRequest.BodyPublishers.ofString(batch(clientId, sequence)))
+                    .build();
+            sequence += BATCH;
+            long start = System.nanoTime();
+            try {
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                requestTimer.record(start);
+                statuses.computeIfAbsent(response.statusCode(), status -> new LongAdder()).increment();
+                Matcher saved = SAVED.matcher(response.body());
+                if (saved.find()) {
+                    savedEvents.add(Long.parseLong(saved.group(1)));
+                }
+                if (response.statusCode() == 429) {
+                    long retryAfter = response.headers().firstValueAsLong("Retry-After").orElse(1);
+                    Thread.sleep(retryAfter * 1000);
+                }
+            } catch (IOException e) {
+                requestTimer.recordFailure(start);
+                statuses.computeIfAbsent(-1, status -> new LongAdder()).increment(); // -1: no response
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns one request body: step, water and exercise events in turn, dated over the last 30 days.
+     */
+    private static String batch(int clientId, int sequence) {
+        LocalDate today = LocalDate.now();
+        StringBuilder body = new StringBuilder(BATCH * 64);
+        for (int i = 0; i < BATCH; i++) {
+            int n = sequence + i;
+            String date = today.minusDays((n + clientId) % 30).toString();
+            switch (n % 3) {
+                case 0:
+                    body.append("{\"type\":\"steps\",\"date\":\"").append(date).append("\",\"steps\":").append(500 + n % 15_000);
+                    break;
+                case 1:
+                    body.append("{\"type\":\"water_intake\",\"date\":\"").append(date).append("\",\"liters\":").append(0.25 + n % 8 * 0.25);
+                    break;
+                default:
+                    body.append("{\"type\":\"exercise\",\"date\":\"").append(date).append("\",\"duration\":").append(10 + n % 80)
+                            .append(",\"calories_burned\":").append(50 + n % 600);
+                    break;
+            }
+            body.append("}\n");
+        }
+        return body.toString();
+    }
+
+    /**
+     * Checks that the database holds exactly the events the server reported as saved.
+     */
+    private static void verify(DatabaseHelper dbHelper, List<User> users) throws SQLException, IOException {
+        FitnessActivity.setDurabilityMode(DurabilityMode.SYNC); // Flushes anything still buffered
+        LongAdder counter = new LongAdder();
+        for (User user : users) {
+            for (ActivityType type : ActivityType.values()) {
+                dbHelper.getActivityStore().forEach(type, user, record -> counter.increment());
+            }
+        }
+        long rows = counter.sum();
+        System.out.println(rows == savedEvents.sum() ? "Verified " + rows + " rows"
+                : "MISMATCH: " + rows + " rows in the database, " + savedEvents.sum() + " reported saved");
+    }
+}
@@ -0,0 +1,74 @@
+package org.healthtracker.benchmarks;
+
+import org.healthtracker.user.LoginThrottle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stress test of the login throttle, run with 1, 4 and 16 threads by BenchmarkRunner to show how it scales
+ * across cores. No database is involved: the throttle decides before any JDBC work.
+ * distinctUsers models credential stuffing with many usernames from many sources, so most attempts create
+ * or refill a bucket; hotUser has every thread hammer one username, so almost every attempt is rejected
+ * by the same bucket.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginThrottleBenchmark {
+    private static final int KEYS_PER_THREAD = 65_536;
+
+    /**
+     * Usernames and sources used by one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Attempts {
+        private static final AtomicInteger threads = new AtomicInteger();
+
+        String[] usernames;
+        String[] sources;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            int thread = threads.getAndIncrement();
+            usernames = new String[KEYS_PER_THREAD];
+            sources = new String[KEYS_PER_THREAD];
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                usernames[i] = "user-" + thread + "-" + i;
+                sources[i] = "10." + thread + "." + (i >> 8 & 0xff) + "." + (i & 0xff);
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void clear() {
+            LoginThrottle.reset();
+        }
+    }
+
+    @Benchmark
+    public long distinctUsers(Attempts attempts) {
+        int i = attempts.next++ & (KEYS_PER_THREAD - 1);
+        return LoginThrottle.tryAcquire(attempts.usernames[i], attempts.sources[i]);
+    }
+
+    @Benchmark
+    public long hotUser(Attempts attempts) {
+        int i = attempts.next++ & (KEYS_PER_THREAD - 1);
+        return LoginThrottle.tryAcquire("admin", attempts.sources[i]);
+    }
+}
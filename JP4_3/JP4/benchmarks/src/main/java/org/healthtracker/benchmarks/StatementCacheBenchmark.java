@@ -0,0 +1,87 @@
+package org.healthtracker.benchmarks;
+
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.db.StorageMode;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.tracking.DurabilityMode;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.tracking.StepActivity;
+import org.healthtracker.user.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares repeated inserts, updates and deletes of one user with the prepared statement cache
+ * disabled (0) and enabled. Every parameter combination runs in its own fork, so the cache size
+ * is set before the connection pool is created.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatementCacheBenchmark {
+    private static final int ROWS = 1_000; // Rows updated in turn by the update benchmark
+
+    @Param({"0", "64"})
+    public int statementCacheSize;
+
+    @Param({"PER_USER_TABLES", "CONSOLIDATED"})
+    public StorageMode layout;
+
+    private DatabaseHelper dbHelper;
+    private User user;
+    private StepActivity activity;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        System.setProperty("healthtracker.pool.statementCacheSize", Integer.toString(statementCacheSize));
+        dbHelper = EmbeddedDatabase.start();
+        DatabaseHelper.setStorageMode(layout);
+        FitnessActivity.setDurabilityMode(DurabilityMode.SYNC);
+        user = EmbeddedDatabase.createUser(dbHelper, "statements");
+        EmbeddedDatabase.seed(dbHelper, user, ActivityType.STEPS, ROWS, 30);
+        activity = new StepActivity(1, user);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        EmbeddedDatabase.stop(dbHelper);
+    }
+
+    @Benchmark
+    public void track() {
+        EmbeddedDatabase.newActivity(ActivityType.STEPS, user, counter.incrementAndGet()).track().join();
+    }
+
+    @Benchmark
+    public void update() throws SQLException {
+        int i = counter.incrementAndGet();
+        activity.updateStepActivity(1 + i % ROWS, 500 + i % 15_000);
+    }
+
+    /**
+     * Deletes an activity id that does not exist, which still prepares and runs the lock and delete statements.
+     */
+    @Benchmark
+    public void deleteMissing() throws SQLException {
+        activity.deleteStepActivity(-1 - counter.incrementAndGet() % ROWS);
+    }
+}
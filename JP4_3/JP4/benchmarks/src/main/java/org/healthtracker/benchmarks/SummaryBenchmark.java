@@ -0,0 +1,87 @@
+package org.healthtracker.benchmarks;
+
+import org.healthtracker.db.ActivityQuery;
+import org.healthtracker.db.DailyRollups;
+import org.healthtracker.db.DailyTotal;
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.db.StorageMode;
+import org.healthtracker.tracking.ActivityRecord;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.user.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the queries behind the summary panel: the first page of the activity table,
+ * a date-range query, and the 30 day totals read from the daily rollups.
+ * The user's table is seeded with the given number of rows spread over a year.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SummaryBenchmark {
+    private static final int PAGE_SIZE = 200; // Same page size as the summary panel
+    private static final int SEEDED_DAYS = 365;
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    @Param({"DIET", "MENTAL_HEALTH"})
+    public ActivityType type;
+
+    @Param({"PER_USER_TABLES", "CONSOLIDATED"})
+    public StorageMode layout;
+
+    private DatabaseHelper dbHelper;
+    private ActivityQuery query;
+    private User user;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dbHelper = EmbeddedDatabase.start();
+        DatabaseHelper.setStorageMode(layout);
+        query = new ActivityQuery(dbHelper);
+        user = EmbeddedDatabase.createUser(dbHelper, "summary");
+        EmbeddedDatabase.seed(dbHelper, user, type, rows, SEEDED_DAYS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        EmbeddedDatabase.stop(dbHelper);
+    }
+
+    @Benchmark
+    public List<ActivityRecord> firstPage() throws SQLException {
+        return query.findPage(type, user, 0, PAGE_SIZE, null);
+    }
+
+    @Benchmark
+    public List<ActivityRecord> lastThirtyDays() throws SQLException {
+        return query.findLastDays(type, user, 30);
+    }
+
+    @Benchmark
+    public DailyTotal thirtyDayTotal() throws SQLException {
+        LocalDate today = LocalDate.now();
+        return DailyRollups.total(dbHelper, type, user, today.minusDays(29), today);
+    }
+}
@@ -0,0 +1,88 @@
+package org.healthtracker.benchmarks;
+
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.db.LocalActivityStore;
+import org.healthtracker.db.StorageMode;
+import org.healthtracker.db.StoreBackend;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.tracking.DurabilityMode;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.user.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures track() end to end, up to the commit of the row and its daily rollup,
+ * for every activity type, storage layout, durability mode and store backend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrackBenchmark {
+    @Param({"DIET", "EXERCISE", "MENTAL_HEALTH", "STEPS", "WATER_INTAKE"})
+    public ActivityType type;
+
+    @Param({"PER_USER_TABLES", "CONSOLIDATED"})
+    public StorageMode layout;
+
+    @Param({"SYNC", "BUFFERED"})
+    public DurabilityMode durability;
+
+    @Param({"MYSQL", "LOCAL"})
+    public StoreBackend store; // MYSQL runs the JDBC store against the embedded database
+
+    private DatabaseHelper dbHelper;
+    private User user;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        dbHelper = EmbeddedDatabase.start();
+        DatabaseHelper.setStorageMode(layout);
+        FitnessActivity.setDurabilityMode(durability);
+        if (store == StoreBackend.LOCAL) {
+            DatabaseHelper.setActivityStore(LocalActivityStore.open(Files.createTempDirectory("healthtracker-bench"), false));
+        }
+        user = EmbeddedDatabase.createUser(dbHelper, "tracker");
+    }
+
+    /**
+     * Empties the user's tables so every iteration inserts into tables of the same size.
+     */
+    @TearDown(Level.Iteration)
+    public void clearRows() throws SQLException {
+        dbHelper.resetUserData(user);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        FitnessActivity.setDurabilityMode(DurabilityMode.SYNC); // Flushes anything still buffered
+        DatabaseHelper.setActivityStore(null);
+        EmbeddedDatabase.stop(dbHelper);
+    }
+
+    @Benchmark
+    public void track() {
+        EmbeddedDatabase.newActivity(type, user, counter.incrementAndGet()).track().join();
+    }
+}
@@ -0,0 +1,112 @@
+package org.healthtracker.benchmarks;
+
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.db.StorageMode;
+import org.healthtracker.exceptions.DatabaseException;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.user.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures login validation, re-authentication and resetting a user's data.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserBenchmark {
+
+    /**
+     * A registered user for the login benchmark.
+     */
+    @State(Scope.Benchmark)
+    public static class LoginState {
+        DatabaseHelper dbHelper;
+        User user;
+
+        @Setup(Level.Trial)
+        public void setUp() throws SQLException {
+            dbHelper = EmbeddedDatabase.start();
+            user = EmbeddedDatabase.createUser(dbHelper, "login");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws SQLException {
+            EmbeddedDatabase.stop(dbHelper);
+        }
+    }
+
+    /**
+     * A user whose tables are refilled before every reset.
+     */
+    @State(Scope.Benchmark)
+    public static class ResetState {
+        @Param({"1000", "10000", "100000"})
+        public int rows; // Rows per activity type
+
+        @Param({"PER_USER_TABLES", "CONSOLIDATED"})
+        public StorageMode layout;
+
+        DatabaseHelper dbHelper;
+        User user;
+
+        @Setup(Level.Trial)
+        public void setUp() throws SQLException {
+            dbHelper = EmbeddedDatabase.start();
+            DatabaseHelper.setStorageMode(layout);
+            user = EmbeddedDatabase.createUser(dbHelper, "reset");
+        }
+
+        @Setup(Level.Invocation)
+        public void seed() throws SQLException {
+            for (ActivityType type : ActivityType.values()) {
+                EmbeddedDatabase.seed(dbHelper, user, type, rows, 365);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws SQLException {
+            EmbeddedDatabase.stop(dbHelper);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public User validateUser(LoginState state) throws SQLException {
+        return state.dbHelper.validateUser("login", EmbeddedDatabase.PASSWORD);
+    }
+
+    /**
+     * Re-authentication of a logged in user, answered by the session cache after the first call.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean authenticate(LoginState state) throws DatabaseException {
+        return state.user.authenticate("login", EmbeddedDatabase.PASSWORD);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 10)
+    public void resetUserData(ResetState state) throws SQLException {
+        state.dbHelper.resetUserData(state.user);
+    }
+}
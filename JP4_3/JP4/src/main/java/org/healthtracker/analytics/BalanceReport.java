@@ -0,0 +1,117 @@
+package org.healthtracker.analytics;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Net calorie balance of a user over a range of days, built by CalorieBalance.report(): one DailyBalance per
+ * day, oldest first, and the least-squares trend line of the net balance of the logged days.
+ */
+public final class BalanceReport {
+    private final LocalDate from;
+    private final LocalDate to;
+    private final List<DailyBalance> days; // Every day from from to to, logged or not
+    private final double slope;            // Change of the net balance per day, NaN with fewer than two logged days
+    private final double intercept;        // Trend value on the first day
+
+    BalanceReport(LocalDate from, LocalDate to, List<DailyBalance> days, double slope, double intercept) {
+        this.from = from;
+        this.to = to;
+        this.days = Collections.unmodifiableList(days);
+        this.slope = slope;
+        this.intercept = intercept;
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    /**
+     * Returns the balance of every day of the range, oldest first.
+     */
+    public List<DailyBalance> getDays() {
+        return days;
+    }
+
+    /**
+     * Returns the balance of the last day of the range, e.g. today, with its rolling averages.
+     */
+    public DailyBalance getLastDay() {
+        return days.get(days.size() - 1);
+    }
+
+    public double getTotalIntake() {
+        double total = 0;
+        for (DailyBalance day : days) {
+            total += day.getIntake();
+        }
+        return total;
+    }
+
+    public double getTotalBurned() {
+        double total = 0;
+        for (DailyBalance day : days) {
+            total += day.getBurned();
+        }
+        return total;
+    }
+
+    public double getTotalNet() {
+        return getTotalIntake() - getTotalBurned();
+    }
+
+    /**
+     * Returns how much the net balance changes per day according to the trend line, e.g. -20 if each day the
+     * balance is 20 calories lower than the day before, or NaN if fewer than two days were logged.
+     */
+    public double getTrendSlope() {
+        return slope;
+    }
+
+    /**
+     * Returns the net balance the trend line gives for a day, or NaN if there is no trend.
+     */
+    public double getTrendAt(LocalDate date) {
+        return intercept + slope * ChronoUnit.DAYS.between(from, date);
+    }
+
+    /**
+     * Sums the days per week, Monday first. The date of each row is the Monday, or the first day of the range
+     * for a partial first week; both averages are the week's average net balance per logged day.
+     */
+    public List<DailyBalance> weeks() {
+        List<DailyBalance> weeks = new ArrayList<>();
+        int i = 0;
+        while (i < days.size()) {
+            LocalDate start = days.get(i).getDate();
+            LocalDate nextWeek = start.with(TemporalAdjusters.next(DayOfWeek.MONDAY));
+            double intake = 0;
+            double burned = 0;
+            double loggedNet = 0;
+            int entries = 0;
+            int logged = 0;
+            for (; i < days.size() && days.get(i).getDate().isBefore(nextWeek); i++) {
+                DailyBalance day = days.get(i);
+                intake += day.getIntake();
+                burned += day.getBurned();
+                entries += day.getEntries();
+                if (day.isLogged()) {
+                    loggedNet += day.getNet();
+                    logged++;
+                }
+            }
+            double average = logged == 0 ? Double.NaN : loggedNet / logged;
+            weeks.add(new DailyBalance(start, intake, burned, entries, average, average));
+        }
+        return weeks;
+    }
+}
@@ -0,0 +1,364 @@
+package org.healthtracker.analytics;
+
+import org.healthtracker.cache.ActivityCache;
+import org.healthtracker.db.DailyTotal;
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.metrics.Metrics;
+import org.healthtracker.metrics.Timer;
+import org.healthtracker.tracking.ActivityListener;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.tracking.PendingWrites;
+import org.healthtracker.user.User;
+import org.healthtracker.wal.WalReplicator;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Net calorie balance of a user: calories eaten (diet) minus calories burned (exercise) per day, with rolling
+ * 7 and 30 day averages and a trend line. Reports are built in one date-ordered pass that merges the daily
+ * totals of both types, read with ActivityCache.findDays(): from memory for recent days, otherwise from the
+ * store's daily rollups, so no activity rows are read.
+ * The daily figures of a user's recent days are also kept in a ledger, which FitnessActivity listeners update
+ * as diet and exercise activities are tracked, so later reports over those days need no query at all.
+ * Updates and deletes do not carry the old values, so they drop the user's ledger like a reset does; it is
+ * rebuilt by the next report. Ledgers of the least recently used users are dropped beyond the limit.
+ * Settings, overridable with -Dhealthtracker.balance.* system properties.
+ */
+public final class CalorieBalance {
+    private static final int LEDGER_DAYS = Integer.getInteger("healthtracker.balance.days", 90); // Days loaded per user
+    private static final int MAX_USERS = Integer.getInteger("healthtracker.balance.maxUsers", 1_000);
+    private static final int SHORT_WINDOW = 7;
+    private static final int LONG_WINDOW = 30;
+
+    private static final Timer REPORT_TIMER = Metrics.timer("analytics.calorieBalance");
+
+    // Keyed by user id, in access order so the eldest entry is the least recently used user
+    private static final LinkedHashMap<Integer, Ledger> ledgers = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Ledger> eldest) {
+            return size() > MAX_USERS;
+        }
+    };
+    private static final Set<Integer> loading = new HashSet<>();             // Users whose ledger is being loaded
+    private static final Set<Integer> changedWhileLoading = new HashSet<>(); // Loads that missed a change
+
+    static {
+        FitnessActivity.addListener(new LedgerUpdater());
+    }
+
+    private CalorieBalance() {
+    }
+
+    /**
+     * Returns the balance of a user for every day between two days, with the rolling averages of each day and
+     * the trend over the range. The averages of the first days also take the 29 days before the range into account.
+     * throws SQLException if the daily totals cannot be read.
+     */
+    public static BalanceReport report(DatabaseHelper dbHelper, User user, LocalDate from, LocalDate to)
+            throws SQLException {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("The range ends before it starts: " + from + " to " + to);
+        }
+        return REPORT_TIMER.time(() -> {
+            int firstDay = (int) from.toEpochDay() - (LONG_WINDOW - 1);
+            int lastDay = (int) to.toEpochDay();
+            Accumulator report = new Accumulator((int) from.toEpochDay());
+            synchronized (CalorieBalance.class) {
+                Ledger ledger = ledgers.get(user.getId());
+                if (ledger != null && firstDay >= ledger.firstDay) {
+                    ledger.replay(firstDay, lastDay, report);
+                    return report.finish(from, to);
+                }
+            }
+            int ledgerFirstDay = (int) LocalDate.now().toEpochDay() - (LEDGER_DAYS - 1);
+            if (firstDay >= ledgerFirstDay) {
+                Ledger ledger = load(dbHelper, user, ledgerFirstDay);
+                ledger.replay(firstDay, lastDay, report); // The loaded copy is not shared until now, or never
+                return report.finish(from, to);
+            }
+            merge(dbHelper, user, firstDay, lastDay, report); // Older than any ledger holds
+            return report.finish(from, to);
+        });
+    }
+
+    /**
+     * Returns the balance of the last 30 days up to today.
+     */
+    public static BalanceReport lastDays(DatabaseHelper dbHelper, User user) throws SQLException {
+        LocalDate today = LocalDate.now();
+        return report(dbHelper, user, today.minusDays(LONG_WINDOW - 1), today);
+    }
+
+    /**
+     * Drops the ledger of one user, e.g. after a bulk import; it is rebuilt by the next report.
+     */
+    public static synchronized void invalidate(int userId) {
+        changed(userId);
+        ledgers.remove(userId);
+    }
+
+    public static synchronized int getUserCount() {
+        return ledgers.size();
+    }
+
+    /**
+     * Reads the daily totals of a user since a day into a new ledger and keeps it, unless a change arrived
+     * while reading or may still arrive for a row the read already saw: a save of the user is in flight, or
+     * the write-ahead log has entries whose listeners have not run yet. Such a change would be counted twice.
+     * return The ledger, kept or not.
+     */
+    private static Ledger load(DatabaseHelper dbHelper, User user, int firstDay) throws SQLException {
+        int userId = user.getId();
+        synchronized (CalorieBalance.class) {
+            loading.add(userId);
+            changedWhileLoading.remove(userId);
+        }
+        Ledger ledger = new Ledger(firstDay, LEDGER_DAYS);
+        try {
+            merge(dbHelper, user, firstDay, (int) LocalDate.now().toEpochDay(), ledger::set);
+        } finally {
+            synchronized (CalorieBalance.class) {
+                loading.remove(userId);
+            }
+        }
+        synchronized (CalorieBalance.class) {
+            if (!changedWhileLoading.remove(userId) && PendingWrites.getInFlightCount(userId) == 0
+                    && WalReplicator.isCaughtUp()) {
+                ledgers.put(userId, ledger);
+            }
+        }
+        return ledger;
+    }
+
+    /**
+     * Walks the days between two epoch days in order, merging the diet and exercise totals of each day.
+     * Both lists come sorted by day, so each is read once, side by side.
+     */
+    private static void merge(DatabaseHelper dbHelper, User user, int firstDay, int lastDay, DaySink sink)
+            throws SQLException {
+        LocalDate from = LocalDate.ofEpochDay(firstDay);
+        LocalDate to = LocalDate.ofEpochDay(lastDay);
+        List<DailyTotal> intake = ActivityCache.findDays(dbHelper, ActivityType.DIET, user, from, to);
+        List<DailyTotal> burned = ActivityCache.findDays(dbHelper, ActivityType.EXERCISE, user, from, to);
+        int i = 0;
+        int j = 0;
+        for (int day = firstDay; day <= lastDay; day++) {
+            double eaten = 0;
+            double spent = 0;
+            int entries = 0;
+            if (i < intake.size() && intake.get(i).getDate().toEpochDay() == day) {
+                eaten = intake.get(i).getSum();
+                entries += intake.get(i++).getCount();
+            }
+            if (j < burned.size() && burned.get(j).getDate().toEpochDay() == day) {
+                spent = burned.get(j).getSum();
+                entries += burned.get(j++).getCount();
+            }
+            sink.accept(day, eaten, spent, entries);
+        }
+    }
+
+    /**
+     * Marks a user whose ledger is being loaded as changed, so the load is not kept.
+     * return The ledger of the user, or null if there is none.
+     */
+    private static Ledger changed(int userId) {
+        if (loading.contains(userId)) {
+            changedWhileLoading.add(userId);
+        }
+        return ledgers.get(userId);
+    }
+
+    /**
+     * Receives the merged figures of consecutive days, oldest first.
+     */
+    private interface DaySink {
+        void accept(int day, double intake, double burned, int entries);
+    }
+
+    /**
+     * Builds a report in one pass: rolling sums over the last 30 days kept in ring buffers, and the sums of a
+     * least-squares fit over the logged days of the range.
+     */
+    private static final class Accumulator implements DaySink {
+        final int fromDay;
+        final double[] nets = new double[LONG_WINDOW];   // Net of logged days, 0 for others, by day % LONG_WINDOW
+        final boolean[] logged = new boolean[LONG_WINDOW];
+        final List<DailyBalance> days = new ArrayList<>();
+        double sum7;
+        double sum30;
+        int logged7;
+        int logged30;
+        int seen;   // Days accepted so far
+        int points; // Logged days of the range, for the trend line
+        double sumX;
+        double sumY;
+        double sumXY;
+        double sumXX;
+
+        Accumulator(int fromDay) {
+            this.fromDay = fromDay;
+        }
+
+        @Override
+        public void accept(int day, double intake, double burned, int entries) {
+            int slot = Math.floorMod(day, LONG_WINDOW);
+            if (seen >= LONG_WINDOW && logged[slot]) { // The day 30 days back leaves the long window
+                sum30 -= nets[slot];
+                logged30--;
+            }
+            int shortSlot = Math.floorMod(day - SHORT_WINDOW, LONG_WINDOW);
+            if (seen >= SHORT_WINDOW && logged[shortSlot]) { // The day 7 days back leaves the short window
+                sum7 -= nets[shortSlot];
+                logged7--;
+            }
+            double net = intake - burned;
+            boolean isLogged = entries > 0;
+            nets[slot] = isLogged ? net : 0;
+            logged[slot] = isLogged;
+            if (isLogged) {
+                sum7 += net;
+                sum30 += net;
+                logged7++;
+                logged30++;
+            }
+            seen++;
+            if (day < fromDay) {
+                return; // Only feeds the averages of the first days of the range
+            }
+            days.add(new DailyBalance(LocalDate.ofEpochDay(day), intake, burned, entries,
+                    logged7 == 0 ? Double.NaN : sum7 / logged7, logged30 == 0 ? Double.NaN : sum30 / logged30));
+            if (isLogged) {
+                double x = day - fromDay;
+                points++;
+                sumX += x;
+                sumY += net;
+                sumXY += x * net;
+                sumXX += x * x;
+            }
+        }
+
+        BalanceReport finish(LocalDate from, LocalDate to) {
+            double slope = Double.NaN;
+            double intercept = Double.NaN;
+            double denominator = points * sumXX - sumX * sumX;
+            if (points >= 2 && denominator != 0) {
+                slope = (points * sumXY - sumX * sumY) / denominator;
+                intercept = (sumY - slope * sumX) / points;
+            }
+            return new BalanceReport(from, to, days, slope, intercept);
+        }
+    }
+
+    /**
+     * Daily intake, burned calories and entry counts of one user from a first day on, indexed by day - firstDay.
+     * Days after the last one held have no entries yet.
+     */
+    private static final class Ledger {
+        final int firstDay;
+        double[] intake;
+        double[] burned;
+        int[] entries;
+
+        Ledger(int firstDay, int capacity) {
+            this.firstDay = firstDay;
+            intake = new double[capacity];
+            burned = new double[capacity];
+            entries = new int[capacity];
+        }
+
+        void set(int day, double dayIntake, double dayBurned, int dayEntries) {
+            int index = index(day);
+            intake[index] = dayIntake;
+            burned[index] = dayBurned;
+            entries[index] = dayEntries;
+        }
+
+        /**
+         * Applies a tracked activity; activities before the first day are not held and are ignored.
+         */
+        void add(ActivityType type, int day, double calories) {
+            if (day < firstDay) {
+                return;
+            }
+            int index = index(day);
+            if (type == ActivityType.DIET) {
+                intake[index] += calories;
+            } else {
+                burned[index] += calories;
+            }
+            entries[index]++;
+        }
+
+        void replay(int fromDay, int toDay, DaySink sink) {
+            for (int day = fromDay; day <= toDay; day++) {
+                int index = day - firstDay;
+                if (index < entries.length) {
+                    sink.accept(day, intake[index], burned[index], entries[index]);
+                } else {
+                    sink.accept(day, 0, 0, 0);
+                }
+            }
+        }
+
+        private int index(int day) {
+            int index = day - firstDay;
+            if (index >= entries.length) { // A new day since the ledger was loaded
+                int capacity = Math.max(index + 1, entries.length * 2);
+                intake = Arrays.copyOf(intake, capacity);
+                burned = Arrays.copyOf(burned, capacity);
+                entries = Arrays.copyOf(entries, capacity);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Applies saved diet and exercise changes to the ledgers.
+     */
+    private static final class LedgerUpdater implements ActivityListener {
+
+        @Override
+        public void activityInserted(FitnessActivity activity) {
+            ActivityType type = activity.getType();
+            if ((type != ActivityType.DIET && type != ActivityType.EXERCISE) || activity.getDate() == null) {
+                return;
+            }
+            double calories = ((Number) activity.getValues()[type.getMetricColumn()]).doubleValue();
+            synchronized (CalorieBalance.class) {
+                Ledger ledger = changed(activity.getUser().getId());
+                if (ledger != null) {
+                    ledger.add(type, (int) activity.getDate().toEpochDay(), calories);
+                }
+            }
+        }
+
+        @Override
+        public void activityUpdated(ActivityType type, User user, int activityId, Object[] values) {
+            if (type == ActivityType.DIET || type == ActivityType.EXERCISE) {
+                invalidate(user.getId());
+            }
+        }
+
+        @Override
+        public void activityDeleted(ActivityType type, User user, int activityId) {
+            if (type == ActivityType.DIET || type == ActivityType.EXERCISE) {
+                invalidate(user.getId());
+            }
+        }
+
+        @Override
+        public void userReset(User user) {
+            invalidate(user.getId());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.healthtracker.analytics;
+
+import java.time.LocalDate;
+
+/**
+ * Calories eaten and burned by one user over one day or a range of days, with the rolling averages of the
+ * net balance up to that day.
+ */
+public class DailyBalance {
+    private final LocalDate date;    // The day, or the first day of a range
+    private final double intake;     // Calories of the diet activities
+    private final double burned;     // Calories burned by the exercise activities
+    private final int entries;       // Number of diet and exercise activities
+    private final double average7;   // Average net per logged day of the 7 days ending here, NaN if none was logged
+    private final double average30;  // Same over 30 days
+
+    public DailyBalance(LocalDate date, double intake, double burned, int entries, double average7, double average30) {
+        this.date = date;
+        this.intake = intake;
+        this.burned = burned;
+        this.entries = entries;
+        this.average7 = average7;
+        this.average30 = average30;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public double getIntake() {
+        return intake;
+    }
+
+    public double getBurned() {
+        return burned;
+    }
+
+    /**
+     * Returns the net balance: calories eaten minus calories burned.
+     */
+    public double getNet() {
+        return intake - burned;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns true if any diet or exercise activity was tracked. Days without are left out of averages and trends,
+     * as they usually mean the user did not log rather than did not eat.
+     */
+    public boolean isLogged() {
+        return entries > 0;
+    }
+
+    /**
+     * Returns the average net balance per logged day of the 7 days ending on this day, or NaN if none was logged.
+     */
+    public double getAverage7() {
+        return average7;
+    }
+
+    /**
+     * Returns the average net balance per logged day of the 30 days ending on this day, or NaN if none was logged.
+     */
+    public double getAverage30() {
+        return average30;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: intake %.0f, burned %.0f, net %.0f, 7-day average %.0f, 30-day average %.0f",
+                date, intake, burned, getNet(), average7, average30);
+    }
+}
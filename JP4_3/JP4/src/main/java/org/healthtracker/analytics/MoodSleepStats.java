@@ -0,0 +1,420 @@
+package org.healthtracker.analytics;
+
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.metrics.Metrics;
+import org.healthtracker.metrics.Timer;
+import org.healthtracker.tracking.ActivityListener;
+import org.healthtracker.tracking.ActivityRecord;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.user.User;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Online statistics of the mood and sleep hours of each user's mental health entries: means, variances,
+ * covariance and correlation over all entries and over any window of up to 90 days ending today.
+ * A user's history is read once, with one streaming pass over the store; after that, tracked entries update
+ * the statistics through a FitnessActivity listener in constant time:
+ * - over all entries with Welford's updates of the means and of the centered sums of squares and products,
+ * which stay accurate however long the history grows;
+ * - per day with prefix sums of count, mood, mood squared, sleep, sleep squared and mood times sleep, so the
+ * sums of any window are the difference of two prefixes instead of a scan of its entries. Sleep is summed in
+ * whole minutes, so every sum is an exact integer and the differences lose nothing.
+ * Updates and deletes do not carry the old values, so they drop the user's statistics like a reset does;
+ * they are rebuilt on the next read. Users are evicted least recently used first once the estimated size
+ * exceeds the limit; users without entries in the last 90 days only hold their all-time statistics.
+ * Settings, overridable with -Dhealthtracker.moodstats.* system properties.
+ */
+public final class MoodSleepStats {
+    public static final int MAX_WINDOW_DAYS = 90;
+    private static final long MAX_BYTES = Long.getLong("healthtracker.moodstats.maxBytes", 64L << 20);
+    private static final int SLOTS = MAX_WINDOW_DAYS + 1; // Prefixes of the window's days and of the day before it
+
+    private static final Timer LOAD_TIMER = Metrics.timer("analytics.moodSleep.load");
+
+    // Keyed by user id, in access order so the eldest entry is the least recently used user
+    private static final LinkedHashMap<Integer, UserStats> users = new LinkedHashMap<>(16, 0.75f, true);
+    private static final Set<Integer> loading = new HashSet<>();             // Users being loaded
+    private static final Set<Integer> changedWhileLoading = new HashSet<>(); // Loads that missed a change
+    private static long totalBytes;
+
+    static {
+        FitnessActivity.addListener(new StatsUpdater());
+    }
+
+    private MoodSleepStats() {
+    }
+
+    /**
+     * Returns the statistics over all of a user's entries.
+     * throws SQLException if the user's history has to be read and cannot be.
+     */
+    public static MoodSleepSummary allTime(DatabaseHelper dbHelper, User user) throws SQLException {
+        return stats(dbHelper, user).get(0);
+    }
+
+    /**
+     * Returns the statistics over the entries of the last days, today included.
+     * days From 1 to MAX_WINDOW_DAYS.
+     * throws SQLException if the user's history has to be read and cannot be.
+     */
+    public static MoodSleepSummary lastDays(DatabaseHelper dbHelper, User user, int days) throws SQLException {
+        return stats(dbHelper, user, days).get(1);
+    }
+
+    /**
+     * Returns the statistics over all entries followed by those of each window, e.g. 7, 30 and 90 days,
+     * read together so they describe the same entries.
+     */
+    public static List<MoodSleepSummary> stats(DatabaseHelper dbHelper, User user, int... windowDays) throws SQLException {
+        for (int days : windowDays) {
+            if (days < 1 || days > MAX_WINDOW_DAYS) {
+                throw new IllegalArgumentException("Windows are 1 to " + MAX_WINDOW_DAYS + " days long: " + days);
+            }
+        }
+        int today = (int) LocalDate.now().toEpochDay();
+        UserStats entry;
+        synchronized (MoodSleepStats.class) {
+            entry = users.get(user.getId());
+            if (entry != null) {
+                return summarize(user.getId(), entry, today, windowDays);
+            }
+        }
+        entry = load(dbHelper, user, today);
+        synchronized (MoodSleepStats.class) {
+            return summarize(user.getId(), entry, today, windowDays);
+        }
+    }
+
+    /**
+     * Moves the user's window to today and reads the statistics. Called with the lock held.
+     */
+    private static List<MoodSleepSummary> summarize(int userId, UserStats entry, int today, int[] windowDays) {
+        if (entry.advanceTo(today) && users.get(userId) == entry) { // A load that was not kept is not counted
+            resize(entry);
+        }
+        List<MoodSleepSummary> summaries = new ArrayList<>(windowDays.length + 1);
+        summaries.add(entry.allTime());
+        for (int days : windowDays) {
+            summaries.add(entry.window(days));
+        }
+        return summaries;
+    }
+
+    /**
+     * Drops the statistics of one user, e.g. after a bulk import; they are rebuilt on the next read.
+     */
+    public static synchronized void invalidate(int userId) {
+        changed(userId);
+        remove(userId);
+    }
+
+    /**
+     * Returns the estimated heap used by the statistics of all users.
+     */
+    public static synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public static synchronized int getUserCount() {
+        return users.size();
+    }
+
+    /**
+     * Reads a user's entries in one pass and keeps the statistics, unless a change arrived meanwhile.
+     * return The statistics, kept or not.
+     */
+    private static UserStats load(DatabaseHelper dbHelper, User user, int today) throws SQLException {
+        int userId = user.getId();
+        synchronized (MoodSleepStats.class) {
+            loading.add(userId);
+            changedWhileLoading.remove(userId);
+        }
+        UserStats entry = new UserStats(today);
+        try {
+            LOAD_TIMER.time(() -> {
+                try {
+                    dbHelper.getActivityStore().forEach(ActivityType.MENTAL_HEALTH, user, entry::addRecord);
+                } catch (IOException e) {
+                    throw new SQLException("Error reading mental health entries: " + e.getMessage(), e);
+                }
+                return null;
+            });
+        } finally {
+            synchronized (MoodSleepStats.class) {
+                loading.remove(userId);
+            }
+        }
+        synchronized (MoodSleepStats.class) {
+            if (!changedWhileLoading.remove(userId)) {
+                remove(userId);
+                entry.bytes = entry.footprintBytes();
+                users.put(userId, entry);
+                totalBytes += entry.bytes;
+                evict();
+            }
+        }
+        return entry;
+    }
+
+    private static void remove(int userId) {
+        UserStats entry = users.remove(userId);
+        if (entry != null) {
+            totalBytes -= entry.bytes;
+        }
+    }
+
+    private static void resize(UserStats entry) {
+        long bytes = entry.footprintBytes();
+        totalBytes += bytes - entry.bytes;
+        entry.bytes = bytes;
+        evict();
+    }
+
+    /**
+     * Evicts least recently used users until the statistics fit, always keeping the most recently used one.
+     */
+    private static void evict() {
+        Iterator<Map.Entry<Integer, UserStats>> eldest = users.entrySet().iterator();
+        while (totalBytes > MAX_BYTES && users.size() > 1) {
+            totalBytes -= eldest.next().getValue().bytes;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Marks a user being loaded as changed, so the load is not kept.
+     * return The statistics of the user, or null if there are none.
+     */
+    private static UserStats changed(int userId) {
+        if (loading.contains(userId)) {
+            changedWhileLoading.add(userId);
+        }
+        return users.get(userId);
+    }
+
+    /**
+     * The statistics of one user.
+     */
+    private static final class UserStats {
+        private static final long BASE_BYTES = 96;                         // Object and Welford fields
+        private static final long WINDOW_BYTES = 6 * 16 + SLOTS * (5 * 4 + 8); // The six prefix arrays
+
+        // Welford accumulators over all entries
+        long count;
+        double meanMood;
+        double meanSleep;
+        double moodSquares;   // Sum of squared deviations from the mean mood
+        double sleepSquares;
+        double coMoments;     // Sum of products of the deviations of mood and sleep
+
+        // Prefix sums per day, index SLOTS - 1 being lastDay; each holds the sums from the oldest slot's
+        // day up to its own day, so a window of n days is prefix[last] - prefix[last - n]. Null while
+        // there are no entries in the last SLOTS days.
+        int lastDay;          // Epoch day of the newest slot
+        int[] counts;
+        int[] moods;
+        int[] moodSquareSums;
+        int[] sleepMinutes;
+        long[] sleepSquareSums;
+        int[] products;       // Mood times sleep minutes
+        long bytes;           // Footprint when last measured
+
+        UserStats(int today) {
+            this.lastDay = today;
+        }
+
+        void addRecord(ActivityRecord record) {
+            add(record.getDate(), ((Number) record.getValue(0)).intValue(), ((Number) record.getValue(1)).doubleValue());
+        }
+
+        /**
+         * Adds an entry: a constant-time Welford step, and, if its day is within the window, the prefix
+         * sums from its day on, which is usually only the last one.
+         */
+        void add(LocalDate date, int mood, double sleep) {
+            count++;
+            double moodDelta = mood - meanMood;
+            double sleepDelta = sleep - meanSleep;
+            meanMood += moodDelta / count;
+            meanSleep += sleepDelta / count;
+            moodSquares += moodDelta * (mood - meanMood);
+            sleepSquares += sleepDelta * (sleep - meanSleep);
+            coMoments += moodDelta * (sleep - meanSleep);
+
+            if (date == null) {
+                return;
+            }
+            int day = (int) date.toEpochDay();
+            if (day > lastDay) {
+                advanceTo(day);
+            }
+            int slot = SLOTS - 1 - (lastDay - day);
+            if (slot < 0) {
+                return; // Older than the window
+            }
+            if (counts == null) {
+                allocate();
+            }
+            int minutes = (int) Math.round(sleep * 60);
+            for (int i = slot; i < SLOTS; i++) {
+                counts[i]++;
+                moods[i] += mood;
+                moodSquareSums[i] += mood * mood;
+                sleepMinutes[i] += minutes;
+                sleepSquareSums[i] += (long) minutes * minutes;
+                products[i] += mood * minutes;
+            }
+        }
+
+        /**
+         * Moves the newest slot to a later day: the oldest days drop out, their sums are subtracted from the
+         * remaining prefixes so they stay small, and the new days start with the prefix of the last one.
+         * return true if the footprint changed.
+         */
+        boolean advanceTo(int day) {
+            int shift = day - lastDay;
+            if (shift <= 0) {
+                return false;
+            }
+            lastDay = day;
+            if (counts == null) {
+                return false;
+            }
+            if (shift >= SLOTS || counts[SLOTS - 1] == counts[shift - 1]) { // Nothing left in the window
+                counts = null;
+                moods = null;
+                moodSquareSums = null;
+                sleepMinutes = null;
+                sleepSquareSums = null;
+                products = null;
+                return true;
+            }
+            shift(counts, shift);
+            shift(moods, shift);
+            shift(moodSquareSums, shift);
+            shift(sleepMinutes, shift);
+            shift(products, shift);
+            shift(sleepSquareSums, shift);
+            return false;
+        }
+
+        /**
+         * Moves the prefixes shift slots towards the oldest, rebased on the last day that drops out;
+         * the new days repeat the last prefix.
+         */
+        private static void shift(int[] prefix, int shift) {
+            int base = prefix[shift - 1];
+            int last = prefix[SLOTS - 1];
+            for (int i = 0; i < SLOTS; i++) {
+                prefix[i] = (i + shift < SLOTS ? prefix[i + shift] : last) - base;
+            }
+        }
+
+        private static void shift(long[] prefix, int shift) {
+            long base = prefix[shift - 1];
+            long last = prefix[SLOTS - 1];
+            for (int i = 0; i < SLOTS; i++) {
+                prefix[i] = (i + shift < SLOTS ? prefix[i + shift] : last) - base;
+            }
+        }
+
+        MoodSleepSummary allTime() {
+            return new MoodSleepSummary(0, count, count == 0 ? Double.NaN : meanMood, count == 0 ? Double.NaN : meanSleep,
+                    count < 2 ? Double.NaN : moodSquares / (count - 1), count < 2 ? Double.NaN : sleepSquares / (count - 1),
+                    count < 2 ? Double.NaN : coMoments / (count - 1));
+        }
+
+        /**
+         * Returns the statistics of the last days from two prefixes. The sums are exact integers, so the
+         * variances are computed from them without the cancellation floating-point sums would suffer.
+         */
+        MoodSleepSummary window(int days) {
+            if (counts == null) {
+                return new MoodSleepSummary(days, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+            }
+            int last = SLOTS - 1;
+            int first = last - days;
+            long n = counts[last] - counts[first];
+            long mood = moods[last] - moods[first];
+            long moodSquare = moodSquareSums[last] - moodSquareSums[first];
+            long sleep = sleepMinutes[last] - sleepMinutes[first];
+            long sleepSquare = sleepSquareSums[last] - sleepSquareSums[first];
+            long product = products[last] - products[first];
+            if (n == 0) {
+                return new MoodSleepSummary(days, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+            }
+            double pairs = (double) n * (n - 1);
+            return new MoodSleepSummary(days, n, (double) mood / n, sleep / 60.0 / n,
+                    n < 2 ? Double.NaN : (n * moodSquare - mood * mood) / pairs,
+                    n < 2 ? Double.NaN : (n * sleepSquare - sleep * sleep) / pairs / 3600,
+                    n < 2 ? Double.NaN : (n * product - mood * sleep) / pairs / 60);
+        }
+
+        private void allocate() {
+            counts = new int[SLOTS];
+            moods = new int[SLOTS];
+            moodSquareSums = new int[SLOTS];
+            sleepMinutes = new int[SLOTS];
+            sleepSquareSums = new long[SLOTS];
+            products = new int[SLOTS];
+        }
+
+        long footprintBytes() {
+            return BASE_BYTES + (counts == null ? 0 : WINDOW_BYTES);
+        }
+    }
+
+    /**
+     * Applies saved mental health changes to the statistics of loaded users.
+     */
+    private static final class StatsUpdater implements ActivityListener {
+
+        @Override
+        public void activityInserted(FitnessActivity activity) {
+            if (activity.getType() != ActivityType.MENTAL_HEALTH) {
+                return;
+            }
+            Object[] values = activity.getValues();
+            synchronized (MoodSleepStats.class) {
+                UserStats entry = changed(activity.getUser().getId());
+                if (entry != null) {
+                    boolean allocated = entry.counts != null;
+                    entry.add(activity.getDate(), ((Number) values[0]).intValue(), ((Number) values[1]).doubleValue());
+                    if (allocated != (entry.counts != null)) {
+                        resize(entry);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void activityUpdated(ActivityType type, User user, int activityId, Object[] values) {
+            if (type == ActivityType.MENTAL_HEALTH) {
+                invalidate(user.getId());
+            }
+        }
+
+        @Override
+        public void activityDeleted(ActivityType type, User user, int activityId) {
+            if (type == ActivityType.MENTAL_HEALTH) {
+                invalidate(user.getId());
+            }
+        }
+
+        @Override
+        public void userReset(User user) {
+            invalidate(user.getId());
+        }
+    }
+}
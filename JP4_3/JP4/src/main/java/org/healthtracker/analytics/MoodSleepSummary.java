@@ -0,0 +1,82 @@
+package org.healthtracker.analytics;
+
+/**
+ * Statistics of the mood and sleep of one user's mental health entries, over all time or the last days.
+ * Variances and the covariance are sample statistics (divided by count - 1); anything that needs more
+ * entries than there are is NaN.
+ */
+public class MoodSleepSummary {
+    private final int days;              // Length of the window in days, 0 for all time
+    private final long count;            // Number of entries
+    private final double meanMood;
+    private final double meanSleep;      // Hours
+    private final double moodVariance;
+    private final double sleepVariance;  // Hours squared
+    private final double covariance;     // Mood times hours
+
+    public MoodSleepSummary(int days, long count, double meanMood, double meanSleep, double moodVariance,
+                            double sleepVariance, double covariance) {
+        this.days = days;
+        this.count = count;
+        this.meanMood = meanMood;
+        this.meanSleep = meanSleep;
+        this.moodVariance = moodVariance;
+        this.sleepVariance = sleepVariance;
+        this.covariance = covariance;
+    }
+
+    /**
+     * Returns the number of days ending today the statistics cover, or 0 if they cover all entries.
+     */
+    public int getDays() {
+        return days;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMood() {
+        return meanMood;
+    }
+
+    public double getMeanSleep() {
+        return meanSleep;
+    }
+
+    public double getMoodVariance() {
+        return moodVariance;
+    }
+
+    public double getSleepVariance() {
+        return sleepVariance;
+    }
+
+    public double getMoodDeviation() {
+        return Math.sqrt(moodVariance);
+    }
+
+    public double getSleepDeviation() {
+        return Math.sqrt(sleepVariance);
+    }
+
+    public double getCovariance() {
+        return covariance;
+    }
+
+    /**
+     * Returns the Pearson correlation of mood and sleep, from -1 to 1, or NaN if there are fewer than two
+     * entries or either of them never varies.
+     */
+    public double getCorrelation() {
+        double denominator = Math.sqrt(moodVariance * sleepVariance);
+        return denominator > 0 ? Math.max(-1, Math.min(1, covariance / denominator)) : Double.NaN;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d entries, mood %.2f (sd %.2f), sleep %.2f h (sd %.2f), correlation %.3f",
+                days == 0 ? "All time" : "Last " + days + " days", count, meanMood, getMoodDeviation(), meanSleep,
+                getSleepDeviation(), getCorrelation());
+    }
+}
@@ -0,0 +1,348 @@
+package org.healthtracker.cache;
+
+import org.healthtracker.db.DailyTotal;
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.jfr.SummaryQueryEvent;
+import org.healthtracker.metrics.Metrics;
+import org.healthtracker.metrics.Timer;
+import org.healthtracker.tracking.ActivityListener;
+import org.healthtracker.tracking.ActivityRecord;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.user.User;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache of the recent activities of the users that logged in, kept as ActivitySeries.
+ * A user's activities of the last days are loaded on login; after that, totals and activity lists
+ * within that window are answered from memory without a database round trip. The cache is kept
+ * current through FitnessActivity listeners: tracked activities are added, updates and deletes are
+ * applied, and a reset empties the user's series. A change the cache cannot apply, e.g. to an
+ * activity whose id it does not know yet, drops the user, who is reloaded on the next read.
+ * Users are evicted least recently used first once the estimated size exceeds the limit.
+ * Settings, overridable with -Dhealthtracker.cache.* system properties.
+ */
+public final class ActivityCache {
+    private static final long MAX_BYTES = Long.getLong("healthtracker.cache.maxBytes", 32L << 20); // 0 disables the cache
+    private static final int WINDOW_DAYS = Integer.getInteger("healthtracker.cache.days", 90);     // Days kept per user
+
+    // Keyed by user id, in access order so the eldest entry is the least recently used user
+    private static final LinkedHashMap<Integer, UserSeries> users = new LinkedHashMap<>(16, 0.75f, true);
+    private static final Set<Integer> loading = new HashSet<>();             // Users being loaded
+    private static final Set<Integer> changedWhileLoading = new HashSet<>(); // Loads that missed a change
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final Timer FIND_DAYS_TIMER = Metrics.timer("summary.findDays"); // Cached or not
+    private static long totalBytes;
+
+    static {
+        FitnessActivity.addListener(new CacheUpdater());
+    }
+
+    private ActivityCache() {
+    }
+
+    /**
+     * Loads a user's activities of the cached window from the activity store, replacing what is cached.
+     * Called in the background after login.
+     * return false if the cache is disabled or a change arrived while loading, in which case nothing is cached.
+     * throws SQLException if the activities cannot be read.
+     */
+    public static boolean load(DatabaseHelper dbHelper, User user) throws SQLException {
+        if (MAX_BYTES <= 0) {
+            return false;
+        }
+        int userId = user.getId();
+        int firstDay = firstDay();
+        synchronized (ActivityCache.class) {
+            loading.add(userId);
+            changedWhileLoading.remove(userId);
+        }
+        UserSeries entry = new UserSeries(firstDay);
+        try {
+            for (ActivityType type : ActivityType.values()) {
+                List<ActivityRecord> records = dbHelper.getActivityStore().find(type, user, LocalDate.ofEpochDay(firstDay), null, 0);
+                ActivitySeries series = entry.series[type.ordinal()];
+                for (ActivityRecord record : records) {
+                    series.add(record.getActivityId(), record.getDate(), record.getValues());
+                }
+            }
+        } finally {
+            synchronized (ActivityCache.class) {
+                loading.remove(userId);
+            }
+        }
+        synchronized (ActivityCache.class) {
+            if (changedWhileLoading.remove(userId)) {
+                return false;
+            }
+            remove(userId);
+            entry.bytes = entry.footprintBytes();
+            users.put(userId, entry);
+            totalBytes += entry.bytes;
+            evict();
+            return true;
+        }
+    }
+
+    /**
+     * Returns the daily totals of one activity type for a user between two days, oldest first, like
+     * ActivityStore.findDays(). Answered from memory when the range lies within the cached window,
+     * loading the user first if needed; otherwise read from the activity store.
+     * from First day to include.
+     * to Last day to include, or null for no upper bound.
+     */
+    public static List<DailyTotal> findDays(DatabaseHelper dbHelper, ActivityType type, User user, LocalDate from,
+                                            LocalDate to) throws SQLException {
+        SummaryQueryEvent event = new SummaryQueryEvent();
+        event.begin();
+        event.query = SummaryQueryEvent.DAILY_TOTALS;
+        event.activityType = type.getTablePrefix();
+        event.userId = user.getId();
+        try {
+            List<DailyTotal> totals = FIND_DAYS_TIMER.time(() -> {
+                ActivitySeries series = cachedSeries(dbHelper, type, user, from);
+                event.cached = series != null;
+                if (series == null) {
+                    return dbHelper.getActivityStore().findDays(type, user, from, to);
+                }
+                synchronized (ActivityCache.class) {
+                    return series.dailyTotals((int) from.toEpochDay(), to == null ? Integer.MAX_VALUE : (int) to.toEpochDay());
+                }
+            });
+            event.rows = totals.size();
+            event.succeeded = true;
+            return totals;
+        } finally {
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns a user's activities of one type between two days, newest first, like ActivityStore.find().
+     * Answered from memory when the range lies within the cached window, otherwise read from the activity store.
+     * limit Maximum number of activities to return, or 0 for no limit.
+     */
+    public static List<ActivityRecord> find(DatabaseHelper dbHelper, ActivityType type, User user, LocalDate from,
+                                            LocalDate to, int limit) throws SQLException {
+        ActivitySeries series = cachedSeries(dbHelper, type, user, from);
+        if (series == null) {
+            return dbHelper.getActivityStore().find(type, user, from, to, limit);
+        }
+        synchronized (ActivityCache.class) {
+            return series.records((int) from.toEpochDay(), to == null ? Integer.MAX_VALUE : (int) to.toEpochDay(), limit);
+        }
+    }
+
+    /**
+     * Returns the estimated heap used by a user's cached activities, or -1 if the user is not cached.
+     */
+    public static synchronized long getFootprintBytes(int userId) {
+        UserSeries entry = users.get(userId);
+        return entry == null ? -1 : entry.bytes;
+    }
+
+    /**
+     * Returns the estimated heap used by all cached activities.
+     */
+    public static synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public static synchronized int getUserCount() {
+        return users.size();
+    }
+
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    public static long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Drops the cached activities of one user, e.g. after a bulk import; they are reloaded on the next read.
+     */
+    public static synchronized void invalidate(int userId) {
+        changed(userId);
+        remove(userId);
+    }
+
+    /**
+     * Drops every cached user.
+     */
+    public static synchronized void clear() {
+        users.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * Returns the cached series for a read starting at a day, loading the user if needed,
+     * or null if the read has to go to the activity store.
+     */
+    private static ActivitySeries cachedSeries(DatabaseHelper dbHelper, ActivityType type, User user, LocalDate from)
+            throws SQLException {
+        int firstDay = firstDay();
+        if (MAX_BYTES <= 0 || from == null || from.toEpochDay() < firstDay) {
+            misses.incrementAndGet();
+            return null;
+        }
+        for (int attempt = 0; attempt < 2; attempt++) {
+            synchronized (ActivityCache.class) {
+                UserSeries entry = users.get(user.getId());
+                if (entry != null) {
+                    if (entry.firstDay < firstDay) {
+                        entry.trimBefore(firstDay); // The window moved on since the user was loaded
+                    }
+                    hits.incrementAndGet();
+                    return entry.series[type.ordinal()];
+                }
+            }
+            if (attempt == 0 && !load(dbHelper, user)) {
+                break;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private static int firstDay() {
+        return (int) LocalDate.now().minusDays(WINDOW_DAYS - 1).toEpochDay();
+    }
+
+    private static void remove(int userId) {
+        UserSeries entry = users.remove(userId);
+        if (entry != null) {
+            totalBytes -= entry.bytes;
+        }
+    }
+
+    /**
+     * Updates the size of a changed entry and evicts users if the cache has grown too large.
+     */
+    private static void resize(UserSeries entry) {
+        long bytes = entry.footprintBytes();
+        totalBytes += bytes - entry.bytes;
+        entry.bytes = bytes;
+        evict();
+    }
+
+    /**
+     * Evicts least recently used users until the cache fits, always keeping the most recently used one.
+     */
+    private static void evict() {
+        Iterator<Map.Entry<Integer, UserSeries>> eldest = users.entrySet().iterator();
+        while (totalBytes > MAX_BYTES && users.size() > 1) {
+            totalBytes -= eldest.next().getValue().bytes;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Marks a user whose activities are being loaded as changed, so the load is discarded.
+     * return The cached entry of the user, or null if the user is not cached.
+     */
+    private static UserSeries changed(int userId) {
+        if (loading.contains(userId)) {
+            changedWhileLoading.add(userId);
+        }
+        return users.get(userId);
+    }
+
+    /**
+     * The cached series of one user, one per activity type.
+     */
+    private static final class UserSeries {
+        final ActivitySeries[] series = new ActivitySeries[ActivityType.values().length];
+        int firstDay;  // Epoch day of the oldest cached day
+        long bytes;    // Footprint when last measured
+
+        UserSeries(int firstDay) {
+            this.firstDay = firstDay;
+            for (ActivityType type : ActivityType.values()) {
+                series[type.ordinal()] = new ActivitySeries(type);
+            }
+        }
+
+        void trimBefore(int day) {
+            for (ActivitySeries typeSeries : series) {
+                typeSeries.trimBefore(day);
+            }
+            firstDay = day;
+        }
+
+        long footprintBytes() {
+            long total = 0;
+            for (ActivitySeries typeSeries : series) {
+                total += typeSeries.footprintBytes();
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Applies saved changes to the cached users.
+     */
+    private static final class CacheUpdater implements ActivityListener {
+
+        @Override
+        public void activityInserted(FitnessActivity activity) {
+            synchronized (ActivityCache.class) {
+                UserSeries entry = changed(activity.getUser().getId());
+                if (entry != null && activity.getDate().toEpochDay() >= entry.firstDay
+                        && entry.series[activity.getType().ordinal()].add(activity.getActivityId(), activity.getDate(),
+                                activity.getValues())) {
+                    resize(entry);
+                }
+            }
+        }
+
+        @Override
+        public void activityUpdated(ActivityType type, User user, int activityId, Object[] values) {
+            synchronized (ActivityCache.class) {
+                UserSeries entry = changed(user.getId());
+                if (entry != null && !entry.series[type.ordinal()].update(activityId, values)) {
+                    remove(user.getId()); // Unknown or older than the window; reloaded on the next read
+                }
+            }
+        }
+
+        @Override
+        public void activityDeleted(ActivityType type, User user, int activityId) {
+            synchronized (ActivityCache.class) {
+                UserSeries entry = changed(user.getId());
+                if (entry != null) {
+                    if (entry.series[type.ordinal()].remove(activityId)) {
+                        resize(entry);
+                    } else {
+                        remove(user.getId());
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void userReset(User user) {
+            synchronized (ActivityCache.class) {
+                UserSeries entry = changed(user.getId());
+                if (entry != null) {
+                    remove(user.getId());
+                    UserSeries empty = new UserSeries(entry.firstDay);
+                    empty.bytes = empty.footprintBytes();
+                    users.put(user.getId(), empty);
+                    totalBytes += empty.bytes;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package org.healthtracker.cache;
+
+import org.healthtracker.db.DailyTotal;
+import org.healthtracker.tracking.ActivityRecord;
+import org.healthtracker.tracking.ActivityType;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The recent activities of one type for one user, stored column by column in primitive arrays.
+ * Rows are kept sorted by day and then activity id, so a range of days is one contiguous slice.
+ * INT columns are held in int arrays and DOUBLE columns in double arrays; text columns are
+ * dictionary encoded, so each row only holds an int code and every distinct text is stored once.
+ * Not thread-safe; ActivityCache synchronizes all access.
+ */
+final class ActivitySeries {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long ARRAY_HEADER_BYTES = 16;   // Object header and length of an array
+    private static final long OBJECT_BYTES = 64;         // The series itself and its small fixed fields
+    private static final long STRING_BYTES = 56;         // A String, its byte array and its dictionary entries
+
+    private final ActivityType type;
+    private final int[] intColumns;      // Index into ints for INT and text columns, -1 otherwise
+    private final int[] doubleColumns;   // Index into doubles for DOUBLE columns, -1 otherwise
+    private int[] activityIds = new int[INITIAL_CAPACITY];
+    private int[] days = new int[INITIAL_CAPACITY];      // Epoch days
+    private final int[][] ints;
+    private final double[][] doubles;
+    private final boolean[] text;        // Whether a column is dictionary encoded
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Integer> codes = new HashMap<>();
+    private long dictionaryChars;
+    private int size;
+
+    ActivitySeries(ActivityType type) {
+        this.type = type;
+        String[] columnTypes = type.getColumnTypes();
+        intColumns = new int[columnTypes.length];
+        doubleColumns = new int[columnTypes.length];
+        text = new boolean[columnTypes.length];
+        int intCount = 0;
+        int doubleCount = 0;
+        for (int i = 0; i < columnTypes.length; i++) {
+            if (columnTypes[i].startsWith("DOUBLE")) {
+                intColumns[i] = -1;
+                doubleColumns[i] = doubleCount++;
+            } else {
+                text[i] = columnTypes[i].startsWith("VARCHAR");
+                intColumns[i] = intCount++;
+                doubleColumns[i] = -1;
+            }
+        }
+        ints = new int[intCount][INITIAL_CAPACITY];
+        doubles = new double[doubleCount][INITIAL_CAPACITY];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds an activity, keeping the rows sorted. An activity already in the series is left as it is, e.g. one
+     * that was committed before the series was loaded but whose insert is reported after.
+     * values The values in the column order of type.getColumns().
+     * return false if the activity was already in the series.
+     */
+    boolean add(int activityId, LocalDate date, Object[] values) {
+        int day = (int) date.toEpochDay();
+        int index = size;
+        while (index > 0 && (days[index - 1] > day || (days[index - 1] == day && activityIds[index - 1] > activityId))) {
+            index--; // New activities are usually the latest, so this rarely moves more than a few rows
+        }
+        if (activityId != 0 && index > 0 && days[index - 1] == day && activityIds[index - 1] == activityId) {
+            return false;
+        }
+        if (size == activityIds.length) {
+            grow();
+        }
+        if (index < size) {
+            shift(index, index + 1, size - index);
+        }
+        activityIds[index] = activityId;
+        days[index] = day;
+        set(index, values);
+        size++;
+        return true;
+    }
+
+    /**
+     * Replaces the values of an activity.
+     * return false if the activity is not in the series.
+     */
+    boolean update(int activityId, Object[] values) {
+        int index = indexOf(activityId);
+        if (index < 0) {
+            return false;
+        }
+        set(index, values);
+        return true;
+    }
+
+    /**
+     * Removes an activity.
+     * return false if the activity is not in the series.
+     */
+    boolean remove(int activityId) {
+        int index = indexOf(activityId);
+        if (index < 0) {
+            return false;
+        }
+        shift(index + 1, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    /**
+     * Drops the activities recorded before a day.
+     */
+    void trimBefore(int firstDay) {
+        int from = lowerBound(firstDay);
+        if (from > 0) {
+            shift(from, 0, size - from);
+            size -= from;
+        }
+    }
+
+    /**
+     * Aggregates the rows between two epoch days into daily totals, oldest first, like ActivityStore.findDays().
+     */
+    List<DailyTotal> dailyTotals(int fromDay, int toDay) {
+        List<DailyTotal> totals = new ArrayList<>();
+        int metric = type.getMetricColumn();
+        int secondary = type.getSecondaryColumn();
+        int i = lowerBound(fromDay);
+        while (i < size && days[i] <= toDay) {
+            int day = days[i];
+            int count = 0;
+            double sum = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double secondarySum = 0;
+            for (; i < size && days[i] == day; i++) {
+                double value = number(metric, i);
+                count++;
+                sum += value;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                if (secondary >= 0) {
+                    secondarySum += number(secondary, i);
+                }
+            }
+            totals.add(new DailyTotal(type, LocalDate.ofEpochDay(day), count, sum, min, max, secondarySum));
+        }
+        return totals;
+    }
+
+    /**
+     * Returns the activities between two epoch days, newest first.
+     * limit Maximum number of activities to return, or 0 for no limit.
+     */
+    List<ActivityRecord> records(int fromDay, int toDay, int limit) {
+        List<ActivityRecord> records = new ArrayList<>();
+        int columnCount = text.length;
+        for (int i = lowerBound(toDay + 1) - 1; i >= 0 && days[i] >= fromDay; i--) {
+            if (limit > 0 && records.size() == limit) {
+                break;
+            }
+            Object[] values = new Object[columnCount];
+            for (int column = 0; column < columnCount; column++) {
+                values[column] = value(column, i);
+            }
+            records.add(new ActivityRecord(type, activityIds[i], LocalDate.ofEpochDay(days[i]), values));
+        }
+        return records;
+    }
+
+    /**
+     * Estimates the heap used by the series: its arrays at their current capacity and the dictionary.
+     */
+    long footprintBytes() {
+        long capacity = activityIds.length;
+        long bytes = OBJECT_BYTES + 2 * (ARRAY_HEADER_BYTES + 4 * capacity);
+        bytes += ints.length * (ARRAY_HEADER_BYTES + 4 * capacity);
+        bytes += doubles.length * (ARRAY_HEADER_BYTES + 8 * capacity);
+        bytes += dictionary.size() * STRING_BYTES + dictionaryChars;
+        return bytes;
+    }
+
+    private void set(int index, Object[] values) {
+        for (int column = 0; column < values.length; column++) {
+            Object value = values[column];
+            if (doubleColumns[column] >= 0) {
+                doubles[doubleColumns[column]][index] = value == null ? 0 : ((Number) value).doubleValue();
+            } else if (text[column]) {
+                ints[intColumns[column]][index] = encode(value == null ? null : value.toString());
+            } else {
+                ints[intColumns[column]][index] = value == null ? 0 : ((Number) value).intValue();
+            }
+        }
+    }
+
+    private Object value(int column, int index) {
+        if (doubleColumns[column] >= 0) {
+            return doubles[doubleColumns[column]][index];
+        }
+        int code = ints[intColumns[column]][index];
+        if (text[column]) {
+            return code < 0 ? null : dictionary.get(code);
+        }
+        return code;
+    }
+
+    private double number(int column, int index) {
+        return doubleColumns[column] >= 0 ? doubles[doubleColumns[column]][index] : ints[intColumns[column]][index];
+    }
+
+    /**
+     * Returns the dictionary code of a text, adding it if it is new. Null is stored as -1.
+     */
+    private int encode(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(value);
+            codes.put(value, code);
+            dictionaryChars += value.length();
+        }
+        return code;
+    }
+
+    private int indexOf(int activityId) {
+        if (activityId == 0) {
+            return -1; // Not assigned yet, so it cannot be matched
+        }
+        for (int i = size - 1; i >= 0; i--) {
+            if (activityIds[i] == activityId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first row recorded on or after an epoch day.
+     */
+    private int lowerBound(int day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void shift(int from, int to, int length) {
+        System.arraycopy(activityIds, from, activityIds, to, length);
+        System.arraycopy(days, from, days, to, length);
+        for (int[] column : ints) {
+            System.arraycopy(column, from, column, to, length);
+        }
+        for (double[] column : doubles) {
+            System.arraycopy(column, from, column, to, length);
+        }
+    }
+
+    private void grow() {
+        int capacity = activityIds.length * 2;
+        activityIds = Arrays.copyOf(activityIds, capacity);
+        days = Arrays.copyOf(days, capacity);
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = Arrays.copyOf(ints[i], capacity);
+        }
+        for (int i = 0; i < doubles.length; i++) {
+            doubles[i] = Arrays.copyOf(doubles[i], capacity);
+        }
+    }
+}
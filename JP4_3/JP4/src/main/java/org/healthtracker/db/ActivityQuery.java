@@ -0,0 +1,205 @@
+package org.healthtracker.db;
+
+import org.healthtracker.tracking.ActivityRecord;
+import org.healthtracker.tracking.ActivityTable;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.user.User;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Date-range queries over a user's activity history.
+ * Queries are answered with an index range scan on date (per-user tables) or on
+ * (user_id, date) (consolidated tables), so a "last 7 days" query only reads the rows of
+ * those days however long the history is. With monthly partitioning only the partitions
+ * of the requested months are touched.
+ */
+public class ActivityQuery {
+    // Per-user tables created before the date index existed get it added the first time they are queried
+    private static final Set<String> indexedTables = ConcurrentHashMap.newKeySet();
+    private static final int STREAM_FETCH_SIZE = 1_000; // Rows per round trip of forEach() on drivers without streaming
+
+    private final DatabaseHelper dbHelper;
+
+    public ActivityQuery(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Fetches a user's activities of one type recorded between two days, newest first.
+     * type The activity type.
+     * user The user whose activities are fetched.
+     * from First day to include, or null for no lower bound.
+     * to Last day to include, or null for no upper bound.
+     * limit Maximum number of activities to return, or 0 for no limit.
+     * return The matching activities ordered by date and activity id, newest first.
+     * throws SQLException If there is an error accessing the database.
+     */
+    public List<ActivityRecord> find(ActivityType type, User user, LocalDate from, LocalDate to, int limit)
+            throws SQLException {
+        ActivityTable table = ActivityTable.of(type, user);
+        List<ActivityRecord> records = new ArrayList<>();
+        try (Connection conn = dbHelper.getConnection()) {
+            ensureDateIndex(conn, table);
+            try (PreparedStatement pstmt = conn.prepareStatement(rangeSql(table, from, to, limit))) {
+                bindRange(pstmt, table, from, to, limit);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        records.add(ActivityRecord.read(type, rs));
+                    }
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Fetches a user's activities of one type from the last given number of days, including today.
+     */
+    public List<ActivityRecord> findLastDays(ActivityType type, User user, int days) throws SQLException {
+        LocalDate today = LocalDate.now();
+        return find(type, user, today.minusDays(days - 1L), today, 0);
+    }
+
+    /**
+     * Fetches the next page of a user's activities of one type in activity id order, using keyset pagination:
+     * only rows with an activity id greater than the last one already seen are read, so every page costs the
+     * same however deep the user has scrolled.
+     * afterActivityId The last activity id of the previous page, or 0 for the first page.
+     * pageSize Maximum number of activities to return; also used as the JDBC fetch size.
+     * statementListener Receives the running statement so the caller can cancel it, or null.
+     * return The page, in ascending activity id order. Fewer than pageSize rows means there are no more pages.
+     */
+    public List<ActivityRecord> findPage(ActivityType type, User user, int afterActivityId, int pageSize,
+                                         Consumer<Statement> statementListener) throws SQLException {
+        ActivityTable table = ActivityTable.of(type, user);
+        List<ActivityRecord> records = new ArrayList<>(pageSize);
+        try (Connection conn = dbHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(table.pageSql())) {
+            pstmt.setInt(1, afterActivityId);
+            int index = table.bindUser(pstmt, 2);
+            pstmt.setInt(index, pageSize);
+            pstmt.setFetchSize(pageSize);
+            if (statementListener != null) {
+                statementListener.accept(pstmt);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    records.add(ActivityRecord.read(type, rs));
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Reads all of a user's activities of one type in activity id order and passes them to a handler as they arrive.
+     * With MySQL the rows are streamed from the server one at a time (fetch size Integer.MIN_VALUE) instead of
+     * being buffered in the driver, so memory use does not grow with the history. Other drivers fetch
+     * STREAM_FETCH_SIZE rows per round trip.
+     */
+    public void forEach(ActivityType type, User user, ActivityStore.RecordHandler handler) throws SQLException, IOException {
+        ActivityTable table = ActivityTable.of(type, user);
+        try (Connection conn = dbHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(table.selectAllSql())) {
+            table.bindUser(pstmt, 1);
+            boolean mySql = "MySQL".equalsIgnoreCase(conn.getMetaData().getDatabaseProductName());
+            pstmt.setFetchSize(mySql ? Integer.MIN_VALUE : STREAM_FETCH_SIZE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    handler.accept(ActivityRecord.read(type, rs));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the partitions MySQL reads for a range query, as reported by EXPLAIN.
+     * Used to check that partition pruning works; returns null for tables that are not partitioned.
+     */
+    public String explainPartitions(ActivityType type, User user, LocalDate from, LocalDate to) throws SQLException {
+        ActivityTable table = ActivityTable.of(type, user);
+        try (Connection conn = dbHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("EXPLAIN " + rangeSql(table, from, to, 0))) {
+            bindRange(pstmt, table, from, to, 0);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getString("partitions") : null;
+            }
+        }
+    }
+
+    /**
+     * Builds the range query. Parameters: bindRange().
+     */
+    static String rangeSql(ActivityTable table, LocalDate from, LocalDate to, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(table.selectColumns())
+                .append(" FROM ").append(table.getName());
+        String keyword = " WHERE ";
+        if (table.isShared()) {
+            sql.append(table.userPredicate(keyword));
+            keyword = " AND ";
+        }
+        if (from != null) {
+            sql.append(keyword).append("date >= ?");
+            keyword = " AND ";
+        }
+        if (to != null) {
+            sql.append(keyword).append("date <= ?");
+        }
+        sql.append(" ORDER BY date DESC, activity_id DESC");
+        if (limit > 0) {
+            sql.append(" LIMIT ?");
+        }
+        return sql.toString();
+    }
+
+    static void bindRange(PreparedStatement pstmt, ActivityTable table, LocalDate from, LocalDate to, int limit)
+            throws SQLException {
+        int index = table.bindUser(pstmt, 1);
+        if (from != null) {
+            pstmt.setDate(index++, java.sql.Date.valueOf(from));
+        }
+        if (to != null) {
+            pstmt.setDate(index++, java.sql.Date.valueOf(to));
+        }
+        if (limit > 0) {
+            pstmt.setInt(index, limit);
+        }
+    }
+
+    /**
+     * Adds the date index to a per-user table that was created without it.
+     */
+    private static void ensureDateIndex(Connection conn, ActivityTable table) throws SQLException {
+        if (table.isShared() || indexedTables.contains(table.getName())) {
+            return;
+        }
+        DatabaseMetaData metaData = conn.getMetaData();
+        boolean indexed = false;
+        try (ResultSet rs = metaData.getIndexInfo(conn.getCatalog(), null, table.getName(), false, true)) {
+            while (rs.next()) {
+                if ("date".equalsIgnoreCase(rs.getString("COLUMN_NAME")) && rs.getShort("ORDINAL_POSITION") == 1) {
+                    indexed = true;
+                }
+            }
+        }
+        if (!indexed) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE " + table.getName() + " ADD INDEX (date)");
+            }
+        }
+        indexedTables.add(table.getName());
+    }
+}
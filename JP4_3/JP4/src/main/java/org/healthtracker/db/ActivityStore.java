@@ -0,0 +1,107 @@
+package org.healthtracker.db;
+
+import org.healthtracker.tracking.ActivityRecord;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.user.User;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Storage for tracked activities and their daily totals.
+ * The backend is chosen at startup with -Dhealthtracker.store=mysql|local: MySqlActivityStore keeps
+ * activities in the MySQL database, LocalActivityStore in an append-only file on the local disk.
+ * DatabaseHelper.getActivityStore() returns the store in use. Errors of every backend are reported
+ * as SQLExceptions so callers handle them the same way.
+ */
+public interface ActivityStore {
+
+    /**
+     * Saves new activities, of any type and user, together with their daily totals.
+     * Either all of the activities are saved or, if an exception is thrown, none of them.
+     * throws SQLException if the activities cannot be saved.
+     */
+    void insert(List<? extends FitnessActivity> activities) throws SQLException;
+
+    /**
+     * Saves activities replicated from a stream, such as the WriteAheadLog, and records the position of
+     * the stream they end at, in one atomic step. After a crash the replicator resumes from
+     * getReplicatedPosition(), so an entry is never saved twice.
+     * stream Name of the replicated stream.
+     * position Position of the last entry in the batch.
+     */
+    void insertReplicated(List<? extends FitnessActivity> activities, String stream, long position) throws SQLException;
+
+    /**
+     * Returns the last position recorded by insertReplicated() for a stream, or 0 if there is none.
+     */
+    long getReplicatedPosition(String stream) throws SQLException;
+
+    /**
+     * Replaces the values of a saved activity. Does nothing if the activity does not exist.
+     * values The new values in the column order of type.getColumns().
+     */
+    void update(ActivityType type, User user, int activityId, Object[] values) throws SQLException;
+
+    /**
+     * Deletes a saved activity. Does nothing if the activity does not exist.
+     */
+    void delete(ActivityType type, User user, int activityId) throws SQLException;
+
+    /**
+     * Deletes every activity and daily total of a user, reporting progress along the way.
+     * Backends may delete in several steps; if an exception is thrown part of the data may already be gone,
+     * and calling deleteAll() again finishes the job.
+     */
+    void deleteAll(User user, ResetProgress progress) throws SQLException;
+
+    /**
+     * Fetches a user's activities of one type recorded between two days, newest first.
+     * from First day to include, or null for no lower bound.
+     * to Last day to include, or null for no upper bound.
+     * limit Maximum number of activities to return, or 0 for no limit.
+     */
+    List<ActivityRecord> find(ActivityType type, User user, LocalDate from, LocalDate to, int limit) throws SQLException;
+
+    /**
+     * Fetches the page of a user's activities of one type that follows the given activity id, in activity id order.
+     * afterActivityId The last activity id of the previous page, or 0 for the first page.
+     * statementListener Receives the running statement so the caller can cancel it, or null.
+     * Backends that do not use statements never call it.
+     * return The page. Fewer than pageSize activities means there are no more pages.
+     */
+    List<ActivityRecord> findPage(ActivityType type, User user, int afterActivityId, int pageSize,
+                                  Consumer<Statement> statementListener) throws SQLException;
+
+    /**
+     * Passes every activity of one type of a user to a handler in activity id order, without collecting them
+     * in a list. The MySQL store streams the rows from a server-side cursor, so a history of any length is
+     * read in constant memory; the connection is held until the handler has seen the last row.
+     * throws IOException if the handler fails; no further rows are read.
+     */
+    void forEach(ActivityType type, User user, RecordHandler handler) throws SQLException, IOException;
+
+    /**
+     * Returns the daily totals of one activity type for a user between two days, oldest first.
+     * Days without activities are not included.
+     */
+    List<DailyTotal> findDays(ActivityType type, User user, LocalDate from, LocalDate to) throws SQLException;
+
+    /**
+     * Releases the resources held by the store.
+     */
+    void close();
+
+    /**
+     * Receives the activities read by forEach(), e.g. to write them to a file.
+     */
+    @FunctionalInterface
+    interface RecordHandler {
+        void accept(ActivityRecord record) throws IOException;
+    }
+}
@@ -0,0 +1,509 @@
+package org.healthtracker.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small bounded JDBC connection pool.
+ * Connections handed out by borrow() are proxies: calling close() on them returns the
+ * physical connection to the pool instead of closing it, so existing try-with-resources
+ * code keeps working unchanged.
+ * Each physical connection also keeps its most recently used prepared statements, keyed by SQL text.
+ * prepareStatement() hands out a cached statement when one is free, and closing it returns it to the
+ * cache, so repeated statements are only parsed once per connection.
+ */
+public class ConnectionPool {
+    private final String url;      // JDBC URL of the database
+    private final String user;     // Database username
+    private final String password; // Database password
+
+    private final int minSize;               // Connections kept open even when idle
+    private final int maxSize;               // Upper bound on open connections
+    private final long borrowTimeoutMillis;  // How long borrow() waits for a free connection
+    private final long idleTimeoutMillis;    // Idle connections above minSize are closed after this
+    private final long leakThresholdMillis;  // Borrowed longer than this is reported as a leak
+    private final boolean leakStackTraces;   // Capture the borrower's stack trace for leak reports, costly per borrow
+    private final int validationTimeoutSeconds = 2; // Timeout passed to Connection.isValid
+    private final int statementCacheSize;    // Prepared statements kept per connection, 0 disables caching
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Map<PooledConnection, Long> borrowed = new ConcurrentHashMap<>();
+    private final Semaphore permits; // One permit per connection that may be open
+    private final ScheduledExecutorService housekeeper;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    // Statistics
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                          long borrowTimeoutMillis, long idleTimeoutMillis, long leakThresholdMillis,
+                          boolean leakStackTraces, int statementCacheSize) {
+        if (minSize < 0 || maxSize <= 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.leakStackTraces = leakStackTraces;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "healthtracker-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(idleTimeoutMillis, leakThresholdMillis) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if none is idle and the pool is not full.
+     * Idle connections are validated before being handed out.
+     * return A pooled connection; close() returns it to the pool.
+     * throws SQLTimeoutException if no connection becomes available within the borrow timeout.
+     * throws SQLException if a new connection cannot be opened.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed.get()) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLTimeoutException("Timed out after " + borrowTimeoutMillis
+                        + " ms waiting for a database connection (" + getStats() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        totalWaitNanos.addAndGet(System.nanoTime() - start);
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    return lend(pooled);
+                }
+                validationFailureCount.incrementAndGet();
+                destroy(pooled);
+            }
+            return lend(create());
+        } catch (SQLException | RuntimeException e) {
+            permits.release(); // Nothing was lent, give the slot back
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a snapshot of the pool statistics.
+     */
+    public PoolStats getStats() {
+        return new PoolStats(totalConnections.get(), idle.size(), borrowed.size(), maxSize,
+                permits.getQueueLength(), borrowCount.get(), createdCount.get(), destroyedCount.get(),
+                timeoutCount.get(), validationFailureCount.get(), leakCount.get(),
+                borrowCount.get() == 0 ? 0 : totalWaitNanos.get() / borrowCount.get() / 1_000,
+                statementHits.get(), statementMisses.get());
+    }
+
+    /**
+     * Closes all idle connections and stops the housekeeping thread.
+     * Connections that are still borrowed are closed when they are returned.
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            housekeeper.shutdownNow();
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                destroy(pooled);
+            }
+        }
+    }
+
+    private Connection lend(PooledConnection pooled) {
+        pooled.borrowedAt = System.currentTimeMillis();
+        pooled.borrowerThread = Thread.currentThread().getName();
+        pooled.borrower = leakStackTraces && leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+        pooled.leakReported = false;
+        borrowed.put(pooled, pooled.borrowedAt);
+        borrowCount.incrementAndGet();
+        return pooled.newHandle();
+    }
+
+    private void giveBack(PooledConnection pooled) {
+        if (borrowed.remove(pooled) == null) {
+            return; // Already returned
+        }
+        try {
+            if (closed.get() || pooled.physical.isClosed()) {
+                destroy(pooled);
+                return;
+            }
+            pooled.releaseStatements();
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback(); // Never hand out a connection with an open transaction
+                pooled.physical.setAutoCommit(true);
+            }
+            pooled.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(pooled); // LIFO keeps the hottest connections in use
+        } catch (SQLException e) {
+            destroy(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private PooledConnection create() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, password);
+        totalConnections.incrementAndGet();
+        createdCount.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        try {
+            return !pooled.physical.isClosed() && pooled.physical.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void destroy(PooledConnection pooled) {
+        pooled.statements.clear(); // Closed together with the physical connection
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing pooled connection: " + e.getMessage());
+        }
+        totalConnections.decrementAndGet();
+        destroyedCount.incrementAndGet();
+    }
+
+    /**
+     * Evicts idle connections above the minimum size, tops the pool back up to the
+     * minimum size and reports connections that have been borrowed for too long.
+     */
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idle.descendingIterator(); // Oldest idle connections first
+        while (it.hasNext() && totalConnections.get() > minSize) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.lastUsed > idleTimeoutMillis && idle.remove(pooled)) {
+                destroy(pooled);
+            }
+        }
+
+        while (!closed.get() && totalConnections.get() < minSize && permits.tryAcquire()) {
+            try {
+                PooledConnection pooled = create();
+                pooled.lastUsed = now;
+                idle.offerLast(pooled);
+            } catch (SQLException e) {
+                System.err.println("Error pre-filling connection pool: " + e.getMessage());
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+
+        if (leakThresholdMillis > 0) {
+            for (Map.Entry<PooledConnection, Long> entry : borrowed.entrySet()) {
+                PooledConnection pooled = entry.getKey();
+                if (!pooled.leakReported && now - entry.getValue() > leakThresholdMillis) {
+                    pooled.leakReported = true;
+                    leakCount.incrementAndGet();
+                    System.err.println("Possible connection leak: connection borrowed for "
+                            + (now - entry.getValue()) + " ms by thread " + pooled.borrowerThread);
+                    if (pooled.borrower != null) {
+                        pooled.borrower.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool.
+     */
+    private final class PooledConnection {
+        final Connection physical;
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile long borrowedAt;
+        volatile String borrowerThread;   // Name of the borrowing thread, used for leak reports
+        volatile Throwable borrower;      // Stack trace of the borrower if leakStackTraces is set
+        volatile boolean leakReported;
+
+        // Only used by the current borrower, in least recently used order
+        final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        /**
+         * Returns a free cached statement for the SQL text, preparing and caching one if there is none.
+         * Statements that are already in use, or were cached with a different autoGeneratedKeys flag,
+         * are prepared without caching.
+         */
+        PreparedStatement prepare(Connection handle, String sql, int autoGeneratedKeys) throws SQLException {
+            CachedStatement cached = statements.get(sql);
+            if (cached != null && !cached.inUse && cached.autoGeneratedKeys == autoGeneratedKeys) {
+                statementHits.incrementAndGet();
+                return cached.lend(handle);
+            }
+            statementMisses.incrementAndGet();
+            PreparedStatement statement = physical.prepareStatement(sql, autoGeneratedKeys);
+            if (cached != null) {
+                return statement;
+            }
+            cached = new CachedStatement(this, sql, statement, autoGeneratedKeys);
+            statements.put(sql, cached);
+            if (statements.size() > statementCacheSize) {
+                Iterator<CachedStatement> eldest = statements.values().iterator();
+                while (statements.size() > statementCacheSize && eldest.hasNext()) {
+                    CachedStatement candidate = eldest.next();
+                    if (!candidate.inUse) {
+                        eldest.remove();
+                        candidate.close();
+                    }
+                }
+            }
+            return cached.lend(handle);
+        }
+
+        /**
+         * Closes the statements a borrower left open instead of returning them to the cache.
+         */
+        void releaseStatements() {
+            Iterator<CachedStatement> it = statements.values().iterator();
+            while (it.hasNext()) {
+                CachedStatement cached = it.next();
+                if (cached.inUse) {
+                    it.remove();
+                    cached.close();
+                }
+            }
+        }
+
+        /**
+         * Creates the proxy handed to callers for a single borrow.
+         */
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Handle(this));
+        }
+    }
+
+    /**
+     * Proxy handler that intercepts close() and refuses use after the connection has been returned.
+     */
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final AtomicBoolean returned = new AtomicBoolean(false);
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        giveBack(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned.get() || pooled.physical.isClosed();
+                case "prepareStatement":
+                    if (statementCacheSize > 0 && !returned.get()
+                            && (args.length == 1 || (args.length == 2 && args[1] instanceof Integer))) {
+                        int autoGeneratedKeys = args.length == 1 ? Statement.NO_GENERATED_KEYS : (Integer) args[1];
+                        return pooled.prepare((Connection) proxy, (String) args[0], autoGeneratedKeys);
+                    }
+                    break;
+                case "unwrap":
+                    if (args != null && args[0] == Connection.class) {
+                        return proxy;
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooled.physical + "]";
+                default:
+                    break;
+            }
+            if (returned.get()) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * A prepared statement kept open in the cache of one physical connection.
+     */
+    private static final class CachedStatement {
+        final PooledConnection owner;
+        final String sql;
+        final PreparedStatement physical;
+        final int autoGeneratedKeys;
+        boolean inUse;    // Lent to a borrower
+        boolean reusable; // false once the borrower changed settings that clearParameters() does not reset
+        int defaultFetchSize = -1; // Fetch size to restore on return, -1 if the borrower did not change it
+
+        CachedStatement(PooledConnection owner, String sql, PreparedStatement physical, int autoGeneratedKeys) {
+            this.owner = owner;
+            this.sql = sql;
+            this.physical = physical;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+        }
+
+        PreparedStatement lend(Connection handle) {
+            inUse = true;
+            reusable = true;
+            return (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new StatementHandle(this, handle));
+        }
+
+        /**
+         * Makes the statement available again, or closes it if it cannot be reused.
+         */
+        void giveBack() {
+            inUse = false;
+            try {
+                if (reusable) {
+                    physical.clearParameters();
+                    physical.clearBatch();
+                    if (defaultFetchSize >= 0) {
+                        physical.setFetchSize(defaultFetchSize);
+                        defaultFetchSize = -1;
+                    }
+                    return;
+                }
+            } catch (SQLException e) {
+                // Fall through and discard it
+            }
+            owner.statements.remove(sql, this);
+            close();
+        }
+
+        void close() {
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing cached statement: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Proxy handler for one use of a cached statement: close() returns the statement to the cache,
+     * and calls after that, such as a late cancel(), no longer reach it.
+     */
+    private static final class StatementHandle implements InvocationHandler {
+        private final CachedStatement cached;
+        private final Connection connection; // The connection handle the statement was prepared on
+        private volatile boolean closed;     // cancel() may be called from another thread
+
+        StatementHandle(CachedStatement cached, Connection connection) {
+            this.cached = cached;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        cached.giveBack();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "cancel":
+                    if (closed) {
+                        return null; // The statement may already be running for another caller
+                    }
+                    break;
+                case "getConnection":
+                    return connection;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + cached.sql + "]";
+                case "setFetchSize":
+                    if (!closed && cached.defaultFetchSize < 0) { // Restored by giveBack(), so the statement stays cached
+                        cached.defaultFetchSize = cached.physical.getFetchSize();
+                    }
+                    break;
+                case "setMaxRows":
+                case "setLargeMaxRows":
+                case "setQueryTimeout":
+                case "setMaxFieldSize":
+                case "setFetchDirection":
+                case "setEscapeProcessing":
+                case "setCursorName":
+                case "setPoolable":
+                case "closeOnCompletion":
+                    cached.reusable = false;
+                    break;
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement has already been closed");
+            }
+            try {
+                return method.invoke(cached.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package org.healthtracker.db;
+
+import org.healthtracker.tracking.ActivityTable;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.user.User;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pre-aggregated daily totals per user, activity type and day, kept in the daily_rollup table.
+ * The rollup row of a day is updated in the same transaction as every insert, and recomputed from the
+ * raw rows of that day when an activity is updated or deleted, so totals over any range of days only
+ * read one row per day.
+ * Activities stored before rollups existed are added the first time a user's totals are read: the user's
+ * rollups are rebuilt from the raw rows once, and the user is recorded in the rollup_backfill table in the
+ * same transaction.
+ */
+public final class DailyRollups {
+    public static final String TABLE = "daily_rollup";
+    private static final String BACKFILL_TABLE = "rollup_backfill"; // Users whose rollups cover their whole history
+
+    private static final String CREATE_SQL = "CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+            + "user_id INT NOT NULL, activity_type VARCHAR(32) NOT NULL, date DATE NOT NULL, "
+            + "entry_count INT NOT NULL, value_sum DOUBLE NOT NULL, value_min DOUBLE NOT NULL, "
+            + "value_max DOUBLE NOT NULL, secondary_sum DOUBLE NOT NULL, "
+            + "PRIMARY KEY (user_id, activity_type, date))";
+    private static final String CREATE_BACKFILL_SQL = "CREATE TABLE IF NOT EXISTS " + BACKFILL_TABLE
+            + " (user_id INT NOT NULL PRIMARY KEY, backfilled_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)";
+
+    private static final String UPSERT_SQL = "INSERT INTO " + TABLE
+            + " (user_id, activity_type, date, entry_count, value_sum, value_min, value_max, secondary_sum)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE"
+            + " entry_count = entry_count + VALUES(entry_count), value_sum = value_sum + VALUES(value_sum),"
+            + " value_min = LEAST(value_min, VALUES(value_min)), value_max = GREATEST(value_max, VALUES(value_max)),"
+            + " secondary_sum = secondary_sum + VALUES(secondary_sum)";
+
+    private static final Set<Integer> backfilledUsers = ConcurrentHashMap.newKeySet(); // Known to be in BACKFILL_TABLE
+
+    private DailyRollups() {
+    }
+
+    /**
+     * Creates the rollup tables the first time they are used by this process.
+     * Call it before starting a transaction: MySQL commits the open transaction on CREATE TABLE.
+     */
+    public static void ensureTableExists(Connection conn) throws SQLException {
+        if (TableRegistry.isVerified(TABLE)) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(CREATE_SQL);
+            stmt.execute(CREATE_BACKFILL_SQL);
+        }
+        TableRegistry.markVerified(TABLE);
+    }
+
+    /**
+     * Adds aggregated activities to the rollup row of their day.
+     * count Number of activities.
+     * sum, min, max Aggregates of the metric column over those activities.
+     * secondarySum Sum of the secondary column, or 0.
+     */
+    private static void add(Connection conn, ActivityType type, int userId, LocalDate date,
+                            int count, double sum, double min, double max, double secondarySum) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(UPSERT_SQL)) {
+            bindUpsert(pstmt, type, userId, date, count, sum, min, max, secondarySum);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Collects newly inserted activities and adds them to the rollups with one upsert per user, type and day.
+     */
+    public static final class Batch {
+        private final Map<String, Day> days = new LinkedHashMap<>();
+
+        /**
+         * Adds one inserted activity.
+         * values The activity values in the column order of type.getColumns().
+         */
+        public void add(ActivityType type, int userId, LocalDate date, Object[] values) {
+            double metric = ((Number) values[type.getMetricColumn()]).doubleValue();
+            double secondary = type.getSecondaryColumn() < 0 ? 0 : ((Number) values[type.getSecondaryColumn()]).doubleValue();
+            Day day = days.computeIfAbsent(userId + "|" + type.name() + "|" + date, key -> new Day(type, userId, date));
+            day.count++;
+            day.sum += metric;
+            day.min = Math.min(day.min, metric);
+            day.max = Math.max(day.max, metric);
+            day.secondarySum += secondary;
+        }
+
+        /**
+         * Writes the collected days. Must run on the connection and in the transaction that inserted the
+         * activities, after ensureTableExists() was called outside of that transaction.
+         */
+        public void write(Connection conn) throws SQLException {
+            if (days.isEmpty()) {
+                return;
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(UPSERT_SQL)) {
+                for (Day day : days.values()) {
+                    bindUpsert(pstmt, day.type, day.userId, day.date, day.count, day.sum, day.min, day.max, day.secondarySum);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+        }
+
+        private static final class Day {
+            final ActivityType type;
+            final int userId;
+            final LocalDate date;
+            int count;
+            double sum;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double secondarySum;
+
+            Day(ActivityType type, int userId, LocalDate date) {
+                this.type = type;
+                this.userId = userId;
+                this.date = date;
+            }
+        }
+    }
+
+    /**
+     * Recomputes the rollup row of one day from the raw activity rows, e.g. after an update or delete.
+     * Must run in the transaction that changed the activity rows, after ensureTableExists().
+     */
+    public static void recomputeDay(Connection conn, ActivityTable table, LocalDate date) throws SQLException {
+        ActivityType type = table.getType();
+        try (PreparedStatement pstmt = conn.prepareStatement(table.dayTotalsSql())) {
+            pstmt.setDate(1, java.sql.Date.valueOf(date));
+            table.bindUser(pstmt, 2);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                int count = rs.getInt(1);
+                deleteDay(conn, type, table.getUserId(), date);
+                if (count > 0) {
+                    add(conn, type, table.getUserId(), date, count, rs.getDouble(2), rs.getDouble(3),
+                            rs.getDouble(4), rs.getDouble(5));
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds all rollups of a user from the raw activity rows, e.g. for data stored before rollups existed.
+     * throws SQLException if the rollups cannot be rebuilt; nothing is changed in that case.
+     */
+    public static void rebuild(DatabaseHelper dbHelper, User user) throws SQLException {
+        try (Connection conn = dbHelper.getConnection()) {
+            ensureTableExists(conn);
+            rebuild(conn, user, false);
+        }
+    }
+
+    /**
+     * Rebuilds the rollups of a user whose history has not been added to them yet, see the class comment.
+     * Only the first call per user and process reads the rollup_backfill table.
+     */
+    private static void ensureBackfilled(Connection conn, User user) throws SQLException {
+        if (backfilledUsers.contains(user.getId())) {
+            return;
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT 1 FROM " + BACKFILL_TABLE + " WHERE user_id = ?")) {
+            pstmt.setInt(1, user.getId());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    try {
+                        rebuild(conn, user, true);
+                    } catch (SQLException e) {
+                        String state = e.getSQLState();
+                        if (state == null || !state.startsWith("23")) {
+                            throw e;
+                        }
+                        // Another process backfilled the user first
+                    }
+                }
+            }
+        }
+        backfilledUsers.add(user.getId());
+    }
+
+    /**
+     * Replaces the user's rollups with totals computed from the raw rows, in one transaction.
+     * markBackfilled Also record the user in the rollup_backfill table, in the same transaction.
+     */
+    private static void rebuild(Connection conn, User user, boolean markBackfilled) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            deleteUser(conn, user.getId());
+            for (ActivityType type : ActivityType.values()) {
+                ActivityTable table = ActivityTable.of(type, user);
+                String[] columns = type.getColumns();
+                String metric = columns[type.getMetricColumn()];
+                String secondary = type.getSecondaryColumn() < 0 ? "0" : columns[type.getSecondaryColumn()];
+                String sql = "INSERT INTO " + TABLE
+                        + " (user_id, activity_type, date, entry_count, value_sum, value_min, value_max, secondary_sum)"
+                        + " SELECT ?, ?, date, COUNT(*), COALESCE(SUM(" + metric + "), 0), COALESCE(MIN(" + metric
+                        + "), 0), COALESCE(MAX(" + metric + "), 0), COALESCE(SUM(" + secondary + "), 0) FROM "
+                        + table.getName() + table.userPredicate(" WHERE ") + " GROUP BY date";
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setInt(1, user.getId());
+                    pstmt.setString(2, type.name());
+                    table.bindUser(pstmt, 3);
+                    pstmt.executeUpdate();
+                } catch (SQLException e) {
+                    if (!"42S02".equals(e.getSQLState())) {
+                        throw e;
+                    }
+                    // The user never tracked this type of activity
+                }
+            }
+            if (markBackfilled) {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "INSERT INTO " + BACKFILL_TABLE + " (user_id) VALUES (?)")) {
+                    pstmt.setInt(1, user.getId());
+                    pstmt.executeUpdate();
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Removes all rollups of a user. Must run in the transaction that removes the user's activities,
+     * after ensureTableExists().
+     */
+    public static void deleteUser(Connection conn, int userId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM " + TABLE + " WHERE user_id = ?")) {
+            pstmt.setInt(1, userId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Returns the daily totals of one activity type for a user between two days, oldest first.
+     * Days without activities are not included.
+     */
+    public static List<DailyTotal> findDays(DatabaseHelper dbHelper, ActivityType type, User user,
+                                            LocalDate from, LocalDate to) throws SQLException {
+        String sql = "SELECT date, entry_count, value_sum, value_min, value_max, secondary_sum FROM " + TABLE
+                + " WHERE user_id = ? AND activity_type = ? AND date BETWEEN ? AND ? ORDER BY date";
+        List<DailyTotal> days = new ArrayList<>();
+        try (Connection conn = dbHelper.getConnection()) {
+            ensureTableExists(conn);
+            ensureBackfilled(conn, user);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, user.getId());
+                pstmt.setString(2, type.name());
+                pstmt.setDate(3, java.sql.Date.valueOf(from));
+                pstmt.setDate(4, java.sql.Date.valueOf(to));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        days.add(new DailyTotal(type, rs.getDate(1).toLocalDate(), rs.getInt(2), rs.getDouble(3),
+                                rs.getDouble(4), rs.getDouble(5), rs.getDouble(6)));
+                    }
+                }
+            }
+        }
+        return days;
+    }
+
+    /**
+     * Returns the total of one activity type for a user between two days, reading one rollup row per day.
+     * return The total, dated with the first day of the range.
+     */
+    public static DailyTotal total(DatabaseHelper dbHelper, ActivityType type, User user,
+                                   LocalDate from, LocalDate to) throws SQLException {
+        int count = 0;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double secondarySum = 0;
+        for (DailyTotal day : findDays(dbHelper, type, user, from, to)) {
+            count += day.getCount();
+            sum += day.getSum();
+            min = Math.min(min, day.getMin());
+            max = Math.max(max, day.getMax());
+            secondarySum += day.getSecondarySum();
+        }
+        return count == 0
+                ? new DailyTotal(type, from, 0, 0, 0, 0, 0)
+                : new DailyTotal(type, from, count, sum, min, max, secondarySum);
+    }
+
+    private static void deleteDay(Connection conn, ActivityType type, int userId, LocalDate date) throws SQLException {
+        String sql = "DELETE FROM " + TABLE + " WHERE user_id = ? AND activity_type = ? AND date = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            pstmt.setString(2, type.name());
+            pstmt.setDate(3, java.sql.Date.valueOf(date));
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static void bindUpsert(PreparedStatement pstmt, ActivityType type, int userId, LocalDate date,
+                                   int count, double sum, double min, double max, double secondarySum) throws SQLException {
+        pstmt.setInt(1, userId);
+        pstmt.setString(2, type.name());
+        pstmt.setDate(3, java.sql.Date.valueOf(date));
+        pstmt.setInt(4, count);
+        pstmt.setDouble(5, sum);
+        pstmt.setDouble(6, min);
+        pstmt.setDouble(7, max);
+        pstmt.setDouble(8, secondarySum);
+    }
+}
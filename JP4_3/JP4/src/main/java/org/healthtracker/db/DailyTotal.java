@@ -0,0 +1,70 @@
+package org.healthtracker.db;
+
+import org.healthtracker.tracking.ActivityType;
+
+import java.time.LocalDate;
+
+/**
+ * Aggregated activities of one type for one user over one day or a range of days.
+ */
+public class DailyTotal {
+    private final ActivityType type;
+    private final LocalDate date;     // The day, or the first day of a range
+    private final int count;          // Number of activities
+    private final double sum;         // Sum of the metric column
+    private final double min;         // Smallest metric value
+    private final double max;         // Largest metric value
+    private final double secondarySum; // Sum of the secondary column, 0 if the type has none
+
+    public DailyTotal(ActivityType type, LocalDate date, int count, double sum, double min, double max, double secondarySum) {
+        this.type = type;
+        this.date = date;
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+        this.secondarySum = secondarySum;
+    }
+
+    public ActivityType getType() {
+        return type;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getSecondarySum() {
+        return secondarySum;
+    }
+
+    /**
+     * Returns the average of the metric column, e.g. the average mood.
+     */
+    public double getAverage() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * Returns the average of the secondary column, e.g. the average hours of sleep.
+     */
+    public double getSecondaryAverage() {
+        return count == 0 ? 0 : secondarySum / count;
+    }
+}
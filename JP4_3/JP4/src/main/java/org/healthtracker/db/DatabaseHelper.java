@@ -1,67 +1,319 @@
 package org.healthtracker.db;
 
+import org.healthtracker.exceptions.LoginThrottledException;
+import org.healthtracker.jfr.ConnectionBorrowEvent;
+import org.healthtracker.jfr.LoginEvent;
+import org.healthtracker.metrics.Metrics;
+import org.healthtracker.metrics.Timer;
+import org.healthtracker.tracking.EventIdFilter;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.tracking.PendingWrites;
+import org.healthtracker.tracking.WriteBehindBuffer;
+import org.healthtracker.user.LoginThrottle;
+import org.healthtracker.user.PasswordHasher;
+import org.healthtracker.user.SessionCache;
 import org.healthtracker.user.User;
+import org.healthtracker.wal.WalReplicator;
 
+import java.awt.EventQueue;
 import java.sql.*;
+import java.util.concurrent.RejectedExecutionException;
 
 public class DatabaseHelper {
-    // Database connection details
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/healthtracker"; // URL of the database
-    private static final String USER = "USERNAME"; // Database username
-    private static final String PASS = "PASSWORD"; // Database password
+    // Database connection details, overridable with -Dhealthtracker.db.* system properties
+    private static final String DB_URL = System.getProperty("healthtracker.db.url",
+            "jdbc:mysql://localhost:3306/healthtracker?rewriteBatchedStatements=true&useServerPrepStmts=true"); // URL of the database
+    private static final String USER = System.getProperty("healthtracker.db.user", "USERNAME"); // Database username
+    private static final String PASS = System.getProperty("healthtracker.db.password", "PASSWORD"); // Database password
+
+    // Connection pool settings, overridable with -Dhealthtracker.pool.* system properties
+    private static final int POOL_MIN_SIZE = Integer.getInteger("healthtracker.pool.minSize", 2);
+    private static final int POOL_MAX_SIZE = Integer.getInteger("healthtracker.pool.maxSize", 10);
+    private static final long POOL_BORROW_TIMEOUT_MS = Long.getLong("healthtracker.pool.borrowTimeoutMs", 5_000);
+    private static final long POOL_IDLE_TIMEOUT_MS = Long.getLong("healthtracker.pool.idleTimeoutMs", 300_000);
+    private static final long POOL_LEAK_THRESHOLD_MS = Long.getLong("healthtracker.pool.leakThresholdMs", 60_000);
+    private static final boolean POOL_LEAK_STACK_TRACES = Boolean.getBoolean("healthtracker.pool.leakStackTraces"); // Debugging only
+    private static final int POOL_STATEMENT_CACHE_SIZE = Integer.getInteger("healthtracker.pool.statementCacheSize", 64);
+
+    // Fail fast on JDBC use from the Swing event dispatch thread, enabled with -Dhealthtracker.edtGuard=true
+    private static final boolean EDT_GUARD = Boolean.getBoolean("healthtracker.edtGuard");
+
+    // Table layout for activity rows, overridable with -Dhealthtracker.storage.layout=per_user_tables|consolidated
+    private static volatile StorageMode storageMode = StorageMode.valueOf(
+            System.getProperty("healthtracker.storage.layout", StorageMode.PER_USER_TABLES.name()).toUpperCase());
+
+    // Where activities are stored, overridable with -Dhealthtracker.store=mysql|local
+    private static final StoreBackend STORE_BACKEND = StoreBackend.valueOf(
+            System.getProperty("healthtracker.store", StoreBackend.MYSQL.name()).toUpperCase());
+
+    // One pool per process, shared by every DatabaseHelper instance
+    private static volatile ConnectionPool pool;
+
+    // How long a reset waits for the user's pending saves, overridable with -Dhealthtracker.reset.drainTimeoutMs
+    private static final long RESET_DRAIN_TIMEOUT_MS = Long.getLong("healthtracker.reset.drainTimeoutMs", 30_000);
+
+    // Source of login attempts made through the desktop GUI, for the LoginThrottle
+    private static final String LOCAL_SOURCE = "local";
+
+    // One activity store per process, created on first use
+    private static volatile ActivityStore activityStore;
+
+    // Latency of the public calls, see Metrics
+    private static final Timer GET_CONNECTION_TIMER = Metrics.timer("db.getConnection");
+    private static final Timer VALIDATE_USER_TIMER = Metrics.timer("db.validateUser");
+    private static final Timer ADD_USER_TIMER = Metrics.timer("db.addUser");
+    private static final Timer RESET_USER_DATA_TIMER = Metrics.timer("db.resetUserData");
 
     /**
-     * Establishes a connection to the database.
-     * return A connection to the specified database URL, user, and password.
-     * throws SQLException If a database access error occurs.
+     * Borrows a connection from the shared connection pool.
+     * Closing the returned connection hands it back to the pool.
+     * With -Dhealthtracker.edtGuard=true, calls made on the Swing event dispatch thread fail with an IllegalStateException.
+     * return A pooled connection to the specified database URL, user, and password.
+     * throws SQLException If a database access error occurs or no connection becomes available in time.
      */
     public Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(DB_URL, USER, PASS);
+        if (EDT_GUARD && EventQueue.isDispatchThread()) {
+            throw new IllegalStateException("Database access on the event dispatch thread");
+        }
+        ConnectionBorrowEvent event = new ConnectionBorrowEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            Connection conn = getPool().borrow();
+            GET_CONNECTION_TIMER.record(start);
+            event.succeeded = true;
+            return conn;
+        } catch (SQLException | RuntimeException e) {
+            GET_CONNECTION_TIMER.recordFailure(start);
+            throw e;
+        } finally {
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the shared connection pool statistics.
+     */
+    public PoolStats getPoolStats() {
+        return getPool().getStats();
+    }
+
+    /**
+     * Closes the shared connection pool. A new pool is created on the next getConnection() call.
+     */
+    public static synchronized void shutdownPool() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
+    /**
+     * Returns the table layout used for activity rows.
+     */
+    public static StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    /**
+     * Changes the table layout used for activity rows, e.g. after running the SchemaMigrator.
+     */
+    public static void setStorageMode(StorageMode mode) {
+        storageMode = mode;
+        TableRegistry.invalidateAll();
+    }
+
+    /**
+     * Returns the process-wide activity store selected with -Dhealthtracker.store=mysql|local,
+     * opening it on first use.
+     * throws SQLException if the local store cannot be opened.
+     */
+    public ActivityStore getActivityStore() throws SQLException {
+        ActivityStore current = activityStore;
+        if (current == null) {
+            synchronized (DatabaseHelper.class) {
+                current = activityStore;
+                if (current == null) {
+                    current = STORE_BACKEND == StoreBackend.LOCAL ? LocalActivityStore.open() : new MySqlActivityStore(this);
+                    activityStore = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Replaces the activity store, closing the previous one, e.g. to point tests and benchmarks at a
+     * LocalActivityStore in a temporary directory. Passing null goes back to the configured backend.
+     */
+    public static synchronized void setActivityStore(ActivityStore store) {
+        if (activityStore != null && activityStore != store) {
+            activityStore.close();
+        }
+        activityStore = store;
+    }
+
+    private static ConnectionPool getPool() {
+        ConnectionPool current = pool;
+        if (current == null) {
+            synchronized (DatabaseHelper.class) {
+                current = pool;
+                if (current == null) {
+                    current = new ConnectionPool(DB_URL, USER, PASS, POOL_MIN_SIZE, POOL_MAX_SIZE,
+                            POOL_BORROW_TIMEOUT_MS, POOL_IDLE_TIMEOUT_MS, POOL_LEAK_THRESHOLD_MS, POOL_LEAK_STACK_TRACES,
+                            POOL_STATEMENT_CACHE_SIZE);
+                    pool = current;
+                }
+            }
+        }
+        return current;
     }
 
     /**
-     * Validates if the provided username and password match a user in the database.
+     * Looks up a user by username and checks the password against the stored hash.
+     * The hash is verified on the PasswordHasher pool after the connection has been returned. Passwords
+     * still stored in plain text, or hashed with fewer iterations than configured, are rehashed on success.
+     * A successful login is recorded in the SessionCache.
      * username The username to validate.
      * password The password to validate.
-     * return True if the credentials match a user in the database, false otherwise.
+     * return The user with its database id, or null if the username or password is wrong.
+     * throws SQLException if the database cannot be read, or SQLTransientException if too many logins are
+     * being verified at once.
      */
-    public boolean validateUser(String username, String password) {
-        String sql = "SELECT password FROM users WHERE username = ?"; // SQL query to select the user's password
+    public User validateUser(String username, String password) throws SQLException {
+        return validateUser(username, password, LOCAL_SOURCE);
+    }
+
+    /**
+     * Validates a login attempt from a given source, e.g. a client address.
+     * Attempts over the per-username or per-source limits of the LoginThrottle are rejected before any database access.
+     * throws LoginThrottledException if the attempt was throttled.
+     */
+    public User validateUser(String username, String password, String source) throws SQLException {
+        LoginEvent event = new LoginEvent();
+        event.begin();
+        event.username = username;
+        event.source = source;
+        event.outcome = LoginEvent.ERROR;
+        try {
+            User user = VALIDATE_USER_TIMER.time(() -> checkCredentials(username, password, source));
+            event.outcome = user != null ? LoginEvent.VALID : LoginEvent.INVALID;
+            event.userId = user != null ? user.getId() : 0;
+            return user;
+        } catch (LoginThrottledException e) {
+            event.outcome = LoginEvent.THROTTLED;
+            throw e;
+        } finally {
+            event.commit();
+        }
+    }
+
+    private User checkCredentials(String username, String password, String source) throws SQLException {
+        long retryAfter = LoginThrottle.tryAcquire(username, source);
+        if (retryAfter > 0) {
+            throw new LoginThrottledException("Too many login attempts, try again in "
+                    + Math.max(1, retryAfter / 1000) + " s", retryAfter);
+        }
+        String sql = "SELECT id, username, password FROM users WHERE username = ?"; // One query for the whole user record
+        int id;
+        String storedUsername;
+        String stored;
         try (Connection conn = getConnection(); // Try-with-resources to ensure resources are closed
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, username); // Set the username in the query
-            ResultSet rs = pstmt.executeQuery(); // Execute the query
-            if (rs.next()) {
-                return password.equals(rs.getString("password")); // Check if the entered password matches the database
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    id = -1;
+                    storedUsername = null;
+                    stored = null;
+                } else {
+                    id = rs.getInt(1);
+                    storedUsername = rs.getString(2);
+                    stored = rs.getString(3);
+                }
+            }
+        }
+        try {
+            if (stored == null) {
+                PasswordHasher.verifyDummy(password); // Unknown usernames take as long as wrong passwords
+                return null;
             }
-            return false;
+            if (!PasswordHasher.verify(password, stored)) {
+                return null;
+            }
+            if (PasswordHasher.needsRehash(stored)) {
+                updatePasswordHash(id, PasswordHasher.hash(password));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while verifying the password", e);
+        } catch (RejectedExecutionException e) {
+            throw new SQLTransientException(e.getMessage(), e);
+        }
+        User user = new User(id, storedUsername, null, this);
+        SessionCache.put(user, password);
+        return user;
+    }
+
+    /**
+     * Replaces a stored password with a new hash. Failures are only reported, as the login itself succeeded.
+     */
+    private void updatePasswordHash(int userId, String hash) {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("UPDATE users SET password = ? WHERE id = ?")) {
+            pstmt.setString(1, hash);
+            pstmt.setInt(2, userId);
+            pstmt.executeUpdate();
         } catch (SQLException e) {
-            e.printStackTrace(); // Print the stack trace if an SQL exception occurs
-            return false;
+            System.err.println("Error upgrading the stored password of user " + userId + ": " + e.getMessage());
         }
     }
 
+    /**
+     * Deletes every activity and daily total of a user from the activity store.
+     * throws SQLException if the data cannot be deleted.
+     */
     public void resetUserData(User user) throws SQLException {
-        try (Connection conn = getConnection()) {
-            // Start a transaction
-            conn.setAutoCommit(false);
+        resetUserData(user, ResetProgress.NONE);
+    }
+
+    /**
+     * Deletes every activity and daily total of a user from the activity store, reporting progress along the way.
+     * New saves of the user's activities fail while the reset runs. Activities still waiting in the
+     * WriteBehindBuffer are dropped, and saves already under way and the write-ahead log are given up to
+     * RESET_DRAIN_TIMEOUT_MS to finish, so none of them writes rows after the reset.
+     * throws SQLTimeoutException if the pending saves did not finish in time; nothing is deleted in that case.
+     * throws SQLException if the data cannot be deleted; part of it may be gone, and resetting again deletes the rest.
+     */
+    public void resetUserData(User user, ResetProgress progress) throws SQLException {
+        RESET_USER_DATA_TIMER.time(() -> {
+            deleteUserData(user, progress);
+            return null;
+        });
+    }
+
+    private void deleteUserData(User user, ResetProgress progress) throws SQLException {
+        PendingWrites.block(user.getId());
+        try {
+            progress.update(0, "Waiting for pending saves");
+            int discarded = WriteBehindBuffer.discard(user.getId());
+            if (discarded > 0) {
+                System.out.println("Discarded " + discarded + " unsaved activities of user " + user.getId() + " before the reset");
+            }
             try {
-                // List of table types to be cleared
-                String[] tableTypes = {"diet", "steps", "water_intake", "mental_health", "exercise"};
-                for (String type : tableTypes) {
-                    String tableName = type + "_" + user.getId() + "_" + user.getUsername();
-                    String sql = "DELETE FROM " + tableName;
-                    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                        pstmt.executeUpdate();
-                    }
+                if (!WalReplicator.awaitReplicated(RESET_DRAIN_TIMEOUT_MS)
+                        || !PendingWrites.awaitIdle(user.getId(), RESET_DRAIN_TIMEOUT_MS)) {
+                    throw new SQLTimeoutException("Pending saves did not finish within " + RESET_DRAIN_TIMEOUT_MS + " ms");
                 }
-                conn.commit();  // Commit the transaction if all deletions succeed
-            } catch (SQLException ex) {
-                conn.rollback();  // Rollback if any deletion fails
-                throw ex;
-            } finally {
-                conn.setAutoCommit(true);  // Reset the auto-commit to true
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for pending saves", e);
             }
+            getActivityStore().deleteAll(user, progress);
+            EventIdFilter.forget(user.getId());
+            FitnessActivity.fireUserReset(user);
+        } finally {
+            PendingWrites.unblock(user.getId());
         }
     }
 
@@ -79,11 +331,24 @@ public class DatabaseHelper {
      * throws SQLException If inserting the new user fails.
      */
     public int addUser(String username, String password, String name, int age, char gender, double weight, double height) throws SQLException {
+        return ADD_USER_TIMER.time(() -> insertUser(username, password, name, age, gender, weight, height));
+    }
+
+    private int insertUser(String username, String password, String name, int age, char gender, double weight, double height) throws SQLException {
+        String hash;
+        try {
+            hash = PasswordHasher.hash(password); // Only the salted hash is stored
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while hashing the password", e);
+        } catch (RejectedExecutionException e) {
+            throw new SQLTransientException(e.getMessage(), e);
+        }
         String sql = "INSERT INTO users (username, password, name, age, gender, weight, height) VALUES (?, ?, ?, ?, ?, ?, ?)"; // SQL query to insert a new user
         try (Connection conn = getConnection(); // Try-with-resources to ensure resources are closed
              PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             pstmt.setString(1, username); // Set the username
-            pstmt.setString(2, password); // Set the password
+            pstmt.setString(2, hash); // Set the password hash
             pstmt.setString(3, name); // Set the name
             pstmt.setInt(4, age); // Set the age
             pstmt.setString(5, String.valueOf(gender)); // Set the gender as a string
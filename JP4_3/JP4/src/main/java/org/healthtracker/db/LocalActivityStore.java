@@ -0,0 +1,661 @@
+package org.healthtracker.db;
+
+import org.healthtracker.tracking.ActivityCodec;
+import org.healthtracker.tracking.ActivityRecord;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.user.User;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Activity store kept in a single append-only file on the local disk, for single-user installs
+ * without a database server and for tests and benchmarks.
+ * Every insert, update and delete is appended to the log as one framed record (length, CRC32, payload)
+ * and applied to an in-memory index, so a write costs one file append and no network round trip.
+ * On open the log is replayed to rebuild the index; a record torn by a crash is detected by its
+ * checksum and cut off. When more than half of the log is superseded records it is compacted.
+ * Client event ids are kept with their inserts and indexed, so an activity whose event id is already stored
+ * for the same user, type and day is skipped and marked with FitnessActivity.markDuplicate(), like the
+ * unique event id key does for MySqlActivityStore.
+ * Settings, overridable with -Dhealthtracker.store.* system properties:
+ * healthtracker.store.dir    Directory of the log (default ~/.healthtracker).
+ * healthtracker.store.fsync  Force every write to the disk before returning (default false).
+ */
+public class LocalActivityStore implements ActivityStore {
+    private static final String LOG_FILE = "activities.log";
+    private static final int MIN_COMPACT_RECORDS = 1_000; // Never compact small logs
+    private static final int FOR_EACH_PAGE_SIZE = 1_000; // Records copied per lock by forEach()
+
+    // Record operations
+    private static final byte INSERT = 1;
+    private static final byte UPDATE = 2;
+    private static final byte DELETE = 3;
+    private static final byte DELETE_USER = 4;
+    private static final byte REPLICA_INSERT = 5; // Insert that only counts once the CHECKPOINT written after it is read
+    private static final byte CHECKPOINT = 6;     // Position reached by a replicated stream
+    private static final byte LAST_ID = 7;        // Highest id handed out for a user and type, kept by compaction
+
+    private static final TreeMap<Integer, ActivityRecord> NO_ROWS = new TreeMap<>(); // Read-only, for users without activities
+
+    private final Path logFile;
+    private final boolean fsync;
+    private FileChannel channel;
+    private FileLock lock; // Keeps a second process from appending to the same log
+
+    // Activities keyed by user and type, each ordered by activity id
+    private final Map<Long, TreeMap<Integer, ActivityRecord>> activities = new HashMap<>();
+    private final Map<Long, Integer> lastIds = new HashMap<>(); // Highest activity id handed out per user and type
+    private final Map<String, Long> checkpoints = new HashMap<>(); // Replicated position per stream
+    private final Set<String> eventKeys = new HashSet<>(); // eventKey() of every stored activity with an event id
+    private long liveRecords;       // Records in the log that still describe a stored activity
+    private long supersededRecords; // Records in the log that compaction would drop
+
+    private LocalActivityStore(Path logFile, boolean fsync) {
+        this.logFile = logFile;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Opens the store in the directory configured with -Dhealthtracker.store.dir.
+     */
+    public static LocalActivityStore open() throws SQLException {
+        String dir = System.getProperty("healthtracker.store.dir",
+                Path.of(System.getProperty("user.home"), ".healthtracker").toString());
+        return open(Path.of(dir), Boolean.getBoolean("healthtracker.store.fsync"));
+    }
+
+    /**
+     * Opens the store in the given directory, creating it if needed, and replays its log.
+     * fsync Whether every write is forced to the disk before returning.
+     * throws SQLException if the log cannot be opened, e.g. because another process holds it.
+     */
+    public static LocalActivityStore open(Path dir, boolean fsync) throws SQLException {
+        LocalActivityStore store = new LocalActivityStore(dir.resolve(LOG_FILE), fsync);
+        try {
+            Files.createDirectories(dir);
+            store.openLog();
+            if (store.supersededRecords > MIN_COMPACT_RECORDS && store.supersededRecords > store.liveRecords) {
+                try {
+                    store.compact();
+                } catch (IOException e) {
+                    if (store.channel == null) {
+                        throw e; // The old log could not be reopened either
+                    }
+                    System.err.println("Error compacting " + store.logFile + ", keeping the old log: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            store.close();
+            throw new SQLException("Error opening the local activity store in " + dir + ": " + e.getMessage(), e);
+        }
+        return store;
+    }
+
+    @Override
+    public synchronized void insert(List<? extends FitnessActivity> newActivities) throws SQLException {
+        append(newActivities, INSERT, null, 0);
+    }
+
+    /**
+     * Appends the inserts and the checkpoint as one group: on replay the inserts are only applied if the
+     * checkpoint after them was written completely, so a crash never keeps a batch without its position.
+     */
+    @Override
+    public synchronized void insertReplicated(List<? extends FitnessActivity> newActivities, String stream, long position)
+            throws SQLException {
+        append(newActivities, REPLICA_INSERT, stream, position);
+    }
+
+    @Override
+    public synchronized long getReplicatedPosition(String stream) {
+        return checkpoints.getOrDefault(stream, 0L);
+    }
+
+    /**
+     * Assigns ids to new activities, appends them to the log with an optional checkpoint and indexes them.
+     * Activities whose event id is stored already, or repeated earlier in the list, are marked as duplicates instead.
+     */
+    private void append(List<? extends FitnessActivity> newActivities, byte operation, String stream, long position)
+            throws SQLException {
+        List<FitnessActivity> stored = new ArrayList<>(newActivities.size());
+        List<ActivityRecord> records = new ArrayList<>(newActivities.size());
+        List<Integer> userIds = new ArrayList<>(newActivities.size());
+        Map<Long, Integer> assignedIds = new HashMap<>(); // Ids are only taken once the append succeeded
+        Set<String> newEventKeys = new HashSet<>();
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        for (FitnessActivity activity : newActivities) {
+            int userId = activity.getUser().getId();
+            if (activity.getEventId() != null) {
+                String eventKey = eventKey(userId, activity.getType(), activity.getEventId(), activity.getDate());
+                if (eventKeys.contains(eventKey) || !newEventKeys.add(eventKey)) {
+                    activity.markDuplicate();
+                    continue;
+                }
+            }
+            long key = key(userId, activity.getType());
+            int activityId = assignedIds.getOrDefault(key, lastIds.getOrDefault(key, 0)) + 1;
+            assignedIds.put(key, activityId);
+            ActivityRecord record = new ActivityRecord(activity.getType(), activityId, activity.getDate(),
+                    activity.getValues(), activity.getEventId());
+            appendRecord(log, operation, userId, record);
+            stored.add(activity);
+            records.add(record);
+            userIds.add(userId);
+        }
+        if (records.isEmpty() && stream == null) {
+            return;
+        }
+        if (stream != null) {
+            appendCheckpoint(log, stream, position);
+        }
+        write(log);
+        lastIds.putAll(assignedIds);
+        eventKeys.addAll(newEventKeys);
+        for (int i = 0; i < records.size(); i++) {
+            ActivityRecord record = records.get(i);
+            rows(userIds.get(i), record.getType()).put(record.getActivityId(), record);
+            stored.get(i).setActivityId(record.getActivityId());
+            liveRecords++;
+        }
+        if (stream != null) {
+            checkpoints.put(stream, position);
+            supersededRecords++;
+        }
+    }
+
+    @Override
+    public synchronized void update(ActivityType type, User user, int activityId, Object[] values) throws SQLException {
+        TreeMap<Integer, ActivityRecord> rows = peek(user.getId(), type);
+        ActivityRecord current = rows.get(activityId);
+        if (current == null) {
+            return;
+        }
+        ActivityRecord updated = new ActivityRecord(type, activityId, current.getDate(), values.clone(), current.getEventId());
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        appendRecord(log, UPDATE, user.getId(), updated);
+        write(log);
+        rows.put(activityId, updated);
+        supersededRecords++;
+    }
+
+    @Override
+    public synchronized void delete(ActivityType type, User user, int activityId) throws SQLException {
+        TreeMap<Integer, ActivityRecord> rows = peek(user.getId(), type);
+        ActivityRecord current = rows.get(activityId);
+        if (current == null) {
+            return;
+        }
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        appendRecord(log, DELETE, user.getId(), current);
+        write(log);
+        rows.remove(activityId);
+        forgetEventId(user.getId(), current);
+        liveRecords--;
+        supersededRecords += 2; // The insert and the delete itself
+    }
+
+    @Override
+    public synchronized void deleteAll(User user, ResetProgress progress) throws SQLException {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        appendRecord(log, DELETE_USER, user.getId(), new ActivityRecord(ActivityType.values()[0], 0, null, null));
+        write(log);
+        removeUser(user.getId());
+        supersededRecords++;
+        progress.update(1, "Deleted all activities"); // A single log record, so there are no steps in between
+    }
+
+    @Override
+    public synchronized List<ActivityRecord> find(ActivityType type, User user, LocalDate from, LocalDate to, int limit) {
+        List<ActivityRecord> records = new ArrayList<>();
+        for (ActivityRecord record : peek(user.getId(), type).values()) {
+            if (inRange(record.getDate(), from, to)) {
+                records.add(record);
+            }
+        }
+        records.sort(Comparator.comparing(ActivityRecord::getDate, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparingInt(ActivityRecord::getActivityId).reversed());
+        return limit > 0 && records.size() > limit ? new ArrayList<>(records.subList(0, limit)) : records;
+    }
+
+    @Override
+    public synchronized List<ActivityRecord> findPage(ActivityType type, User user, int afterActivityId, int pageSize,
+                                                      Consumer<Statement> statementListener) {
+        List<ActivityRecord> page = new ArrayList<>(pageSize);
+        Iterator<ActivityRecord> it = peek(user.getId(), type).tailMap(afterActivityId, false).values().iterator();
+        while (it.hasNext() && page.size() < pageSize) {
+            page.add(it.next());
+        }
+        return page;
+    }
+
+    /**
+     * Walks the index in pages, so the store is only locked while a page is copied and not while the handler runs.
+     */
+    @Override
+    public void forEach(ActivityType type, User user, RecordHandler handler) throws IOException {
+        int afterActivityId = 0;
+        List<ActivityRecord> page;
+        do {
+            page = findPage(type, user, afterActivityId, FOR_EACH_PAGE_SIZE, null);
+            for (ActivityRecord record : page) {
+                handler.accept(record);
+            }
+            if (!page.isEmpty()) {
+                afterActivityId = page.get(page.size() - 1).getActivityId();
+            }
+        } while (page.size() == FOR_EACH_PAGE_SIZE);
+    }
+
+    /**
+     * Aggregates the matching activities per day; the index is in memory, so no rollups are stored.
+     */
+    @Override
+    public synchronized List<DailyTotal> findDays(ActivityType type, User user, LocalDate from, LocalDate to) {
+        TreeMap<LocalDate, double[]> days = new TreeMap<>(); // count, sum, min, max, secondary sum
+        for (ActivityRecord record : peek(user.getId(), type).values()) {
+            if (record.getDate() == null || !inRange(record.getDate(), from, to)) {
+                continue;
+            }
+            double metric = ((Number) record.getValue(type.getMetricColumn())).doubleValue();
+            double secondary = type.getSecondaryColumn() < 0 ? 0 : ((Number) record.getValue(type.getSecondaryColumn())).doubleValue();
+            double[] day = days.computeIfAbsent(record.getDate(),
+                    date -> new double[]{0, 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0});
+            day[0]++;
+            day[1] += metric;
+            day[2] = Math.min(day[2], metric);
+            day[3] = Math.max(day[3], metric);
+            day[4] += secondary;
+        }
+        List<DailyTotal> totals = new ArrayList<>(days.size());
+        for (Map.Entry<LocalDate, double[]> entry : days.entrySet()) {
+            double[] day = entry.getValue();
+            totals.add(new DailyTotal(type, entry.getKey(), (int) day[0], day[1], day[2], day[3], day[4]));
+        }
+        return totals;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (lock != null) {
+                lock.release();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing the local activity store: " + e.getMessage());
+        } finally {
+            lock = null;
+            channel = null;
+        }
+    }
+
+    /**
+     * Returns the number of activities held by the store.
+     */
+    public synchronized long size() {
+        return liveRecords;
+    }
+
+    /**
+     * Opens and locks the log, then replays it. A torn record at the end is truncated away.
+     */
+    private void openLog() throws IOException {
+        channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        lock = channel.tryLock();
+        if (lock == null) {
+            throw new IOException(logFile + " is in use by another process");
+        }
+        long validLength = replay();
+        if (validLength < channel.size()) {
+            System.err.println("Discarding " + (channel.size() - validLength) + " bytes of an incomplete record at the end of "
+                    + logFile);
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+    }
+
+    /**
+     * Applies every complete record of the log to the in-memory index. Replicated inserts not followed
+     * by their checkpoint are dropped, so the replicator sends them again.
+     * return The length of the log up to the end of the last complete record or group.
+     */
+    private long replay() throws IOException {
+        InputStream stream = Channels.newInputStream(channel.position(0));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        long validLength = 0;
+        List<byte[]> group = new ArrayList<>(); // REPLICA_INSERT records waiting for their CHECKPOINT
+        long groupLength = 0;
+        CRC32 crc = new CRC32();
+        while (true) {
+            byte[] payload;
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > channel.size()) {
+                    return validLength;
+                }
+                payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    return validLength;
+                }
+            } catch (EOFException e) {
+                return validLength;
+            }
+            if (payload[0] == REPLICA_INSERT) {
+                group.add(payload);
+                groupLength += 8 + payload.length;
+                continue;
+            }
+            for (byte[] replicated : group) {
+                apply(new DataInputStream(new ByteArrayInputStream(replicated)));
+            }
+            apply(new DataInputStream(new ByteArrayInputStream(payload)));
+            validLength += groupLength + 8 + payload.length;
+            group.clear();
+            groupLength = 0;
+        }
+    }
+
+    /**
+     * Applies one record read from the log.
+     */
+    private void apply(DataInputStream in) throws IOException {
+        byte operation = in.readByte();
+        if (operation == CHECKPOINT) {
+            checkpoints.put(in.readUTF(), in.readLong());
+            supersededRecords++;
+            return;
+        }
+        int userId = in.readInt();
+        ActivityType type = ActivityType.values()[in.readByte()];
+        int activityId = in.readInt();
+        if (operation == LAST_ID) {
+            lastIds.merge(key(userId, type), activityId, Math::max);
+            return;
+        }
+        TreeMap<Integer, ActivityRecord> rows = rows(userId, type);
+        switch (operation) {
+            case INSERT:
+            case REPLICA_INSERT: {
+                LocalDate date = ActivityCodec.readDate(in);
+                Object[] values = ActivityCodec.readValues(in);
+                String eventId = ActivityCodec.readEventId(in);
+                rows.put(activityId, new ActivityRecord(type, activityId, date, values, eventId));
+                if (eventId != null) {
+                    eventKeys.add(eventKey(userId, type, eventId, date));
+                }
+                lastIds.merge(key(userId, type), activityId, Math::max);
+                liveRecords++;
+                break;
+            }
+            case UPDATE: {
+                LocalDate date = ActivityCodec.readDate(in);
+                ActivityRecord current = rows.get(activityId);
+                if (current != null) {
+                    rows.put(activityId, new ActivityRecord(type, activityId, date, ActivityCodec.readValues(in),
+                            current.getEventId()));
+                }
+                supersededRecords++;
+                break;
+            }
+            case DELETE: {
+                ActivityRecord removed = rows.remove(activityId);
+                if (removed != null) {
+                    forgetEventId(userId, removed);
+                    liveRecords--;
+                }
+                supersededRecords += 2;
+                break;
+            }
+            case DELETE_USER:
+                removeUser(userId);
+                supersededRecords++;
+                break;
+            default:
+                throw new IOException("Unknown record type " + operation + " in " + logFile);
+        }
+    }
+
+    /**
+     * Rewrites the log with one insert record per stored activity, replacing the old log atomically.
+     * Where activities with higher ids were deleted, a LAST_ID record keeps the highest id handed out, so ids are
+     * never reused after a restart: paging cursors, the ActivityCache and listeners rely on an id naming one activity.
+     * If the new log cannot be moved into place, the old one is reopened and stays in use.
+     */
+    private void compact() throws IOException {
+        Path compacted = logFile.resolveSibling(LOG_FILE + ".compact");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteArrayOutputStream log = new ByteArrayOutputStream();
+            for (Map.Entry<Long, TreeMap<Integer, ActivityRecord>> entry : activities.entrySet()) {
+                int userId = (int) (entry.getKey() >> 8);
+                for (ActivityRecord record : entry.getValue().values()) {
+                    appendRecord(log, INSERT, userId, record);
+                    if (log.size() > 1 << 20) {
+                        writeFully(out, log);
+                    }
+                }
+            }
+            for (Map.Entry<Long, Integer> lastId : lastIds.entrySet()) {
+                TreeMap<Integer, ActivityRecord> rows = activities.get(lastId.getKey());
+                if (rows == null || rows.isEmpty() || rows.lastKey() < lastId.getValue()) {
+                    appendLastId(log, lastId.getKey(), lastId.getValue());
+                    if (log.size() > 1 << 20) {
+                        writeFully(out, log);
+                    }
+                }
+            }
+            for (Map.Entry<String, Long> checkpoint : checkpoints.entrySet()) {
+                appendCheckpoint(log, checkpoint.getKey(), checkpoint.getValue());
+            }
+            writeFully(out, log);
+            out.force(true);
+        }
+        close(); // Some systems cannot replace a file that is open
+        try {
+            Files.move(compacted, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(compacted);
+            reopenLog();
+            throw e;
+        }
+        activities.clear();
+        checkpoints.clear();
+        eventKeys.clear();
+        liveRecords = 0;
+        supersededRecords = 0;
+        openLog(); // lastIds is kept; the replay only raises it
+    }
+
+    /**
+     * Opens and locks the log again after a failed compaction, without replaying it: the index still matches it.
+     */
+    private void reopenLog() throws IOException {
+        channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        lock = channel.tryLock();
+        if (lock == null) {
+            throw new IOException(logFile + " is in use by another process");
+        }
+        channel.position(channel.size());
+    }
+
+    /**
+     * Appends the buffered records to the log and, with fsync enabled, forces them to the disk.
+     */
+    private void write(ByteArrayOutputStream log) throws SQLException {
+        if (channel == null) {
+            throw new SQLException("The local activity store is closed");
+        }
+        long position = 0;
+        try {
+            position = channel.position();
+            writeFully(channel, log);
+            if (fsync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            try {
+                channel.truncate(position); // Do not leave half a batch behind
+            } catch (IOException ignored) {
+                // The torn record is cut off by its checksum on the next open
+            }
+            throw new SQLException("Error writing to the local activity store: " + e.getMessage(), e);
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteArrayOutputStream log) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(log.toByteArray());
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        log.reset();
+    }
+
+    /**
+     * Encodes one record and appends it, framed with its length and checksum, to the buffer.
+     * Deletes only use the type and id of the activity; only inserts keep its event id.
+     */
+    private static void appendRecord(ByteArrayOutputStream log, byte operation, int userId, ActivityRecord activity) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeByte(operation);
+            out.writeInt(userId);
+            out.writeByte(activity.getType().ordinal());
+            out.writeInt(activity.getActivityId());
+            if (operation != DELETE && operation != DELETE_USER) {
+                ActivityCodec.writeDate(out, activity.getDate());
+                ActivityCodec.writeValues(out, activity.getValues());
+            }
+            if (operation == INSERT || operation == REPLICA_INSERT) {
+                ActivityCodec.writeEventId(out, activity.getEventId());
+            }
+            frame(log, payload.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Cannot happen when writing to memory
+        }
+    }
+
+    private static void appendCheckpoint(ByteArrayOutputStream log, String stream, long position) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(32);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeByte(CHECKPOINT);
+            out.writeUTF(stream);
+            out.writeLong(position);
+            frame(log, payload.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Cannot happen when writing to memory
+        }
+    }
+
+    private static void appendLastId(ByteArrayOutputStream log, long key, int activityId) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(16);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeByte(LAST_ID);
+            out.writeInt((int) (key >> 8));
+            out.writeByte((int) (key & 0xff));
+            out.writeInt(activityId);
+            frame(log, payload.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Cannot happen when writing to memory
+        }
+    }
+
+    private static void frame(ByteArrayOutputStream log, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        DataOutputStream frame = new DataOutputStream(log);
+        frame.writeInt(payload.length);
+        frame.writeInt((int) crc.getValue());
+        frame.write(payload);
+    }
+
+    private void removeUser(int userId) {
+        for (ActivityType type : ActivityType.values()) {
+            TreeMap<Integer, ActivityRecord> rows = activities.remove(key(userId, type));
+            if (rows != null) {
+                for (ActivityRecord record : rows.values()) {
+                    forgetEventId(userId, record);
+                }
+                liveRecords -= rows.size();
+                supersededRecords += rows.size();
+            }
+            // lastIds is kept, and written by compact(), so the ids of the deleted activities are never handed out again
+        }
+    }
+
+    private void forgetEventId(int userId, ActivityRecord record) {
+        if (record.getEventId() != null) {
+            eventKeys.remove(eventKey(userId, record.getType(), record.getEventId(), record.getDate()));
+        }
+    }
+
+    /**
+     * Returns the key under which an event id is unique: per user, type and day, like the unique key of MySqlActivityStore.
+     */
+    private static String eventKey(int userId, ActivityType type, String eventId, LocalDate date) {
+        return userId + "/" + type.ordinal() + "/" + date + "/" + eventId;
+    }
+
+    private TreeMap<Integer, ActivityRecord> rows(int userId, ActivityType type) {
+        return activities.computeIfAbsent(key(userId, type), key -> new TreeMap<>());
+    }
+
+    /**
+     * Returns the activities of a user and type without creating an entry for them; the result must not be modified.
+     */
+    private TreeMap<Integer, ActivityRecord> peek(int userId, ActivityType type) {
+        return activities.getOrDefault(key(userId, type), NO_ROWS);
+    }
+
+    /**
+     * Packs a user id and an activity type into one map key.
+     */
+    private static long key(int userId, ActivityType type) {
+        return ((long) userId << 8) | type.ordinal();
+    }
+
+    private static boolean inRange(LocalDate date, LocalDate from, LocalDate to) {
+        if (date == null) {
+            return from == null && to == null;
+        }
+        return (from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to));
+    }
+}
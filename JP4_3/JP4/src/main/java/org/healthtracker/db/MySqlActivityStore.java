@@ -0,0 +1,590 @@
+package org.healthtracker.db;
+
+import org.healthtracker.jfr.TableCheckEvent;
+import org.healthtracker.metrics.Metrics;
+import org.healthtracker.metrics.Timer;
+import org.healthtracker.tracking.ActivityRecord;
+import org.healthtracker.tracking.ActivityTable;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.user.User;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Activity store backed by the MySQL database, using the table layout chosen with StorageMode.
+ * Every write runs in one transaction together with the matching daily rollup changes, except deleteAll(),
+ * which clears a user's data in short steps.
+ */
+public class MySqlActivityStore implements ActivityStore {
+    private static final String CHECKPOINT_TABLE = "replication_checkpoint";
+    private static final String CREATE_CHECKPOINT_SQL = "CREATE TABLE IF NOT EXISTS " + CHECKPOINT_TABLE
+            + " (stream VARCHAR(64) NOT NULL PRIMARY KEY, position BIGINT NOT NULL)";
+    private static final String UPSERT_CHECKPOINT_SQL = "INSERT INTO " + CHECKPOINT_TABLE
+            + " (stream, position) VALUES (?, ?) ON DUPLICATE KEY UPDATE position = VALUES(position)";
+    // Latency of the CREATE TABLE IF NOT EXISTS round trips; verified tables are not timed
+    private static final Timer ENSURE_TABLE_TIMER = Metrics.timer("store.ensureTable");
+    // Rows deleted per statement when clearing a user's rows of a shared table, overridable with -Dhealthtracker.reset.chunkSize
+    private static final int RESET_CHUNK_SIZE = Integer.getInteger("healthtracker.reset.chunkSize", 5_000);
+    private static final int EVENT_ID_LOOKUP_SIZE = 500; // Event ids per existingEventIdsSql() query
+
+    private final DatabaseHelper dbHelper;
+    private final ActivityQuery query;
+
+    public MySqlActivityStore(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+        this.query = new ActivityQuery(dbHelper);
+    }
+
+    /**
+     * Inserts the activities with one JDBC batch per table, all tables and their rollups in one transaction.
+     */
+    @Override
+    public void insert(List<? extends FitnessActivity> activities) throws SQLException {
+        insertWithRetry(groupByTable(activities), activities, null, 0);
+    }
+
+    /**
+     * Inserts the activities of every table, their rollups and the checkpoint in one transaction.
+     */
+    @Override
+    public void insertReplicated(List<? extends FitnessActivity> activities, String stream, long position)
+            throws SQLException {
+        insertWithRetry(groupByTable(activities), activities, stream, position);
+    }
+
+    @Override
+    public long getReplicatedPosition(String stream) throws SQLException {
+        try (Connection conn = dbHelper.getConnection()) {
+            ensureCheckpointTable(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT position FROM " + CHECKPOINT_TABLE + " WHERE stream = ?")) {
+                pstmt.setString(1, stream);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void update(ActivityType type, User user, int activityId, Object[] values) throws SQLException {
+        ActivityTable table = ActivityTable.of(type, user);
+        changeActivity(table, activityId, conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(table.updateSql())) {
+                int index = 1;
+                for (Object value : values) {
+                    pstmt.setObject(index++, value);
+                }
+                table.bindRowKey(pstmt, index, activityId);
+                pstmt.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public void delete(ActivityType type, User user, int activityId) throws SQLException {
+        ActivityTable table = ActivityTable.of(type, user);
+        changeActivity(table, activityId, conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(table.deleteSql())) {
+                table.bindRowKey(pstmt, 1, activityId);
+                pstmt.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Clears the user's table of every activity type, then the user's rollups, without one long transaction.
+     * Per-user tables are emptied with TRUNCATE, which drops and recreates the table instead of deleting
+     * row by row. The user's rows of shared tables are deleted in chunks of RESET_CHUNK_SIZE rows, each
+     * committed on its own, so no undo log grows with the size of the history and concurrent inserts of other
+     * users only wait for one chunk. The rollups go last, so a failed reset never leaves activities without
+     * totals; running it again deletes the rest.
+     */
+    @Override
+    public void deleteAll(User user, ResetProgress progress) throws SQLException {
+        try (Connection conn = dbHelper.getConnection()) {
+            DailyRollups.ensureTableExists(conn);
+            ActivityType[] types = ActivityType.values();
+            long[] work = new long[types.length]; // Rows to delete per shared table, 1 per per-user table
+            long steps = 1;                       // The rollups count as one step
+            for (int i = 0; i < types.length; i++) {
+                ActivityTable table = ActivityTable.of(types[i], user);
+                work[i] = table.isShared() ? countRows(conn, table) : 1;
+                steps += work[i];
+            }
+            long total = steps;
+            long done = 0;
+            for (int i = 0; i < types.length; i++) {
+                ActivityTable table = ActivityTable.of(types[i], user);
+                String step = "Deleting " + types[i].getCategory().toLowerCase() + " activities";
+                progress.update((double) done / total, step);
+                if (table.isShared()) {
+                    long start = done;
+                    long rows = work[i];
+                    deleteInChunks(conn, table, deleted -> progress.update((double) (start + Math.min(deleted, rows)) / total, step));
+                } else {
+                    truncate(conn, table);
+                }
+                done += work[i];
+            }
+            progress.update((double) done / total, "Deleting daily totals");
+            DailyRollups.deleteUser(conn, user.getId());
+            progress.update(1, "Deleted all activities");
+        } finally {
+            TableRegistry.invalidateUser(user.getId(), user.getUsername()); // Re-verify the tables on the next insert
+        }
+    }
+
+    /**
+     * Returns the number of the user's rows in a table, or 0 if the table was never created.
+     */
+    private static long countRows(Connection conn, ActivityTable table) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(table.countSql())) {
+            table.bindUser(pstmt, 1);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            if (isMissingTable(e)) {
+                return 0;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes the user's rows of a shared table, RESET_CHUNK_SIZE rows per statement in autocommit mode.
+     * deletedSoFar Receives the number of rows deleted after each chunk.
+     */
+    private static void deleteInChunks(Connection conn, ActivityTable table, LongConsumer deletedSoFar) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(table.deleteChunkSql(RESET_CHUNK_SIZE))) {
+            table.bindUser(pstmt, 1);
+            long deleted = 0;
+            int chunk;
+            while ((chunk = pstmt.executeUpdate()) > 0) {
+                deleted += chunk;
+                deletedSoFar.accept(deleted);
+            }
+        } catch (SQLException e) {
+            if (!isMissingTable(e)) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Empties a per-user table. A table that was never created has nothing to delete.
+     */
+    private static void truncate(Connection conn, ActivityTable table) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(table.truncateSql());
+        } catch (SQLException e) {
+            if (!isMissingTable(e)) {
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public List<ActivityRecord> find(ActivityType type, User user, LocalDate from, LocalDate to, int limit)
+            throws SQLException {
+        return query.find(type, user, from, to, limit);
+    }
+
+    /**
+     * Streams the rows of the user's table. A table that was never created has no rows.
+     */
+    @Override
+    public void forEach(ActivityType type, User user, RecordHandler handler) throws SQLException, IOException {
+        try {
+            query.forEach(type, user, handler);
+        } catch (SQLException e) {
+            if (!isMissingTable(e)) {
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public List<ActivityRecord> findPage(ActivityType type, User user, int afterActivityId, int pageSize,
+                                         Consumer<Statement> statementListener) throws SQLException {
+        return query.findPage(type, user, afterActivityId, pageSize, statementListener);
+    }
+
+    @Override
+    public List<DailyTotal> findDays(ActivityType type, User user, LocalDate from, LocalDate to) throws SQLException {
+        return DailyRollups.findDays(dbHelper, type, user, from, to);
+    }
+
+    /**
+     * Nothing to release; the connection pool is closed with DatabaseHelper.shutdownPool().
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Runs insertOnce(). If a table was dropped behind our back, the tables are recreated and the insert
+     * retried once. If an event id was saved before, which the EventIdFilter normally catches without a
+     * round trip, the insert is retried once without the duplicates, and they are marked with
+     * FitnessActivity.markDuplicate().
+     */
+    private void insertWithRetry(Map<String, List<FitnessActivity>> byTable, List<? extends FitnessActivity> activities,
+                                 String stream, long position) throws SQLException {
+        try {
+            insertOnce(byTable, stream, position, false);
+        } catch (SQLException e) {
+            if (isConstraintViolation(e) && hasEventIds(activities)) {
+                insertOnce(byTable, stream, position, true); // Skip event ids saved before
+                return;
+            }
+            if (!isMissingTable(e)) {
+                throw e;
+            }
+            for (String tableName : byTable.keySet()) {
+                TableRegistry.invalidate(tableName);
+            }
+            TableRegistry.invalidate(CHECKPOINT_TABLE);
+            insertOnce(byTable, stream, position, false);
+        }
+    }
+
+    /**
+     * Inserts the activities of every table and their rollups, and records the checkpoint of the stream
+     * if there is one, in a single transaction.
+     * stream Name of the replicated stream, or null for activities that are not replicated.
+     */
+    private void insertOnce(Map<String, List<FitnessActivity>> byTable, String stream, long position,
+                            boolean skipSavedEventIds) throws SQLException {
+        for (List<FitnessActivity> activities : byTable.values()) {
+            ensureTableExists(tableOf(activities.get(0))); // DDL commits implicitly, so it runs before the transaction
+        }
+        try (Connection conn = dbHelper.getConnection()) {
+            DailyRollups.ensureTableExists(conn);
+            if (stream != null) {
+                ensureCheckpointTable(conn);
+            }
+            conn.setAutoCommit(false);
+            try {
+                DailyRollups.Batch rollup = new DailyRollups.Batch();
+                for (List<FitnessActivity> activities : byTable.values()) {
+                    insertRows(conn, activities, rollup, skipSavedEventIds);
+                }
+                rollup.write(conn); // One upsert per user and day, in the same transaction as the rows
+                if (stream != null) {
+                    try (PreparedStatement pstmt = conn.prepareStatement(UPSERT_CHECKPOINT_SQL)) {
+                        pstmt.setString(1, stream);
+                        pstmt.setLong(2, position);
+                        pstmt.executeUpdate();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Inserts activities that share one table with addBatch()/executeBatch() and adds them to the rollup batch.
+     * The generated activity ids are handed back to the activities. Runs in the caller's transaction.
+     * skipSavedEventIds Leave out, and mark as duplicates, activities whose event id is already in the table.
+     */
+    private static void insertRows(Connection conn, List<FitnessActivity> activities, DailyRollups.Batch rollup,
+                                   boolean skipSavedEventIds) throws SQLException {
+        if (skipSavedEventIds) {
+            activities = withoutSavedEventIds(conn, activities);
+            if (activities.isEmpty()) {
+                return;
+            }
+        }
+        String sql = tableOf(activities.get(0)).insertSql();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (FitnessActivity activity : activities) {
+                Object[] values = activity.getValues();
+                int index = tableOf(activity).bindUser(pstmt, 1);
+                pstmt.setDate(index++, java.sql.Date.valueOf(activity.getDate()));
+                for (Object value : values) {
+                    pstmt.setObject(index++, value);
+                }
+                if (activity.getEventId() != null) {
+                    pstmt.setString(index, activity.getEventId());
+                } else {
+                    pstmt.setNull(index, Types.VARCHAR);
+                }
+                pstmt.addBatch();
+                rollup.add(activity.getType(), activity.getUser().getId(), activity.getDate(), values);
+            }
+            pstmt.executeBatch();
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                for (FitnessActivity activity : activities) {
+                    if (!keys.next()) {
+                        break;
+                    }
+                    activity.setActivityId(keys.getInt(1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a change to one activity row in a transaction that also recomputes the daily rollup of the row's day.
+     * Does nothing if the activity does not exist.
+     */
+    private void changeActivity(ActivityTable table, int activityId, RowChange change) throws SQLException {
+        try (Connection conn = dbHelper.getConnection()) {
+            DailyRollups.ensureTableExists(conn);
+            conn.setAutoCommit(false);
+            try {
+                LocalDate rowDate = null;
+                try (PreparedStatement pstmt = conn.prepareStatement(table.lockDateSql())) {
+                    table.bindRowKey(pstmt, 1, activityId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (rs.next() && rs.getDate(1) != null) {
+                            rowDate = rs.getDate(1).toLocalDate();
+                        }
+                    }
+                }
+                change.apply(conn);
+                if (rowDate != null) {
+                    DailyRollups.recomputeDay(conn, table, rowDate);
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Ensures that an activity table exists.
+     * The CREATE TABLE statement is only issued the first time a table is seen by this process, and for
+     * partitioned shared tables again after a change of month, to add the partitions of the new months.
+     */
+    private void ensureTableExists(ActivityTable table) throws SQLException {
+        String tableName = table.getName();
+        if (PartitionManager.isEnabled() && PartitionManager.monthChanged()) {
+            for (ActivityType type : ActivityType.values()) {
+                TableRegistry.invalidate(ActivityTable.consolidatedName(type)); // Verified again with new partitions
+            }
+        }
+        if (TableRegistry.isVerified(tableName)) {
+            return;
+        }
+        TableCheckEvent event = new TableCheckEvent();
+        event.begin();
+        event.table = tableName;
+        try {
+            ENSURE_TABLE_TIMER.time(() -> {
+                try (Connection conn = dbHelper.getConnection();
+                     Statement stmt = conn.createStatement()) {
+                    stmt.execute(table.createSql());
+                    upgradeTable(conn, table);
+                    if (table.isShared() && PartitionManager.isEnabled()) {
+                        PartitionManager.addFuturePartitions(conn, tableName, LocalDate.now()); // Keep months ahead covered
+                    }
+                }
+                return null;
+            });
+            event.succeeded = true;
+        } finally {
+            event.commit();
+        }
+        TableRegistry.markVerified(tableName);
+    }
+
+    private static void ensureCheckpointTable(Connection conn) throws SQLException {
+        if (TableRegistry.isVerified(CHECKPOINT_TABLE)) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(CREATE_CHECKPOINT_SQL);
+        }
+        TableRegistry.markVerified(CHECKPOINT_TABLE);
+    }
+
+    private static Map<String, List<FitnessActivity>> groupByTable(List<? extends FitnessActivity> activities) {
+        Map<String, List<FitnessActivity>> byTable = new LinkedHashMap<>();
+        for (FitnessActivity activity : activities) {
+            byTable.computeIfAbsent(tableOf(activity).getName(), name -> new ArrayList<>()).add(activity);
+        }
+        return byTable;
+    }
+
+    private static ActivityTable tableOf(FitnessActivity activity) {
+        return ActivityTable.of(activity.getType(), activity.getUser());
+    }
+
+    /**
+     * Returns the activities whose event id is neither saved in their table nor repeated earlier in the list,
+     * and marks the others as duplicates. Activities without an event id are all kept.
+     * The activities share one table but, in a shared table, not necessarily one user.
+     */
+    private static List<FitnessActivity> withoutSavedEventIds(Connection conn, List<FitnessActivity> activities)
+            throws SQLException {
+        Map<Integer, Set<String>> savedByUser = new HashMap<>(); // "event id/date" keys per user id
+        Map<Integer, List<FitnessActivity>> byUser = new LinkedHashMap<>();
+        for (FitnessActivity activity : activities) {
+            if (activity.getEventId() != null) {
+                byUser.computeIfAbsent(activity.getUser().getId(), id -> new ArrayList<>()).add(activity);
+            }
+        }
+        for (Map.Entry<Integer, List<FitnessActivity>> entry : byUser.entrySet()) {
+            ActivityTable table = tableOf(entry.getValue().get(0));
+            Set<String> saved = new HashSet<>();
+            List<FitnessActivity> withIds = entry.getValue();
+            for (int from = 0; from < withIds.size(); from += EVENT_ID_LOOKUP_SIZE) {
+                List<FitnessActivity> chunk = withIds.subList(from, Math.min(withIds.size(), from + EVENT_ID_LOOKUP_SIZE));
+                try (PreparedStatement pstmt = conn.prepareStatement(table.existingEventIdsSql(chunk.size()))) {
+                    int index = table.bindUser(pstmt, 1);
+                    for (FitnessActivity activity : chunk) {
+                        pstmt.setString(index++, activity.getEventId());
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            java.sql.Date date = rs.getDate(2);
+                            saved.add(eventKey(rs.getString(1), date == null ? null : date.toLocalDate()));
+                        }
+                    }
+                }
+            }
+            savedByUser.put(entry.getKey(), saved);
+        }
+        List<FitnessActivity> kept = new ArrayList<>(activities.size());
+        for (FitnessActivity activity : activities) {
+            if (activity.getEventId() == null
+                    || savedByUser.get(activity.getUser().getId()).add(eventKey(activity.getEventId(), activity.getDate()))) {
+                kept.add(activity);
+            } else {
+                activity.markDuplicate();
+            }
+        }
+        return kept;
+    }
+
+    private static String eventKey(String eventId, LocalDate date) {
+        return eventId + "/" + date;
+    }
+
+    private static boolean hasEventIds(List<? extends FitnessActivity> activities) {
+        for (FitnessActivity activity : activities) {
+            if (activity.getEventId() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the columns and keys that tables created by earlier versions lack: the event id and, to shared
+     * tables, the (user_id, activity_id) key.
+     */
+    static void upgradeTable(Connection conn, ActivityTable table) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            if (!hasColumn(conn, table.getName(), "event_id")) {
+                stmt.execute(table.addEventIdSql());
+            }
+            if (!hasIndex(conn, table.getName(), table.eventKeyColumns())) {
+                stmt.execute(table.addEventKeySql()); // Checked on its own in case the process stopped in between
+            }
+            if (table.isShared() && !hasIndex(conn, table.getName(), "user_id", "activity_id")) {
+                stmt.execute(table.addUserActivityKeySql());
+            }
+        }
+    }
+
+    /**
+     * Returns true if a table has an index on exactly the given columns, in that order. Keys are unnamed,
+     * so they are recognized by their columns.
+     */
+    static boolean hasIndex(Connection conn, String tableName, String... columns) throws SQLException {
+        Map<String, List<String>> indexes = new HashMap<>(); // Columns of each index, in key order
+        try (ResultSet rs = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, tableName, false, true)) {
+            while (rs.next()) {
+                String index = rs.getString("INDEX_NAME");
+                String column = rs.getString("COLUMN_NAME");
+                if (index == null || column == null) {
+                    continue; // Table statistics
+                }
+                List<String> indexColumns = indexes.computeIfAbsent(index, name -> new ArrayList<>());
+                int position = rs.getShort("ORDINAL_POSITION");
+                while (indexColumns.size() < position) {
+                    indexColumns.add(null);
+                }
+                indexColumns.set(position - 1, column.toLowerCase());
+            }
+        }
+        return indexes.containsValue(List.of(columns));
+    }
+
+    /**
+     * Returns true if a table has a column, using the JDBC metadata so it works with any database.
+     */
+    static boolean hasColumn(Connection conn, String tableName, String column) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        String escape = metaData.getSearchStringEscape();
+        String pattern = escape == null ? tableName : tableName.replace("_", escape + "_"); // _ is a wildcard
+        try (ResultSet rs = metaData.getColumns(conn.getCatalog(), null, pattern, column)) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Returns true if a statement broke a unique key or another integrity constraint (SQLState class 23).
+     */
+    private static boolean isConstraintViolation(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException) {
+                String state = ((SQLException) t).getSQLState();
+                if (state != null && state.startsWith("23")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether an exception, or one of its causes, reports a missing table (SQLState 42S02).
+     */
+    private static boolean isMissingTable(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException && "42S02".equals(((SQLException) t).getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A change to an activity row, run inside the transaction opened by changeActivity().
+     */
+    @FunctionalInterface
+    private interface RowChange {
+        void apply(Connection conn) throws SQLException;
+    }
+}
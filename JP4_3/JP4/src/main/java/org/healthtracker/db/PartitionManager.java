@@ -0,0 +1,127 @@
+package org.healthtracker.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Monthly RANGE partitioning for the consolidated activity tables.
+ * Each month gets its own partition (p202405 holds May 2024), older rows go to p_old and rows
+ * beyond the last month go to pmax. Queries with a date predicate only touch the partitions of
+ * the requested months. Enabled with -Dhealthtracker.storage.partitionByMonth=true.
+ * New months are split off pmax when a table is first verified by the process and again after every
+ * change of month, see monthChanged(), so a long-running server keeps MONTHS_AHEAD months covered.
+ */
+public final class PartitionManager {
+    private static final boolean ENABLED = Boolean.getBoolean("healthtracker.storage.partitionByMonth");
+    private static final int MONTHS_BACK = Integer.getInteger("healthtracker.storage.partitionMonthsBack", 24);
+    private static final int MONTHS_AHEAD = Integer.getInteger("healthtracker.storage.partitionMonthsAhead", 3);
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    private static volatile long nextMonthMillis = startOfNextMonth(); // When monthChanged() next returns true
+
+    private PartitionManager() {
+    }
+
+    /**
+     * Returns true if the consolidated tables are partitioned by month.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Returns true once after each change of month, for the first caller that sees it; the caller then extends
+     * the tables with addFuturePartitions(). Cheap enough to be called on every insert.
+     */
+    public static boolean monthChanged() {
+        if (System.currentTimeMillis() < nextMonthMillis) {
+            return false;
+        }
+        synchronized (PartitionManager.class) {
+            if (System.currentTimeMillis() < nextMonthMillis) {
+                return false; // Another thread saw it first
+            }
+            nextMonthMillis = startOfNextMonth();
+            return true;
+        }
+    }
+
+    private static long startOfNextMonth() {
+        ZoneId zone = ZoneId.systemDefault(); // The zone LocalDate.now() uses
+        return YearMonth.now(zone).plusMonths(1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Returns the PARTITION BY clause used when creating a consolidated table,
+     * covering MONTHS_BACK months before and MONTHS_AHEAD months after the given day.
+     */
+    public static String partitionClause(LocalDate today) {
+        YearMonth first = YearMonth.from(today).minusMonths(MONTHS_BACK);
+        YearMonth last = YearMonth.from(today).plusMonths(MONTHS_AHEAD);
+        StringBuilder sql = new StringBuilder(" PARTITION BY RANGE (TO_DAYS(date)) (");
+        sql.append("PARTITION p_old VALUES LESS THAN (TO_DAYS('").append(first.atDay(1)).append("')), ");
+        for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+            sql.append(partitionDefinition(month)).append(", ");
+        }
+        return sql.append("PARTITION pmax VALUES LESS THAN MAXVALUE)").toString();
+    }
+
+    /**
+     * Splits pmax so that every month up to MONTHS_AHEAD months after today has its own partition.
+     * Called when a table is verified, and again after monthChanged().
+     * tableName The consolidated table to extend.
+     * return The number of partitions added.
+     * throws SQLException if the table cannot be reorganized.
+     */
+    public static int addFuturePartitions(Connection conn, String tableName, LocalDate today) throws SQLException {
+        YearMonth lastExisting = lastMonthlyPartition(conn, tableName);
+        if (lastExisting == null) {
+            return 0; // Table is not partitioned
+        }
+        YearMonth target = YearMonth.from(today).plusMonths(MONTHS_AHEAD);
+        if (!lastExisting.isBefore(target)) {
+            return 0;
+        }
+        StringBuilder sql = new StringBuilder("ALTER TABLE ").append(tableName)
+                .append(" REORGANIZE PARTITION pmax INTO (");
+        int added = 0;
+        for (YearMonth month = lastExisting.plusMonths(1); !month.isAfter(target); month = month.plusMonths(1)) {
+            sql.append(partitionDefinition(month)).append(", ");
+            added++;
+        }
+        sql.append("PARTITION pmax VALUES LESS THAN MAXVALUE)");
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql.toString());
+        }
+        return added;
+    }
+
+    /**
+     * Returns the month of the newest monthly partition, or null if the table is not partitioned.
+     */
+    private static YearMonth lastMonthlyPartition(Connection conn, String tableName) throws SQLException {
+        String sql = "SELECT MAX(PARTITION_NAME) FROM information_schema.PARTITIONS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME REGEXP '^p[0-9]{6}$'";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, tableName);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next() && rs.getString(1) != null) {
+                    return YearMonth.parse(rs.getString(1).substring(1), DateTimeFormatter.ofPattern("yyyyMM"));
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String partitionDefinition(YearMonth month) {
+        return "PARTITION " + PARTITION_NAME.format(month.atDay(1))
+                + " VALUES LESS THAN (TO_DAYS('" + month.plusMonths(1).atDay(1) + "'))";
+    }
+}
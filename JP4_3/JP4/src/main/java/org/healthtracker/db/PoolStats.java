@@ -0,0 +1,107 @@
+package org.healthtracker.db;
+
+/**
+ * Immutable snapshot of the connection pool statistics.
+ */
+public class PoolStats {
+    private final int totalConnections;     // Physical connections currently open
+    private final int idleConnections;      // Open connections waiting in the pool
+    private final int activeConnections;    // Connections currently borrowed
+    private final int maxSize;              // Configured maximum pool size
+    private final int waitingThreads;       // Threads blocked in borrow()
+    private final long borrowCount;         // Total successful borrows
+    private final long createdCount;        // Physical connections opened
+    private final long destroyedCount;      // Physical connections closed
+    private final long timeoutCount;        // Borrows that gave up waiting
+    private final long validationFailures;  // Idle connections found broken on borrow
+    private final long leakCount;           // Borrows reported as possible leaks
+    private final long averageWaitMicros;   // Average time spent waiting for a free slot
+    private final long statementHits;       // prepareStatement() calls served from the statement cache
+    private final long statementMisses;     // prepareStatement() calls that prepared a new statement
+
+    public PoolStats(int totalConnections, int idleConnections, int activeConnections, int maxSize,
+                     int waitingThreads, long borrowCount, long createdCount, long destroyedCount,
+                     long timeoutCount, long validationFailures, long leakCount, long averageWaitMicros,
+                     long statementHits, long statementMisses) {
+        this.totalConnections = totalConnections;
+        this.idleConnections = idleConnections;
+        this.activeConnections = activeConnections;
+        this.maxSize = maxSize;
+        this.waitingThreads = waitingThreads;
+        this.borrowCount = borrowCount;
+        this.createdCount = createdCount;
+        this.destroyedCount = destroyedCount;
+        this.timeoutCount = timeoutCount;
+        this.validationFailures = validationFailures;
+        this.leakCount = leakCount;
+        this.averageWaitMicros = averageWaitMicros;
+        this.statementHits = statementHits;
+        this.statementMisses = statementMisses;
+    }
+
+    public int getTotalConnections() {
+        return totalConnections;
+    }
+
+    public int getIdleConnections() {
+        return idleConnections;
+    }
+
+    public int getActiveConnections() {
+        return activeConnections;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getWaitingThreads() {
+        return waitingThreads;
+    }
+
+    public long getBorrowCount() {
+        return borrowCount;
+    }
+
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    public long getDestroyedCount() {
+        return destroyedCount;
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    public long getValidationFailures() {
+        return validationFailures;
+    }
+
+    public long getLeakCount() {
+        return leakCount;
+    }
+
+    public long getAverageWaitMicros() {
+        return averageWaitMicros;
+    }
+
+    public long getStatementHits() {
+        return statementHits;
+    }
+
+    public long getStatementMisses() {
+        return statementMisses;
+    }
+
+    @Override
+    public String toString() {
+        return "total=" + totalConnections + ", idle=" + idleConnections + ", active=" + activeConnections
+                + ", max=" + maxSize + ", waiting=" + waitingThreads + ", borrows=" + borrowCount
+                + ", created=" + createdCount + ", destroyed=" + destroyedCount + ", timeouts=" + timeoutCount
+                + ", validationFailures=" + validationFailures + ", leaks=" + leakCount
+                + ", avgWait=" + averageWaitMicros + "us, statementHits=" + statementHits
+                + ", statementMisses=" + statementMisses;
+    }
+}
@@ -0,0 +1,20 @@
+package org.healthtracker.db;
+
+/**
+ * Receives the progress of a reset started with DatabaseHelper.resetUserData().
+ * Called on the thread that runs the reset, so GUI listeners have to hand the update to the event dispatch thread.
+ */
+@FunctionalInterface
+public interface ResetProgress {
+
+    /**
+     * Ignores all progress updates.
+     */
+    ResetProgress NONE = (fraction, step) -> { };
+
+    /**
+     * fraction Share of the reset done so far, between 0 and 1.
+     * step Description of what the reset is doing, e.g. the table being cleared.
+     */
+    void update(double fraction, String step);
+}
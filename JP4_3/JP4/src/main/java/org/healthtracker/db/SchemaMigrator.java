@@ -0,0 +1,185 @@
+package org.healthtracker.db;
+
+import org.healthtracker.tracking.ActivityTable;
+import org.healthtracker.tracking.ActivityType;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One-shot migration from the per-user table layout to the consolidated layout.
+ * Every per-user table (e.g. diet_1_alice) is copied into the shared table of its type
+ * (e.g. activity_diet) with a single INSERT ... SELECT, so rows are streamed inside the
+ * database server and never held in memory here. Each copied table is renamed with a
+ * migrated_ prefix in the same run so that running the migrator again skips it. The copy
+ * also records the table in schema_migrations in the same transaction, so a table whose
+ * rename or drop did not happen, e.g. after a crash, is retired without being copied twice.
+ * Usage: java org.healthtracker.db.SchemaMigrator [--drop-source]
+ */
+public class SchemaMigrator {
+    private static final String MIGRATED_PREFIX = "migrated_";
+    private static final String MARKER_TABLE = "schema_migrations"; // Per-user tables already copied
+
+    private final DatabaseHelper dbHelper;
+    private final boolean dropSource; // Drop copied tables instead of renaming them
+
+    public SchemaMigrator(DatabaseHelper dbHelper, boolean dropSource) {
+        this.dbHelper = dbHelper;
+        this.dropSource = dropSource;
+    }
+
+    /**
+     * Migrates all per-user tables of every activity type.
+     * return The number of rows copied.
+     * throws SQLException if a table cannot be migrated; tables migrated before the failure stay migrated.
+     */
+    public long migrate() throws SQLException {
+        long rows = 0;
+        for (ActivityType type : ActivityType.values()) {
+            rows += migrate(type);
+        }
+        return rows;
+    }
+
+    /**
+     * Migrates all per-user tables of one activity type.
+     * return The number of rows copied.
+     */
+    public long migrate(ActivityType type) throws SQLException {
+        long rows = 0;
+        try (Connection conn = dbHelper.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                ActivityTable table = ActivityTable.consolidated(type, 0);
+                stmt.execute(table.createSql());
+                MySqlActivityStore.upgradeTable(conn, table);
+                stmt.execute("CREATE TABLE IF NOT EXISTS " + MARKER_TABLE + " (source_table VARCHAR(64) PRIMARY KEY, "
+                        + "rows_copied BIGINT NOT NULL, migrated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+            }
+            for (String tableName : findPerUserTables(conn, type)) {
+                int userId = parseUserId(type, tableName);
+                if (userId < 0) {
+                    continue; // Not a per-user table of this type, e.g. diet_summary
+                }
+                long copied = copyTable(conn, type, tableName, userId);
+                rows += copied;
+                System.out.println("Migrated " + copied + " rows from " + tableName);
+            }
+        }
+        TableRegistry.invalidateAll();
+        return rows;
+    }
+
+    /**
+     * Copies one per-user table into the shared table and retires it. Event ids are copied if the table has them.
+     * A table already recorded in the marker table is only retired.
+     */
+    private long copyTable(Connection conn, ActivityType type, String tableName, int userId) throws SQLException {
+        if (isCopied(conn, tableName)) {
+            System.out.println(tableName + " was already copied, retiring it");
+            retire(conn, tableName);
+            return 0;
+        }
+        String columns = String.join(", ", type.getColumns());
+        if (MySqlActivityStore.hasColumn(conn, tableName, "event_id")) {
+            columns += ", event_id";
+        }
+        String sql = "INSERT INTO " + ActivityTable.consolidatedName(type) + " (user_id, date, " + columns + ") "
+                + "SELECT ?, COALESCE(date, CURRENT_DATE), " + columns + " FROM " + tableName + " ORDER BY activity_id";
+        long copied;
+        conn.setAutoCommit(false);
+        try (PreparedStatement pstmt = conn.prepareStatement(sql);
+             PreparedStatement marker = conn.prepareStatement(
+                     "INSERT INTO " + MARKER_TABLE + " (source_table, rows_copied) VALUES (?, ?)")) {
+            pstmt.setInt(1, userId);
+            copied = pstmt.executeUpdate();
+            marker.setString(1, tableName);
+            marker.setLong(2, copied);
+            marker.executeUpdate();
+            conn.commit(); // The rows and the marker, or neither
+        } catch (SQLException e) {
+            conn.rollback();
+            throw new SQLException("Error migrating " + tableName + ": " + e.getMessage(), e);
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        retire(conn, tableName);
+        return copied;
+    }
+
+    private static boolean isCopied(Connection conn, String tableName) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT 1 FROM " + MARKER_TABLE + " WHERE source_table = ?")) {
+            pstmt.setString(1, tableName);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Renames or drops a per-user table whose rows are in the shared table.
+     */
+    private void retire(Connection conn, String tableName) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(dropSource
+                    ? "DROP TABLE " + tableName
+                    : "RENAME TABLE " + tableName + " TO " + MIGRATED_PREFIX + tableName);
+        }
+    }
+
+    /**
+     * Lists the tables whose name starts with the type prefix, e.g. diet_.
+     */
+    private List<String> findPerUserTables(Connection conn, ActivityType type) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        DatabaseMetaData metaData = conn.getMetaData();
+        String escape = metaData.getSearchStringEscape();
+        String pattern = type.getTablePrefix().replace("_", escape + "_") + escape + "_%";
+        try (ResultSet rs = metaData.getTables(conn.getCatalog(), null, pattern, new String[]{"TABLE"})) {
+            while (rs.next()) {
+                tables.add(rs.getString("TABLE_NAME"));
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Extracts the user id from a table name of the form prefix_id_username.
+     * return The user id, or -1 if the name does not have that form.
+     */
+    private static int parseUserId(ActivityType type, String tableName) {
+        String rest = tableName.substring(type.getTablePrefix().length() + 1);
+        int separator = rest.indexOf('_');
+        if (separator <= 0) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(rest.substring(0, separator));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Runs the migration against the configured database.
+     */
+    public static void main(String[] args) {
+        boolean dropSource = args.length > 0 && "--drop-source".equals(args[0]);
+        try {
+            long rows = new SchemaMigrator(new DatabaseHelper(), dropSource).migrate();
+            System.out.println("Migration complete: " + rows + " rows copied. Start the application with "
+                    + "-Dhealthtracker.storage.layout=consolidated to use the new tables.");
+        } catch (SQLException e) {
+            System.err.println("Migration failed: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            DatabaseHelper.shutdownPool();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package org.healthtracker.db;
+
+/**
+ * How activity rows are laid out in the database.
+ */
+public enum StorageMode {
+    PER_USER_TABLES, // One table per user and activity type, e.g. diet_1_alice
+    CONSOLIDATED     // One table per activity type shared by all users, e.g. activity_diet, keyed by (user_id, date, activity_id)
+}
@@ -0,0 +1,9 @@
+package org.healthtracker.db;
+
+/**
+ * Where tracked activities are stored.
+ */
+public enum StoreBackend {
+    MYSQL, // Tables in the MySQL database, shared by every installation that connects to it
+    LOCAL  // An append-only file on the local disk, for single-user installs without a database server
+}
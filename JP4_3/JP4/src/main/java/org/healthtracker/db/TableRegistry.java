@@ -0,0 +1,76 @@
+package org.healthtracker.db;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide registry of activity tables that are known to exist.
+ * Lets the tracking classes skip the CREATE TABLE IF NOT EXISTS statement once a table
+ * has been verified, so the steady-state insert path is a single INSERT.
+ */
+public final class TableRegistry {
+    private static final Set<String> verifiedTables = ConcurrentHashMap.newKeySet();
+    private static final LongAdder hits = new LongAdder();   // Lookups answered from the registry
+    private static final LongAdder misses = new LongAdder(); // Lookups that had to go to the database
+
+    private TableRegistry() {
+    }
+
+    /**
+     * Checks whether a table has already been verified, counting the lookup as a hit or a miss.
+     * tableName The table name, e.g. diet_1_alice.
+     * return true if the table is known to exist.
+     */
+    public static boolean isVerified(String tableName) {
+        if (verifiedTables.contains(tableName)) {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Records that a table exists.
+     */
+    public static void markVerified(String tableName) {
+        verifiedTables.add(tableName);
+    }
+
+    /**
+     * Forgets a single table, e.g. after an insert failed because the table was missing.
+     */
+    public static void invalidate(String tableName) {
+        verifiedTables.remove(tableName);
+    }
+
+    /**
+     * Forgets every table belonging to a user.
+     * userId The id of the user.
+     * username The username of the user.
+     */
+    public static void invalidateUser(int userId, String username) {
+        String suffix = "_" + userId + "_" + username;
+        verifiedTables.removeIf(tableName -> tableName.endsWith(suffix));
+    }
+
+    /**
+     * Forgets every table, e.g. after a schema change.
+     */
+    public static void invalidateAll() {
+        verifiedTables.clear();
+    }
+
+    public static long getHitCount() {
+        return hits.sum();
+    }
+
+    public static long getMissCount() {
+        return misses.sum();
+    }
+
+    public static int size() {
+        return verifiedTables.size();
+    }
+}
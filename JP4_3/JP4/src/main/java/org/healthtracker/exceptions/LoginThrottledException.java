@@ -0,0 +1,20 @@
+package org.healthtracker.exceptions;
+
+import java.sql.SQLTransientException;
+/**
+ * Custom exception class for login attempts rejected by the LoginThrottle.
+ * This exception is thrown before the database is queried, when too many attempts were made for a username
+ * or from a source. It is a SQLTransientException, so callers treat it like a temporarily busy database.
+ */
+public class LoginThrottledException extends SQLTransientException {
+    private final long retryAfterMillis; // Time until the next attempt would be allowed
+
+    public LoginThrottledException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
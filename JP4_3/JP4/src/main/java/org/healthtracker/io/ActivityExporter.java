@@ -0,0 +1,140 @@
+package org.healthtracker.io;
+
+import org.healthtracker.db.ActivityStore;
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.user.User;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes a user's full activity history to files, one per activity type, e.g. for a backup or another app.
+ * Each type is streamed from the store with ActivityStore.forEach() straight into its writer, so no list of
+ * rows is ever built and memory use does not depend on the length of the history. The types are exported
+ * concurrently, each on its own thread and connection, so a large export is limited by the disk and the
+ * database rather than by one thread. Each file is written under a temporary name and renamed once complete.
+ * Settings, overridable with -Dhealthtracker.export.* system properties.
+ */
+public class ActivityExporter {
+    private static final int PARALLELISM = Integer.getInteger("healthtracker.export.parallelism", ActivityType.values().length);
+
+    private final DatabaseHelper dbHelper;
+    private final int parallelism; // Types exported at the same time
+
+    public ActivityExporter(DatabaseHelper dbHelper) {
+        this(dbHelper, PARALLELISM);
+    }
+
+    public ActivityExporter(DatabaseHelper dbHelper, int parallelism) {
+        this.dbHelper = dbHelper;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Exports every activity type of a user into a directory, as files named after the type and the format,
+     * e.g. steps.csv.gz. Existing files of the same name are replaced.
+     * throws IOException if a file cannot be written; files of the other types may already be complete.
+     * throws SQLException if the activities cannot be read.
+     */
+    public ExportReport exportAll(User user, Path directory, ExportFormat format) throws IOException, SQLException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+        ActivityStore store = dbHelper.getActivityStore();
+        ActivityType[] types = ActivityType.values();
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, types.length), r -> {
+            Thread t = new Thread(r, "healthtracker-export-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        Map<ActivityType, Path> files = new EnumMap<>(ActivityType.class);
+        Map<ActivityType, Long> rows = new EnumMap<>(ActivityType.class);
+        try {
+            List<Future<Long>> results = new ArrayList<>(types.length);
+            for (ActivityType type : types) {
+                Path file = directory.resolve(type.getTablePrefix() + format.getExtension());
+                files.put(type, file);
+                results.add(executor.submit(() -> exportFile(store, type, user, file, format)));
+            }
+            for (int i = 0; i < types.length; i++) {
+                rows.put(types[i], await(results.get(i)));
+            }
+        } finally {
+            executor.shutdownNow(); // Stops the other types if one failed
+        }
+        long bytes = 0;
+        for (Path file : files.values()) {
+            bytes += Files.size(file);
+        }
+        ExportReport report = new ExportReport(files, rows, bytes, System.nanoTime() - start);
+        System.out.println("Export for user " + user.getId() + ": " + report);
+        return report;
+    }
+
+    /**
+     * Writes the user's activities of one type to a stream, which is closed afterwards.
+     * return The number of activities written.
+     */
+    public long export(User user, ActivityType type, OutputStream out, ExportFormat format) throws IOException, SQLException {
+        return write(dbHelper.getActivityStore(), type, user, out, format);
+    }
+
+    private static long exportFile(ActivityStore store, ActivityType type, User user, Path file, ExportFormat format)
+            throws IOException, SQLException {
+        Path partial = file.resolveSibling(file.getFileName() + ".part");
+        try {
+            long written = write(store, type, user, Files.newOutputStream(partial), format);
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return written;
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    private static long write(ActivityStore store, ActivityType type, User user, OutputStream out, ExportFormat format)
+            throws IOException, SQLException {
+        long[] written = new long[1];
+        try (ActivityWriter writer = format.open(type, out)) {
+            store.forEach(type, user, record -> {
+                writer.write(record);
+                written[0]++;
+            });
+        }
+        return written[0];
+    }
+
+    /**
+     * Waits for the export of one type, rethrowing its failure.
+     */
+    private static long await(Future<Long> result) throws IOException, SQLException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while exporting", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new IOException("Export failed: " + cause.getMessage(), cause);
+        }
+    }
+}
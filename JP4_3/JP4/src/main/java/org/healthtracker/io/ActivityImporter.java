@@ -0,0 +1,229 @@
+package org.healthtracker.io;
+
+import org.healthtracker.analytics.CalorieBalance;
+import org.healthtracker.analytics.MoodSleepStats;
+import org.healthtracker.cache.ActivityCache;
+import org.healthtracker.db.ActivityStore;
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.exceptions.InvalidNumericValueException;
+import org.healthtracker.exceptions.InvalidTextValueException;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.tracking.PendingWrites;
+import org.healthtracker.user.User;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loads a user's activity history from a CSV or JSON file, e.g. exported by a wearable or another app.
+ * The file is parsed record by record on the calling thread; valid records are grouped per activity type
+ * into batches that are saved by a small pool of threads, each batch with one ActivityStore.insert() call
+ * (one JDBC batch and one rollup upsert per day). At most two batches per thread wait to be saved, so
+ * memory stays bounded whatever the size of the file. Invalid records are skipped and reported in the
+ * ImportReport; the import stops at the first batch the store cannot save. Records with an event_id that
+ * was saved before are skipped by the store and counted as duplicates, so importing a file twice is harmless.
+ * See ActivityRowMapper for the expected fields. Settings, overridable with -Dhealthtracker.import.* system properties.
+ */
+public class ActivityImporter {
+    private static final int BATCH_SIZE = Integer.getInteger("healthtracker.import.batchSize", 1_000);
+    private static final int PARALLELISM = Integer.getInteger("healthtracker.import.parallelism", 2);
+    private static final int MAX_REPORTED_REJECTIONS = 100;
+
+    private final DatabaseHelper dbHelper;
+    private final int batchSize;   // Activities saved per insert() call
+    private final int parallelism; // Threads saving batches; each holds a pooled connection while it saves
+
+    public ActivityImporter(DatabaseHelper dbHelper) {
+        this(dbHelper, BATCH_SIZE, PARALLELISM);
+    }
+
+    public ActivityImporter(DatabaseHelper dbHelper, int batchSize, int parallelism) {
+        this.dbHelper = dbHelper;
+        this.batchSize = Math.max(1, batchSize);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Imports a UTF-8 file, choosing the format from its name (see ImportFormat.of()).
+     * Files ending in .gz, such as CSV_GZIP exports, are decompressed on the fly.
+     * progress Receives the number of records read so far, every batchSize records, or null.
+     * throws IOException if the file cannot be read or is malformed; batches already saved are kept.
+     * throws SQLException if a batch cannot be saved; batches saved before it are kept.
+     */
+    public ImportReport importFile(User user, Path file, LongConsumer progress) throws IOException, SQLException {
+        InputStream in = Files.newInputStream(file);
+        if (file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".gz")) {
+            try {
+                in = new GZIPInputStream(in, 64 * 1024);
+            } catch (IOException e) {
+                in.close(); // Not a GZIP file
+                throw e;
+            }
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return importFrom(user, reader, ImportFormat.of(file), progress);
+        }
+    }
+
+    /**
+     * Imports records in the given format from a reader, which is not closed.
+     */
+    public ImportReport importFrom(User user, Reader reader, ImportFormat format, LongConsumer progress)
+            throws IOException, SQLException {
+        long start = System.nanoTime();
+        RecordReader records = format.open(reader);
+        Loader loader = new Loader(user, dbHelper.getActivityStore());
+        Map<ActivityType, List<FitnessActivity>> pending = new EnumMap<>(ActivityType.class); // Batch being filled per type
+        long rowsRead = 0;
+        long rowsRejected = 0;
+        List<String> rejections = new ArrayList<>();
+        try {
+            Map<String, String> record;
+            while (!loader.hasFailed() && (record = records.next()) != null) {
+                rowsRead++;
+                try {
+                    FitnessActivity activity = ActivityRowMapper.map(record, user);
+                    List<FitnessActivity> batch = pending.computeIfAbsent(activity.getType(), type -> new ArrayList<>(batchSize));
+                    batch.add(activity);
+                    if (batch.size() == batchSize) {
+                        loader.submit(batch);
+                        pending.remove(activity.getType());
+                    }
+                } catch (InvalidTextValueException | InvalidNumericValueException e) {
+                    rowsRejected++;
+                    if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                        rejections.add("line " + records.getLine() + ": " + e.getMessage());
+                    }
+                }
+                if (progress != null && rowsRead % batchSize == 0) {
+                    progress.accept(rowsRead);
+                }
+            }
+            for (List<FitnessActivity> batch : pending.values()) {
+                if (!loader.hasFailed()) {
+                    loader.submit(batch);
+                }
+            }
+        } finally {
+            loader.finish();
+        }
+        loader.throwIfFailed();
+        if (progress != null) {
+            progress.accept(rowsRead);
+        }
+        ImportReport report = new ImportReport(rowsRead, loader.imported.get(), rowsRejected, loader.duplicates.get(),
+                System.nanoTime() - start, rejections);
+        System.out.println("Import for user " + user.getId() + ": " + report);
+        return report;
+    }
+
+    /**
+     * Saves batches of one import on its own threads, with a bounded number of batches waiting.
+     */
+    private final class Loader {
+        private final User user;
+        private final ActivityStore store;
+        private final ExecutorService executor;
+        private final Semaphore slots = new Semaphore(parallelism * 2); // Batches submitted and not yet saved
+        private final AtomicLong imported = new AtomicLong();
+        private final AtomicLong duplicates = new AtomicLong();
+        private final AtomicReference<SQLException> failure = new AtomicReference<>();
+
+        Loader(User user, ActivityStore store) {
+            this.user = user;
+            this.store = store;
+            AtomicInteger count = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(parallelism, r -> {
+                Thread t = new Thread(r, "healthtracker-import-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        /**
+         * Hands a batch to the saving threads, waiting while too many batches are queued.
+         */
+        void submit(List<FitnessActivity> batch) throws SQLException {
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while importing", e);
+            }
+            executor.execute(() -> {
+                try {
+                    save(batch);
+                } finally {
+                    slots.release();
+                }
+            });
+        }
+
+        private void save(List<FitnessActivity> batch) {
+            if (failure.get() != null) {
+                return;
+            }
+            if (!PendingWrites.begin(user.getId())) {
+                failure.compareAndSet(null, new SQLException("Cannot import while the user's data is being reset"));
+                return;
+            }
+            try {
+                store.insert(batch);
+                long skipped = batch.stream().filter(FitnessActivity::isDuplicate).count();
+                imported.addAndGet(batch.size() - skipped);
+                duplicates.addAndGet(skipped);
+            } catch (SQLException e) {
+                failure.compareAndSet(null, e);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, new SQLException("Error saving imported activities: " + e.getMessage(), e));
+            } finally {
+                PendingWrites.end(user.getId());
+            }
+        }
+
+        boolean hasFailed() {
+            return failure.get() != null;
+        }
+
+        /**
+         * Waits for the submitted batches and stops the threads. The cached activities and analytics of the user
+         * are dropped, as reloading them is cheaper than applying a whole history one activity at a time.
+         */
+        void finish() {
+            slots.acquireUninterruptibly(parallelism * 2);
+            executor.shutdown();
+            if (imported.get() > 0) {
+                ActivityCache.invalidate(user.getId());
+                CalorieBalance.invalidate(user.getId());
+                MoodSleepStats.invalidate(user.getId());
+            }
+        }
+
+        void throwIfFailed() throws SQLException {
+            SQLException e = failure.get();
+            if (e != null) {
+                throw new SQLException("Import stopped after " + imported.get() + " rows: " + e.getMessage(), e);
+            }
+        }
+    }
+}
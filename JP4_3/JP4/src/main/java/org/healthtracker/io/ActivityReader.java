@@ -0,0 +1,49 @@
+package org.healthtracker.io;
+
+import org.healthtracker.exceptions.InvalidNumericValueException;
+import org.healthtracker.exceptions.InvalidTextValueException;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.user.User;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+
+/**
+ * Reads activities of one user from CSV or JSON text, one at a time, with the same fields and validation
+ * as the ActivityImporter. Used where records arrive from elsewhere than a file, e.g. the IngestServer.
+ */
+public final class ActivityReader implements Closeable {
+    private final RecordReader records;
+    private final User user;
+
+    public ActivityReader(ImportFormat format, Reader reader, User user) {
+        this.records = format.open(reader);
+        this.user = user;
+    }
+
+    /**
+     * Returns the next activity, or null at the end of the input.
+     * An invalid record throws and is skipped, so reading can continue with the next one.
+     * throws IOException if the input cannot be read or is malformed at this point.
+     * throws InvalidTextValueException if the type, the date or a text value of the record is invalid.
+     * throws InvalidNumericValueException if a number of the record is missing or out of range.
+     */
+    public FitnessActivity next() throws IOException, InvalidTextValueException, InvalidNumericValueException {
+        Map<String, String> record = records.next();
+        return record == null ? null : ActivityRowMapper.map(record, user);
+    }
+
+    /**
+     * Returns the line the last record started on, for error messages.
+     */
+    public long getLine() {
+        return records.getLine();
+    }
+
+    @Override
+    public void close() throws IOException {
+        records.close();
+    }
+}
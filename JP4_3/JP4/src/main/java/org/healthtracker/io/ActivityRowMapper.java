@@ -0,0 +1,167 @@
+package org.healthtracker.io;
+
+import org.healthtracker.exceptions.InvalidNumericValueException;
+import org.healthtracker.exceptions.InvalidTextValueException;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.user.User;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Validates an imported record and turns it into an activity.
+ * A record names its activity type in the "type" field (e.g. steps, diet, mental_health or "Mental Health"),
+ * the day in "date" (yyyy-MM-dd) and the values in the fields named after the type's columns:
+ * food_item and calories; duration and calories_burned; mood and sleep_hours; steps; liters.
+ * An optional "event_id" (1 to 64 characters) identifies the reading at its source; a record whose event id
+ * was saved before for the same user, type and day is skipped as a duplicate.
+ */
+final class ActivityRowMapper {
+    private static final int MAX_TEXT_LENGTH = 255; // VARCHAR(255) of food_item
+
+    private ActivityRowMapper() {
+    }
+
+    /**
+     * Returns the activity described by a record, dated as the record says.
+     * throws InvalidTextValueException if the type, the date or a text value is missing or invalid.
+     * throws InvalidNumericValueException if a number is missing or out of range.
+     */
+    static FitnessActivity map(Map<String, String> record, User user)
+            throws InvalidTextValueException, InvalidNumericValueException {
+        ActivityType type = parseType(record.get("type"));
+        LocalDate date = parseDate(record.get("date"));
+        Object[] values;
+        switch (type) {
+            case DIET:
+                values = new Object[]{text(record, "food_item"), integer(record, "calories", 0, Integer.MAX_VALUE)};
+                break;
+            case EXERCISE:
+                values = new Object[]{integer(record, "duration", 0, 24 * 60),
+                        integer(record, "calories_burned", 0, Integer.MAX_VALUE)};
+                break;
+            case MENTAL_HEALTH:
+                values = new Object[]{integer(record, "mood", 1, 5), decimal(record, "sleep_hours", 0, 24)};
+                break;
+            case STEPS:
+                values = new Object[]{integer(record, "steps", 0, Integer.MAX_VALUE)};
+                break;
+            case WATER_INTAKE:
+                values = new Object[]{decimal(record, "liters", 0, 100)};
+                break;
+            default:
+                throw new InvalidTextValueException("Unknown activity type: " + type);
+        }
+        FitnessActivity activity = FitnessActivity.restore(type, user, date, values);
+        activity.setEventId(eventId(record.get("event_id")));
+        return activity;
+    }
+
+    private static String eventId(String value) throws InvalidTextValueException {
+        if (isBlank(value)) {
+            return null;
+        }
+        value = value.trim();
+        if (value.length() > FitnessActivity.MAX_EVENT_ID_LENGTH) {
+            throw new InvalidTextValueException("Event id must be at most " + FitnessActivity.MAX_EVENT_ID_LENGTH
+                    + " characters.");
+        }
+        return value;
+    }
+
+    /**
+     * Accepts the enum name, the table prefix or the category shown in the GUI, in any case.
+     */
+    private static ActivityType parseType(String value) throws InvalidTextValueException {
+        if (isBlank(value)) {
+            throw new InvalidTextValueException("Type is missing.");
+        }
+        String name = value.trim();
+        for (ActivityType type : ActivityType.values()) {
+            if (type.name().equalsIgnoreCase(name) || type.getTablePrefix().equalsIgnoreCase(name)
+                    || type.getCategory().equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        throw new InvalidTextValueException("Unknown activity type: " + name);
+    }
+
+    private static LocalDate parseDate(String value) throws InvalidTextValueException {
+        if (isBlank(value)) {
+            throw new InvalidTextValueException("Date is missing.");
+        }
+        LocalDate date;
+        try {
+            date = LocalDate.parse(value.trim());
+        } catch (DateTimeParseException e) {
+            throw new InvalidTextValueException("Date must be formatted as yyyy-MM-dd: " + value.trim());
+        }
+        if (date.isAfter(LocalDate.now())) {
+            throw new InvalidTextValueException("Date must not be in the future: " + date);
+        }
+        return date;
+    }
+
+    private static String text(Map<String, String> record, String field) throws InvalidTextValueException {
+        String value = record.get(field);
+        if (isBlank(value)) {
+            throw new InvalidTextValueException(label(field) + " is missing.");
+        }
+        value = value.trim();
+        if (value.length() > MAX_TEXT_LENGTH) {
+            throw new InvalidTextValueException(label(field) + " must be at most " + MAX_TEXT_LENGTH + " characters.");
+        }
+        return value;
+    }
+
+    private static int integer(Map<String, String> record, String field, int min, int max)
+            throws InvalidNumericValueException {
+        String value = record.get(field);
+        if (isBlank(value)) {
+            throw new InvalidNumericValueException(label(field) + " is missing.");
+        }
+        int number;
+        try {
+            number = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new InvalidNumericValueException(label(field) + " must be a valid integer.");
+        }
+        if (number < min || number > max) {
+            throw new InvalidNumericValueException(label(field) + " must be between " + min + " and " + max + ".");
+        }
+        return number;
+    }
+
+    private static double decimal(Map<String, String> record, String field, double min, double max)
+            throws InvalidNumericValueException {
+        String value = record.get(field);
+        if (isBlank(value)) {
+            throw new InvalidNumericValueException(label(field) + " is missing.");
+        }
+        double number;
+        try {
+            number = Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new InvalidNumericValueException(label(field) + " must be a valid number.");
+        }
+        if (!(number >= min && number <= max)) { // Also rejects NaN
+            throw new InvalidNumericValueException(label(field) + " must be between " + min + " and " + max + ".");
+        }
+        return number;
+    }
+
+    /**
+     * Turns a column name into the label used in messages, e.g. sleep_hours into "Sleep hours".
+     */
+    private static String label(String field) {
+        String words = field.replace('_', ' ');
+        return words.substring(0, 1).toUpperCase(Locale.ROOT) + words.substring(1);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
@@ -0,0 +1,15 @@
+package org.healthtracker.io;
+
+import org.healthtracker.tracking.ActivityRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes the activities of one type to an export file, one at a time.
+ * close() completes the file and closes the underlying stream.
+ */
+interface ActivityWriter extends Closeable {
+
+    void write(ActivityRecord record) throws IOException;
+}
@@ -0,0 +1,74 @@
+package org.healthtracker.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Buffered character input for the import parsers, with one character of lookahead and line counting.
+ * Reads the underlying Reader in large blocks, so parsing a character costs an array access and not
+ * a synchronized Reader.read() call.
+ */
+final class CharSource implements Closeable {
+    static final int EOF = -1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private long line = 1; // Line of the next character
+
+    CharSource(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Returns the next character without consuming it, or EOF.
+     */
+    int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Consumes and returns the next character, or EOF.
+     */
+    int read() throws IOException {
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+        char c = buffer[position++];
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+
+    /**
+     * Returns the line number of the next character, starting at 1.
+     */
+    long getLine() {
+        return line;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        if (read < 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+}
@@ -0,0 +1,238 @@
+package org.healthtracker.io;
+
+import org.healthtracker.tracking.ActivityRecord;
+import org.healthtracker.tracking.ActivityType;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Writes activities in a column-oriented file, in the spirit of Parquet: rows are collected into row groups
+ * of ROW_GROUP_ROWS rows, and each row group is written column by column, every column chunk compressed
+ * on its own. Values of one column look alike, so they encode and compress far better than rows,
+ * and a reader interested in one column can skip the others. Only one row group is held in memory.
+ *
+ * Layout, big-endian:
+ * file      "HTC1", row groups, footer, int footer length, "HTC1"
+ * row group for each column: int encoded length, int compressed length, deflated chunk
+ * chunk     null bitmap of (rows + 7) / 8 bytes (bit set = null), then the values of the non-null rows:
+ *           ID and DATE as zigzag varint deltas from the previous value, INT as zigzag varints,
+ *           DOUBLE as 8-byte IEEE 754, TEXT as a varint dictionary size, the dictionary entries
+ *           (varint byte length and UTF-8 bytes) and a varint dictionary code per value
+ * footer    UTF activity type, short column count, per column UTF name and byte kind,
+ *           int row group count, per row group long file offset and int row count, long total rows
+ */
+final class ColumnarActivityWriter implements ActivityWriter {
+    private static final byte[] MAGIC = {'H', 'T', 'C', '1'};
+    private static final int ROW_GROUP_ROWS = Integer.getInteger("healthtracker.export.rowGroupRows", 16_384);
+
+    // Column kinds
+    static final byte ID = 0;
+    static final byte DATE = 1;
+    static final byte INT = 2;
+    static final byte DOUBLE = 3;
+    static final byte TEXT = 4;
+
+    private final ActivityType type;
+    private final DataOutputStream out;
+    private final String[] names;  // activity_id, date and the value columns
+    private final byte[] kinds;
+    private final Deflater deflater = new Deflater();
+    private final ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+    private final byte[] deflateBuffer = new byte[64 * 1024];
+
+    // The current row group, one array per column
+    private final Object[][] values;
+    private int rows;
+
+    private final List<long[]> rowGroups = new ArrayList<>(); // File offset and row count of each written group
+    private long position;                                    // Bytes written so far; DataOutputStream.size() stops at 2 GB
+    private long totalRows;
+
+    ColumnarActivityWriter(ActivityType type, OutputStream out) throws IOException {
+        this.type = type;
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        String[] columns = type.getColumns();
+        String[] columnTypes = type.getColumnTypes();
+        names = new String[columns.length + 2];
+        kinds = new byte[names.length];
+        names[0] = "activity_id";
+        kinds[0] = ID;
+        names[1] = "date";
+        kinds[1] = DATE;
+        for (int i = 0; i < columns.length; i++) {
+            names[i + 2] = columns[i];
+            kinds[i + 2] = columnTypes[i].equals("INT") ? INT : columnTypes[i].equals("DOUBLE") ? DOUBLE : TEXT;
+        }
+        values = new Object[names.length][ROW_GROUP_ROWS];
+        this.out.write(MAGIC);
+        position = MAGIC.length;
+    }
+
+    @Override
+    public void write(ActivityRecord record) throws IOException {
+        values[0][rows] = record.getActivityId();
+        values[1][rows] = record.getDate() == null ? null : record.getDate().toEpochDay();
+        for (int i = 2; i < names.length; i++) {
+            values[i][rows] = record.getValue(i - 2);
+        }
+        if (++rows == ROW_GROUP_ROWS) {
+            writeRowGroup();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rows > 0) {
+                writeRowGroup();
+            }
+            ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+            DataOutputStream footer = new DataOutputStream(footerBytes);
+            footer.writeUTF(type.name());
+            footer.writeShort(names.length);
+            for (int i = 0; i < names.length; i++) {
+                footer.writeUTF(names[i]);
+                footer.writeByte(kinds[i]);
+            }
+            footer.writeInt(rowGroups.size());
+            for (long[] group : rowGroups) {
+                footer.writeLong(group[0]);
+                footer.writeInt((int) group[1]);
+            }
+            footer.writeLong(totalRows);
+            footerBytes.writeTo(out);
+            out.writeInt(footerBytes.size());
+            out.write(MAGIC);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private void writeRowGroup() throws IOException {
+        rowGroups.add(new long[]{position, rows});
+        for (int column = 0; column < names.length; column++) {
+            chunk.reset();
+            encode(kinds[column], values[column]);
+            byte[] encoded = chunk.toByteArray();
+            ByteArrayOutputStream compressed = deflate(encoded);
+            out.writeInt(encoded.length);
+            out.writeInt(compressed.size());
+            compressed.writeTo(out);
+            position += 8 + compressed.size();
+            Arrays.fill(values[column], 0, rows, null);
+        }
+        totalRows += rows;
+        rows = 0;
+    }
+
+    private void encode(byte kind, Object[] column) {
+        byte[] nulls = new byte[(rows + 7) / 8];
+        for (int row = 0; row < rows; row++) {
+            if (column[row] == null) {
+                nulls[row >> 3] |= (byte) (1 << (row & 7));
+            }
+        }
+        chunk.write(nulls, 0, nulls.length);
+        long previous = 0;
+        switch (kind) {
+            case ID:
+            case DATE:
+                for (int row = 0; row < rows; row++) {
+                    if (column[row] != null) {
+                        long value = ((Number) column[row]).longValue();
+                        writeVarint(zigzag(value - previous));
+                        previous = value;
+                    }
+                }
+                break;
+            case INT:
+                for (int row = 0; row < rows; row++) {
+                    if (column[row] != null) {
+                        writeVarint(zigzag(((Number) column[row]).longValue()));
+                    }
+                }
+                break;
+            case DOUBLE:
+                for (int row = 0; row < rows; row++) {
+                    if (column[row] != null) {
+                        long bits = Double.doubleToLongBits(((Number) column[row]).doubleValue());
+                        for (int shift = 56; shift >= 0; shift -= 8) {
+                            chunk.write((int) (bits >>> shift));
+                        }
+                    }
+                }
+                break;
+            default:
+                encodeText(column);
+                break;
+        }
+    }
+
+    /**
+     * Writes the dictionary of the distinct values in the row group, then one code per value.
+     */
+    private void encodeText(Object[] column) {
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        int[] rowCodes = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            if (column[row] != null) {
+                String value = column[row].toString();
+                Integer code = codes.get(value);
+                if (code == null) {
+                    code = dictionary.size();
+                    codes.put(value, code);
+                    dictionary.add(value);
+                }
+                rowCodes[row] = code;
+            }
+        }
+        writeVarint(dictionary.size());
+        for (String entry : dictionary) {
+            byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            chunk.write(bytes, 0, bytes.length);
+        }
+        for (int row = 0; row < rows; row++) {
+            if (column[row] != null) {
+                writeVarint(rowCodes[row]);
+            }
+        }
+    }
+
+    private ByteArrayOutputStream deflate(byte[] encoded) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, encoded.length / 4));
+        deflater.reset();
+        deflater.setInput(encoded);
+        deflater.finish();
+        while (!deflater.finished()) {
+            int length = deflater.deflate(deflateBuffer);
+            compressed.write(deflateBuffer, 0, length);
+        }
+        return compressed;
+    }
+
+    private void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            chunk.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        chunk.write((int) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
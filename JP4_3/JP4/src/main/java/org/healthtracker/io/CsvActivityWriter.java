@@ -0,0 +1,70 @@
+package org.healthtracker.io;
+
+import org.healthtracker.tracking.ActivityRecord;
+import org.healthtracker.tracking.ActivityType;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes activities as GZIP-compressed CSV with the columns type, activity_id, date and the type's value columns.
+ * The field names match what the ActivityImporter expects, so an export can be imported again.
+ */
+final class CsvActivityWriter implements ActivityWriter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Writer out;
+    private final String typeName;
+
+    CsvActivityWriter(ActivityType type, OutputStream out) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(out, BUFFER_SIZE), StandardCharsets.UTF_8),
+                BUFFER_SIZE);
+        this.typeName = type.getTablePrefix();
+        this.out.write("type,activity_id,date," + String.join(",", type.getColumns()) + "\n");
+    }
+
+    @Override
+    public void write(ActivityRecord record) throws IOException {
+        out.write(typeName);
+        out.write(',');
+        out.write(Integer.toString(record.getActivityId()));
+        out.write(',');
+        if (record.getDate() != null) {
+            out.write(record.getDate().toString());
+        }
+        int columns = record.getType().getColumns().length;
+        for (int i = 0; i < columns; i++) {
+            out.write(',');
+            Object value = record.getValue(i);
+            if (value instanceof String) {
+                writeText((String) value);
+            } else if (value != null) {
+                out.write(value.toString());
+            }
+        }
+        out.write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close(); // Also writes the GZIP trailer
+    }
+
+    /**
+     * Writes a text value, quoted if it contains a comma, quote or line break.
+     */
+    private void writeText(String value) throws IOException {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,121 @@
+package org.healthtracker.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads comma-separated records whose first line names the fields (RFC 4180: fields may be quoted,
+ * quotes inside quoted fields are doubled, and quoted fields may span lines). Blank lines are skipped.
+ * Field names are matched case-insensitively.
+ */
+final class CsvRecordReader implements RecordReader {
+    private final CharSource in;
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> fields = new ArrayList<>();
+    private String[] header;
+    private long recordLine;
+
+    CsvRecordReader(Reader reader) {
+        this.in = new CharSource(reader);
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException {
+        if (header == null) {
+            if (!readLine()) {
+                return null;
+            }
+            header = new String[fields.size()];
+            for (int i = 0; i < header.length; i++) {
+                header[i] = fields.get(i).trim().toLowerCase(Locale.ROOT);
+            }
+        }
+        if (!readLine()) {
+            return null;
+        }
+        if (fields.size() > header.length) {
+            throw new IOException("Line " + recordLine + " has " + fields.size() + " fields, the header only " + header.length);
+        }
+        Map<String, String> record = new HashMap<>(header.length * 2);
+        for (int i = 0; i < header.length; i++) {
+            record.put(header[i], i < fields.size() ? fields.get(i) : null);
+        }
+        return record;
+    }
+
+    @Override
+    public long getLine() {
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads the fields of the next non-blank line into fields.
+     * return false at the end of the input.
+     */
+    private boolean readLine() throws IOException {
+        while (true) {
+            fields.clear();
+            recordLine = in.getLine();
+            int c = in.peek();
+            if (c == CharSource.EOF) {
+                return false;
+            }
+            if (c == '\r' || c == '\n') {
+                in.read(); // Blank line
+                continue;
+            }
+            while (readField()) {
+                // readField() returns false once the line ends
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reads one field into fields.
+     * return true if another field follows on the same line.
+     */
+    private boolean readField() throws IOException {
+        field.setLength(0);
+        int c = in.read();
+        if (c == '"') {
+            while (true) {
+                c = in.read();
+                if (c == CharSource.EOF) {
+                    throw new IOException("Unterminated quoted field starting on line " + recordLine);
+                }
+                if (c == '"') {
+                    if (in.peek() != '"') {
+                        break;
+                    }
+                    in.read(); // Doubled quote
+                }
+                field.append((char) c);
+            }
+            c = in.read();
+            if (c != ',' && c != '\r' && c != '\n' && c != CharSource.EOF) {
+                throw new IOException("Unexpected character after quoted field on line " + in.getLine());
+            }
+        } else {
+            while (c != ',' && c != '\r' && c != '\n' && c != CharSource.EOF) {
+                field.append((char) c);
+                c = in.read();
+            }
+        }
+        fields.add(field.toString());
+        if (c == '\r' && in.peek() == '\n') {
+            in.read();
+        }
+        return c == ',';
+    }
+}
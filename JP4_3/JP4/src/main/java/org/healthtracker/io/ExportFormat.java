@@ -0,0 +1,28 @@
+package org.healthtracker.io;
+
+import org.healthtracker.tracking.ActivityType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * File formats written by the ActivityExporter.
+ */
+public enum ExportFormat {
+    CSV_GZIP(".csv.gz"), // GZIP-compressed CSV that the ActivityImporter reads back once decompressed
+    COLUMNAR(".htc");    // Compressed column chunks, see ColumnarActivityWriter
+
+    private final String extension;
+
+    ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    ActivityWriter open(ActivityType type, OutputStream out) throws IOException {
+        return this == COLUMNAR ? new ColumnarActivityWriter(type, out) : new CsvActivityWriter(type, out);
+    }
+}
@@ -0,0 +1,61 @@
+package org.healthtracker.io;
+
+import org.healthtracker.tracking.ActivityType;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Outcome of an export: the file written for each activity type, the rows in it, and the time taken.
+ */
+public final class ExportReport {
+    private final Map<ActivityType, Path> files;
+    private final Map<ActivityType, Long> rows;
+    private final long bytes;
+    private final long elapsedNanos;
+
+    ExportReport(Map<ActivityType, Path> files, Map<ActivityType, Long> rows, long bytes, long elapsedNanos) {
+        this.files = Collections.unmodifiableMap(files);
+        this.rows = Collections.unmodifiableMap(rows);
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public Map<ActivityType, Path> getFiles() {
+        return files;
+    }
+
+    public Map<ActivityType, Long> getRows() {
+        return rows;
+    }
+
+    public long getTotalRows() {
+        long total = 0;
+        for (long typeRows : rows.values()) {
+            total += typeRows;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the combined size of the written files.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : getTotalRows() * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Exported %d rows to %d files (%d bytes) in %d ms, %.0f rows/s",
+                getTotalRows(), files.size(), bytes, getElapsedMillis(), getRowsPerSecond());
+    }
+}
@@ -0,0 +1,29 @@
+package org.healthtracker.io;
+
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * File formats understood by the ActivityImporter.
+ */
+public enum ImportFormat {
+    CSV,  // Comma-separated values with a header line
+    JSON; // An array of flat objects, or one object per line
+
+    /**
+     * Picks the format from a file name: .json, .jsonl and .ndjson files are JSON, everything else CSV.
+     * A .gz suffix is ignored.
+     */
+    public static ImportFormat of(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        return name.endsWith(".json") || name.endsWith(".jsonl") || name.endsWith(".ndjson") ? JSON : CSV;
+    }
+
+    RecordReader open(Reader reader) {
+        return this == JSON ? new JsonRecordReader(reader) : new CsvRecordReader(reader);
+    }
+}
@@ -0,0 +1,67 @@
+package org.healthtracker.io;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of an import: how many records were read, saved, rejected and skipped as duplicates, how long it took,
+ * and why the first rejected records were rejected.
+ */
+public final class ImportReport {
+    private final long rowsRead;
+    private final long rowsImported;
+    private final long rowsRejected;
+    private final long rowsDuplicate; // Records whose event id had been saved before, e.g. by an earlier import
+    private final long elapsedNanos;
+    private final List<String> rejections; // "line N: reason", at most ActivityImporter's reporting limit
+
+    ImportReport(long rowsRead, long rowsImported, long rowsRejected, long rowsDuplicate, long elapsedNanos,
+                 List<String> rejections) {
+        this.rowsRead = rowsRead;
+        this.rowsImported = rowsImported;
+        this.rowsRejected = rowsRejected;
+        this.rowsDuplicate = rowsDuplicate;
+        this.elapsedNanos = elapsedNanos;
+        this.rejections = Collections.unmodifiableList(rejections);
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getRowsImported() {
+        return rowsImported;
+    }
+
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    public long getRowsDuplicate() {
+        return rowsDuplicate;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    /**
+     * Returns the records saved per second of the whole import, parsing included.
+     */
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rowsImported * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Returns the reasons the first rejected records were rejected, e.g. "line 12: Steps must be a valid integer."
+     */
+    public List<String> getRejections() {
+        return rejections;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Imported %d of %d rows (%d rejected, %d duplicates) in %d ms, %.0f rows/s",
+                rowsImported, rowsRead, rowsRejected, rowsDuplicate, getElapsedMillis(), getRowsPerSecond());
+    }
+}
@@ -0,0 +1,206 @@
+package org.healthtracker.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads flat JSON objects, either as the elements of one top-level array or one after another
+ * (newline-delimited JSON). Values must be strings, numbers, booleans or null; nested objects and arrays
+ * are rejected. Numbers and booleans are returned as their text. Field names are matched case-insensitively.
+ * Only the current object is held in memory, so a single array of millions of records is read in constant memory.
+ */
+final class JsonRecordReader implements RecordReader {
+    private final CharSource in;
+    private final StringBuilder text = new StringBuilder();
+    private boolean started;
+    private boolean inArray;    // true if the records are the elements of a top-level array
+    private boolean finished;
+    private long recordLine;
+
+    JsonRecordReader(Reader reader) {
+        this.in = new CharSource(reader);
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        int c = skipWhitespace();
+        if (!started) {
+            started = true;
+            if (c == '[') {
+                inArray = true;
+                in.read();
+                c = skipWhitespace();
+                if (c == ']') {
+                    in.read();
+                    return end();
+                }
+            }
+        } else if (inArray) {
+            if (c == ']') {
+                in.read();
+                return end();
+            }
+            expect(',');
+            c = skipWhitespace();
+        }
+        if (c == CharSource.EOF) {
+            if (inArray) {
+                throw new IOException("Unterminated array at line " + in.getLine());
+            }
+            return end();
+        }
+        recordLine = in.getLine();
+        return readObject();
+    }
+
+    @Override
+    public long getLine() {
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private Map<String, String> end() throws IOException {
+        finished = true;
+        if (skipWhitespace() != CharSource.EOF) {
+            throw new IOException("Unexpected content after the records at line " + in.getLine());
+        }
+        return null;
+    }
+
+    private Map<String, String> readObject() throws IOException {
+        expect('{');
+        Map<String, String> record = new HashMap<>();
+        if (skipWhitespace() == '}') {
+            in.read();
+            return record;
+        }
+        while (true) {
+            skipWhitespace();
+            String name = readString().toLowerCase(Locale.ROOT);
+            skipWhitespace();
+            expect(':');
+            record.put(name, readValue());
+            int c = skipWhitespace();
+            in.read();
+            if (c == '}') {
+                return record;
+            }
+            if (c != ',') {
+                throw unexpected(c);
+            }
+        }
+    }
+
+    private String readValue() throws IOException {
+        int c = skipWhitespace();
+        if (c == '"') {
+            return readString();
+        }
+        if (c == '{' || c == '[') {
+            throw new IOException("Nested values are not supported (line " + in.getLine() + ")");
+        }
+        text.setLength(0);
+        while ((c = in.peek()) != CharSource.EOF && c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+            text.append((char) in.read());
+        }
+        String literal = text.toString();
+        if (literal.isEmpty()) {
+            throw unexpected(c);
+        }
+        return literal.equals("null") ? null : literal;
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        text.setLength(0);
+        while (true) {
+            int c = in.read();
+            if (c == CharSource.EOF) {
+                throw new IOException("Unterminated string starting on line " + recordLine);
+            }
+            if (c == '"') {
+                return text.toString();
+            }
+            if (c != '\\') {
+                text.append((char) c);
+                continue;
+            }
+            c = in.read();
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    text.append((char) c);
+                    break;
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'u':
+                    text.append((char) readHex());
+                    break;
+                default:
+                    throw new IOException("Invalid escape in string on line " + in.getLine());
+            }
+        }
+    }
+
+    private int readHex() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(in.read(), 16);
+            if (digit < 0) {
+                throw new IOException("Invalid \\u escape on line " + in.getLine());
+            }
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Skips whitespace and returns the next character without consuming it.
+     */
+    private int skipWhitespace() throws IOException {
+        int c;
+        while ((c = in.peek()) != CharSource.EOF && Character.isWhitespace(c)) {
+            in.read();
+        }
+        return c;
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = in.read();
+        if (c != expected) {
+            throw new IOException("Expected '" + expected + "' but found " + describe(c) + " on line " + in.getLine());
+        }
+    }
+
+    private IOException unexpected(int c) {
+        return new IOException("Unexpected " + describe(c) + " on line " + in.getLine());
+    }
+
+    private static String describe(int c) {
+        return c == CharSource.EOF ? "end of input" : "'" + (char) c + "'";
+    }
+}
@@ -0,0 +1,23 @@
+package org.healthtracker.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Reads the records of an import file one at a time, so files of any size are parsed in constant memory.
+ */
+interface RecordReader extends Closeable {
+
+    /**
+     * Returns the next record as field names mapped to their text, with null for missing values,
+     * or null at the end of the input.
+     * throws IOException if the input cannot be read or is malformed at this point.
+     */
+    Map<String, String> next() throws IOException;
+
+    /**
+     * Returns the line the last record returned by next() started on, for error messages.
+     */
+    long getLine();
+}
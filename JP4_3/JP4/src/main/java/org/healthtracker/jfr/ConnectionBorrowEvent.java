@@ -0,0 +1,20 @@
+package org.healthtracker.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One DatabaseHelper.getConnection() call. Long borrows mean the connection pool is exhausted or MySQL is slow to connect.
+ */
+@Name("org.healthtracker.ConnectionBorrow")
+@Label("Connection Borrow")
+@Category({"HealthTracker", "Database"})
+@Description("A connection taken from the connection pool")
+@StackTrace(false)
+public final class ConnectionBorrowEvent extends jdk.jfr.Event {
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,66 @@
+package org.healthtracker.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Starts a JDK Flight Recorder recording with the HealthTracker events when -Dhealthtracker.jfr.file is set.
+ * The event settings come from healthtracker.jfc on the classpath, layered over the JDK's "default" settings,
+ * so the recording also has the JDBC socket reads, lock waits and GC pauses to correlate the events with.
+ * The recording is written to the file when the application exits.
+ * Without the property, recordings started with -XX:StartFlightRecording or jcmd still contain the events;
+ * extract healthtracker.jfc from the jar and pass it as settings= to apply the same thresholds.
+ */
+public final class FlightRecording {
+    public static final String SETTINGS_RESOURCE = "/healthtracker.jfc";
+    private static final String FILE = System.getProperty("healthtracker.jfr.file");
+
+    private static Recording recording;
+
+    private FlightRecording() {
+    }
+
+    /**
+     * Starts the recording if a file has been configured. Failures are reported and otherwise ignored,
+     * since the application works the same without a recording.
+     */
+    public static synchronized void start() {
+        if (FILE == null || FILE.isEmpty() || recording != null) {
+            return;
+        }
+        try {
+            Recording started = new Recording(getSettings());
+            started.setName("HealthTracker");
+            started.setToDisk(true);
+            started.setDumpOnExit(true);
+            started.setDestination(Path.of(FILE));
+            started.start();
+            recording = started;
+        } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+            System.err.println("Could not start the flight recording: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the JDK default settings with the settings of healthtracker.jfc applied on top.
+     */
+    public static Map<String, String> getSettings() throws IOException, ParseException {
+        Map<String, String> settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+        try (InputStream in = FlightRecording.class.getResourceAsStream(SETTINGS_RESOURCE)) {
+            if (in == null) {
+                throw new IOException(SETTINGS_RESOURCE + " is missing from the classpath");
+            }
+            settings.putAll(Configuration.create(new InputStreamReader(in, StandardCharsets.UTF_8)).getSettings());
+        }
+        return settings;
+    }
+}
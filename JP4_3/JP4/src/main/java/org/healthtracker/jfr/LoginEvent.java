@@ -0,0 +1,37 @@
+package org.healthtracker.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One DatabaseHelper.validateUser() call, including the throttle check and the password hash verification.
+ */
+@Name("org.healthtracker.Login")
+@Label("Login Validation")
+@Category({"HealthTracker", "Users"})
+@Description("Credentials checked against the users table")
+@StackTrace(false)
+public final class LoginEvent extends jdk.jfr.Event {
+    public static final String VALID = "valid";
+    public static final String INVALID = "invalid";
+    public static final String THROTTLED = "throttled";
+    public static final String ERROR = "error";
+
+    @Label("Username")
+    public String username;
+
+    @Label("Source")
+    @Description("Where the attempt came from, e.g. a client address, or local for the desktop GUI")
+    public String source;
+
+    @Label("User Id")
+    @Description("Id of the validated user, 0 unless the outcome is valid")
+    public int userId;
+
+    @Label("Outcome")
+    @Description("valid, invalid, throttled or error")
+    public String outcome;
+}
@@ -0,0 +1,40 @@
+package org.healthtracker.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One read behind the summary panel: daily totals through the ActivityCache, or a page of the activity table.
+ */
+@Name("org.healthtracker.SummaryQuery")
+@Label("Summary Query")
+@Category({"HealthTracker", "Database"})
+@Description("Daily totals or a page of activities read for the summary panel")
+@StackTrace(false)
+public final class SummaryQueryEvent extends jdk.jfr.Event {
+    public static final String DAILY_TOTALS = "dailyTotals";
+    public static final String PAGE = "page";
+
+    @Label("Query")
+    @Description("dailyTotals or page")
+    public String query;
+
+    @Label("Activity Type")
+    public String activityType;
+
+    @Label("User Id")
+    public int userId;
+
+    @Label("Rows")
+    public int rows;
+
+    @Label("Cached")
+    @Description("Answered from the ActivityCache without a query")
+    public boolean cached;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,23 @@
+package org.healthtracker.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One CREATE TABLE IF NOT EXISTS round trip of MySqlActivityStore. Tables already verified by this process are not checked again.
+ */
+@Name("org.healthtracker.TableCheck")
+@Label("Table Existence Check")
+@Category({"HealthTracker", "Database"})
+@Description("A table created or verified before its first use")
+@StackTrace(false)
+public final class TableCheckEvent extends jdk.jfr.Event {
+    @Label("Table")
+    public String table;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
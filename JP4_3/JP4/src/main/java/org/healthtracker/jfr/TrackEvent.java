@@ -0,0 +1,49 @@
+package org.healthtracker.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * One FitnessActivity.track() call, from the call until the activity is saved or the save failed.
+ * Committed once the returned future completes, on whichever thread completed it.
+ */
+@Name("org.healthtracker.Track")
+@Label("Track Activity")
+@Category({"HealthTracker", "Tracking"})
+@Description("An activity tracked by a user, from track() until it was saved")
+@StackTrace(false)
+public final class TrackEvent extends jdk.jfr.Event {
+    @Label("Activity Type")
+    public String activityType;
+
+    @Label("User Id")
+    public int userId;
+
+    @Label("Durability Mode")
+    public String durabilityMode;
+
+    @Label("Queue Wait")
+    @Description("Time between track() and the start of the database write; 0 in WAL mode")
+    @Timespan(Timespan.NANOSECONDS)
+    public long queueWait;
+
+    @Label("Database Time")
+    @Description("Time spent in ActivityStore.insert(); in BUFFERED mode the insert of the whole batch")
+    @Timespan(Timespan.NANOSECONDS)
+    public long dbTime;
+
+    @Label("Batch Size")
+    @Description("Activities written in the same insert()")
+    public int batchSize;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+
+    @Label("Duplicate")
+    @Description("Not saved because its event id had been saved before")
+    public boolean duplicate;
+}
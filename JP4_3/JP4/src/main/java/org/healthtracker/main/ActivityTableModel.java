@@ -0,0 +1,207 @@
+package org.healthtracker.main;
+
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.jfr.SummaryQueryEvent;
+import org.healthtracker.metrics.Metrics;
+import org.healthtracker.metrics.Timer;
+import org.healthtracker.tracking.ActivityRecord;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.user.User;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Table model for the summary panel that loads a user's activities page by page.
+ * Pages are fetched off the event dispatch thread with a SwingWorker using keyset pagination
+ * on activity_id, and a new page is only requested when the user scrolls near the end of the
+ * rows loaded so far. Switching category cancels the page that is still loading.
+ */
+public class ActivityTableModel extends AbstractTableModel {
+    private static final int PAGE_SIZE = 200;        // Rows fetched per page
+    private static final int PREFETCH_THRESHOLD = 50; // Load the next page when this close to the last loaded row
+    private static final Timer PAGE_TIMER = Metrics.timer("summary.page");
+
+    private final DatabaseHelper dbHelper;
+    private final List<ActivityRecord> rows = new ArrayList<>();
+    private ActivityType type;                   // Category being shown, null before the first selection
+    private User user;                           // Whose activities are shown
+    private boolean hasMore;                     // false once a short page has been read
+    private PageLoader loader;                   // Page currently being loaded, if any
+    private int generation;                      // Bumped on every category change to discard stale pages
+    private Runnable errorHandler = () -> { };   // Called on the EDT when a page fails to load
+
+    public ActivityTableModel(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Sets the callback run on the event dispatch thread when a page cannot be loaded.
+     */
+    public void setErrorHandler(Runnable errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Shows the activities of another category, cancelling any page still being loaded.
+     * Must be called on the event dispatch thread.
+     */
+    public void show(ActivityType type, User user) {
+        cancelLoading();
+        generation++;
+        this.type = type;
+        this.user = user;
+        rows.clear();
+        hasMore = true;
+        fireTableStructureChanged();
+        loadNextPage();
+    }
+
+    /**
+     * Loads the next page if the given row is close to the end of the loaded rows.
+     * Called when the visible area of the table changes.
+     */
+    public void ensureLoaded(int lastVisibleRow) {
+        if (lastVisibleRow >= rows.size() - PREFETCH_THRESHOLD) {
+            loadNextPage();
+        }
+    }
+
+    /**
+     * Cancels the page that is currently being loaded, if any.
+     */
+    public void cancelLoading() {
+        if (loader != null) {
+            loader.cancelQuery();
+            loader.cancel(true);
+            loader = null;
+        }
+    }
+
+    /**
+     * Returns true while a page is being loaded.
+     */
+    public boolean isLoading() {
+        return loader != null;
+    }
+
+    private void loadNextPage() {
+        if (type == null || user == null || !hasMore || loader != null) {
+            return;
+        }
+        int afterActivityId = rows.isEmpty() ? 0 : rows.get(rows.size() - 1).getActivityId();
+        loader = new PageLoader(generation, type, user, afterActivityId);
+        loader.execute();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return type == null ? 0 : type.getColumns().length + 2;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        if (column == 0) {
+            return "activity_id";
+        }
+        if (column == 1) {
+            return "date";
+        }
+        return type.getColumns()[column - 2];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        ActivityRecord record = rows.get(rowIndex);
+        if (columnIndex == 0) {
+            return record.getActivityId();
+        }
+        if (columnIndex == 1) {
+            return record.getDate();
+        }
+        return record.getValue(columnIndex - 2);
+    }
+
+    /**
+     * Loads one page in the background and appends it to the model on the event dispatch thread.
+     */
+    private class PageLoader extends SwingWorker<List<ActivityRecord>, Void> {
+        private final int pageGeneration;
+        private final ActivityType pageType;
+        private final User pageUser;
+        private final int afterActivityId;
+        private volatile Statement statement; // Running statement, cancelled together with the worker
+
+        PageLoader(int pageGeneration, ActivityType pageType, User pageUser, int afterActivityId) {
+            this.pageGeneration = pageGeneration;
+            this.pageType = pageType;
+            this.pageUser = pageUser;
+            this.afterActivityId = afterActivityId;
+        }
+
+        @Override
+        protected List<ActivityRecord> doInBackground() throws SQLException {
+            SummaryQueryEvent event = new SummaryQueryEvent();
+            event.begin();
+            event.query = SummaryQueryEvent.PAGE;
+            event.activityType = pageType.getTablePrefix();
+            event.userId = pageUser.getId();
+            try {
+                List<ActivityRecord> page = PAGE_TIMER.time(() -> dbHelper.getActivityStore()
+                        .findPage(pageType, pageUser, afterActivityId, PAGE_SIZE, stmt -> statement = stmt));
+                event.rows = page.size();
+                event.succeeded = true;
+                return page;
+            } finally {
+                event.commit();
+            }
+        }
+
+        void cancelQuery() {
+            Statement stmt = statement;
+            if (stmt != null) {
+                try {
+                    stmt.cancel();
+                } catch (SQLException e) {
+                    // The statement already finished or the driver cannot cancel it; the result is discarded anyway
+                }
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (pageGeneration != generation || loader != this) {
+                return; // Cancelled, or the category changed while this page was loading
+            }
+            loader = null;
+            try {
+                List<ActivityRecord> page = get();
+                hasMore = page.size() == PAGE_SIZE;
+                if (!page.isEmpty()) {
+                    int first = rows.size();
+                    rows.addAll(page);
+                    fireTableRowsInserted(first, rows.size() - 1);
+                }
+            } catch (CancellationException e) {
+                // Cancelled by the user
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                hasMore = false;
+                e.getCause().printStackTrace();
+                errorHandler.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.healthtracker.main;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs database calls for the GUI on background threads so the event dispatch thread never blocks.
+ * While a call runs, the given controls are disabled and a wait cursor is shown; the outcome is delivered
+ * on the event dispatch thread. Calls that take longer than the timeout are cancelled and reported as failed.
+ */
+public class AsyncUiService {
+
+    /**
+     * A database call made on behalf of the GUI.
+     */
+    @FunctionalInterface
+    public interface DbCall<T> {
+        T call() throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timeouts;
+    private final long timeoutMillis; // How long a call may run before it is cancelled, unless given per call
+
+    public AsyncUiService(int threads, long timeoutMillis) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "healthtracker-ui-db-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.timeouts = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "healthtracker-ui-timeouts");
+            t.setDaemon(true);
+            return t;
+        });
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Runs a database call in the background. Must be called on the event dispatch thread.
+     * call The call to run.
+     * onSuccess Receives the result on the event dispatch thread.
+     * onFailure Receives the error, or a TimeoutException, on the event dispatch thread.
+     * busy Controls disabled while the call runs; the first one also shows a wait cursor.
+     * return A handle that can cancel the call; a cancelled call reports neither success nor failure.
+     */
+    public <T> Task submit(DbCall<T> call, Consumer<T> onSuccess, Consumer<Throwable> onFailure, Component... busy) {
+        return submit(call, onSuccess, onFailure, timeoutMillis, busy);
+    }
+
+    /**
+     * Runs a database call in the background with its own timeout, e.g. for long operations that report
+     * progress. Must be called on the event dispatch thread.
+     * timeoutMillis How long the call may run before it is cancelled, or 0 to let it run until it ends.
+     */
+    public <T> Task submit(DbCall<T> call, Consumer<T> onSuccess, Consumer<Throwable> onFailure, long timeoutMillis,
+                           Component... busy) {
+        setBusy(busy, true);
+        Task task = new Task(busy);
+        task.future = executor.submit(() -> {
+            try {
+                T result = call.call();
+                task.finish(() -> onSuccess.accept(result));
+            } catch (Throwable t) {
+                task.finish(() -> onFailure.accept(t));
+            }
+        });
+        if (timeoutMillis > 0) {
+            task.timeout = timeouts.schedule(() -> {
+                TimeoutException timeout = new TimeoutException("The database did not respond within " + timeoutMillis + " ms");
+                if (task.finish(() -> onFailure.accept(timeout))) {
+                    task.future.cancel(true);
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return task;
+    }
+
+    /**
+     * Stops the background threads. Calls still running are interrupted.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        timeouts.shutdownNow();
+    }
+
+    private static void setBusy(Component[] busy, boolean isBusy) {
+        for (Component component : busy) {
+            component.setEnabled(!isBusy);
+        }
+        if (busy.length > 0) {
+            JRootPane rootPane = SwingUtilities.getRootPane(busy[0]);
+            if (rootPane != null) {
+                rootPane.setCursor(isBusy ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : Cursor.getDefaultCursor());
+            }
+        }
+    }
+
+    /**
+     * Handle for a call submitted to the service.
+     */
+    public static class Task {
+        private final Component[] busy;
+        private final AtomicBoolean done = new AtomicBoolean(false); // Set by whichever of result, timeout or cancel comes first
+        private volatile Future<?> future;
+        private volatile ScheduledFuture<?> timeout;
+
+        private Task(Component[] busy) {
+            this.busy = busy;
+        }
+
+        /**
+         * Cancels the call, interrupting it if it is running, and re-enables the controls.
+         */
+        public void cancel() {
+            if (finish(() -> { })) {
+                future.cancel(true);
+            }
+        }
+
+        public boolean isDone() {
+            return done.get();
+        }
+
+        /**
+         * Completes the task once, re-enabling the controls and running the callback on the event dispatch thread.
+         * return false if the task had already completed.
+         */
+        private boolean finish(Runnable callback) {
+            if (!done.compareAndSet(false, true)) {
+                return false;
+            }
+            ScheduledFuture<?> pendingTimeout = timeout;
+            if (pendingTimeout != null) {
+                pendingTimeout.cancel(false);
+            }
+            SwingUtilities.invokeLater(() -> {
+                setBusy(busy, false);
+                callback.run();
+            });
+            return true;
+        }
+    }
+}
@@ -1,29 +1,48 @@
 package org.healthtracker.main;
 
+import org.healthtracker.analytics.BalanceReport;
+import org.healthtracker.analytics.CalorieBalance;
+import org.healthtracker.analytics.DailyBalance;
+import org.healthtracker.analytics.MoodSleepStats;
+import org.healthtracker.analytics.MoodSleepSummary;
+import org.healthtracker.cache.ActivityCache;
+import org.healthtracker.db.DailyTotal;
 import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.db.ResetProgress;
 import org.healthtracker.exceptions.InvalidNumericValueException;
 import org.healthtracker.exceptions.InvalidTextValueException;
+import org.healthtracker.exceptions.LoginThrottledException;
+import org.healthtracker.io.ActivityExporter;
+import org.healthtracker.io.ActivityImporter;
+import org.healthtracker.io.ExportFormat;
+import org.healthtracker.jfr.FlightRecording;
+import org.healthtracker.metrics.MetricsReporter;
 import org.healthtracker.tracking.*;
 import org.healthtracker.user.User;
 
 import javax.swing.*;
 import java.awt.*;
 import java.sql.*;
-import java.util.ArrayList;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.sql.ResultSet;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 /**
  * Main GUI class for the Health Tracker application.
  * This class sets up the main window and its various panels for different functionalities.
  */
 public class HealthTrackerGUI extends JFrame {
     private DatabaseHelper dbHelper = new DatabaseHelper();
+    private AsyncUiService uiService = new AsyncUiService(2, 15_000); // Runs all database calls off the event dispatch thread
     private User loggedInUser;
     private CardLayout cardLayout = new CardLayout();
     private JPanel cards = new JPanel(cardLayout);
     private int userId;
+    private AsyncUiService.Task totalsTask; // Loads the totals of the selected category, cancelled by the next selection
+    private AsyncUiService.Task analyticsTask; // Loads the balance or mood statistics, cancelled by the next selection
     /**
      * Constructor for the Health Tracker GUI.
      * Sets up the JFrame properties and initializes the components.
@@ -91,16 +110,30 @@ public class HealthTrackerGUI extends JFrame {
         loginButton.setBackground(new Color(252, 196, 60)); // Set button color
         loginButton.setForeground(Color.WHITE); // Set text color
         loginButton.addActionListener(e -> {
-            try {
-                if (dbHelper.validateUser(usernameField.getText(), new String(passwordField.getPassword()))) {
-                    loggedInUser = new User(1, usernameField.getText(), new String(passwordField.getPassword()), dbHelper);
+            String username = usernameField.getText();
+            String password = new String(passwordField.getPassword());
+            uiService.submit(() -> dbHelper.validateUser(username, password), user -> {
+                if (user != null) {
+                    loggedInUser = user;
+                    // Warm the activity cache so the summary totals do not wait for the database
+                    uiService.submit(() -> ActivityCache.load(dbHelper, user), loaded -> {
+                    }, error -> System.err.println("Could not load recent activities: " + error.getMessage()));
                     cardLayout.show(cards, "Activities");
                 } else {
                     JOptionPane.showMessageDialog(panel, "Invalid username or password", "Login Failed", JOptionPane.ERROR_MESSAGE);
                 }
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
+            }, ex -> {
+                String message;
+                if (ex instanceof LoginThrottledException) {
+                    message = ex.getMessage() + ".";
+                } else if (ex instanceof SQLTransientException) {
+                    message = "Too many logins in progress. Please try again in a moment.";
+                } else {
+                    ex.printStackTrace();
+                    message = "Could not reach the database. Please try again.";
+                }
+                JOptionPane.showMessageDialog(panel, message, "Login Failed", JOptionPane.ERROR_MESSAGE);
+            }, loginButton, usernameField, passwordField);
         });
 
         JButton registerButton = new JButton("Register");
@@ -233,19 +266,19 @@ public class HealthTrackerGUI extends JFrame {
                         heightField.getText()
                 );
 
-                // Perform registration
-                User.register(
-                        usernameField.getText(),
-                        new String(passwordField.getPassword()),
-                        nameField.getText(),
-                        Integer.parseInt(ageField.getText()),
-                        genderComboBox.getSelectedItem().toString().charAt(0),
-                        Double.parseDouble(weightField.getText()),
-                        Double.parseDouble(heightField.getText()),
-                        dbHelper
-                );
-                JOptionPane.showMessageDialog(panel, "Registration successful! Please login.", "Success", JOptionPane.INFORMATION_MESSAGE);
-                cardLayout.show(cards, "Login");
+                // Perform registration in the background
+                String username = usernameField.getText();
+                String password = new String(passwordField.getPassword());
+                String name = nameField.getText();
+                int age = Integer.parseInt(ageField.getText());
+                char gender = genderComboBox.getSelectedItem().toString().charAt(0);
+                double weight = Double.parseDouble(weightField.getText());
+                double height = Double.parseDouble(heightField.getText());
+                uiService.submit(() -> User.register(username, password, name, age, gender, weight, height, dbHelper), user -> {
+                    JOptionPane.showMessageDialog(panel, "Registration successful! Please login.", "Success", JOptionPane.INFORMATION_MESSAGE);
+                    cardLayout.show(cards, "Login");
+                }, ex -> JOptionPane.showMessageDialog(panel, ex.getMessage(), "Registration Failed", JOptionPane.ERROR_MESSAGE),
+                        registerButton);
             } catch (InvalidTextValueException ex) {
                 JOptionPane.showMessageDialog(panel, ex.getMessage() + " Enter text value only.", "Invalid Input", JOptionPane.ERROR_MESSAGE);
             } catch (InvalidNumericValueException ex) {
@@ -290,11 +323,11 @@ public class HealthTrackerGUI extends JFrame {
         logDietButton.setForeground(Color.WHITE); // Set button text color
         logDietButton.addActionListener(e -> {
             try {
-                int userId = loggedInUser.getId();
-                new DietActivity(foodField.getText(), Integer.parseInt(caloriesField.getText()), loggedInUser).track();
-                JOptionPane.showMessageDialog(this, "Diet logged successfully!");
-            } catch (SQLException ex) {
-                JOptionPane.showMessageDialog(this, "Failed to log diet activity.", "Error", JOptionPane.ERROR_MESSAGE);
+                int calories = Integer.parseInt(caloriesField.getText());
+                reportTracking(new DietActivity(foodField.getText(), calories, loggedInUser).track(),
+                        "Diet logged successfully!", "Failed to log diet activity.");
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(this, "Please enter a valid number for calories.", "Error", JOptionPane.ERROR_MESSAGE);
             }
         });
         dietPanel.add(new JLabel("Food:"));
@@ -319,12 +352,10 @@ public class HealthTrackerGUI extends JFrame {
                 String exerciseType = exerciseTypeField.getText();
                 int duration = Integer.parseInt(durationField.getText());
                 int caloriesBurned = Integer.parseInt(caloriesBurnedField.getText());
-                new ExerciseActivity(exerciseType, duration, caloriesBurned, loggedInUser).track();
-                JOptionPane.showMessageDialog(this, "Exercise logged successfully!");
+                reportTracking(new ExerciseActivity(exerciseType, duration, caloriesBurned, loggedInUser).track(),
+                        "Exercise logged successfully!", "Failed to log exercise activity.");
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Please enter valid numbers for duration and calories burned.", "Error", JOptionPane.ERROR_MESSAGE);
-            } catch (SQLException ex) {
-                JOptionPane.showMessageDialog(this, "Failed to log exercise activity.", "Error", JOptionPane.ERROR_MESSAGE);
             }
         });
         exercisePanel.add(new JLabel("Exercise Type:"));
@@ -348,12 +379,10 @@ public class HealthTrackerGUI extends JFrame {
         logStepsButton.addActionListener(e -> {
             try {
                 int steps = Integer.parseInt(stepsField.getText());
-                new StepActivity(steps, loggedInUser).track();
-                JOptionPane.showMessageDialog(this, "Steps logged successfully!");
+                reportTracking(new StepActivity(steps, loggedInUser).track(),
+                        "Steps logged successfully!", "Failed to log step activity.");
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Please enter a valid number for steps.", "Error", JOptionPane.ERROR_MESSAGE);
-            } catch (SQLException ex) {
-                JOptionPane.showMessageDialog(this, "Failed to log step activity.", "Error", JOptionPane.ERROR_MESSAGE);
             }
         });
         stepPanel.add(new JLabel("Steps:"));
@@ -390,12 +419,10 @@ public class HealthTrackerGUI extends JFrame {
                         mood = 3;  // Default to neutral mood
                 }
                 double sleepHours = Double.parseDouble(sleepHoursField.getText());
-                new MentalHealthActivity("Mental Health Tracking", mood, sleepHours, loggedInUser).track();
-                JOptionPane.showMessageDialog(this, "Mental health logged successfully!");
+                reportTracking(new MentalHealthActivity("Mental Health Tracking", mood, sleepHours, loggedInUser).track(),
+                        "Mental health logged successfully!", "Failed to log mental health activity.");
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Please enter a valid number for sleep hours.", "Error", JOptionPane.ERROR_MESSAGE);
-            } catch (SQLException ex) {
-                JOptionPane.showMessageDialog(this, "Failed to log mental health activity.", "Error", JOptionPane.ERROR_MESSAGE);
             }
         });
         mentalHealthPanel.add(new JLabel("Emotion:"));
@@ -415,12 +442,10 @@ public class HealthTrackerGUI extends JFrame {
         logWaterIntakeButton.addActionListener(e -> {
             try {
                 double liters = Double.parseDouble(waterIntakeField.getText());
-                new WaterIntakeActivity(liters, loggedInUser).track();
-                JOptionPane.showMessageDialog(this, "Water intake logged successfully!");
+                reportTracking(new WaterIntakeActivity(liters, loggedInUser).track(),
+                        "Water intake logged successfully!", "Failed to log water intake activity.");
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Please enter a valid number for water intake.", "Error", JOptionPane.ERROR_MESSAGE);
-            } catch (SQLException ex) {
-                JOptionPane.showMessageDialog(this, "Failed to log water intake activity.", "Error", JOptionPane.ERROR_MESSAGE);
             }
         });
         waterIntakePanel.add(new JLabel("Liters of Water Consumed:"));
@@ -446,6 +471,25 @@ public class HealthTrackerGUI extends JFrame {
         return panel;
     }
 
+    /**
+     * Shows the outcome of a background save once it completes.
+     * The dialog is shown on the event dispatch thread.
+     * future The future returned by FitnessActivity.track().
+     * successMessage Message shown when the activity was saved.
+     * failureMessage Message shown when saving the activity failed.
+     */
+    private void reportTracking(CompletableFuture<Void> future, String successMessage, String failureMessage) {
+        future.whenComplete((ignored, error) -> SwingUtilities.invokeLater(() -> {
+            if (error == null) {
+                JOptionPane.showMessageDialog(this, successMessage);
+            } else {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                System.err.println(cause.getMessage());
+                JOptionPane.showMessageDialog(this, failureMessage, "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }));
+    }
+
 
     private JPanel resetPanel() {
         JPanel panel = new JPanel(new BorderLayout());
@@ -472,23 +516,108 @@ public class HealthTrackerGUI extends JFrame {
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
         buttonPanel.setBackground(Color.WHITE);
 
+        // Progress of a running reset
+        JProgressBar resetProgressBar = new JProgressBar(0, 100);
+        resetProgressBar.setStringPainted(true);
+        resetProgressBar.setVisible(false);
+        JLabel resetStatusLabel = new JLabel(" ");
+
         JButton resetDataButton = new JButton("Reset My Data");
         resetDataButton.setBackground(new Color(34, 139, 34)); // Pepe green color
         resetDataButton.setForeground(Color.WHITE);
         resetDataButton.addActionListener(e -> {
             int response = JOptionPane.showConfirmDialog(this, "Are you sure you want to reset your data? This action cannot be undone.", "Confirm Reset", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
             if (response == JOptionPane.YES_OPTION) {
-                try {
-                    dbHelper.resetUserData(loggedInUser);
+                User user = loggedInUser;
+                resetProgressBar.setValue(0);
+                resetProgressBar.setVisible(true);
+                ResetProgress progress = (fraction, step) -> SwingUtilities.invokeLater(() -> {
+                    resetProgressBar.setValue((int) Math.round(fraction * 100));
+                    resetStatusLabel.setText(step);
+                });
+                // No timeout: a large history takes a while, and the progress bar shows the reset is still moving
+                uiService.submit(() -> {
+                    dbHelper.resetUserData(user, progress);
+                    return null;
+                }, ignored -> {
+                    resetProgressBar.setVisible(false);
+                    resetStatusLabel.setText(" ");
                     JOptionPane.showMessageDialog(this, "Your data has been successfully reset.", "Reset Successful", JOptionPane.INFORMATION_MESSAGE);
-                } catch (SQLException ex) {
+                }, ex -> {
+                    resetProgressBar.setVisible(false);
+                    resetStatusLabel.setText(" ");
                     JOptionPane.showMessageDialog(this, "Failed to reset your data.", "Error", JOptionPane.ERROR_MESSAGE);
                     ex.printStackTrace();
-                }
+                }, 0, resetDataButton);
             }
         });
         buttonPanel.add(resetDataButton);
 
+        // Import of a history exported from another app or a wearable
+        JButton importButton = new JButton("Import History");
+        importButton.setBackground(new Color(34, 139, 34));
+        importButton.setForeground(Color.WHITE);
+        importButton.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("Import activities from a CSV or JSON file");
+            if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            User user = loggedInUser;
+            Path file = chooser.getSelectedFile().toPath();
+            resetProgressBar.setIndeterminate(true); // The number of records is not known in advance
+            resetProgressBar.setVisible(true);
+            uiService.submit(() -> new ActivityImporter(dbHelper).importFile(user, file,
+                    rows -> SwingUtilities.invokeLater(() -> resetStatusLabel.setText("Read " + rows + " rows"))), report -> {
+                resetProgressBar.setIndeterminate(false);
+                resetProgressBar.setVisible(false);
+                resetStatusLabel.setText(" ");
+                StringBuilder message = new StringBuilder(report.toString()).append('.');
+                for (String rejection : report.getRejections().subList(0, Math.min(5, report.getRejections().size()))) {
+                    message.append("\n").append(rejection);
+                }
+                JOptionPane.showMessageDialog(this, message.toString(), "Import Finished", JOptionPane.INFORMATION_MESSAGE);
+            }, ex -> {
+                resetProgressBar.setIndeterminate(false);
+                resetProgressBar.setVisible(false);
+                resetStatusLabel.setText(" ");
+                JOptionPane.showMessageDialog(this, "Failed to import: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                ex.printStackTrace();
+            }, 0, importButton, resetDataButton);
+        });
+        buttonPanel.add(importButton);
+
+        // Export of the full history, one compressed CSV file per activity type
+        JButton exportButton = new JButton("Export History");
+        exportButton.setBackground(new Color(34, 139, 34));
+        exportButton.setForeground(Color.WHITE);
+        exportButton.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("Export activities to a folder");
+            chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+            if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            User user = loggedInUser;
+            Path directory = chooser.getSelectedFile().toPath();
+            resetProgressBar.setIndeterminate(true);
+            resetProgressBar.setVisible(true);
+            resetStatusLabel.setText("Exporting...");
+            uiService.submit(() -> new ActivityExporter(dbHelper).exportAll(user, directory, ExportFormat.CSV_GZIP), report -> {
+                resetProgressBar.setIndeterminate(false);
+                resetProgressBar.setVisible(false);
+                resetStatusLabel.setText(" ");
+                JOptionPane.showMessageDialog(this, report + ".", "Export Finished", JOptionPane.INFORMATION_MESSAGE);
+            }, ex -> {
+                resetProgressBar.setIndeterminate(false);
+                resetProgressBar.setVisible(false);
+                resetStatusLabel.setText(" ");
+                JOptionPane.showMessageDialog(this, "Failed to export: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                ex.printStackTrace();
+            }, 0, exportButton);
+        });
+        buttonPanel.add(exportButton);
+
         // Back to Login Button
         JButton backButton = new JButton("Back to Login");
         backButton.setBackground(new Color(0xFCC43C));
@@ -499,6 +628,12 @@ public class HealthTrackerGUI extends JFrame {
         // Add Button Panel to the center of the panel
         panel.add(buttonPanel, BorderLayout.CENTER);
 
+        JPanel progressPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        progressPanel.setBackground(Color.WHITE);
+        progressPanel.add(resetProgressBar);
+        progressPanel.add(resetStatusLabel);
+        panel.add(progressPanel, BorderLayout.NORTH);
+
         return panel;
     }
 
@@ -510,10 +645,19 @@ public class HealthTrackerGUI extends JFrame {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBackground(Color.WHITE);
 
-        JTextArea summaryText = new JTextArea();
-        summaryText.setEditable(false);
-        JScrollPane scrollPane = new JScrollPane(summaryText);
+        // Rows are loaded page by page in the background as the user scrolls
+        ActivityTableModel summaryModel = new ActivityTableModel(dbHelper);
+        JTable summaryTable = new JTable(summaryModel);
+        summaryTable.setFillsViewportHeight(true);
+        JScrollPane scrollPane = new JScrollPane(summaryTable);
         scrollPane.setBorder(BorderFactory.createEmptyBorder());
+        scrollPane.getViewport().addChangeListener(e -> {
+            Rectangle visible = summaryTable.getVisibleRect();
+            int lastVisibleRow = summaryTable.rowAtPoint(new Point(0, visible.y + visible.height - 1));
+            summaryModel.ensureLoaded(lastVisibleRow < 0 ? summaryModel.getRowCount() : lastVisibleRow);
+        });
+        summaryModel.setErrorHandler(() -> JOptionPane.showMessageDialog(this,
+                "Failed to fetch data from the database.", "Error", JOptionPane.ERROR_MESSAGE));
 
         // Dropdown to select the data category
         String[] categories = {"Diet", "Exercise", "Mental Health", "Steps", "Water Intake"};
@@ -522,16 +666,66 @@ public class HealthTrackerGUI extends JFrame {
         categoryComboBox.setForeground(Color.WHITE);
 
 
-        // Action listener to update the summary text based on the selected category
+        // Totals for today and the last 7 and 30 days, read from the activity cache
+        JLabel totalsLabel = new JLabel(" ");
+        totalsLabel.setBorder(BorderFactory.createEmptyBorder(5, 0, 0, 0));
+        // Net calories (diet minus exercise) for diet and exercise, mood and sleep statistics for mental health
+        JLabel analyticsLabel = new JLabel(" ");
+
+        // Action listener to show the user's activities of the selected category
         categoryComboBox.addActionListener(e -> {
             String selectedCategory = (String) categoryComboBox.getSelectedItem();
-            try {
-                // Fetch user-specific data from the database based on the selected category
-                List<String> data = fetchUserSpecificData(selectedCategory, loggedInUser);
-                summaryText.setText(String.join("\n", data));
-            } catch (SQLException ex) {
-                summaryText.setText("Failed to fetch data from the database.");
-                ex.printStackTrace();
+            ActivityType type = ActivityType.fromCategory(selectedCategory);
+            summaryModel.show(type, loggedInUser);
+            User user = loggedInUser;
+            LocalDate today = LocalDate.now();
+            totalsLabel.setText("Loading totals...");
+            if (totalsTask != null) {
+                totalsTask.cancel();
+            }
+            totalsTask = uiService.submit(() -> ActivityCache.findDays(dbHelper, type, user, today.minusDays(29), today),
+                    days -> {
+                        if (selectedCategory.equals(categoryComboBox.getSelectedItem())) {
+                            totalsLabel.setText(formatTotals(type, days, today));
+                        }
+                    },
+                    error -> {
+                        if (selectedCategory.equals(categoryComboBox.getSelectedItem())) {
+                            totalsLabel.setText("Totals are not available.");
+                        }
+                    });
+            if (analyticsTask != null) {
+                analyticsTask.cancel();
+                analyticsTask = null;
+            }
+            if (type == ActivityType.DIET || type == ActivityType.EXERCISE) {
+                analyticsLabel.setText("Loading calorie balance...");
+                analyticsTask = uiService.submit(() -> CalorieBalance.lastDays(dbHelper, user),
+                        report -> {
+                            if (selectedCategory.equals(categoryComboBox.getSelectedItem())) {
+                                analyticsLabel.setText(formatBalance(report));
+                            }
+                        },
+                        error -> {
+                            if (selectedCategory.equals(categoryComboBox.getSelectedItem())) {
+                                analyticsLabel.setText("Calorie balance is not available.");
+                            }
+                        });
+            } else if (type == ActivityType.MENTAL_HEALTH) {
+                analyticsLabel.setText("Loading mood and sleep statistics...");
+                analyticsTask = uiService.submit(() -> MoodSleepStats.stats(dbHelper, user, 7, 30, 90),
+                        stats -> {
+                            if (selectedCategory.equals(categoryComboBox.getSelectedItem())) {
+                                analyticsLabel.setText(formatMoodSleep(stats));
+                            }
+                        },
+                        error -> {
+                            if (selectedCategory.equals(categoryComboBox.getSelectedItem())) {
+                                analyticsLabel.setText("Mood and sleep statistics are not available.");
+                            }
+                        });
+            } else {
+                analyticsLabel.setText(" ");
             }
         });
 
@@ -541,6 +735,11 @@ public class HealthTrackerGUI extends JFrame {
         categoryPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 0, 10));
         categoryPanel.add(new JLabel("Select Category:"), BorderLayout.WEST);
         categoryPanel.add(categoryComboBox, BorderLayout.CENTER);
+        JPanel totalsPanel = new JPanel(new GridLayout(2, 1));
+        totalsPanel.setBackground(Color.WHITE);
+        totalsPanel.add(totalsLabel);
+        totalsPanel.add(analyticsLabel);
+        categoryPanel.add(totalsPanel, BorderLayout.SOUTH);
 
         // Button panel
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
@@ -548,7 +747,10 @@ public class HealthTrackerGUI extends JFrame {
         JButton backButton = new JButton("Back to Activities");
         backButton.setBackground(new Color(0xFCC43C));
         backButton.setForeground(Color.WHITE);
-        backButton.addActionListener(e -> cardLayout.show(cards, "Activities"));
+        backButton.addActionListener(e -> {
+            summaryModel.cancelLoading();
+            cardLayout.show(cards, "Activities");
+        });
         buttonPanel.add(backButton);
 
         // Add components to the panel
@@ -559,60 +761,84 @@ public class HealthTrackerGUI extends JFrame {
         return panel;
     }
     /**
-     * Fetches data specific to a user and category from the database.
-     *  category The category of data to fetch.
-     *  user The user whose data is to be fetched.
-     * return A list of string representations of the fetched data.
-     * throws SQLException If there is an error accessing the database.
+     * Formats the totals for today and the last 7 and 30 days from the daily totals of the last 30 days.
+     * Mental health shows average mood and sleep instead of sums.
      */
-    private List<String> fetchUserSpecificData(String category, User user) throws SQLException {
-        String tableName = generateTableName(category, user);
-        String sql = "SELECT * FROM " + tableName;
-        List<String> data = new ArrayList<>();
-
-        try (Connection conn = dbHelper.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            ResultSet rs = pstmt.executeQuery();
-
-            // Assuming the data is being read as strings; adjust based on actual data structure
-            ResultSetMetaData rsmd = rs.getMetaData();
-            int columnsNumber = rsmd.getColumnCount();
-            while (rs.next()) {
-                StringBuilder row = new StringBuilder();
-                for (int i = 1; i <= columnsNumber; i++) {
-                    row.append(rsmd.getColumnName(i)).append(": ").append(rs.getString(i)).append(" | ");
+    private static String formatTotals(ActivityType type, List<DailyTotal> days, LocalDate today) {
+        StringBuilder text = new StringBuilder();
+        int[] periods = {1, 7, 30};
+        String[] labels = {"Today", "Last 7 days", "Last 30 days"};
+        for (int i = 0; i < periods.length; i++) {
+            LocalDate from = today.minusDays(periods[i] - 1);
+            int count = 0;
+            double sum = 0;
+            double secondarySum = 0;
+            for (DailyTotal day : days) {
+                if (!day.getDate().isBefore(from)) {
+                    count += day.getCount();
+                    sum += day.getSum();
+                    secondarySum += day.getSecondarySum();
                 }
-                data.add(row.toString());
+            }
+            if (i > 0) {
+                text.append("   |   ");
+            }
+            text.append(labels[i]).append(": ");
+            if (type == ActivityType.MENTAL_HEALTH) {
+                text.append(count == 0 ? "no entries" : String.format("mood %.1f, sleep %.1f h", sum / count, secondarySum / count));
+            } else {
+                text.append(String.format("%,.1f", sum)).append(" (").append(count).append(" entries)");
             }
         }
-        return data;
+        return text.toString();
     }
+
     /**
-     * Generates the name of the database table based on the category and user information.
-     * category The category of the data.
-     * user The user for whom the table name is generated.
-     * return The table name.
+     * Formats today's net calories, the rolling averages and the trend of the last 30 days.
      */
-    private String generateTableName(String category, User user) {
-        switch (category) {
-            case "Diet":
-                return "diet_" + user.getId() + "_" + user.getUsername();
-            case "Exercise":
-                return "exercise_" + user.getId() + "_" + user.getUsername();
-            case "Mental Health":
-                return "mental_health_" + user.getId() + "_" + user.getUsername();
-            case "Steps":
-                return "steps_" + user.getId() + "_" + user.getUsername();
-            case "Water Intake":
-                return "water_intake_" + user.getId() + "_" + user.getUsername();
-            default:
-                throw new IllegalArgumentException("Invalid category: " + category);
+    private static String formatBalance(BalanceReport report) {
+        DailyBalance today = report.getLastDay();
+        if (Double.isNaN(today.getAverage30())) {
+            return "Net calories: no diet or exercise entries in the last 30 days";
         }
+        StringBuilder text = new StringBuilder(String.format("Net calories today: %,.0f", today.getNet()));
+        text.append(Double.isNaN(today.getAverage7()) ? "   |   7-day average: -"
+                : String.format("   |   7-day average: %,.0f", today.getAverage7()));
+        text.append(String.format("   |   30-day average: %,.0f", today.getAverage30()));
+        if (!Double.isNaN(report.getTrendSlope())) {
+            text.append(String.format("   |   Trend: %+,.0f per week", report.getTrendSlope() * 7));
+        }
+        return text.toString();
     }
+
+    /**
+     * Formats the correlation of mood and sleep over the last 7, 30 and 90 days and all time, from the
+     * statistics returned by MoodSleepStats.stats() with all time first.
+     */
+    private static String formatMoodSleep(List<MoodSleepSummary> stats) {
+        StringBuilder text = new StringBuilder("Mood vs. sleep correlation: ");
+        for (int i = 1; i <= stats.size(); i++) {
+            MoodSleepSummary summary = stats.get(i % stats.size()); // All time last
+            text.append(i > 1 ? "   |   " : "").append(summary.getDays() == 0 ? "all time" : summary.getDays() + " days").append(' ');
+            double correlation = summary.getCorrelation();
+            text.append(Double.isNaN(correlation) ? "-" : String.format("%+.2f", correlation));
+            text.append(" (").append(summary.getCount()).append(" entries)");
+        }
+        MoodSleepSummary allTime = stats.get(0);
+        if (allTime.getCount() > 1) {
+            text.append(String.format("   |   mood %.1f \u00b1 %.1f, sleep %.1f \u00b1 %.1f h", allTime.getMeanMood(),
+                    allTime.getMoodDeviation(), allTime.getMeanSleep(), allTime.getSleepDeviation()));
+        }
+        return text.toString();
+    }
+
     /**
      * Main method to run the GUI.
      */
     public static void main(String[] args) {
+        FlightRecording.start();                // Record to -Dhealthtracker.jfr.file, if set
+        FitnessActivity.recoverPendingWrites(); // Replicate activities left in the write-ahead log by the last run
+        MetricsReporter.start();                // Log latency percentiles periodically and on exit
         new HealthTrackerGUI().setVisible(true);
     }
 }
@@ -0,0 +1,46 @@
+package org.healthtracker.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the process's timers. Instrumented classes look their timers up once, into static fields,
+ * and record into them on every call; snapshot() reads all of them, e.g. for the MetricsReporter.
+ * Disabled with -Dhealthtracker.metrics.enabled=false, in which case recording does nothing.
+ */
+public final class Metrics {
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("healthtracker.metrics.enabled", "true"));
+
+    private static final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the timer with the given name, creating it on first use. Names are dotted, e.g. "db.getConnection".
+     */
+    public static Timer timer(String name) {
+        return timers.computeIfAbsent(name, Timer::new);
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Returns a snapshot of every timer that has recorded at least one call, sorted by name.
+     */
+    public static List<TimerSnapshot> snapshot() {
+        List<TimerSnapshot> snapshots = new ArrayList<>();
+        for (Timer timer : timers.values()) {
+            TimerSnapshot snapshot = timer.snapshot();
+            if (snapshot.getCount() > 0) {
+                snapshots.add(snapshot);
+            }
+        }
+        snapshots.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return snapshots;
+    }
+}
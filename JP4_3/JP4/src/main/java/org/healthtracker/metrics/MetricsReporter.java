@@ -0,0 +1,77 @@
+package org.healthtracker.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends a snapshot of all timers to a log file at a fixed interval, one line per timer, with the number
+ * of calls since the previous report. Started once by the GUI.
+ * Settings, overridable with -Dhealthtracker.metrics.* system properties:
+ * healthtracker.metrics.file            Log file (default ~/.healthtracker/metrics.log).
+ * healthtracker.metrics.intervalSeconds Seconds between reports (default 60, 0 disables the reporter).
+ */
+public final class MetricsReporter {
+    private static final long INTERVAL_SECONDS = Long.getLong("healthtracker.metrics.intervalSeconds", 60);
+    private static final Path FILE = Paths.get(System.getProperty("healthtracker.metrics.file",
+            Paths.get(System.getProperty("user.home"), ".healthtracker", "metrics.log").toString()));
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private static ScheduledExecutorService scheduler;
+    private static final Map<String, Long> previousCounts = new HashMap<>(); // Count of each timer at the last report, guarded by the class lock
+
+    private MetricsReporter() {
+    }
+
+    /**
+     * Starts reporting, unless it is disabled or already running. A last report is written when the JVM shuts down.
+     */
+    public static synchronized void start() {
+        if (scheduler != null || INTERVAL_SECONDS <= 0 || !Metrics.isEnabled()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "healthtracker-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(MetricsReporter::report, INTERVAL_SECONDS, INTERVAL_SECONDS, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(MetricsReporter::report, "healthtracker-metrics-shutdown"));
+    }
+
+    /**
+     * Writes one report now. Failures are printed and otherwise ignored, so metrics never break the application.
+     */
+    public static synchronized void report() {
+        List<TimerSnapshot> snapshots = Metrics.snapshot();
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        String timestamp = LocalDateTime.now().format(TIMESTAMP);
+        try {
+            Files.createDirectories(FILE.toAbsolutePath().getParent());
+            try (Writer out = Files.newBufferedWriter(FILE, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (TimerSnapshot snapshot : snapshots) {
+                    Long previous = previousCounts.put(snapshot.getName(), snapshot.getCount());
+                    long recent = snapshot.getCount() - (previous == null ? 0 : previous);
+                    out.write(timestamp + " " + snapshot + " recent=" + recent + System.lineSeparator());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing metrics to " + FILE + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.healthtracker.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and error counts of one named operation, obtained with Metrics.timer().
+ * Either wrap the call with time(), or take System.nanoTime() before it and pass it to record() or
+ * recordFailure() afterwards. Recording costs about a hundred nanoseconds and never blocks.
+ */
+public final class Timer {
+
+    /**
+     * A timed call that may throw a checked exception, e.g. an SQLException.
+     */
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    private final String name;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    Timer(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Runs a call and records its duration, as a failure if it throws.
+     */
+    public <T, E extends Exception> T time(Call<T, E> call) throws E {
+        if (!Metrics.isEnabled()) {
+            return call.call();
+        }
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            record(start);
+            return result;
+        } catch (Exception | Error e) {
+            recordFailure(start);
+            throw e;
+        }
+    }
+
+    /**
+     * Records a successful call that started at the given System.nanoTime().
+     */
+    public void record(long startNanos) {
+        if (Metrics.isEnabled()) {
+            recordNanos(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Records a call that started at the given System.nanoTime() and failed.
+     */
+    public void recordFailure(long startNanos) {
+        if (Metrics.isEnabled()) {
+            recordNanos(System.nanoTime() - startNanos);
+            failures.increment();
+        }
+    }
+
+    /**
+     * Returns the counts recorded so far.
+     */
+    public TimerSnapshot snapshot() {
+        long[] buckets = histogram.snapshot();
+        long count = 0;
+        for (long bucketCount : buckets) {
+            count += bucketCount;
+        }
+        long max = maxNanos.get(); // Percentiles are bucket upper bounds, so they are capped at the largest value seen
+        return new TimerSnapshot(name, count, failures.sum(), totalNanos.sum(), max,
+                Math.min(max, LatencyHistogram.percentile(buckets, count, 0.5)),
+                Math.min(max, LatencyHistogram.percentile(buckets, count, 0.9)),
+                Math.min(max, LatencyHistogram.percentile(buckets, count, 0.99)),
+                Math.min(max, LatencyHistogram.percentile(buckets, count, 0.999)));
+    }
+
+    private void recordNanos(long nanos) {
+        histogram.record(nanos);
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+}
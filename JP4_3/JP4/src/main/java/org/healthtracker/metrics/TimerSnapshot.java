@@ -0,0 +1,79 @@
+package org.healthtracker.metrics;
+
+/**
+ * The counts of one Timer at one point in time. Durations are in nanoseconds; percentiles are accurate to 1.6%.
+ */
+public final class TimerSnapshot {
+    private final String name;
+    private final long count;         // Calls recorded, failed ones included
+    private final long failures;      // Calls that threw
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long p50Nanos;
+    private final long p90Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+
+    TimerSnapshot(String name, long count, long failures, long totalNanos, long maxNanos,
+                  long p50Nanos, long p90Nanos, long p99Nanos, long p999Nanos) {
+        this.name = name;
+        this.count = count;
+        this.failures = failures;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.p50Nanos = p50Nanos;
+        this.p90Nanos = p90Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMeanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    public long getP90Nanos() {
+        return p90Nanos;
+    }
+
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    /**
+     * Formats the snapshot on one line with durations in microseconds, as written by the MetricsReporter.
+     */
+    @Override
+    public String toString() {
+        return String.format("%s count=%d failures=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                name, count, failures, getMeanNanos() / 1e3, p50Nanos / 1e3, p90Nanos / 1e3, p99Nanos / 1e3,
+                p999Nanos / 1e3, maxNanos / 1e3);
+    }
+}
@@ -0,0 +1,21 @@
+package org.healthtracker.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+
+/**
+ * Answers GET /health with the number of writes waiting to be saved, for load balancers and the load generator.
+ */
+final class HealthHandler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            IngestHandler.respond(exchange, 200, "{\"status\":\"ok\",\"pendingWrites\":" + IngestHandler.pendingWrites() + "}");
+        } finally {
+            exchange.close();
+        }
+    }
+}
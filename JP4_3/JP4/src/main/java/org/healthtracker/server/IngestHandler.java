@@ -0,0 +1,334 @@
+package org.healthtracker.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.exceptions.InvalidNumericValueException;
+import org.healthtracker.exceptions.InvalidTextValueException;
+import org.healthtracker.exceptions.LoginThrottledException;
+import org.healthtracker.io.ActivityReader;
+import org.healthtracker.io.ImportFormat;
+import org.healthtracker.metrics.Metrics;
+import org.healthtracker.metrics.Timer;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.tracking.PersistenceExecutor;
+import org.healthtracker.tracking.WriteBehindBuffer;
+import org.healthtracker.user.SessionCache;
+import org.healthtracker.user.User;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Handles POST /activities for the IngestServer. A request is parsed and validated completely before
+ * anything is saved, then every valid activity is tracked and the response waits until they are saved.
+ * Responses, all with a JSON body:
+ * 200 every valid record was saved; {"saved":n,"duplicates":n,"invalid":n,"failed":0,"errors":[...]} lists invalid
+ * records by line. Records whose event_id was saved before count as duplicates and are not saved again, so a
+ * client can resend a request it got no answer for.
+ * 400 the body is malformed; nothing was saved.
+ * 401 missing or wrong credentials. 405 not a POST. 413 more records than allowed per request; nothing was saved.
+ * 415 unsupported Content-Type or Content-Encoding.
+ * 429 too many writes are waiting, or too many login attempts; nothing was saved unless "saved" says otherwise.
+ * Retry-After gives the seconds to wait.
+ * 503 some activities could not be saved because of a database error; "saved" counts the others.
+ * Settings, overridable with -Dhealthtracker.server.* system properties.
+ */
+final class IngestHandler implements HttpHandler {
+    // Writes waiting in the WriteBehindBuffer or PersistenceExecutor above which requests are turned away
+    private static final int MAX_PENDING_WRITES = Integer.getInteger("healthtracker.server.maxPendingWrites", 20_000);
+    private static final int MAX_RECORDS = Integer.getInteger("healthtracker.server.maxRecordsPerRequest", 10_000);
+    private static final long SAVE_TIMEOUT_MS = Long.getLong("healthtracker.server.saveTimeoutMs", 30_000);
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private static final Timer REQUEST_TIMER = Metrics.timer("server.ingest");
+
+    private final DatabaseHelper dbHelper;
+    private final LongAdder saved = new LongAdder();
+    private final LongAdder overloaded = new LongAdder();
+
+    IngestHandler(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    long getSavedCount() {
+        return saved.sum();
+    }
+
+    long getOverloadedCount() {
+        return overloaded.sum();
+    }
+
+    /**
+     * Returns the number of activities tracked but not yet saved, in the buffer or on the persistence executor.
+     */
+    static int pendingWrites() {
+        return WriteBehindBuffer.getPendingCount() + PersistenceExecutor.getPendingCount();
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            REQUEST_TIMER.time(() -> {
+                ingest(exchange);
+                return null;
+            });
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void ingest(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", "POST");
+            respondError(exchange, 405, "Use POST");
+            return;
+        }
+        User user = authenticate(exchange);
+        if (user == null) {
+            return;
+        }
+        if (pendingWrites() >= MAX_PENDING_WRITES) { // Checked before reading the body, so overload costs little
+            overloaded.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respondError(exchange, 429, "Too many activities waiting to be saved");
+            return;
+        }
+        ImportFormat format = format(exchange.getRequestHeaders().getFirst("Content-Type"));
+        if (format == null) {
+            respondError(exchange, 415, "Content-Type must be application/json, application/x-ndjson or text/csv");
+            return;
+        }
+        InputStream body = exchange.getRequestBody();
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        if (encoding != null && !encoding.equalsIgnoreCase("identity")) {
+            if (!encoding.equalsIgnoreCase("gzip")) {
+                respondError(exchange, 415, "Content-Encoding must be gzip or identity");
+                return;
+            }
+            body = new GZIPInputStream(body, 16 * 1024);
+        }
+
+        List<FitnessActivity> activities = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        int invalid = 0;
+        try (ActivityReader reader = new ActivityReader(format, new InputStreamReader(body, StandardCharsets.UTF_8), user)) {
+            while (true) {
+                FitnessActivity activity;
+                try {
+                    activity = reader.next();
+                } catch (InvalidTextValueException | InvalidNumericValueException e) {
+                    invalid++;
+                    addError(errors, "line " + reader.getLine() + ": " + e.getMessage());
+                    continue;
+                }
+                if (activity == null) {
+                    break;
+                }
+                if (activities.size() == MAX_RECORDS) {
+                    respondError(exchange, 413, "At most " + MAX_RECORDS + " records per request");
+                    return;
+                }
+                activities.add(activity);
+            }
+        } catch (IOException e) {
+            respondError(exchange, 400, "Malformed body: " + e.getMessage());
+            return;
+        }
+
+        List<CompletableFuture<Void>> saves = new ArrayList<>(activities.size());
+        for (FitnessActivity activity : activities) {
+            saves.add(activity.track());
+        }
+        awaitAll(saves);
+        int savedCount = 0;
+        int duplicateCount = 0;
+        int rejectedCount = 0;
+        int failedCount = 0;
+        for (int i = 0; i < saves.size(); i++) {
+            CompletableFuture<Void> save = saves.get(i);
+            if (!save.isDone()) {
+                failedCount++;
+                addError(errors, "Not saved within " + SAVE_TIMEOUT_MS + " ms");
+                continue;
+            }
+            try {
+                save.join();
+                if (activities.get(i).isDuplicate()) {
+                    duplicateCount++;
+                } else {
+                    savedCount++;
+                }
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RejectedExecutionException) {
+                    rejectedCount++;
+                } else {
+                    failedCount++;
+                    addError(errors, e.getCause().getMessage());
+                }
+            }
+        }
+        saved.add(savedCount);
+
+        int status = 200;
+        if (failedCount > 0) {
+            status = 503;
+        } else if (rejectedCount > 0) {
+            overloaded.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            status = 429;
+        }
+        respond(exchange, status, "{\"saved\":" + savedCount + ",\"duplicates\":" + duplicateCount + ",\"invalid\":" + invalid
+                + ",\"failed\":" + (failedCount + rejectedCount) + ",\"errors\":" + toJson(errors) + "}");
+    }
+
+    /**
+     * Checks the Basic credentials of a request against the SessionCache and then the database, with the
+     * client address as the LoginThrottle source. Responds and returns null if they are missing or wrong.
+     */
+    private User authenticate(HttpExchange exchange) throws IOException {
+        String[] credentials = basicCredentials(exchange.getRequestHeaders().getFirst("Authorization"));
+        if (credentials == null) {
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"HealthTracker\", charset=\"UTF-8\"");
+            respondError(exchange, 401, "Basic credentials required");
+            return null;
+        }
+        User user = SessionCache.get(credentials[0], credentials[1]);
+        if (user != null) {
+            return user;
+        }
+        try {
+            user = dbHelper.validateUser(credentials[0], credentials[1],
+                    exchange.getRemoteAddress().getAddress().getHostAddress());
+        } catch (LoginThrottledException e) {
+            exchange.getResponseHeaders().set("Retry-After", Long.toString(Math.max(1, (e.getRetryAfterMillis() + 999) / 1000)));
+            respondError(exchange, 429, e.getMessage());
+            return null;
+        } catch (SQLTransientException e) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respondError(exchange, 429, e.getMessage()); // Too many password checks in progress
+            return null;
+        } catch (SQLException e) {
+            respondError(exchange, 503, "Database unavailable");
+            System.err.println("Error validating ingest credentials: " + e.getMessage());
+            return null;
+        }
+        if (user == null) {
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"HealthTracker\", charset=\"UTF-8\"");
+            respondError(exchange, 401, "Invalid username or password");
+        }
+        return user;
+    }
+
+    /**
+     * Returns the username and password of a Basic Authorization header, or null if there are none.
+     */
+    private static String[] basicCredentials(String header) {
+        if (header == null || !header.regionMatches(true, 0, "Basic ", 0, 6)) {
+            return null;
+        }
+        String decoded;
+        try {
+            decoded = new String(Base64.getDecoder().decode(header.substring(6).trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        int colon = decoded.indexOf(':');
+        return colon <= 0 ? null : new String[]{decoded.substring(0, colon), decoded.substring(colon + 1)};
+    }
+
+    private static ImportFormat format(String contentType) {
+        if (contentType == null) {
+            return ImportFormat.JSON;
+        }
+        String type = contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        switch (type) {
+            case "application/json":
+            case "application/x-ndjson":
+            case "application/jsonl":
+                return ImportFormat.JSON;
+            case "text/csv":
+                return ImportFormat.CSV;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Waits until every save has completed or the save timeout has passed.
+     */
+    private static void awaitAll(List<CompletableFuture<Void>> saves) {
+        try {
+            CompletableFuture.allOf(saves.toArray(new CompletableFuture<?>[0])).get(SAVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            // Failed and unfinished saves are counted one by one afterwards
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void addError(List<String> errors, String error) {
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(error);
+        }
+    }
+
+    private static void respondError(HttpExchange exchange, int status, String message) throws IOException {
+        respond(exchange, status, "{\"error\":" + quote(message) + "}");
+    }
+
+    static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String toJson(List<String> values) {
+        StringBuilder json = new StringBuilder("[");
+        for (String value : values) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(quote(value));
+        }
+        return json.append(']').toString();
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
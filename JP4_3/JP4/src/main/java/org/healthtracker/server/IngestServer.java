@@ -0,0 +1,125 @@
+package org.healthtracker.server;
+
+import com.sun.net.httpserver.HttpServer;
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.jfr.FlightRecording;
+import org.healthtracker.metrics.MetricsReporter;
+import org.healthtracker.tracking.DurabilityMode;
+import org.healthtracker.tracking.FitnessActivity;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless HTTP server that lets device gateways push activities without the GUI.
+ * POST /activities takes the records of one user, authenticated with HTTP Basic credentials, in the
+ * ActivityImporter format: a JSON array or newline-delimited JSON (application/json, application/x-ndjson)
+ * or CSV with a header line (text/csv), optionally gzip-compressed (Content-Encoding: gzip).
+ * Every record is validated and saved with FitnessActivity.track(); the main method runs the server in
+ * BUFFERED durability mode unless -Dhealthtracker.persistence.durability says otherwise, so the
+ * WriteBehindBuffer writes them in batches per table. See IngestHandler for the responses.
+ * GET /health answers 200 with the number of writes waiting to be saved.
+ * Requests run on virtual threads when the JDK has them (21+), otherwise on a pool of platform threads.
+ * Settings, overridable with -Dhealthtracker.server.* system properties.
+ */
+public final class IngestServer {
+    private static final String HOST = System.getProperty("healthtracker.server.host", "127.0.0.1"); // Loopback only by default
+    private static final int PORT = Integer.getInteger("healthtracker.server.port", 8080);
+    private static final int THREADS = Integer.getInteger("healthtracker.server.threads", 64); // Without virtual threads
+    private static final int BACKLOG = Integer.getInteger("healthtracker.server.backlog", 1_024); // Pending TCP connections
+    private static final boolean USE_VIRTUAL_THREADS = Boolean.parseBoolean(
+            System.getProperty("healthtracker.server.virtualThreads", "true"));
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final IngestHandler ingestHandler;
+
+    /**
+     * Creates a server bound to the given address; port 0 picks a free port. Call start() to accept requests.
+     */
+    public IngestServer(DatabaseHelper dbHelper, InetSocketAddress address) throws IOException {
+        this.server = HttpServer.create(address, BACKLOG);
+        this.executor = createExecutor();
+        this.ingestHandler = new IngestHandler(dbHelper);
+        server.setExecutor(executor);
+        server.createContext("/activities", ingestHandler);
+        server.createContext("/health", new HealthHandler());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting connections and waits up to the given time for requests in progress to finish.
+     * Activities still buffered are written by the WriteBehindBuffer's shutdown hook.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the address the server listens on, with the actual port if it was created with port 0.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Returns the number of activities saved through this server.
+     */
+    public long getSavedCount() {
+        return ingestHandler.getSavedCount();
+    }
+
+    /**
+     * Returns the number of requests answered with 429 because the write queue was full.
+     */
+    public long getOverloadedCount() {
+        return ingestHandler.getOverloadedCount();
+    }
+
+    /**
+     * Creates a virtual-thread-per-task executor when available (JDK 21+), otherwise a fixed pool of daemon threads.
+     */
+    private static ExecutorService createExecutor() {
+        if (USE_VIRTUAL_THREADS) {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // Virtual threads are not available on this JDK, fall back to platform threads
+            }
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(THREADS, r -> {
+            Thread t = new Thread(r, "healthtracker-server-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Runs the server until the JVM is stopped, with the database settings of the GUI (-Dhealthtracker.db.*).
+     */
+    public static void main(String[] args) throws IOException {
+        if (System.getProperty("healthtracker.persistence.durability") == null) {
+            FitnessActivity.setDurabilityMode(DurabilityMode.BUFFERED); // Batch the inserts per table
+        }
+        FitnessActivity.setEcho(false);
+        FlightRecording.start();
+        FitnessActivity.recoverPendingWrites();
+        MetricsReporter.start();
+        IngestServer server = new IngestServer(new DatabaseHelper(), new InetSocketAddress(HOST, PORT));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1), "healthtracker-server-shutdown"));
+        server.start();
+        InetSocketAddress address = server.getAddress();
+        System.out.println("Accepting activities on http://" + address.getHostString() + ":" + address.getPort() + "/activities ("
+                + FitnessActivity.getDurabilityMode() + " durability)");
+    }
+}
@@ -0,0 +1,99 @@
+package org.healthtracker.tracking;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Binary encoding of activity dates and values, shared by the on-disk logs (LocalActivityStore, WriteAheadLog).
+ * Values are written with a one byte tag so that strings, ints and doubles read back as the same Java types.
+ */
+public final class ActivityCodec {
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    // Value tags
+    private static final byte NULL_VALUE = 0;
+    private static final byte STRING_VALUE = 1;
+    private static final byte INT_VALUE = 2;
+    private static final byte DOUBLE_VALUE = 3;
+
+    private ActivityCodec() {
+    }
+
+    public static void writeDate(DataOutputStream out, LocalDate date) throws IOException {
+        out.writeLong(date == null ? NO_DATE : date.toEpochDay());
+    }
+
+    public static LocalDate readDate(DataInputStream in) throws IOException {
+        long epochDay = in.readLong();
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * Writes the number of values followed by each tagged value.
+     */
+    public static void writeValues(DataOutputStream out, Object[] values) throws IOException {
+        out.writeByte(values.length);
+        for (Object value : values) {
+            if (value == null) {
+                out.writeByte(NULL_VALUE);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                out.writeByte(INT_VALUE);
+                out.writeInt(((Number) value).intValue());
+            } else if (value instanceof Number) {
+                out.writeByte(DOUBLE_VALUE);
+                out.writeDouble(((Number) value).doubleValue());
+            } else {
+                out.writeByte(STRING_VALUE);
+                out.writeUTF(value.toString());
+            }
+        }
+    }
+
+    /**
+     * Writes a client event id as the optional last field of a record; nothing is written if there is none,
+     * so records without one keep the format of logs written before event ids existed.
+     */
+    public static void writeEventId(DataOutputStream out, String eventId) throws IOException {
+        if (eventId != null) {
+            out.writeUTF(eventId);
+        }
+    }
+
+    /**
+     * Reads the event id written by writeEventId() at the end of a record, or returns null if the record ends here.
+     * The stream must hold exactly one record, e.g. a DataInputStream over its payload bytes.
+     */
+    public static String readEventId(DataInputStream in) throws IOException {
+        return in.available() > 0 ? in.readUTF() : null;
+    }
+
+    /**
+     * Reads values written by writeValues().
+     * throws IOException if the data is truncated or has an unknown tag.
+     */
+    public static Object[] readValues(DataInputStream in) throws IOException {
+        Object[] values = new Object[in.readByte()];
+        for (int i = 0; i < values.length; i++) {
+            byte tag = in.readByte();
+            switch (tag) {
+                case NULL_VALUE:
+                    values[i] = null;
+                    break;
+                case INT_VALUE:
+                    values[i] = in.readInt();
+                    break;
+                case DOUBLE_VALUE:
+                    values[i] = in.readDouble();
+                    break;
+                case STRING_VALUE:
+                    values[i] = in.readUTF();
+                    break;
+                default:
+                    throw new IOException("Unknown value tag " + tag);
+            }
+        }
+        return values;
+    }
+}
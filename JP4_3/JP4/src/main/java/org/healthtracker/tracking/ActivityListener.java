@@ -0,0 +1,31 @@
+package org.healthtracker.tracking;
+
+import org.healthtracker.user.User;
+
+/**
+ * Receives every change made to a user's saved activities, e.g. to keep caches and statistics up to date.
+ * Register listeners with FitnessActivity.addListener(). Callbacks run on the thread that made the change,
+ * after it was saved, and must not block.
+ */
+public interface ActivityListener {
+
+    /**
+     * Called after an activity was saved. Its id is 0 if the store has not assigned one yet (WAL mode).
+     */
+    void activityInserted(FitnessActivity activity);
+
+    /**
+     * Called after the values of a saved activity were replaced.
+     */
+    void activityUpdated(ActivityType type, User user, int activityId, Object[] values);
+
+    /**
+     * Called after a saved activity was deleted.
+     */
+    void activityDeleted(ActivityType type, User user, int activityId);
+
+    /**
+     * Called after all activities of a user were deleted.
+     */
+    void userReset(User user);
+}
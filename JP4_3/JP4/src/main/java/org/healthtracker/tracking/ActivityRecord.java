@@ -0,0 +1,89 @@
+package org.healthtracker.tracking;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * A saved activity as read back from the database.
+ */
+public class ActivityRecord {
+    private final ActivityType type;
+    private final int activityId;   // Database id of the activity
+    private final LocalDate date;   // Day the activity was recorded for
+    private final Object[] values;  // Values in the column order of type.getColumns()
+    private final String eventId;   // Client event id, or null
+
+    public ActivityRecord(ActivityType type, int activityId, LocalDate date, Object[] values) {
+        this(type, activityId, date, values, null);
+    }
+
+    public ActivityRecord(ActivityType type, int activityId, LocalDate date, Object[] values, String eventId) {
+        this.type = type;
+        this.activityId = activityId;
+        this.date = date;
+        this.values = values;
+        this.eventId = eventId;
+    }
+
+    /**
+     * Reads the current row of a result set selected with ActivityTable.selectColumns().
+     */
+    public static ActivityRecord read(ActivityType type, ResultSet rs) throws SQLException {
+        int columnCount = type.getColumns().length;
+        Object[] values = new Object[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            values[i] = rs.getObject(i + 3);
+        }
+        java.sql.Date date = rs.getDate(2);
+        return new ActivityRecord(type, rs.getInt(1), date == null ? null : date.toLocalDate(), values);
+    }
+
+    public ActivityType getType() {
+        return type;
+    }
+
+    public int getActivityId() {
+        return activityId;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    /**
+     * Returns the client event id the activity was tracked with, or null. Records read from the database leave it out.
+     */
+    public String getEventId() {
+        return eventId;
+    }
+
+    /**
+     * Returns the value of the column at the given index of type.getColumns().
+     */
+    public Object getValue(int column) {
+        return values[column];
+    }
+
+    /**
+     * Returns the values in the column order of type.getColumns().
+     */
+    public Object[] getValues() {
+        return values.clone();
+    }
+
+    /**
+     * Formats the record the way the summary panel shows rows, e.g. "activity_id: 1 | date: 2024-05-01 | steps: 900 | ".
+     */
+    @Override
+    public String toString() {
+        StringBuilder row = new StringBuilder();
+        row.append("activity_id: ").append(activityId).append(" | ");
+        row.append("date: ").append(date).append(" | ");
+        String[] columns = type.getColumns();
+        for (int i = 0; i < columns.length; i++) {
+            row.append(columns[i]).append(": ").append(values[i]).append(" | ");
+        }
+        return row.toString();
+    }
+}
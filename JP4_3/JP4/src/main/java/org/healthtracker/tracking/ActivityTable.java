@@ -0,0 +1,360 @@
+package org.healthtracker.tracking;
+
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.db.PartitionManager;
+import org.healthtracker.db.StorageMode;
+import org.healthtracker.user.User;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * The table that holds one user's activities of one type, resolved for the current storage mode.
+ * With PER_USER_TABLES the table belongs to the user alone; with CONSOLIDATED the table is shared by
+ * all users and every statement is restricted to the user's rows with a user_id predicate.
+ * All SQL for activity rows is generated here so the tracking classes do not depend on the layout.
+ * The statements are built on first use and kept, and User keeps its tables, so the SQL text of a
+ * user's statements is only built once and the same String is passed to the statement cache every time.
+ */
+public final class ActivityTable {
+    private final ActivityType type;
+    private final String name;     // Table name
+    private final boolean shared;  // true if the table holds rows of all users
+    private final int userId;      // The user the statements are restricted to
+
+    // SQL text, built on first use; racy initialization is harmless as every thread builds the same String
+    private String insertSql;
+    private String updateSql;
+    private String deleteSql;
+    private String deleteAllSql;
+    private String countSql;
+    private String selectAllSql;
+    private String pageSql;
+    private String lockDateSql;
+    private String dayTotalsSql;
+
+    private ActivityTable(ActivityType type, String name, boolean shared, int userId) {
+        this.type = type;
+        this.name = name;
+        this.shared = shared;
+        this.userId = userId;
+    }
+
+    /**
+     * Returns the table for the given user and activity type in the current storage mode, as cached by the user.
+     */
+    public static ActivityTable of(ActivityType type, User user) {
+        return user.getActivityTable(type);
+    }
+
+    /**
+     * Returns the table for the given user id, username and activity type in the current storage mode.
+     */
+    public static ActivityTable of(ActivityType type, int userId, String username) {
+        return DatabaseHelper.getStorageMode() == StorageMode.CONSOLIDATED
+                ? consolidated(type, userId)
+                : perUser(type, userId, username);
+    }
+
+    /**
+     * Returns the user's own table, e.g. diet_1_alice.
+     */
+    public static ActivityTable perUser(ActivityType type, int userId, String username) {
+        return new ActivityTable(type, type.getTablePrefix() + "_" + userId + "_" + username, false, userId);
+    }
+
+    /**
+     * Returns the user's rows in the shared table, e.g. activity_diet.
+     */
+    public static ActivityTable consolidated(ActivityType type, int userId) {
+        return new ActivityTable(type, consolidatedName(type), true, userId);
+    }
+
+    /**
+     * Returns the name of the shared table for an activity type.
+     */
+    public static String consolidatedName(ActivityType type) {
+        return "activity_" + type.getTablePrefix();
+    }
+
+    public ActivityType getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isShared() {
+        return shared;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    /**
+     * Returns the CREATE TABLE IF NOT EXISTS statement for this table.
+     * Shared tables are clustered on (user_id, date, activity_id) so one user's rows are stored together in date order,
+     * and are partitioned by month when PartitionManager is enabled. Their (user_id, activity_id) key serves the
+     * keyset pages of ActivityQuery.findPage() from the user's rows alone. Per-user tables get an index on date.
+     * Client event ids are unique per user and day; the key includes the date because every unique key of a
+     * partitioned table must contain the partitioning column. Rows without an event id are never duplicates.
+     * Keys are left unnamed: MySQL names them per table, while H2, used by the benchmarks, needs index names
+     * that are unique in the whole schema.
+     */
+    public String createSql() {
+        StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS ").append(name).append(" (");
+        if (shared) {
+            sql.append("user_id INT NOT NULL, date DATE NOT NULL, activity_id INT NOT NULL AUTO_INCREMENT");
+        } else {
+            sql.append("activity_id INT AUTO_INCREMENT PRIMARY KEY, date DATE");
+        }
+        String[] columns = type.getColumns();
+        String[] columnTypes = type.getColumnTypes();
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(", ").append(columns[i]).append(' ').append(columnTypes[i]);
+        }
+        sql.append(", event_id VARCHAR(").append(FitnessActivity.MAX_EVENT_ID_LENGTH).append(")");
+        sql.append(", UNIQUE KEY (").append(String.join(", ", eventKeyColumns())).append(')');
+        if (shared) {
+            sql.append(", PRIMARY KEY (user_id, date, activity_id), KEY (activity_id), KEY (user_id, activity_id))");
+            if (PartitionManager.isEnabled()) {
+                sql.append(PartitionManager.partitionClause(LocalDate.now()));
+            }
+            return sql.toString();
+        }
+        return sql.append(", KEY (date))").toString();
+    }
+
+    /**
+     * Returns the ALTER TABLE statement that adds the event_id column to a table created before event ids existed.
+     * The unique key is added by addEventKeySql(), as a separate statement that H2 also understands.
+     */
+    public String addEventIdSql() {
+        return "ALTER TABLE " + name + " ADD COLUMN event_id VARCHAR(" + FitnessActivity.MAX_EVENT_ID_LENGTH + ")";
+    }
+
+    /**
+     * Returns the ALTER TABLE statement that adds the unique key on the event id to a table created without it.
+     */
+    public String addEventKeySql() {
+        return "ALTER TABLE " + name + " ADD UNIQUE KEY (" + String.join(", ", eventKeyColumns()) + ")";
+    }
+
+    /**
+     * Returns the ALTER TABLE statement that adds the (user_id, activity_id) key to a shared table created before it existed.
+     */
+    public String addUserActivityKeySql() {
+        return "ALTER TABLE " + name + " ADD KEY (user_id, activity_id)";
+    }
+
+    /**
+     * Returns the SELECT of the event ids and dates of the user's activities with one of the given number of
+     * event ids. Parameters: bindUser(), then the event ids.
+     */
+    public String existingEventIdsSql(int count) {
+        StringBuilder sql = new StringBuilder("SELECT event_id, date FROM ").append(name)
+                .append(" WHERE ").append(shared ? "user_id = ? AND " : "").append("event_id IN (");
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * Returns the columns of the unique key on the event id, in key order.
+     */
+    public String[] eventKeyColumns() {
+        return shared ? new String[]{"user_id", "event_id", "date"} : new String[]{"event_id", "date"};
+    }
+
+    /**
+     * Returns the INSERT statement for this table.
+     * Parameters are bound with bindUser() followed by the date, the value columns in order and the event id.
+     */
+    public String insertSql() {
+        if (insertSql == null) {
+            insertSql = buildInsertSql();
+        }
+        return insertSql;
+    }
+
+    private String buildInsertSql() {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(name).append(" (");
+        if (shared) {
+            sql.append("user_id, ");
+        }
+        sql.append("date");
+        String[] columns = type.getColumns();
+        for (String column : columns) {
+            sql.append(", ").append(column);
+        }
+        sql.append(", event_id) VALUES (");
+        if (shared) {
+            sql.append("?, ");
+        }
+        sql.append('?');
+        for (int i = 0; i <= columns.length; i++) {
+            sql.append(", ?");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * Returns the UPDATE statement that replaces all value columns of one activity.
+     * Parameters: the value columns in order, then bindRowKey().
+     */
+    public String updateSql() {
+        if (updateSql == null) {
+            updateSql = buildUpdateSql();
+        }
+        return updateSql;
+    }
+
+    private String buildUpdateSql() {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(name).append(" SET ");
+        String[] columns = type.getColumns();
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "" : ", ").append(columns[i]).append(" = ?");
+        }
+        return sql.append(rowKeyPredicate()).toString();
+    }
+
+    /**
+     * Returns the DELETE statement for one activity. Parameters: bindRowKey().
+     */
+    public String deleteSql() {
+        if (deleteSql == null) {
+            deleteSql = "DELETE FROM " + name + rowKeyPredicate();
+        }
+        return deleteSql;
+    }
+
+    /**
+     * Returns the DELETE statement that removes all of the user's activities. Parameters: bindUser().
+     */
+    public String deleteAllSql() {
+        if (deleteAllSql == null) {
+            deleteAllSql = "DELETE FROM " + name + userPredicate(" WHERE ");
+        }
+        return deleteAllSql;
+    }
+
+    /**
+     * Returns the TRUNCATE statement that empties a per-user table without logging each row.
+     * Not valid for shared tables, which hold other users' rows.
+     */
+    public String truncateSql() {
+        if (shared) {
+            throw new IllegalStateException("Cannot truncate the shared table " + name);
+        }
+        return "TRUNCATE TABLE " + name;
+    }
+
+    /**
+     * Returns a DELETE of at most the given number of the user's activities, for clearing a user's rows
+     * of a shared table in short transactions. Parameters: bindUser().
+     */
+    public String deleteChunkSql(int chunkSize) {
+        return deleteAllSql() + " LIMIT " + chunkSize;
+    }
+
+    /**
+     * Returns the SELECT of the number of the user's activities. Parameters: bindUser().
+     */
+    public String countSql() {
+        if (countSql == null) {
+            countSql = "SELECT COUNT(*) FROM " + name + userPredicate(" WHERE ");
+        }
+        return countSql;
+    }
+
+    /**
+     * Returns a SELECT of all the user's activities ordered by activity id. Parameters: bindUser().
+     */
+    public String selectAllSql() {
+        if (selectAllSql == null) {
+            selectAllSql = "SELECT " + selectColumns() + " FROM " + name + userPredicate(" WHERE ") + " ORDER BY activity_id";
+        }
+        return selectAllSql;
+    }
+
+    /**
+     * Returns a SELECT of the user's activities after an activity id, ordered by activity id and limited to one page.
+     * Parameters: the last activity id seen, then bindUser(), then the page size.
+     */
+    public String pageSql() {
+        if (pageSql == null) {
+            pageSql = "SELECT " + selectColumns() + " FROM " + name + " WHERE activity_id > ?" + userPredicate(" AND ")
+                    + " ORDER BY activity_id LIMIT ?";
+        }
+        return pageSql;
+    }
+
+    /**
+     * Returns the SELECT that reads the date of one activity and locks its row until the transaction ends.
+     * Parameters: bindRowKey().
+     */
+    public String lockDateSql() {
+        if (lockDateSql == null) {
+            lockDateSql = "SELECT date FROM " + name + rowKeyPredicate() + " FOR UPDATE";
+        }
+        return lockDateSql;
+    }
+
+    /**
+     * Returns the SELECT of the count, sum, min and max of the metric column and the sum of the secondary
+     * column over one day of the user's activities. Parameters: the date, then bindUser().
+     */
+    public String dayTotalsSql() {
+        if (dayTotalsSql == null) {
+            String[] columns = type.getColumns();
+            String metric = columns[type.getMetricColumn()];
+            String secondary = type.getSecondaryColumn() < 0 ? "0" : columns[type.getSecondaryColumn()];
+            dayTotalsSql = "SELECT COUNT(*), COALESCE(SUM(" + metric + "), 0), COALESCE(MIN(" + metric + "), 0), "
+                    + "COALESCE(MAX(" + metric + "), 0), COALESCE(SUM(" + secondary + "), 0) FROM " + name
+                    + " WHERE date = ?" + userPredicate(" AND ");
+        }
+        return dayTotalsSql;
+    }
+
+    /**
+     * Returns the selected columns: activity_id, date and the value columns.
+     */
+    public String selectColumns() {
+        return "activity_id, date, " + String.join(", ", type.getColumns());
+    }
+
+    /**
+     * Returns the user_id predicate prefixed with the given keyword, or an empty string for per-user tables.
+     */
+    public String userPredicate(String keyword) {
+        return shared ? keyword + "user_id = ?" : "";
+    }
+
+    /**
+     * Binds the user id at the given index if the table is shared.
+     * return The index of the next parameter.
+     */
+    public int bindUser(PreparedStatement pstmt, int index) throws SQLException {
+        if (shared) {
+            pstmt.setInt(index++, userId);
+        }
+        return index;
+    }
+
+    /**
+     * Binds the activity id and, for shared tables, the user id of a row key predicate.
+     * return The index of the next parameter.
+     */
+    public int bindRowKey(PreparedStatement pstmt, int index, int activityId) throws SQLException {
+        pstmt.setInt(index++, activityId);
+        return bindUser(pstmt, index);
+    }
+
+    private String rowKeyPredicate() {
+        return " WHERE activity_id = ?" + userPredicate(" AND ");
+    }
+}
@@ -0,0 +1,75 @@
+package org.healthtracker.tracking;
+
+/**
+ * The kinds of activities that can be tracked, together with the columns used to store them.
+ * ActivityTable turns these into table names and SQL for the current storage mode.
+ */
+public enum ActivityType {
+    DIET("diet", "Diet", new String[]{"food_item", "calories"}, new String[]{"VARCHAR(255)", "INT"}, 1, -1),
+    EXERCISE("exercise", "Exercise", new String[]{"duration", "calories_burned"}, new String[]{"INT", "INT"}, 1, 0),
+    MENTAL_HEALTH("mental_health", "Mental Health", new String[]{"mood", "sleep_hours"}, new String[]{"INT", "DOUBLE"}, 0, 1),
+    STEPS("steps", "Steps", new String[]{"steps"}, new String[]{"INT"}, 0, -1),
+    WATER_INTAKE("water_intake", "Water Intake", new String[]{"liters"}, new String[]{"DOUBLE"}, 0, -1);
+
+    private final String tablePrefix;   // Prefix of the per-user table names
+    private final String category;      // Name shown in the GUI
+    private final String[] columns;     // Value columns, excluding activity_id and date
+    private final String[] columnTypes; // SQL types of the value columns
+    private final int metricColumn;     // Column summed, and tracked as min/max, in the daily rollups
+    private final int secondaryColumn;  // Column also summed in the daily rollups, or -1
+
+    ActivityType(String tablePrefix, String category, String[] columns, String[] columnTypes,
+                 int metricColumn, int secondaryColumn) {
+        this.tablePrefix = tablePrefix;
+        this.category = category;
+        this.columns = columns;
+        this.columnTypes = columnTypes;
+        this.metricColumn = metricColumn;
+        this.secondaryColumn = secondaryColumn;
+    }
+
+    public String getTablePrefix() {
+        return tablePrefix;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    public String[] getColumnTypes() {
+        return columnTypes.clone();
+    }
+
+    /**
+     * Returns the index of the column aggregated by the daily rollups: calories for diet and exercise,
+     * mood for mental health, steps and liters.
+     */
+    public int getMetricColumn() {
+        return metricColumn;
+    }
+
+    /**
+     * Returns the index of the second column summed by the daily rollups (exercise duration,
+     * sleep hours), or -1 if there is none.
+     */
+    public int getSecondaryColumn() {
+        return secondaryColumn;
+    }
+
+    /**
+     * Looks up an activity type by the category name shown in the GUI.
+     * throws IllegalArgumentException if the category is unknown.
+     */
+    public static ActivityType fromCategory(String category) {
+        for (ActivityType type : values()) {
+            if (type.category.equals(category)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Invalid category: " + category);
+    }
+}
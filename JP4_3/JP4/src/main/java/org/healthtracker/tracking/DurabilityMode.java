@@ -0,0 +1,10 @@
+package org.healthtracker.tracking;
+
+/**
+ * How tracked activities are written to the activity store.
+ */
+public enum DurabilityMode {
+    SYNC,     // Each activity is inserted on its own as soon as it is tracked
+    BUFFERED, // Activities are held in the WriteBehindBuffer and inserted in batches per table
+    WAL       // Activities are appended to the local WriteAheadLog and replicated to the store in the background
+}
@@ -0,0 +1,209 @@
+package org.healthtracker.tracking;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory set of the client event ids saved recently, checked by FitnessActivity.track() so a client that
+ * retries after a timeout is answered without a database round trip. An event id is unique per user,
+ * activity type and day, like the unique event id key of the activity tables, which stays the authority for
+ * anything older than this set remembers, e.g. after a restart.
+ * Keys are stored as 64-bit fingerprints in open-addressing tables, one per time bucket: new keys go to the
+ * current bucket, lookups check the current and the previous one, and when the current bucket is full or
+ * older than the window it becomes the previous one and the oldest is dropped. A key is therefore remembered
+ * for at least one window, and memory is bounded by two buckets of 16 bytes per key of capacity.
+ * Unlike a Bloom filter, a match is trusted without asking the database: two different keys only share a
+ * fingerprint with a probability of about n / 2^64 per lookup.
+ * Only keys whose save has completed are answered as duplicates at once. While a save is in flight its key is
+ * kept apart with the save's future, and a repeat gets that future: it completes as a duplicate once the save
+ * does, or fails with it, so a client is never told an event is stored before it is.
+ * A user's keys are forgotten all at once by moving the user to a new generation, which is part of the fingerprint;
+ * the fingerprints of the old generation can no longer match and age out with their buckets.
+ * Settings, overridable with -Dhealthtracker.dedup.* system properties.
+ */
+public final class EventIdFilter {
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("healthtracker.dedup.enabled", "true"));
+    private static final int CAPACITY = Integer.getInteger("healthtracker.dedup.capacity", 262_144); // Keys per bucket
+    private static final long WINDOW_MILLIS = Long.getLong("healthtracker.dedup.windowMinutes", 60) * 60_000;
+
+    private static Bucket current = new Bucket(CAPACITY);
+    private static Bucket previous = new Bucket(1);
+    private static final Map<Long, CompletableFuture<Void>> inFlight = new HashMap<>(); // Guarded by the class lock
+    private static final CompletableFuture<Void> SAVED = CompletableFuture.completedFuture(null);
+    private static final LongAdder duplicates = new LongAdder();
+    private static final Map<Integer, Integer> generations = new ConcurrentHashMap<>(); // Keyed by user id, only users that were forgotten
+
+    private EventIdFilter() {
+    }
+
+    /**
+     * Claims the event id of an activity about to be saved. Activities without an event id are never duplicates.
+     * return null if the activity must be saved, after which end() must be called; otherwise a future that has
+     * completed if the event id was saved before, or that completes with the save of the same event id in flight.
+     */
+    public static CompletableFuture<Void> tryBegin(FitnessActivity activity) {
+        String eventId = activity.getEventId();
+        if (!ENABLED || eventId == null) {
+            return null;
+        }
+        long fingerprint = fingerprint(activity, eventId);
+        synchronized (EventIdFilter.class) {
+            if (current.contains(fingerprint) || previous.contains(fingerprint)) {
+                duplicates.increment();
+                return SAVED;
+            }
+            CompletableFuture<Void> pending = inFlight.get(fingerprint);
+            if (pending != null) {
+                return pending.thenRun(duplicates::increment);
+            }
+            inFlight.put(fingerprint, new CompletableFuture<>());
+        }
+        activity.setEventFingerprint(fingerprint);
+        return null;
+    }
+
+    /**
+     * Ends a save started after tryBegin(). The event id is remembered as saved unless the save failed, in which
+     * case it is forgotten so the client can retry, and repeats that waited for the save fail with the same error.
+     * error The error that prevented the save, or null if it completed.
+     */
+    public static void end(FitnessActivity activity, Throwable error) {
+        long fingerprint = activity.getEventFingerprint();
+        if (fingerprint == 0) {
+            return; // No event id, or not claimed
+        }
+        activity.setEventFingerprint(0);
+        CompletableFuture<Void> pending;
+        synchronized (EventIdFilter.class) {
+            pending = inFlight.remove(fingerprint);
+            if (error == null) {
+                remember(fingerprint);
+            }
+        }
+        if (pending == null) {
+            return;
+        }
+        if (error == null) {
+            pending.complete(null);
+        } else {
+            pending.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error);
+        }
+    }
+
+    /**
+     * Remembers the event id of an activity saved without track(), e.g. by a benchmark.
+     * return false if the activity is a duplicate of one saved or being saved.
+     */
+    public static boolean tryAdd(FitnessActivity activity) {
+        if (tryBegin(activity) != null) {
+            return false;
+        }
+        end(activity, null);
+        return true;
+    }
+
+    private static void remember(long fingerprint) {
+        if (current.size >= CAPACITY || System.currentTimeMillis() - current.createdAt >= WINDOW_MILLIS) {
+            previous = current;
+            current = new Bucket(CAPACITY);
+        }
+        current.add(fingerprint);
+    }
+
+    /**
+     * Returns the number of activities rejected as duplicates so far.
+     */
+    public static long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    /**
+     * Returns the number of event ids currently remembered, saved or being saved.
+     */
+    public static synchronized int size() {
+        return current.size + previous.size + inFlight.size();
+    }
+
+    /**
+     * Forgets the event ids of one user, e.g. after the user's data was reset, leaving those of other users.
+     */
+    public static void forget(int userId) {
+        generations.merge(userId, 1, Integer::sum);
+    }
+
+    /**
+     * Forgets every event id, e.g. between benchmark runs.
+     */
+    public static synchronized void clear() {
+        current = new Bucket(CAPACITY);
+        previous = new Bucket(1);
+    }
+
+    private static long fingerprint(FitnessActivity activity, String eventId) {
+        int userId = activity.getUser().getId();
+        return fingerprint(activity.getType(), userId, generations.getOrDefault(userId, 0), activity.getDate(), eventId);
+    }
+
+    /**
+     * Returns the 64-bit fingerprint of an event key: FNV-1a over the event id, mixed with the user, its generation,
+     * the type and the day through the MurmurHash3 finalizer. Never returns 0, which marks an empty slot.
+     */
+    static long fingerprint(ActivityType type, int userId, int generation, LocalDate date, String eventId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < eventId.length(); i++) {
+            hash = (hash ^ eventId.charAt(i)) * 0x100000001b3L;
+        }
+        hash = mix(hash ^ ((long) generation << 40 | (userId & 0xffffffffL) << 8 | type.ordinal()));
+        hash = mix(hash ^ (date == null ? Long.MIN_VALUE : date.toEpochDay()));
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Fingerprints of one time bucket, in a linear-probing table kept at most half full.
+     */
+    private static final class Bucket {
+        final long[] slots;
+        final int mask;
+        final long createdAt = System.currentTimeMillis();
+        int size;
+
+        Bucket(int capacity) {
+            int length = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) * 2; // Power of two, at least twice the capacity
+            slots = new long[length];
+            mask = length - 1;
+        }
+
+        boolean contains(long fingerprint) {
+            for (int i = (int) fingerprint & mask; slots[i] != 0; i = (i + 1) & mask) {
+                if (slots[i] == fingerprint) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(long fingerprint) {
+            int i = (int) fingerprint & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = fingerprint;
+            size++;
+        }
+
+    }
+}
@@ -1,8 +1,18 @@
 package org.healthtracker.tracking;
 
+import org.healthtracker.db.ActivityStore;
+import org.healthtracker.jfr.TrackEvent;
+import org.healthtracker.metrics.Metrics;
+import org.healthtracker.metrics.Timer;
 import org.healthtracker.user.User;
+import org.healthtracker.wal.WalReplicator;
 
+import java.io.IOException;
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Abstract class representing a generic fitness activity.
@@ -11,6 +21,28 @@ import java.sql.SQLException;
 public abstract class FitnessActivity {
     protected String name;  // The name of the fitness activity
     protected User user;    // User associated with the fitness activity
+    protected LocalDate date = LocalDate.now(); // Day the activity is recorded for
+    private volatile int activityId;            // Assigned by the store once saved, 0 until then
+    private String eventId;                     // Optional id chosen by the client, unique per user, type and day
+    private volatile boolean duplicate;         // Set instead of saving when the event id was already saved
+    private long eventFingerprint;              // Key claimed in the EventIdFilter while the save is in flight, 0 if none
+
+    public static final int MAX_EVENT_ID_LENGTH = 64; // VARCHAR(64) of event_id
+
+    // Latency per activity type of saves, updates and deletes, indexed by ActivityType.ordinal()
+    private static final Timer[] SAVE_TIMERS = timers("activity.save.");
+    private static final Timer[] UPDATE_TIMERS = timers("activity.update.");
+    private static final Timer[] DELETE_TIMERS = timers("activity.delete.");
+    private static final Timer WAL_APPEND_TIMER = Metrics.timer("activity.walAppend");
+
+    // Notified of every saved change, e.g. by the ActivityCache
+    private static final List<ActivityListener> listeners = new CopyOnWriteArrayList<>();
+
+    // How tracked activities reach the database, overridable with -Dhealthtracker.persistence.durability
+    private static volatile DurabilityMode durabilityMode = DurabilityMode.valueOf(
+            System.getProperty("healthtracker.persistence.durability", DurabilityMode.SYNC.name()).toUpperCase());
+    // Whether track() prints each activity, overridable with -Dhealthtracker.tracking.echo
+    private static volatile boolean echo = Boolean.parseBoolean(System.getProperty("healthtracker.tracking.echo", "true"));
 
     public FitnessActivity(String name, User user) {
         this.name = name;
@@ -18,17 +50,371 @@ public abstract class FitnessActivity {
     }
 
     /**
-     * Abstract method to track the specific fitness activity.
-     * Implementations should define how the activity is tracked and logged.
-     * throws SQLException if there is an error during database operations.
+     * Tracks the activity by logging its details and saving it to the activity store.
+     * In SYNC mode the save runs on the shared PersistenceExecutor; in BUFFERED mode the activity
+     * is queued in the WriteBehindBuffer and written with the next batch for its table; in WAL mode
+     * it is appended to the local write-ahead log and copied to the store in the background.
+     * While the user's data is being reset, see PendingWrites, the activity is not saved.
+     * An activity whose event id was saved before is not saved again: the future completes normally and
+     * isDuplicate() returns true, so a client retrying after a timeout gets the same answer as the first time.
+     * If the save of that event id is still in flight, the future follows it and fails if it fails.
+     * Listeners are told of the insert once the activity has an id: in WAL mode that is when the
+     * WalReplicator has copied it to the store, after the future has completed.
+     * return A future that completes once the activity has been saved, or completes exceptionally
+     * with the error that prevented it from being saved.
+     */
+    public CompletableFuture<Void> track() {
+        String details = describe();
+        if (echo) {
+            System.out.println(details);
+        }
+        int userId = user.getId();
+        TrackEvent event = new TrackEvent();
+        event.begin();
+        event.activityType = getType().getTablePrefix();
+        event.userId = userId;
+        event.durabilityMode = durabilityMode.name();
+        CompletableFuture<Void> earlier = EventIdFilter.tryBegin(this);
+        if (earlier != null) { // Answered from memory, without a database round trip
+            event.duplicate = true;
+            return earlier.thenRun(() -> duplicate = true).whenComplete((ignored, error) -> {
+                event.succeeded = error == null;
+                event.commit();
+            });
+        }
+        if (!PendingWrites.begin(userId)) {
+            SQLException resetting = new SQLException("Cannot save " + getType().getCategory().toLowerCase()
+                    + " activity while the user's data is being reset");
+            EventIdFilter.end(this, resetting);
+            event.commit();
+            return CompletableFuture.failedFuture(resetting);
+        }
+        CompletableFuture<Void> saved;
+        if (durabilityMode == DurabilityMode.BUFFERED) {
+            saved = WriteBehindBuffer.enqueue(this, event);
+        } else if (durabilityMode == DurabilityMode.WAL) {
+            long start = System.nanoTime();
+            try {
+                WalReplicator.append(this);
+                WAL_APPEND_TIMER.record(start);
+                saved = CompletableFuture.completedFuture(null);
+            } catch (IOException e) {
+                WAL_APPEND_TIMER.recordFailure(start);
+                SQLException failure = new SQLException("Error saving " + getType().getCategory().toLowerCase()
+                        + " activity to the write-ahead log: " + e.getMessage(), e);
+                EventIdFilter.end(this, failure);
+                PendingWrites.end(userId);
+                event.commit();
+                return CompletableFuture.failedFuture(failure);
+            }
+        } else {
+            long queuedAt = System.nanoTime();
+            saved = PersistenceExecutor.submit(() -> {
+                long start = System.nanoTime();
+                event.queueWait = start - queuedAt;
+                event.batchSize = 1;
+                try {
+                    saveActivity(details);
+                } finally {
+                    event.dbTime = System.nanoTime() - start;
+                }
+            });
+        }
+        boolean replicated = durabilityMode == DurabilityMode.WAL; // The WalReplicator fires once the row exists
+        return saved.thenRun(() -> {
+            if (!duplicate && !replicated) { // Duplicate if the store found the event id in the database
+                fireInserted(this);
+            }
+        }).whenComplete((ignored, error) -> {
+            EventIdFilter.end(this, error); // Remembers the event id as saved, or lets the client retry
+            PendingWrites.end(userId);
+            event.succeeded = error == null;
+            event.duplicate = duplicate;
+            event.commit(); // Ends the event once the save has completed
+        });
+    }
+
+    /**
+     * Registers a listener notified of every activity saved, updated or deleted from now on.
+     */
+    public static void addListener(ActivityListener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(ActivityListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Tells the listeners that all activities of a user were deleted. Called by DatabaseHelper.resetUserData().
      */
-    public abstract void track() throws SQLException;
+    public static void fireUserReset(User user) {
+        for (ActivityListener listener : listeners) {
+            try {
+                listener.userReset(user);
+            } catch (RuntimeException e) {
+                System.err.println("Activity listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tells the listeners that an activity was saved with its id. Called by track() once the activity is in the
+     * store, and by the WalReplicator for activities appended to the write-ahead log once they were copied.
+     */
+    public static void fireInserted(FitnessActivity activity) {
+        for (ActivityListener listener : listeners) {
+            try {
+                listener.activityInserted(activity);
+            } catch (RuntimeException e) {
+                System.err.println("Activity listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Recreates an activity from its stored values, e.g. when replaying the write-ahead log.
+     * values The values in the column order of type.getColumns().
+     */
+    public static FitnessActivity restore(ActivityType type, User user, LocalDate date, Object[] values) {
+        FitnessActivity activity;
+        switch (type) {
+            case DIET:
+                activity = new DietActivity((String) values[0], ((Number) values[1]).intValue(), user);
+                break;
+            case EXERCISE:
+                activity = new ExerciseActivity("Exercise", ((Number) values[0]).intValue(), ((Number) values[1]).intValue(), user);
+                break;
+            case MENTAL_HEALTH:
+                activity = new MentalHealthActivity("Mental Health Tracking", ((Number) values[0]).intValue(),
+                        ((Number) values[1]).doubleValue(), user);
+                break;
+            case STEPS:
+                activity = new StepActivity(((Number) values[0]).intValue(), user);
+                break;
+            case WATER_INTAKE:
+                activity = new WaterIntakeActivity(((Number) values[0]).doubleValue(), user);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown activity type: " + type);
+        }
+        activity.setDate(date);
+        return activity;
+    }
 
     /**
-     * Abstract method to save activity details to the database.
-     * Implementations should specify how the activity details are stored.
+     * Returns the type of this activity.
+     */
+    public abstract ActivityType getType();
+
+    /**
+     * Returns the values of the activity in the column order of getType().getColumns().
+     */
+    public abstract Object[] getValues();
+
+    /**
+     * Returns a human readable description of the activity, used for logging.
+     */
+    protected abstract String describe();
+
+    public User getUser() {
+        return user;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    /**
+     * Returns the id the store assigned to the activity when it was saved, or 0 if it has not been saved yet.
+     */
+    public int getActivityId() {
+        return activityId;
+    }
+
+    /**
+     * Records the id assigned by the store. Called by ActivityStore implementations.
+     */
+    public void setActivityId(int activityId) {
+        this.activityId = activityId;
+    }
+
+    /**
+     * Sets the day the activity is recorded for. Defaults to the day the activity was created.
+     */
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    /**
+     * Returns the event id chosen by the client, or null if the activity has none.
+     */
+    public String getEventId() {
+        return eventId;
+    }
+
+    /**
+     * Sets the client's id of the event this activity records, e.g. a device's reading id, so retries are
+     * not saved twice. Activities without an event id are never treated as duplicates.
+     * throws IllegalArgumentException if the id is empty or longer than MAX_EVENT_ID_LENGTH characters.
+     */
+    public void setEventId(String eventId) {
+        if (eventId != null && (eventId.isEmpty() || eventId.length() > MAX_EVENT_ID_LENGTH)) {
+            throw new IllegalArgumentException("Event id must be 1 to " + MAX_EVENT_ID_LENGTH + " characters long");
+        }
+        this.eventId = eventId;
+    }
+
+    /**
+     * Returns true if the activity was not saved because its event id had been saved before.
+     */
+    public boolean isDuplicate() {
+        return duplicate;
+    }
+
+    /**
+     * Records that the event id was found among the saved activities. Called by ActivityStore implementations
+     * instead of saving the activity.
+     */
+    public void markDuplicate() {
+        this.duplicate = true;
+    }
+
+    long getEventFingerprint() {
+        return eventFingerprint;
+    }
+
+    void setEventFingerprint(long eventFingerprint) {
+        this.eventFingerprint = eventFingerprint;
+    }
+
+    /**
+     * Returns the current durability mode.
+     */
+    public static DurabilityMode getDurabilityMode() {
+        return durabilityMode;
+    }
+
+    /**
+     * Changes how activities tracked from now on reach the database.
+     * Switching back to SYNC flushes anything still held by the WriteBehindBuffer.
+     */
+    public static void setDurabilityMode(DurabilityMode mode) {
+        durabilityMode = mode;
+        if (mode == DurabilityMode.SYNC) {
+            WriteBehindBuffer.flushAll();
+        }
+    }
+
+    /**
+     * Turns printing every tracked activity on or off, e.g. off in the IngestServer, where thousands arrive per second.
+     */
+    public static void setEcho(boolean enabled) {
+        echo = enabled;
+    }
+
+    /**
+     * Starts replicating entries left in the write-ahead log by a previous run, if the durability mode is WAL.
+     * Called once at startup; otherwise replication only starts with the first tracked activity.
+     */
+    public static void recoverPendingWrites() {
+        if (durabilityMode != DurabilityMode.WAL) {
+            return;
+        }
+        try {
+            WalReplicator.start();
+        } catch (IOException e) {
+            System.err.println("Error opening the write-ahead log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the activity, and its daily total, to the activity store. Called on a PersistenceExecutor thread.
      * details Details of the activity to be saved.
-     * throws Exception if saving the activity fails.
+     * throws SQLException if there is an error saving the activity.
+     */
+    protected void saveActivity(String details) throws SQLException {
+        Timer timer = SAVE_TIMERS[getType().ordinal()];
+        long start = System.nanoTime();
+        try {
+            getStore().insert(List.of(this));
+            timer.record(start);
+        } catch (SQLException e) {
+            timer.recordFailure(start);
+            throw new SQLException("Error saving " + getType().getCategory().toLowerCase()
+                    + " activity to the database: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Replaces the values of a previously saved activity of this type and corrects the daily total of its day.
+     * activityId The id of the activity to update.
+     * newValues The new values in the column order of getType().getColumns().
+     * throws SQLException if the update fails.
+     */
+    protected void updateActivity(int activityId, Object... newValues) throws SQLException {
+        UPDATE_TIMERS[getType().ordinal()].time(() -> {
+            getStore().update(getType(), user, activityId, newValues);
+            return null;
+        });
+        for (ActivityListener listener : listeners) {
+            try {
+                listener.activityUpdated(getType(), user, activityId, newValues.clone());
+            } catch (RuntimeException e) {
+                System.err.println("Activity listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Deletes a previously saved activity of this type and corrects the daily total of its day.
+     * activityId The id of the activity to delete.
+     * throws SQLException if the delete fails.
+     */
+    protected void deleteActivity(int activityId) throws SQLException {
+        DELETE_TIMERS[getType().ordinal()].time(() -> {
+            getStore().delete(getType(), user, activityId);
+            return null;
+        });
+        for (ActivityListener listener : listeners) {
+            try {
+                listener.activityDeleted(getType(), user, activityId);
+            } catch (RuntimeException e) {
+                System.err.println("Activity listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns one timer per activity type, named with the given prefix and the type's table prefix, e.g. activity.save.steps.
      */
-    protected abstract void saveActivity(String details) throws Exception;
-}
\ No newline at end of file
+    private static Timer[] timers(String prefix) {
+        ActivityType[] types = ActivityType.values();
+        Timer[] timers = new Timer[types.length];
+        for (ActivityType type : types) {
+            timers[type.ordinal()] = Metrics.timer(prefix + type.getTablePrefix());
+        }
+        return timers;
+    }
+
+    /**
+     * Returns the store this activity is saved in.
+     */
+    protected ActivityStore getStore() throws SQLException {
+        return user.getDatabaseHelper().getActivityStore();
+    }
+
+    /**
+     * Returns the table this activity is stored in for the current storage mode.
+     */
+    protected ActivityTable getTable() {
+        return ActivityTable.of(getType(), user);
+    }
+
+    /**
+     * Returns the name of the table this activity is stored in.
+     */
+    protected String getTableName() {
+        return getTable().getName();
+    }
+}
@@ -0,0 +1,108 @@
+package org.healthtracker.tracking;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the activities of each user that are being saved, so a reset can stop new saves of the user
+ * and wait for the ones already running before it deletes the user's data.
+ * FitnessActivity.track() and bulk loaders call begin() before a save and end() once the save has completed or failed.
+ * A user's entry is only kept while saves are running or blocked; the counters are changed inside compute() so an
+ * entry is never dropped while another thread is counting on it.
+ */
+public final class PendingWrites {
+    private static final Map<Integer, UserWrites> users = new ConcurrentHashMap<>(); // Keyed by user id
+
+    private PendingWrites() {
+    }
+
+    /**
+     * Registers a save of one of the user's activities.
+     * return false if the user's saves are blocked; the save must not be started and end() must not be called.
+     */
+    public static boolean begin(int userId) {
+        boolean[] started = new boolean[1];
+        users.compute(userId, (id, existing) -> {
+            UserWrites writes = existing == null ? new UserWrites() : existing;
+            if (writes.blocks.get() == 0) {
+                writes.inFlight.incrementAndGet();
+                started[0] = true;
+            }
+            return writes;
+        });
+        return started[0];
+    }
+
+    /**
+     * Registers that a save started with begin() has completed or failed.
+     */
+    public static void end(int userId) {
+        users.computeIfPresent(userId, (id, writes) -> {
+            if (writes.inFlight.decrementAndGet() == 0) {
+                synchronized (writes) {
+                    writes.notifyAll();
+                }
+            }
+            return writes.isUnused() ? null : writes;
+        });
+    }
+
+    /**
+     * Makes begin() refuse new saves of the user until unblock() is called the same number of times.
+     */
+    public static void block(int userId) {
+        users.compute(userId, (id, existing) -> {
+            UserWrites writes = existing == null ? new UserWrites() : existing;
+            writes.blocks.incrementAndGet();
+            return writes;
+        });
+    }
+
+    public static void unblock(int userId) {
+        users.computeIfPresent(userId, (id, writes) -> {
+            writes.blocks.decrementAndGet();
+            return writes.isUnused() ? null : writes;
+        });
+    }
+
+    /**
+     * Waits until none of the user's saves is running.
+     * return false if the timeout elapsed first.
+     */
+    public static boolean awaitIdle(int userId, long timeoutMillis) throws InterruptedException {
+        UserWrites writes = users.get(userId);
+        if (writes == null) {
+            return true;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (writes) {
+            while (writes.inFlight.get() > 0) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                writes.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of the user's saves that are running.
+     */
+    public static int getInFlightCount(int userId) {
+        UserWrites writes = users.get(userId);
+        return writes == null ? 0 : writes.inFlight.get();
+    }
+
+    private static final class UserWrites {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger blocks = new AtomicInteger(); // Resets in progress
+
+        boolean isUnused() {
+            return inFlight.get() == 0 && blocks.get() == 0;
+        }
+    }
+}
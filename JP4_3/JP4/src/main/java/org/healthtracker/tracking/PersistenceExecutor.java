@@ -0,0 +1,158 @@
+package org.healthtracker.tracking;
+
+import java.awt.EventQueue;
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared executor that runs activity persistence work in the background.
+ * Uses virtual threads when the running JDK supports them and a bounded pool of platform threads otherwise.
+ * The number of pending saves is bounded; what happens when the bound is reached is decided by the back-pressure policy.
+ * Callers on the Swing event dispatch thread never wait for a slot or run a save themselves, whatever the policy.
+ */
+public final class PersistenceExecutor {
+
+    /**
+     * What submit() does when the maximum number of pending saves has been reached.
+     */
+    public enum BackPressurePolicy {
+        BLOCK,       // Wait up to the block timeout for a slot to become free, then reject
+        CALLER_RUNS, // Run the save on the calling thread
+        REJECT       // Fail the returned future with a RejectedExecutionException right away
+    }
+
+    /**
+     * A unit of persistence work that may fail with a SQLException.
+     */
+    @FunctionalInterface
+    public interface SqlTask {
+        void run() throws SQLException;
+    }
+
+    // Settings, overridable with -Dhealthtracker.persistence.* system properties
+    private static final int THREADS = Integer.getInteger("healthtracker.persistence.threads",
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+    private static final int QUEUE_CAPACITY = Integer.getInteger("healthtracker.persistence.queueCapacity", 1_000);
+    private static final BackPressurePolicy POLICY = BackPressurePolicy.valueOf(
+            System.getProperty("healthtracker.persistence.policy", BackPressurePolicy.REJECT.name()).toUpperCase());
+    private static final long BLOCK_TIMEOUT_MS = Long.getLong("healthtracker.persistence.blockTimeoutMs", 5_000);
+    private static final boolean USE_VIRTUAL_THREADS = Boolean.parseBoolean(
+            System.getProperty("healthtracker.persistence.virtualThreads", "true"));
+
+    private static final Semaphore slots = new Semaphore(THREADS + QUEUE_CAPACITY); // Running plus queued saves
+    private static final ExecutorService executor = createExecutor();
+    private static final boolean virtual = !(executor instanceof ThreadPoolExecutor);
+
+    private PersistenceExecutor() {
+    }
+
+    /**
+     * Submits a persistence task.
+     * task The work to run.
+     * return A future that completes when the task has finished, or completes exceptionally with the
+     * SQLException it threw, a RejectedExecutionException if the executor is saturated, or a SQLException
+     * if the caller was interrupted while waiting for a slot; the interrupt flag is restored in that case.
+     */
+    public static CompletableFuture<Void> submit(SqlTask task) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        boolean edt = EventQueue.isDispatchThread();
+        boolean acquired;
+        try {
+            acquired = POLICY == BackPressurePolicy.BLOCK && !edt
+                    ? slots.tryAcquire(BLOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                    : slots.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(new SQLException("Interrupted while waiting to queue the save", e));
+            return future;
+        }
+        if (!acquired) {
+            if (POLICY == BackPressurePolicy.CALLER_RUNS && !edt) {
+                runInto(task, future);
+            } else {
+                future.completeExceptionally(new RejectedExecutionException(
+                        "Persistence queue is full (" + QUEUE_CAPACITY + " pending saves)"));
+            }
+            return future;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    runInto(task, future);
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Returns the number of saves that are queued or running.
+     */
+    public static int getPendingCount() {
+        return THREADS + QUEUE_CAPACITY - slots.availablePermits();
+    }
+
+    /**
+     * Returns true if saves run on virtual threads.
+     */
+    public static boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Stops accepting new saves and waits for the pending ones to finish.
+     * timeoutMillis Maximum time to wait.
+     * return true if all pending saves finished in time.
+     */
+    public static boolean shutdown(long timeoutMillis) throws InterruptedException {
+        executor.shutdown();
+        return executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static void runInto(SqlTask task, CompletableFuture<Void> future) {
+        try {
+            task.run();
+            future.complete(null);
+        } catch (SQLException | RuntimeException e) {
+            future.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+        }
+    }
+
+    /**
+     * Creates a virtual-thread-per-task executor when available (JDK 21+), otherwise a fixed pool of daemon threads.
+     * The executor itself never needs to reject work because submit() bounds the number of pending tasks.
+     */
+    private static ExecutorService createExecutor() {
+        if (USE_VIRTUAL_THREADS) {
+            try {
+                Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // Virtual threads are not available on this JDK, fall back to platform threads
+            }
+        }
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "healthtracker-persistence-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -2,7 +2,7 @@ package org.healthtracker.tracking;
 
 import org.healthtracker.exceptions.DatabaseException;
 import org.healthtracker.user.User;
-import java.sql.*;
+import java.sql.SQLException;
 
 /**
  * Represents a step tracking activity.
@@ -16,73 +16,28 @@ public class StepActivity extends FitnessActivity {
         this.steps = steps;
     }
 
-    /**
-     * Tracks the step activity by logging the number of steps.
-     * throws SQLException if there is an error during the database operation.
-     */
     @Override
-    public void track() throws SQLException {
-        String details = "Tracked " + steps + " steps";
-        System.out.println(details);
-        saveActivity(details);
+    public ActivityType getType() {
+        return ActivityType.STEPS;
     }
 
     /**
-     * Saves the step activity details into a user-specific table in the database.
-     * Executes the save operation in a new thread to avoid blocking the main application.
+     * Describes the step activity for logging.
      */
     @Override
-    protected void saveActivity(String details) {
-        new Thread(() -> {
-            try {
-                ensureTableExists();
-                String tableName = "steps_" + user.getId() + "_" + user.getUsername();
-                String sql = "INSERT INTO " + tableName + " (date, steps) VALUES (?, ?)";
-                try (Connection conn = user.getDatabaseHelper().getConnection();
-                     PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                    pstmt.setDate(1, new java.sql.Date(System.currentTimeMillis()));
-                    pstmt.setInt(2, this.steps);
-                    pstmt.executeUpdate();
-                }
-            } catch (SQLException e) {
-                System.err.println("Error saving step activity to the database: " + e.getMessage());
-            }
-        }).start();
+    protected String describe() {
+        return "Tracked " + steps + " steps";
     }
 
-    /**
-     * Ensures that a specific table exists for storing step activities.
-     * Creates the table if it does not exist.
-     * throws SQLException if there is an error during table creation.
-     */
-    private void ensureTableExists() throws SQLException {
-        String tableName = "steps_" + user.getId() + "_" + user.getUsername();
-        String sql = "CREATE TABLE IF NOT EXISTS " + tableName + " (" +
-                "activity_id INT AUTO_INCREMENT PRIMARY KEY, " +
-                "date DATE," +
-                "steps INT)";
-        try (Connection conn = user.getDatabaseHelper().getConnection();
-             Statement stmt = conn.createStatement()) {
-            stmt.execute(sql);
-        }
+    @Override
+    public Object[] getValues() {
+        return new Object[]{steps};
     }
+
     public void updateStepActivity(int activityId, int newSteps) throws SQLException {
-        String sql = "UPDATE steps_" + user.getId() + "_" + user.getUsername() +
-                " SET steps = ? WHERE activity_id = ?";
-        try (Connection conn = user.getDatabaseHelper().getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, newSteps);
-            pstmt.setInt(2, activityId);
-            pstmt.executeUpdate();
-        }
+        updateActivity(activityId, newSteps);
     }
     public void deleteStepActivity(int activityId) throws SQLException {
-        String sql = "DELETE FROM steps_" + user.getId() + "_" + user.getUsername() + " WHERE activity_id = ?";
-        try (Connection conn = user.getDatabaseHelper().getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, activityId);
-            pstmt.executeUpdate();
-        }
+        deleteActivity(activityId);
     }
-
 }
\ No newline at end of file
@@ -0,0 +1,259 @@
+package org.healthtracker.tracking;
+
+import org.healthtracker.jfr.TrackEvent;
+import org.healthtracker.metrics.Metrics;
+import org.healthtracker.metrics.Timer;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind buffer for tracked activities.
+ * Pending inserts are grouped per target table and written with a single JDBC batch once a group
+ * reaches the batch size or the flush interval elapses. Used when the durability mode is BUFFERED.
+ * Each table holds at most MAX_QUEUED activities; further ones are rejected until a flush makes room.
+ * Everything still buffered is flushed when the JVM shuts down.
+ */
+public final class WriteBehindBuffer {
+    // Settings, overridable with -Dhealthtracker.buffer.* system properties
+    private static final int BATCH_SIZE = Integer.getInteger("healthtracker.buffer.batchSize", 500);
+    private static final long FLUSH_INTERVAL_MS = Long.getLong("healthtracker.buffer.flushIntervalMs", 200);
+    private static final int MAX_QUEUED = Integer.getInteger("healthtracker.buffer.maxQueued", 20_000); // Per table
+
+    private static final Map<String, TableBuffer> buffers = new ConcurrentHashMap<>(); // Keyed by table name
+    private static final AtomicLong flushedRows = new AtomicLong();
+    private static final AtomicLong flushedBatches = new AtomicLong();
+    private static final AtomicLong failedRows = new AtomicLong();
+    private static final AtomicLong rejectedRows = new AtomicLong();
+    private static final Timer FLUSH_TIMER = Metrics.timer("activity.flushBatch"); // One insert() of a whole batch
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "healthtracker-write-behind");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        flusher.scheduleWithFixedDelay(WriteBehindBuffer::flushAllAsync, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(WriteBehindBuffer::flushAll, "healthtracker-write-behind-shutdown"));
+    }
+
+    private WriteBehindBuffer() {
+    }
+
+    /**
+     * Queues an activity for insertion with the next batch for its table.
+     * event The flight recorder event of the track() call, given the queue wait and database time of the batch.
+     * return A future that completes when the batch containing the activity has been committed, or fails with a
+     * RejectedExecutionException right away if MAX_QUEUED activities of the table are already waiting, e.g. while
+     * the database is failing.
+     */
+    static CompletableFuture<Void> enqueue(FitnessActivity activity, TrackEvent event) {
+        String tableName = activity.getTableName();
+        TableBuffer buffer = buffers.computeIfAbsent(tableName, TableBuffer::new);
+        int size = buffer.size.incrementAndGet();
+        if (size > MAX_QUEUED) {
+            buffer.size.decrementAndGet();
+            rejectedRows.incrementAndGet();
+            buffer.scheduleFlush();
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "Write-behind buffer of " + tableName + " is full (" + MAX_QUEUED + " pending activities)"));
+        }
+        PendingInsert pending = new PendingInsert(activity, event);
+        buffer.queue.add(pending);
+        if (size >= BATCH_SIZE) {
+            buffer.scheduleFlush();
+        }
+        return pending.future;
+    }
+
+    /**
+     * Writes every buffered activity on the calling thread and waits until all batches have been committed.
+     * Failed batches complete their futures exceptionally; this method does not throw.
+     */
+    public static void flushAll() {
+        for (TableBuffer buffer : buffers.values()) {
+            buffer.flush();
+        }
+    }
+
+    /**
+     * Drops the buffered activities of a user without writing them, e.g. because the user's data is being reset.
+     * Their futures complete exceptionally with a CancellationException. Batches already being written are not affected.
+     * return The number of activities dropped.
+     */
+    public static int discard(int userId) {
+        int discarded = 0;
+        for (TableBuffer buffer : buffers.values()) {
+            for (PendingInsert pending : buffer.queue) {
+                if (pending.activity.getUser().getId() == userId && buffer.queue.remove(pending)) { // The flusher may have taken it
+                    buffer.size.decrementAndGet();
+                    pending.future.completeExceptionally(new CancellationException("Discarded before it was saved"));
+                    discarded++;
+                }
+            }
+        }
+        return discarded;
+    }
+
+    /**
+     * Returns the number of activities waiting to be written.
+     */
+    public static int getPendingCount() {
+        int pending = 0;
+        for (TableBuffer buffer : buffers.values()) {
+            pending += buffer.size.get();
+        }
+        return pending;
+    }
+
+    public static long getFlushedRowCount() {
+        return flushedRows.get();
+    }
+
+    public static long getFlushedBatchCount() {
+        return flushedBatches.get();
+    }
+
+    public static long getFailedRowCount() {
+        return failedRows.get();
+    }
+
+    /**
+     * Returns the number of activities turned away because their table's buffer was full.
+     */
+    public static long getRejectedRowCount() {
+        return rejectedRows.get();
+    }
+
+    private static void flushAllAsync() {
+        for (TableBuffer buffer : buffers.values()) {
+            if (buffer.size.get() > 0) {
+                buffer.scheduleFlush();
+            }
+        }
+    }
+
+    /**
+     * The pending inserts for one table.
+     */
+    private static final class TableBuffer {
+        final String tableName;
+        final Queue<PendingInsert> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+        final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+        TableBuffer(String tableName) {
+            this.tableName = tableName;
+        }
+
+        /**
+         * Schedules a flush on the PersistenceExecutor unless one is already waiting to run.
+         * If the executor turns the flush away, the flag is cleared again so the timer retries it.
+         */
+        void scheduleFlush() {
+            if (flushScheduled.compareAndSet(false, true)) {
+                PersistenceExecutor.submit(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                }).whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        flushScheduled.set(false);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Drains the queue in batches of at most BATCH_SIZE rows.
+         */
+        void flush() {
+            List<PendingInsert> batch = new ArrayList<>(Math.min(BATCH_SIZE, Math.max(1, size.get())));
+            PendingInsert pending;
+            while ((pending = queue.poll()) != null) {
+                size.decrementAndGet();
+                batch.add(pending);
+                if (batch.size() == BATCH_SIZE) {
+                    write(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+        }
+
+        /**
+         * Writes the batch with one ActivityStore.insert() call, which saves the rows and their daily totals together.
+         */
+        private void write(List<PendingInsert> batch) {
+            List<FitnessActivity> activities = new ArrayList<>(batch.size());
+            for (PendingInsert pending : batch) {
+                activities.add(pending.activity);
+            }
+            long start = System.nanoTime();
+            try {
+                activities.get(0).getStore().insert(activities);
+                FLUSH_TIMER.record(start);
+                describeBatch(batch, start);
+                flushedRows.addAndGet(batch.size());
+                flushedBatches.incrementAndGet();
+                for (PendingInsert pending : batch) {
+                    pending.future.complete(null);
+                }
+            } catch (SQLException | RuntimeException e) {
+                FLUSH_TIMER.recordFailure(start);
+                describeBatch(batch, start);
+                failedRows.addAndGet(batch.size());
+                SQLException error = new SQLException("Error saving batch of " + batch.size()
+                        + " activities to " + tableName + ": " + e.getMessage(), e);
+                for (PendingInsert pending : batch) {
+                    pending.future.completeExceptionally(error);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills in the track() events of a written batch; they are committed when the futures complete.
+     */
+    private static void describeBatch(List<PendingInsert> batch, long start) {
+        long end = System.nanoTime();
+        for (PendingInsert pending : batch) {
+            if (pending.event.isEnabled()) {
+                pending.event.queueWait = start - pending.enqueuedAt;
+                pending.event.dbTime = end - start;
+                pending.event.batchSize = batch.size();
+            }
+        }
+    }
+
+    /**
+     * An activity waiting to be written, together with the future handed back by track().
+     */
+    private static final class PendingInsert {
+        final FitnessActivity activity;
+        final TrackEvent event;
+        final long enqueuedAt = System.nanoTime();
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingInsert(FitnessActivity activity, TrackEvent event) {
+            this.activity = activity;
+            this.event = event;
+        }
+    }
+}
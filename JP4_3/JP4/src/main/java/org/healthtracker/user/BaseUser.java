@@ -2,6 +2,8 @@ package org.healthtracker.user;
 
 import org.healthtracker.db.DatabaseHelper;
 import org.healthtracker.exceptions.DatabaseException;
+
+import java.sql.SQLException;
 /**
  * Abstract class that provides a basic implementation of the Authenticatable interface.
  * It includes common attributes and methods shared by different types of users.
@@ -23,6 +25,7 @@ abstract class BaseUser implements Authenticatable {
     }
     /**
      * Implements the authenticate method from the Authenticatable interface.
+     * Credentials verified within the session lifetime are accepted from the SessionCache without a database query.
      * enteredUsername The username entered by the user.
      * enteredPassword The password entered by the user.
      * return true if the credentials are correct, false otherwise.
@@ -30,7 +33,14 @@ abstract class BaseUser implements Authenticatable {
      */
     @Override
     public boolean authenticate(String enteredUsername, String enteredPassword) throws DatabaseException {
-        return databaseHelper.validateUser(enteredUsername, enteredPassword);
+        if (SessionCache.get(enteredUsername, enteredPassword) != null) {
+            return true;
+        }
+        try {
+            return databaseHelper.validateUser(enteredUsername, enteredPassword) != null;
+        } catch (SQLException e) {
+            throw new DatabaseException("Error validating user: " + e.getMessage(), e);
+        }
     }
     /**
      * Returns the username of the user.
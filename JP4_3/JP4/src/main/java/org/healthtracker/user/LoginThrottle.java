@@ -0,0 +1,231 @@
+package org.healthtracker.user;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token-bucket limits on login attempts per username and per source (client address), checked in memory
+ * before DatabaseHelper.validateUser() touches the database or the password hash pool.
+ * Each bucket is a single AtomicLong holding its tokens and last refill time, updated with compare-and-set,
+ * so attempts on different keys never contend and attempts on the same key never block. Buckets live in a
+ * ConcurrentHashMap and are dropped by a timing wheel once they have been idle long enough to be full again,
+ * which changes nothing for the next attempt but keeps memory bounded under attacks with random usernames.
+ * Settings, overridable with -Dhealthtracker.throttle.* system properties.
+ */
+public final class LoginThrottle {
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("healthtracker.throttle.enabled", "true"));
+    private static final int USER_CAPACITY = Integer.getInteger("healthtracker.throttle.user.capacity", 5);
+    private static final int USER_PER_MINUTE = Integer.getInteger("healthtracker.throttle.user.perMinute", 5);
+    private static final int SOURCE_CAPACITY = Integer.getInteger("healthtracker.throttle.source.capacity", 20);
+    private static final int SOURCE_PER_MINUTE = Integer.getInteger("healthtracker.throttle.source.perMinute", 60);
+
+    private static final long MILLI_TOKENS = 1_000;          // Tokens are counted in thousandths
+    private static final int TOKEN_BITS = 20;                // Low bits of a bucket state: milli-tokens
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long TICK_MILLIS = 1_000;           // Resolution of the expiry wheel
+    private static final int WHEEL_SLOTS = 512;              // Idle times up to 8.5 minutes map to distinct slots
+
+    private static final Limit USER_LIMIT = new Limit("user:", USER_CAPACITY, USER_PER_MINUTE);
+    private static final Limit SOURCE_LIMIT = new Limit("source:", SOURCE_CAPACITY, SOURCE_PER_MINUTE);
+    private static final long BASE_MILLIS = System.currentTimeMillis(); // Times are stored relative to this
+
+    private static final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private static final Queue<Bucket>[] wheel = newWheel();
+    private static final AtomicLong sweptTick = new AtomicLong(tick(now()));
+
+    // Striped counters, cheap to increment from many threads at once
+    private static final LongAdder allowed = new LongAdder();
+    private static final LongAdder throttledUser = new LongAdder();
+    private static final LongAdder throttledSource = new LongAdder();
+
+    private LoginThrottle() {
+    }
+
+    /**
+     * Takes one attempt from the buckets of the source and of the username. The source is checked first and the
+     * username is only charged for attempts the source allows, so a throttled source cannot lock a user out.
+     * source Where the attempt comes from, e.g. a client address, or "local" for the desktop GUI.
+     * return 0 if the attempt may proceed, otherwise the milliseconds until the next attempt would be allowed.
+     */
+    public static long tryAcquire(String username, String source) {
+        if (!ENABLED) {
+            return 0;
+        }
+        long now = now();
+        sweep(now);
+        long wait = bucket(SOURCE_LIMIT, source, now).tryTake(now);
+        if (wait > 0) {
+            throttledSource.increment();
+            return wait;
+        }
+        wait = bucket(USER_LIMIT, username, now).tryTake(now);
+        if (wait > 0) {
+            throttledUser.increment();
+            return wait;
+        }
+        allowed.increment();
+        return 0;
+    }
+
+    public static long getAllowedCount() {
+        return allowed.sum();
+    }
+
+    /**
+     * Returns the number of attempts rejected because of the per-username limit.
+     */
+    public static long getThrottledUserCount() {
+        return throttledUser.sum();
+    }
+
+    /**
+     * Returns the number of attempts rejected because of the per-source limit.
+     */
+    public static long getThrottledSourceCount() {
+        return throttledSource.sum();
+    }
+
+    /**
+     * Returns the number of buckets currently kept in memory.
+     */
+    public static int getBucketCount() {
+        return buckets.size();
+    }
+
+    /**
+     * Forgets every bucket, e.g. between benchmark runs.
+     */
+    public static void reset() {
+        buckets.clear();
+        for (Queue<Bucket> slot : wheel) {
+            slot.clear();
+        }
+    }
+
+    private static Bucket bucket(Limit limit, String key, long now) {
+        String name = limit.prefix + key;
+        Bucket bucket = buckets.get(name);
+        if (bucket == null) {
+            Bucket created = new Bucket(name, limit, now);
+            bucket = buckets.putIfAbsent(name, created);
+            if (bucket == null) {
+                bucket = created;
+                schedule(created, now + limit.idleMillis);
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Drains the wheel slots of the ticks that passed since the last sweep. Only the thread that advances
+     * the swept tick drains them, so sweeping needs no lock. Buckets still in use are rescheduled.
+     */
+    private static void sweep(long now) {
+        long current = tick(now);
+        long swept = sweptTick.get();
+        if (current <= swept || !sweptTick.compareAndSet(swept, current)) {
+            return;
+        }
+        for (long tick = swept + 1; tick <= current && tick <= swept + WHEEL_SLOTS; tick++) {
+            Queue<Bucket> slot = wheel[(int) (tick % WHEEL_SLOTS)];
+            int due = slot.size(); // Only the buckets present now; rescheduled ones may land in the same slot
+            for (int i = 0; i < due; i++) {
+                Bucket bucket = slot.poll();
+                if (bucket == null) {
+                    break;
+                }
+                long idleUntil = bucket.lastRefill() + bucket.limit.idleMillis;
+                if (idleUntil <= now) {
+                    buckets.remove(bucket.name, bucket); // Full again, so forgetting it changes nothing
+                } else {
+                    schedule(bucket, idleUntil);
+                }
+            }
+        }
+    }
+
+    private static void schedule(Bucket bucket, long atMillis) {
+        wheel[(int) (tick(atMillis) % WHEEL_SLOTS)].add(bucket);
+    }
+
+    private static long tick(long millis) {
+        return millis / TICK_MILLIS;
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() - BASE_MILLIS;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Queue<Bucket>[] newWheel() {
+        Queue<Bucket>[] slots = new Queue[WHEEL_SLOTS];
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            slots[i] = new ConcurrentLinkedQueue<>();
+        }
+        return slots;
+    }
+
+    /**
+     * Capacity and refill rate of one kind of bucket.
+     */
+    private static final class Limit {
+        final String prefix;
+        final long capacity;        // In milli-tokens
+        final double refillPerMilli; // Milli-tokens added per millisecond
+        final long idleMillis;      // Time after which an unused bucket is full again
+
+        Limit(String prefix, int capacity, int perMinute) {
+            this.prefix = prefix;
+            this.capacity = Math.min(capacity * MILLI_TOKENS, TOKEN_MASK);
+            this.refillPerMilli = perMinute * MILLI_TOKENS / 60_000.0;
+            this.idleMillis = (long) Math.ceil(this.capacity / refillPerMilli);
+        }
+    }
+
+    /**
+     * One token bucket. The state packs the last refill time (high bits) and the milli-tokens left (low bits).
+     */
+    private static final class Bucket {
+        final String name;
+        final Limit limit;
+        final AtomicLong state;
+
+        Bucket(String name, Limit limit, long now) {
+            this.name = name;
+            this.limit = limit;
+            this.state = new AtomicLong(pack(now, limit.capacity));
+        }
+
+        /**
+         * Refills the bucket for the time passed and takes one token.
+         * return 0 if a token was taken, otherwise the milliseconds until one is available.
+         */
+        long tryTake(long now) {
+            while (true) {
+                long current = state.get();
+                long last = current >>> TOKEN_BITS;
+                long tokens = current & TOKEN_MASK;
+                long elapsed = Math.max(0, now - last);
+                long refilled = Math.min(limit.capacity, tokens + (long) (elapsed * limit.refillPerMilli));
+                if (refilled < MILLI_TOKENS) {
+                    return (long) Math.ceil((MILLI_TOKENS - refilled) / limit.refillPerMilli);
+                }
+                // Refilled tokens are credited to the current time; partial tokens keep accruing from there
+                if (state.compareAndSet(current, pack(Math.max(now, last), refilled - MILLI_TOKENS))) {
+                    return 0;
+                }
+            }
+        }
+
+        long lastRefill() {
+            return state.get() >>> TOKEN_BITS;
+        }
+
+        private static long pack(long millis, long tokens) {
+            return (millis << TOKEN_BITS) | tokens;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.healthtracker.user;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Salted PBKDF2-HMAC-SHA256 password hashes, stored as "pbkdf2-sha256$iterations$salt$hash".
+ * Hashing is deliberately slow, so it runs on a small dedicated pool of threads with a bounded queue:
+ * a burst of logins uses at most that many cores and cannot starve the database and GUI threads.
+ * When the queue is full, hash() and verify() fail with a RejectedExecutionException.
+ * Passwords stored before hashing was introduced are plain text; verify() still accepts them and
+ * needsRehash() reports them, so they are replaced by a hash on the next successful login.
+ * Settings, overridable with -Dhealthtracker.password.* system properties.
+ */
+public final class PasswordHasher {
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int ITERATIONS = Integer.getInteger("healthtracker.password.iterations", 310_000);
+    private static final int THREADS = Integer.getInteger("healthtracker.password.threads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int QUEUE_CAPACITY = Integer.getInteger("healthtracker.password.queueCapacity", 64);
+
+    private static final SecureRandom random = new SecureRandom();
+    private static final ThreadPoolExecutor executor = createExecutor();
+    private static volatile String dummyHash; // Verified against when a username does not exist
+
+    private PasswordHasher() {
+    }
+
+    /**
+     * Hashes a password with a new random salt on the hashing pool and waits for the result.
+     * throws RejectedExecutionException if too many hashes are already waiting.
+     */
+    public static String hash(String password) throws InterruptedException {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = await(() -> pbkdf2(password, salt, ITERATIONS));
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + "$" + ITERATIONS + "$" + base64.encodeToString(salt) + "$" + base64.encodeToString(hash);
+    }
+
+    /**
+     * Checks a password against a stored hash, or against a plain text password stored before hashing
+     * was introduced, on the hashing pool. The comparison takes the same time wherever the values differ.
+     * throws RejectedExecutionException if too many hashes are already waiting.
+     */
+    public static boolean verify(String password, String stored) throws InterruptedException {
+        if (stored == null) {
+            return false;
+        }
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        int iterations;
+        byte[] salt;
+        byte[] expected;
+        try {
+            iterations = Integer.parseInt(parts[1]);
+            salt = Base64.getDecoder().decode(parts[2]);
+            expected = Base64.getDecoder().decode(parts[3]);
+        } catch (IllegalArgumentException e) {
+            return false; // Corrupt hash
+        }
+        byte[] actual = await(() -> pbkdf2(password, salt, iterations));
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    /**
+     * Spends the time of one verification without a stored hash, so a login with an unknown username
+     * takes as long as one with a wrong password.
+     */
+    public static void verifyDummy(String password) throws InterruptedException {
+        if (dummyHash == null) {
+            dummyHash = hash("dummy password");
+        }
+        verify(password, dummyHash);
+    }
+
+    /**
+     * Returns true if a stored password is plain text or hashed with fewer iterations than currently configured.
+     */
+    public static boolean needsRehash(String stored) {
+        if (!isHashed(stored)) {
+            return true;
+        }
+        String[] parts = stored.split("\\$");
+        try {
+            return parts.length != 4 || Integer.parseInt(parts[1]) < ITERATIONS;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static boolean isHashed(String stored) {
+        return stored.startsWith(PREFIX + "$");
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Runs a hash computation on the hashing pool and waits for it.
+     */
+    private static byte[] await(Callable<byte[]> computation) throws InterruptedException {
+        Future<byte[]> future = executor.submit(computation);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "healthtracker-password-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, (task, rejectedBy) -> {
+                    throw new RejectedExecutionException("Too many password checks in progress (" + QUEUE_CAPACITY + " waiting)");
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
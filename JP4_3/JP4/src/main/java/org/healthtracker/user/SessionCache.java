@@ -0,0 +1,102 @@
+package org.healthtracker.user;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Recently verified logins, so repeated authentication of the same user does not query the database
+ * or pay for another PasswordHasher verification. A session stores the user and an HMAC of the password
+ * under a key that is random per process, never the password itself, and expires after a fixed time.
+ * Settings, overridable with -Dhealthtracker.session.* system properties.
+ */
+public final class SessionCache {
+    private static final long TTL_MILLIS = Long.getLong("healthtracker.session.ttlSeconds", 900) * 1000;
+    private static final int MAX_SESSIONS = Integer.getInteger("healthtracker.session.maxEntries", 1_024);
+
+    private static final Map<String, Session> sessions = new ConcurrentHashMap<>(); // Keyed by username
+    private static final byte[] key = new byte[32];
+    private static final ThreadLocal<Mac> macs = ThreadLocal.withInitial(SessionCache::newMac);
+
+    static {
+        new SecureRandom().nextBytes(key);
+    }
+
+    private SessionCache() {
+    }
+
+    /**
+     * Records a successful login.
+     */
+    public static void put(User user, String password) {
+        if (TTL_MILLIS <= 0) {
+            return;
+        }
+        if (sessions.size() >= MAX_SESSIONS) {
+            long now = System.currentTimeMillis();
+            sessions.values().removeIf(session -> session.expiresAt <= now);
+            if (sessions.size() >= MAX_SESSIONS) {
+                sessions.clear(); // Only reached with more live sessions than a desktop app ever has
+            }
+        }
+        sessions.put(user.getUsername(), new Session(user, mac(password), System.currentTimeMillis() + TTL_MILLIS));
+    }
+
+    /**
+     * Returns the user of a live session with the given credentials, or null if there is none and the
+     * credentials have to be checked against the database.
+     */
+    public static User get(String username, String password) {
+        Session session = sessions.get(username);
+        if (session == null) {
+            return null;
+        }
+        if (session.expiresAt <= System.currentTimeMillis()) {
+            sessions.remove(username, session);
+            return null;
+        }
+        return MessageDigest.isEqual(session.passwordMac, mac(password)) ? session.user : null;
+    }
+
+    /**
+     * Ends the session of a user, e.g. on logout or when the password changes.
+     */
+    public static void invalidate(String username) {
+        sessions.remove(username);
+    }
+
+    public static void clear() {
+        sessions.clear();
+    }
+
+    private static byte[] mac(String password) {
+        return macs.get().doFinal(password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static final class Session {
+        final User user;
+        final byte[] passwordMac;
+        final long expiresAt; // System.currentTimeMillis() after which the session is no longer used
+
+        Session(User user, byte[] passwordMac, long expiresAt) {
+            this.user = user;
+            this.passwordMac = passwordMac;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
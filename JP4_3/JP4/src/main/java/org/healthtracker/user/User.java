@@ -1,8 +1,11 @@
 package org.healthtracker.user;
 
 import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.db.StorageMode;
 import org.healthtracker.exceptions.DatabaseException;
 import org.healthtracker.exceptions.UserAlreadyExistsException;
+import org.healthtracker.tracking.ActivityTable;
+import org.healthtracker.tracking.ActivityType;
 
 import java.sql.SQLException;
 /**
@@ -11,6 +14,7 @@ import java.sql.SQLException;
  */
 public class User extends BaseUser {
     private int id; // Unique identifier for the user
+    private volatile TableSet tables; // Activity tables and their SQL, for the storage mode they were resolved in
     /**
      * Constructor for User.
      * id The unique identifier for the user.
@@ -51,4 +55,37 @@ public class User extends BaseUser {
     public int getId() {
         return id;
     }
+
+    /**
+     * Returns the table that holds this user's activities of a type in the current storage mode.
+     * The tables are resolved once per storage mode and kept, together with the SQL they generate.
+     */
+    public ActivityTable getActivityTable(ActivityType type) {
+        StorageMode mode = DatabaseHelper.getStorageMode();
+        TableSet current = tables;
+        if (current == null || current.mode != mode) {
+            current = new TableSet(mode);
+            tables = current;
+        }
+        ActivityTable table = current.tables[type.ordinal()];
+        if (table == null) {
+            table = mode == StorageMode.CONSOLIDATED
+                    ? ActivityTable.consolidated(type, id)
+                    : ActivityTable.perUser(type, id, getUsername());
+            current.tables[type.ordinal()] = table;
+        }
+        return table;
+    }
+
+    /**
+     * The user's activity tables resolved for one storage mode, filled in as they are used.
+     */
+    private static final class TableSet {
+        final StorageMode mode;
+        final ActivityTable[] tables = new ActivityTable[ActivityType.values().length];
+
+        TableSet(StorageMode mode) {
+            this.mode = mode;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+package org.healthtracker.wal;
+
+import org.healthtracker.tracking.ActivityCodec;
+import org.healthtracker.tracking.ActivityType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * One tracked activity as recorded in the write-ahead log.
+ */
+public class WalEntry {
+    private final long entryId;     // Position in the log, increasing by one per entry; used as idempotency key
+    private final int userId;
+    private final String username;  // Needed to find per-user tables when replaying
+    private final ActivityType type;
+    private final LocalDate date;
+    private final Object[] values;  // Values in the column order of type.getColumns()
+    private final String eventId;   // Client event id, or null
+
+    public WalEntry(long entryId, int userId, String username, ActivityType type, LocalDate date, Object[] values,
+                    String eventId) {
+        this.entryId = entryId;
+        this.userId = userId;
+        this.username = username;
+        this.type = type;
+        this.date = date;
+        this.values = values;
+        this.eventId = eventId;
+    }
+
+    public long getEntryId() {
+        return entryId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public ActivityType getType() {
+        return type;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public Object[] getValues() {
+        return values.clone();
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(entryId);
+        out.writeInt(userId);
+        out.writeUTF(username);
+        out.writeByte(type.ordinal());
+        ActivityCodec.writeDate(out, date);
+        ActivityCodec.writeValues(out, values);
+        ActivityCodec.writeEventId(out, eventId);
+        return bytes.toByteArray();
+    }
+
+    static WalEntry decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        return new WalEntry(in.readLong(), in.readInt(), in.readUTF(), ActivityType.values()[in.readByte()],
+                ActivityCodec.readDate(in), ActivityCodec.readValues(in), ActivityCodec.readEventId(in));
+    }
+}
@@ -0,0 +1,218 @@
+package org.healthtracker.wal;
+
+import org.healthtracker.db.ActivityStore;
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.user.User;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Copies activities from the local WriteAheadLog to the activity store on a background thread.
+ * Used when the durability mode is WAL: track() only appends to the log, so the GUI never waits for the
+ * database. Entries are sent in batches with ActivityStore.insertReplicated(), which stores the id of the
+ * last entry of each batch in the same transaction; after a restart replication resumes after that id,
+ * so no entry is lost or saved twice. While the store is unavailable the batch is retried with
+ * exponential backoff, and entries keep accumulating in the log.
+ * Activity listeners are told of each entry once its batch is in the store, with the id the store assigned.
+ * Settings, overridable with -Dhealthtracker.wal.* system properties.
+ */
+public final class WalReplicator {
+    private static final String DIR = System.getProperty("healthtracker.wal.dir",
+            Path.of(System.getProperty("user.home"), ".healthtracker", "wal").toString());
+    private static final int SEGMENT_BYTES = Integer.getInteger("healthtracker.wal.segmentBytes", 8 << 20);
+    private static final boolean FORCE = Boolean.getBoolean("healthtracker.wal.force"); // fsync every append
+    private static final int BATCH_SIZE = Integer.getInteger("healthtracker.wal.batchSize", 500);
+    private static final long POLL_INTERVAL_MS = Long.getLong("healthtracker.wal.pollIntervalMs", 100);
+    private static final long MAX_BACKOFF_MS = Long.getLong("healthtracker.wal.maxBackoffMs", 30_000);
+
+    private static final AtomicLong replicatedEntries = new AtomicLong();
+    private static final AtomicLong failedAttempts = new AtomicLong();
+    private static volatile WriteAheadLog wal;
+    private static volatile Thread thread;
+    private static volatile long replicatedPosition = -1; // Id of the last entry known to be in the store, -1 until read
+    private static volatile long notifiedPosition = -1;   // Id of the last entry the listeners were told of, -1 until read
+    private static volatile boolean running;
+
+    private WalReplicator() {
+    }
+
+    /**
+     * Appends an activity to the write-ahead log, opening the log and starting the replicator on first use.
+     * return The id of the new entry.
+     * throws IOException if the entry cannot be written to the log.
+     */
+    public static long append(FitnessActivity activity) throws IOException {
+        WriteAheadLog log = start();
+        User user = activity.getUser();
+        long entryId = log.append(user.getId(), user.getUsername(), activity.getType(), activity.getDate(),
+                activity.getValues(), activity.getEventId());
+        LockSupport.unpark(thread);
+        return entryId;
+    }
+
+    /**
+     * Opens the log and starts the replicator thread unless this already happened.
+     * Called on startup so entries left over from a previous run are replicated without waiting for a new one.
+     */
+    public static synchronized WriteAheadLog start() throws IOException {
+        if (wal == null) {
+            wal = WriteAheadLog.open(Path.of(DIR), SEGMENT_BYTES, FORCE);
+            running = true;
+            thread = new Thread(WalReplicator::run, "healthtracker-wal-replicator");
+            thread.setDaemon(true);
+            thread.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> stop(2_000), "healthtracker-wal-shutdown"));
+        }
+        return wal;
+    }
+
+    /**
+     * Waits until every entry appended so far has been replicated.
+     * return false if the timeout elapsed first.
+     */
+    public static boolean awaitReplicated(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (getPendingCount() > 0) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            LockSupport.unpark(thread);
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * Stops the replicator after giving it up to the given time to catch up, and closes the log.
+     * Entries not replicated yet stay in the log and are replicated on the next start.
+     */
+    public static synchronized void stop(long timeoutMillis) {
+        if (wal == null) {
+            return;
+        }
+        try {
+            awaitReplicated(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        wal.close();
+        wal = null;
+        replicatedPosition = -1;
+        notifiedPosition = -1;
+    }
+
+    /**
+     * Returns whether every entry appended so far has reached the store and the activity listeners were told of
+     * it, e.g. so that a summary read from the store now is not changed again by an entry it already holds.
+     * Also true if the log is not open.
+     */
+    public static boolean isCaughtUp() {
+        WriteAheadLog log = wal;
+        return log == null || notifiedPosition >= log.getLastEntryId();
+    }
+
+    /**
+     * Returns the number of entries in the log that have not reached the store yet.
+     */
+    public static long getPendingCount() {
+        WriteAheadLog log = wal;
+        if (log == null) {
+            return 0;
+        }
+        long position = replicatedPosition;
+        return position < 0 ? log.getLastEntryId() : log.getLastEntryId() - position;
+    }
+
+    public static long getReplicatedCount() {
+        return replicatedEntries.get();
+    }
+
+    public static long getFailedAttemptCount() {
+        return failedAttempts.get();
+    }
+
+    private static void run() {
+        DatabaseHelper dbHelper = new DatabaseHelper();
+        WriteAheadLog log = wal;
+        String stream = "wal-" + log.getLogId();
+        long backoff = POLL_INTERVAL_MS;
+        while (running) {
+            try {
+                ActivityStore store = dbHelper.getActivityStore();
+                if (replicatedPosition < 0) {
+                    long position = store.getReplicatedPosition(stream);
+                    log.seek(position);
+                    log.acknowledge(position);
+                    replicatedPosition = position;
+                    notifiedPosition = position; // Told of in the run that replicated them
+                }
+                List<WalEntry> batch = log.read(BATCH_SIZE);
+                if (batch.isEmpty()) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL_MS));
+                    continue;
+                }
+                long last = batch.get(batch.size() - 1).getEntryId();
+                List<FitnessActivity> activities = restore(batch, dbHelper);
+                store.insertReplicated(activities, stream, last);
+                replicatedPosition = last;
+                replicatedEntries.addAndGet(batch.size());
+                log.acknowledge(last);
+                for (FitnessActivity activity : activities) {
+                    if (!activity.isDuplicate()) { // Now that the rows have their ids
+                        FitnessActivity.fireInserted(activity);
+                    }
+                }
+                notifiedPosition = last;
+                if (backoff > POLL_INTERVAL_MS) {
+                    System.out.println("Write-ahead log replication resumed");
+                    backoff = POLL_INTERVAL_MS;
+                }
+            } catch (SQLException | IOException | RuntimeException e) {
+                failedAttempts.incrementAndGet();
+                if (backoff == POLL_INTERVAL_MS) {
+                    System.err.println("Write-ahead log replication failed, retrying in the background: " + e.getMessage());
+                }
+                try {
+                    if (replicatedPosition >= 0) {
+                        log.seek(replicatedPosition); // Send the same batch again
+                    }
+                } catch (IOException seekError) {
+                    System.err.println("Error rewinding the write-ahead log: " + seekError.getMessage());
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backoff));
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            }
+        }
+    }
+
+    private static List<FitnessActivity> restore(List<WalEntry> batch, DatabaseHelper dbHelper) {
+        List<FitnessActivity> activities = new ArrayList<>(batch.size());
+        Map<Integer, User> users = new HashMap<>(); // One User per id, so their tables and SQL are built once per batch
+        for (WalEntry entry : batch) {
+            User user = users.computeIfAbsent(entry.getUserId(), id -> new User(id, entry.getUsername(), null, dbHelper));
+            FitnessActivity activity = FitnessActivity.restore(entry.getType(), user, entry.getDate(), entry.getValues());
+            if (entry.getEventId() != null) {
+                activity.setEventId(entry.getEventId());
+            }
+            activities.add(activity);
+        }
+        return activities;
+    }
+}
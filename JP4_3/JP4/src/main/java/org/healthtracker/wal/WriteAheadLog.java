@@ -0,0 +1,326 @@
+package org.healthtracker.wal;
+
+import org.healthtracker.tracking.ActivityType;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of tracked activities, stored in fixed-size memory-mapped segment files.
+ * An append copies one framed record (length, CRC32, payload) into the mapped segment, so it costs
+ * microseconds and survives a crash of the application; with force enabled every append is also flushed
+ * to the disk. When a segment is full a new one is started. Segments whose entries have all been
+ * acknowledged by the replicator are deleted.
+ * On open, every segment is scanned; a record torn by a crash is detected by its checksum and overwritten.
+ * Not thread-safe for concurrent use from several processes; one application owns the directory.
+ */
+public class WriteAheadLog {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String ID_FILE = "wal.id";
+    private static final int HEADER_BYTES = 8; // Record length and CRC32
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final boolean force;   // Flush every append to the disk
+    private final String logId;    // Identifies this log, so a recreated directory does not inherit old checkpoints
+    private final TreeMap<Long, Segment> segments = new TreeMap<>(); // Keyed by first entry id
+    private Segment head;          // Segment appended to
+    private long nextEntryId;
+
+    // Read cursor of the replicator
+    private Segment readSegment;
+    private int readOffset;
+
+    private WriteAheadLog(Path dir, int segmentBytes, boolean force, String logId) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.force = force;
+        this.logId = logId;
+    }
+
+    /**
+     * Opens the log in a directory, creating it if needed, and recovers the position of the last complete entry.
+     * segmentBytes Size of each segment file.
+     * force Whether every append is flushed to the disk before returning.
+     */
+    public static WriteAheadLog open(Path dir, int segmentBytes, boolean force) throws IOException {
+        Files.createDirectories(dir);
+        Path idFile = dir.resolve(ID_FILE);
+        if (!Files.exists(idFile)) {
+            Files.write(idFile, UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+        }
+        String logId = new String(Files.readAllBytes(idFile), StandardCharsets.UTF_8).trim();
+        WriteAheadLog wal = new WriteAheadLog(dir, segmentBytes, force, logId);
+        wal.recover();
+        return wal;
+    }
+
+    /**
+     * Returns the id that names this log's stream in the activity store checkpoints.
+     */
+    public String getLogId() {
+        return logId;
+    }
+
+    /**
+     * Appends an entry and returns its id.
+     * eventId The client event id of the activity, or null.
+     * throws IOException if the entry cannot be written.
+     */
+    public synchronized long append(int userId, String username, ActivityType type, LocalDate date, Object[] values,
+                                    String eventId) throws IOException {
+        long entryId = nextEntryId;
+        byte[] payload = new WalEntry(entryId, userId, username, type, date, values, eventId).encode();
+        if (HEADER_BYTES + payload.length > segmentBytes - HEADER_BYTES) {
+            throw new IOException("Entry of " + payload.length + " bytes does not fit in a segment");
+        }
+        if (head.writeOffset + HEADER_BYTES + payload.length > segmentBytes - HEADER_BYTES) {
+            rotate();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        int offset = head.writeOffset;
+        // The length goes in last, so a reader never sees a record whose payload is still being copied
+        head.buffer.put(offset + HEADER_BYTES, payload);
+        head.buffer.putInt(offset + 4, (int) crc.getValue());
+        head.buffer.putInt(offset, payload.length);
+        if (force) {
+            head.buffer.force(offset, HEADER_BYTES + payload.length);
+        }
+        head.writeOffset += HEADER_BYTES + payload.length;
+        head.lastEntryId = entryId;
+        nextEntryId++;
+        return entryId;
+    }
+
+    /**
+     * Reads up to max entries after the read cursor and advances it.
+     */
+    public synchronized List<WalEntry> read(int max) throws IOException {
+        List<WalEntry> entries = new ArrayList<>(Math.min(max, 1024));
+        while (entries.size() < max) {
+            byte[] payload = readRecord(readSegment, readOffset);
+            if (payload == null) {
+                Map.Entry<Long, Segment> next = segments.higherEntry(readSegment.firstEntryId);
+                if (next == null || readSegment == head) {
+                    break;
+                }
+                readSegment = next.getValue();
+                readOffset = 0;
+                continue;
+            }
+            readOffset += HEADER_BYTES + payload.length;
+            entries.add(WalEntry.decode(payload));
+        }
+        return entries;
+    }
+
+    /**
+     * Moves the read cursor to just after the given entry, e.g. to the replicated position after a restart,
+     * or back to it after a failed batch.
+     */
+    public synchronized void seek(long entryId) throws IOException {
+        Map.Entry<Long, Segment> first = segments.floorEntry(entryId + 1);
+        readSegment = first != null ? first.getValue() : segments.firstEntry().getValue();
+        readOffset = 0;
+        while (true) {
+            byte[] payload = readRecord(readSegment, readOffset);
+            if (payload == null || WalEntry.decode(payload).getEntryId() > entryId) {
+                return;
+            }
+            readOffset += HEADER_BYTES + payload.length;
+        }
+    }
+
+    /**
+     * Deletes the segments, other than the one being appended to, whose entries are all at or before the given entry.
+     */
+    public synchronized void acknowledge(long entryId) {
+        while (segments.size() > 1) {
+            Segment oldest = segments.firstEntry().getValue();
+            if (oldest == head || oldest.lastEntryId > entryId) {
+                return;
+            }
+            if (oldest == readSegment) {
+                return; // Still being read; deleted on a later acknowledgement
+            }
+            segments.pollFirstEntry();
+            oldest.close();
+            try {
+                Files.deleteIfExists(oldest.path);
+            } catch (IOException e) {
+                System.err.println("Error deleting write-ahead log segment " + oldest.path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the id of the last appended entry, or the id before the first one if nothing was appended yet.
+     */
+    public synchronized long getLastEntryId() {
+        return nextEntryId - 1;
+    }
+
+    /**
+     * Returns the number of segment files on disk.
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Flushes the segment being appended to and closes every segment.
+     */
+    public synchronized void close() {
+        if (head != null) {
+            head.buffer.force();
+        }
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        segments.clear();
+        head = null;
+    }
+
+    /**
+     * Scans the segments on disk, finds where the last complete record ends and clears anything after it.
+     */
+    private void recover() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                long firstEntryId = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(firstEntryId, Segment.map(path, firstEntryId, segmentBytes));
+            }
+        }
+        if (segments.isEmpty()) {
+            nextEntryId = 1;
+            head = createSegment(1);
+        } else {
+            for (Segment segment : segments.values()) {
+                scan(segment);
+            }
+            head = segments.lastEntry().getValue();
+            nextEntryId = head.lastEntryId + 1;
+            clearTail(head);
+        }
+        readSegment = segments.firstEntry().getValue();
+        readOffset = 0;
+    }
+
+    /**
+     * Finds the end of the last complete record of a segment and the id of its last entry.
+     */
+    private void scan(Segment segment) throws IOException {
+        int offset = 0;
+        long lastEntryId = segment.firstEntryId - 1;
+        byte[] payload;
+        while ((payload = readRecord(segment, offset)) != null) {
+            lastEntryId = WalEntry.decode(payload).getEntryId();
+            offset += HEADER_BYTES + payload.length;
+        }
+        segment.writeOffset = offset;
+        segment.lastEntryId = lastEntryId;
+    }
+
+    /**
+     * Zeroes whatever a torn append left after the last complete record, so it cannot be mistaken for a record later.
+     */
+    private static void clearTail(Segment segment) {
+        for (int i = segment.writeOffset; i < segment.buffer.capacity(); i++) {
+            if (segment.buffer.get(i) != 0) {
+                for (int j = segment.writeOffset; j < segment.buffer.capacity(); j++) {
+                    segment.buffer.put(j, (byte) 0);
+                }
+                segment.buffer.force();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the payload of the record at an offset.
+     * return The payload, or null if there is no complete record there.
+     */
+    private byte[] readRecord(Segment segment, int offset) {
+        if (offset + HEADER_BYTES > segmentBytes) {
+            return null;
+        }
+        int length = segment.buffer.getInt(offset);
+        if (length <= 0 || offset + HEADER_BYTES + length > segmentBytes) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        segment.buffer.get(offset + HEADER_BYTES, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != segment.buffer.getInt(offset + 4)) {
+            return null;
+        }
+        return payload;
+    }
+
+    /**
+     * Flushes the full head segment and starts a new one.
+     */
+    private void rotate() throws IOException {
+        head.buffer.force();
+        head = createSegment(nextEntryId);
+    }
+
+    private Segment createSegment(long firstEntryId) throws IOException {
+        Path path = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstEntryId, SEGMENT_SUFFIX));
+        Segment segment = Segment.map(path, firstEntryId, segmentBytes);
+        segment.lastEntryId = firstEntryId - 1;
+        segments.put(firstEntryId, segment);
+        return segment;
+    }
+
+    /**
+     * One memory-mapped segment file.
+     */
+    private static final class Segment {
+        final Path path;
+        final long firstEntryId;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        int writeOffset;   // End of the last complete record
+        long lastEntryId;  // Id of the last complete record, firstEntryId - 1 if empty
+
+        private Segment(Path path, long firstEntryId, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.firstEntryId = firstEntryId;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment map(Path path, long firstEntryId, int segmentBytes) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            return new Segment(path, firstEntryId, channel, buffer);
+        }
+
+        void close() {
+            try {
+                channel.close(); // The mapping is released once the buffer is garbage collected
+            } catch (IOException e) {
+                System.err.println("Error closing write-ahead log segment " + path + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.healthtracker.analytics;
+
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.db.TestDatabase;
+import org.healthtracker.tracking.DietActivity;
+import org.healthtracker.tracking.ExerciseActivity;
+import org.healthtracker.tracking.MentalHealthActivity;
+import org.healthtracker.tracking.PendingWrites;
+import org.healthtracker.tracking.StepActivity;
+import org.healthtracker.tracking.WaterIntakeActivity;
+import org.healthtracker.user.User;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A ledger loaded while one of the user's saves is in flight may already hold that save's row, and the insert
+ * listener would then add it a second time. These tests check that such a ledger is not kept.
+ */
+class CalorieBalanceTest {
+
+    @Test
+    void ledgerIsNotKeptWhileASaveIsInFlight() throws Exception {
+        DatabaseHelper dbHelper = TestDatabase.start();
+        User user = TestDatabase.createUser(dbHelper, "balance");
+        new DietActivity("Oats", 300, user).track().join();
+        new ExerciseActivity("Exercise", 30, 200, user).track().join();
+        new MentalHealthActivity("Mental Health Tracking", 7, 8.0, user).track().join(); // The cache loads every table
+        new StepActivity(4_000, user).track().join();
+        new WaterIntakeActivity(1.5, user).track().join();
+
+        int users = CalorieBalance.getUserCount();
+        assertTrue(PendingWrites.begin(user.getId())); // A save that committed but was not reported yet
+        try {
+            assertEquals(300, CalorieBalance.lastDays(dbHelper, user).getLastDay().getIntake());
+            assertEquals(users, CalorieBalance.getUserCount(), "Ledger kept while a save was in flight");
+        } finally {
+            PendingWrites.end(user.getId());
+        }
+
+        CalorieBalance.lastDays(dbHelper, user);
+        assertEquals(users + 1, CalorieBalance.getUserCount());
+        new DietActivity("Rice", 500, user).track().join();
+        DailyBalance today = CalorieBalance.lastDays(dbHelper, user).getLastDay();
+        assertEquals(800, today.getIntake());
+        assertEquals(200, today.getBurned());
+    }
+}
@@ -0,0 +1,39 @@
+package org.healthtracker.cache;
+
+import org.healthtracker.tracking.ActivityType;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * An insert can commit before ActivityCache loads a user and be reported after, so the series sees the same
+ * activity twice. These tests check that the second add is ignored.
+ */
+class ActivitySeriesTest {
+
+    @Test
+    void addIgnoresAnActivityAlreadyLoaded() {
+        ActivitySeries series = new ActivitySeries(ActivityType.STEPS);
+        LocalDate today = LocalDate.of(2026, 3, 2);
+        assertTrue(series.add(7, today.minusDays(1), new Object[]{1_000}));
+        assertTrue(series.add(8, today, new Object[]{2_000}));
+        assertTrue(series.add(9, today, new Object[]{3_000}));
+
+        assertFalse(series.add(8, today, new Object[]{2_000}), "Loaded, then reported by the listener");
+        assertFalse(series.add(9, today, new Object[]{3_000}));
+        assertEquals(3, series.size());
+    }
+
+    @Test
+    void addKeepsActivitiesWithoutAnId() {
+        ActivitySeries series = new ActivitySeries(ActivityType.STEPS);
+        LocalDate today = LocalDate.of(2026, 3, 2);
+        assertTrue(series.add(0, today, new Object[]{1_000}));
+        assertTrue(series.add(0, today, new Object[]{1_000}));
+        assertEquals(2, series.size());
+    }
+}
@@ -0,0 +1,39 @@
+package org.healthtracker.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * ActivityQuery.findPage() sets the fetch size on every call. The pool restores it when the statement is
+ * returned, so the statement stays cached and the next borrower gets the default.
+ */
+class ConnectionPoolTest {
+
+    @Test
+    void fetchSizeIsResetAndTheStatementKept() throws Exception {
+        ConnectionPool pool = new ConnectionPool(System.getProperty("healthtracker.db.url"),
+                System.getProperty("healthtracker.db.user"), System.getProperty("healthtracker.db.password", ""),
+                1, 1, 5_000, 60_000, 60_000, false, 8);
+        try {
+            int defaultFetchSize;
+            try (Connection conn = pool.borrow();
+                 PreparedStatement pstmt = conn.prepareStatement("SELECT 1")) {
+                defaultFetchSize = pstmt.getFetchSize();
+                pstmt.setFetchSize(defaultFetchSize + 50);
+                pstmt.executeQuery().close();
+            }
+            try (Connection conn = pool.borrow();
+                 PreparedStatement pstmt = conn.prepareStatement("SELECT 1")) {
+                assertEquals(defaultFetchSize, pstmt.getFetchSize());
+            }
+            assertEquals(1, pool.getStats().getStatementHits());
+            assertEquals(1, pool.getStats().getStatementMisses());
+        } finally {
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.healthtracker.db;
+
+import org.healthtracker.tracking.ActivityRecord;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.tracking.StepActivity;
+import org.healthtracker.user.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Activity ids must never be handed out twice, even once compaction has dropped the records of deleted activities:
+ * keyset paging, the ActivityCache and the listeners all take an id to name one activity.
+ */
+class LocalActivityStoreTest {
+    private static final int ROWS = 1_200; // Enough superseded records to compact on the next open
+
+    @TempDir
+    Path dir;
+
+    private final User user = new User(7, "local", "unused", null);
+
+    @Test
+    void deletedIdsAreNotReusedAfterCompaction() throws Exception {
+        LocalActivityStore store = LocalActivityStore.open(dir, false);
+        insert(store, ROWS);
+        for (int id = 2; id <= ROWS; id++) {
+            store.delete(ActivityType.STEPS, user, id);
+        }
+        store.close();
+        long before = Files.size(dir.resolve("activities.log"));
+
+        store = reopen(store);
+        assertTrue(Files.size(dir.resolve("activities.log")) < before, "Log was not compacted");
+        assertEquals(ROWS + 1, insert(store, 1));
+        store = reopen(store);
+        assertEquals(ROWS + 2, insert(store, 1));
+        assertEquals(List.of(1, ROWS + 1, ROWS + 2), ids(store));
+        store.close();
+    }
+
+    @Test
+    void idsOfAResetUserAreNotReusedAfterCompaction() throws Exception {
+        LocalActivityStore store = LocalActivityStore.open(dir, false);
+        insert(store, ROWS);
+        store.deleteAll(user, ResetProgress.NONE);
+
+        store = reopen(store);
+        assertEquals(0, store.size());
+        assertEquals(ROWS + 1, insert(store, 1));
+        store.close();
+    }
+
+    @Test
+    void failedCompactionKeepsTheOldLog() throws Exception {
+        LocalActivityStore store = LocalActivityStore.open(dir, false);
+        insert(store, ROWS);
+        for (int id = 1; id < ROWS; id++) {
+            store.delete(ActivityType.STEPS, user, id);
+        }
+        store.close();
+        Files.createDirectories(dir.resolve("activities.log.compact").resolve("blocked")); // Cannot be written as a file
+
+        store = LocalActivityStore.open(dir, false);
+        assertEquals(List.of(ROWS), ids(store));
+        assertEquals(ROWS + 1, insert(store, 1));
+        store = reopen(store);
+        assertEquals(List.of(ROWS, ROWS + 1), ids(store));
+        store.close();
+    }
+
+    private LocalActivityStore reopen(LocalActivityStore store) throws Exception {
+        store.close();
+        return LocalActivityStore.open(dir, false);
+    }
+
+    /**
+     * Inserts step activities and returns the id of the last one.
+     */
+    private int insert(LocalActivityStore store, int count) throws Exception {
+        List<FitnessActivity> activities = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            activities.add(new StepActivity(1_000 + i, user));
+        }
+        store.insert(activities);
+        return activities.get(count - 1).getActivityId();
+    }
+
+    private List<Integer> ids(LocalActivityStore store) {
+        List<Integer> ids = new ArrayList<>();
+        for (ActivityRecord record : store.find(ActivityType.STEPS, user, null, null, 0)) {
+            ids.add(record.getActivityId());
+        }
+        ids.sort(null);
+        return ids;
+    }
+}
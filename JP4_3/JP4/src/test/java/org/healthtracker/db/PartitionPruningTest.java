@@ -0,0 +1,94 @@
+package org.healthtracker.db;
+
+import org.healthtracker.tracking.ActivityTable;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.user.User;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that a date-range query of a consolidated table only reads the partitions of the requested months.
+ * The EXPLAIN check needs MySQL, as H2 has no partitions; run it with
+ * mvn test -Dhealthtracker.db.url=jdbc:mysql://... -Dhealthtracker.storage.layout=CONSOLIDATED
+ * -Dhealthtracker.storage.partitionByMonth=true (and the db user and password).
+ */
+class PartitionPruningTest {
+    private static final Pattern PARTITION = Pattern.compile("PARTITION p(\\d{6}) VALUES LESS THAN \\(TO_DAYS\\('([0-9-]+)'\\)\\)");
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+    @Test
+    void everyMonthHasItsOwnPartition() {
+        LocalDate today = LocalDate.of(2026, 10, 18);
+        String clause = PartitionManager.partitionClause(today);
+
+        List<YearMonth> months = new ArrayList<>();
+        Matcher matcher = PARTITION.matcher(clause);
+        while (matcher.find()) {
+            YearMonth month = YearMonth.parse(matcher.group(1), MONTH);
+            assertEquals(month.plusMonths(1).atDay(1), LocalDate.parse(matcher.group(2)), "Upper bound of p" + matcher.group(1));
+            months.add(month);
+        }
+        assertEquals(YearMonth.of(2024, 10), months.get(0));
+        assertEquals(YearMonth.of(2027, 1), months.get(months.size() - 1));
+        for (int i = 1; i < months.size(); i++) {
+            assertEquals(months.get(i - 1).plusMonths(1), months.get(i));
+        }
+        assertTrue(clause.contains("PARTITION p_old VALUES LESS THAN (TO_DAYS('2024-10-01'))"), clause);
+        assertTrue(clause.endsWith("PARTITION pmax VALUES LESS THAN MAXVALUE)"), clause);
+    }
+
+    @Test
+    void monthChangesOnlyAtTheStartOfTheNextMonth() {
+        assumeTrue(LocalDate.now().plusDays(1).getDayOfMonth() != 1, "Runs too close to the end of the month");
+        assertFalse(PartitionManager.monthChanged());
+        assertFalse(PartitionManager.monthChanged());
+    }
+
+    @Test
+    void rangeQueryComparesTheBareDateColumn() {
+        // MySQL only prunes when the partitioning column is compared as it is, not wrapped in a function
+        String sql = ActivityQuery.rangeSql(ActivityTable.consolidated(ActivityType.STEPS, 1),
+                LocalDate.now().minusDays(6), LocalDate.now(), 0);
+        assertTrue(sql.contains("user_id = ?"), sql);
+        assertTrue(sql.contains("date >= ?"), sql);
+        assertTrue(sql.contains("date <= ?"), sql);
+    }
+
+    @Test
+    void lastWeekReadsOnlyTheRecentMonths() throws Exception {
+        DatabaseHelper dbHelper = TestDatabase.start();
+        assumeTrue(TestDatabase.isMySql(dbHelper) && PartitionManager.isEnabled()
+                && DatabaseHelper.getStorageMode() == StorageMode.CONSOLIDATED, "Needs partitioned MySQL tables");
+        User user = TestDatabase.createUser(dbHelper, "pruning");
+        ActivityTable table = ActivityTable.of(ActivityType.STEPS, user);
+        try (Connection conn = dbHelper.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(table.createSql());
+        }
+
+        LocalDate today = LocalDate.now();
+        String partitions = new ActivityQuery(dbHelper).explainPartitions(ActivityType.STEPS, user, today.minusDays(6), today);
+
+        assertNotNull(partitions, "Table is not partitioned");
+        Set<String> recent = Set.of("p" + MONTH.format(today), "p" + MONTH.format(today.minusDays(6)));
+        for (String partition : partitions.split(",")) {
+            assertTrue(recent.contains(partition), "Reads " + partitions);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.healthtracker.db;
+
+import org.healthtracker.user.User;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The database the tests run against: by default an in-memory H2 database in MySQL mode, set up by the
+ * -Dhealthtracker.db.* properties of the surefire configuration in pom.xml.
+ */
+public final class TestDatabase {
+    public static final String PASSWORD = "test-password"; // Password of every test user
+
+    private static final String CREATE_USERS_SQL = "CREATE TABLE IF NOT EXISTS users ("
+            + "id INT AUTO_INCREMENT PRIMARY KEY, "
+            + "username VARCHAR(255) NOT NULL UNIQUE, "
+            + "password VARCHAR(255) NOT NULL, "
+            + "name VARCHAR(255), "
+            + "age INT, "
+            + "gender CHAR(1), "
+            + "weight DOUBLE, "
+            + "height DOUBLE)";
+
+    private static final AtomicInteger userNumbers = new AtomicInteger();
+    private static volatile boolean started;
+
+    private TestDatabase() {
+    }
+
+    /**
+     * Creates the users table on first use.
+     * return A DatabaseHelper connected to the test database.
+     */
+    public static DatabaseHelper start() throws SQLException {
+        DatabaseHelper dbHelper = new DatabaseHelper();
+        if (!started) {
+            synchronized (TestDatabase.class) {
+                if (!started) {
+                    try (Connection conn = dbHelper.getConnection();
+                         Statement stmt = conn.createStatement()) {
+                        stmt.execute(CREATE_USERS_SQL);
+                    }
+                    started = true;
+                }
+            }
+        }
+        return dbHelper;
+    }
+
+    /**
+     * Registers a new user whose name starts with the given prefix and is unique within the run.
+     */
+    public static User createUser(DatabaseHelper dbHelper, String prefix) throws SQLException {
+        String username = prefix + userNumbers.incrementAndGet();
+        int id = dbHelper.addUser(username, PASSWORD, "Test User", 30, 'O', 70.0, 175.0);
+        return new User(id, username, PASSWORD, dbHelper);
+    }
+
+    /**
+     * Returns true if the tests run against MySQL rather than the embedded H2 database.
+     */
+    public static boolean isMySql(DatabaseHelper dbHelper) throws SQLException {
+        try (Connection conn = dbHelper.getConnection()) {
+            return "MySQL".equalsIgnoreCase(conn.getMetaData().getDatabaseProductName());
+        }
+    }
+}
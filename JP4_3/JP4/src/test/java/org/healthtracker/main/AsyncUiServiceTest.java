@@ -0,0 +1,104 @@
+package org.healthtracker.main;
+
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.db.TestDatabase;
+import org.healthtracker.user.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import java.awt.*;
+import java.sql.Connection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs with -Dhealthtracker.edtGuard=true (set in pom.xml), so any JDBC call made on the event dispatch thread fails
+ * instead of freezing the GUI. The GUI's database calls go through AsyncUiService, which must run them elsewhere.
+ */
+class AsyncUiServiceTest {
+    private static DatabaseHelper dbHelper;
+    private AsyncUiService service;
+
+    @BeforeAll
+    static void startDatabase() throws Exception {
+        assumeTrue(Boolean.getBoolean("healthtracker.edtGuard"), "Needs -Dhealthtracker.edtGuard=true");
+        dbHelper = TestDatabase.start();
+    }
+
+    @BeforeEach
+    void startService() {
+        service = new AsyncUiService(2, 15_000);
+    }
+
+    @AfterEach
+    void stopService() {
+        service.shutdown();
+    }
+
+    @Test
+    void guardRejectsJdbcOnTheEventDispatchThread() throws Exception {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        EventQueue.invokeAndWait(() -> error.set(assertThrows(IllegalStateException.class, () -> dbHelper.getConnection())));
+        assertNotNull(error.get());
+
+        try (Connection conn = dbHelper.getConnection()) { // Other threads are not affected
+            assertTrue(conn.isValid(1));
+        }
+    }
+
+    @Test
+    void loginRunsOffTheEventDispatchThread() throws Exception {
+        User user = TestDatabase.createUser(dbHelper, "edt");
+        JButton loginButton = new JButton("Login");
+        AtomicBoolean disabledWhileRunning = new AtomicBoolean();
+        CompletableFuture<User> loggedIn = new CompletableFuture<>();
+
+        EventQueue.invokeAndWait(() -> service.submit(
+                () -> {
+                    disabledWhileRunning.set(!loginButton.isEnabled());
+                    return dbHelper.validateUser(user.getUsername(), TestDatabase.PASSWORD);
+                },
+                result -> {
+                    assertTrue(EventQueue.isDispatchThread());
+                    loggedIn.complete(result);
+                },
+                loggedIn::completeExceptionally,
+                loginButton));
+
+        assertEquals(user.getId(), loggedIn.get(10, TimeUnit.SECONDS).getId());
+        assertTrue(disabledWhileRunning.get());
+        EventQueue.invokeAndWait(() -> assertTrue(loginButton.isEnabled()));
+    }
+
+    @Test
+    void slowCallIsReportedAsTimeout() throws Exception {
+        AsyncUiService impatient = new AsyncUiService(1, 100);
+        CompletableFuture<Throwable> failure = new CompletableFuture<>();
+        try {
+            EventQueue.invokeAndWait(() -> impatient.submit(
+                    () -> {
+                        Thread.sleep(10_000);
+                        return null;
+                    },
+                    result -> failure.completeExceptionally(new AssertionError("Call was not cancelled")),
+                    failure::complete));
+
+            assertInstanceOf(TimeoutException.class, failure.get(10, TimeUnit.SECONDS));
+        } finally {
+            impatient.shutdown();
+        }
+    }
+}
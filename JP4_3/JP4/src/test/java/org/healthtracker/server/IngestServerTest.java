@@ -0,0 +1,205 @@
+package org.healthtracker.server;
+
+import org.healthtracker.db.DatabaseHelper;
+import org.healthtracker.db.TestDatabase;
+import org.healthtracker.tracking.ActivityType;
+import org.healthtracker.tracking.DurabilityMode;
+import org.healthtracker.tracking.FitnessActivity;
+import org.healthtracker.user.User;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A small load run of the IngestServer over loopback, like the IngestLoadGenerator benchmark but with a fixed
+ * number of requests, checked against the rows that end up in the database.
+ */
+class IngestServerTest {
+    private static final int CLIENTS = 8;
+    private static final int REQUESTS_PER_CLIENT = 5;
+    private static final int BATCH = 100;
+    private static final Pattern SAVED = Pattern.compile("\"saved\":(\\d+)");
+    private static final Pattern DUPLICATES = Pattern.compile("\"duplicates\":(\\d+)");
+
+    private static final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private static DatabaseHelper dbHelper;
+    private static IngestServer server;
+    private static URI uri;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        dbHelper = TestDatabase.start();
+        FitnessActivity.setDurabilityMode(DurabilityMode.BUFFERED); // As IngestServer.main() runs it
+        server = new IngestServer(dbHelper, new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/activities");
+    }
+
+    @AfterAll
+    static void stopServer() {
+        if (server != null) {
+            server.stop(1);
+        }
+        FitnessActivity.setDurabilityMode(DurabilityMode.SYNC); // Flushes anything still buffered
+    }
+
+    @Test
+    void concurrentClientsGetEveryEventSaved() throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            users.add(TestDatabase.createUser(dbHelper, "gateway"));
+        }
+        long savedBefore = server.getSavedCount();
+        LongAdder saved = new LongAdder();
+        ExecutorService executor = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<?>> clients = new ArrayList<>();
+            for (User user : users) {
+                Callable<Void> run = () -> {
+                    for (int r = 0; r < REQUESTS_PER_CLIENT; r++) {
+                        String body = batch(r * BATCH);
+                        HttpResponse<String> response = post(user, body);
+                        while (response.statusCode() == 429) { // Overloaded: wait and resend, the event ids prevent doubles
+                            Thread.sleep(1_000 * response.headers().firstValueAsLong("Retry-After").orElse(1));
+                            saved.add(count(SAVED, response.body()));
+                            response = post(user, body);
+                        }
+                        assertEquals(200, response.statusCode(), response.body());
+                        saved.add(count(SAVED, response.body()));
+                    }
+                    return null;
+                };
+                clients.add(executor.submit(run));
+            }
+            for (Future<?> run : clients) {
+                run.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int expected = CLIENTS * REQUESTS_PER_CLIENT * BATCH;
+        assertEquals(expected, saved.sum());
+        assertEquals(expected, server.getSavedCount() - savedBefore);
+        assertEquals(expected, storedRows(users));
+    }
+
+    @Test
+    void resentRequestIsAnsweredWithDuplicates() throws Exception {
+        User user = TestDatabase.createUser(dbHelper, "resend");
+        String body = batch(0);
+
+        HttpResponse<String> first = post(user, body);
+        HttpResponse<String> second = post(user, body);
+
+        assertEquals(200, first.statusCode(), first.body());
+        assertEquals(BATCH, count(SAVED, first.body()));
+        assertEquals(200, second.statusCode(), second.body());
+        assertEquals(0, count(SAVED, second.body()));
+        assertEquals(BATCH, count(DUPLICATES, second.body()));
+        assertEquals(BATCH, storedRows(List.of(user)));
+    }
+
+    @Test
+    void badRequestsSaveNothing() throws Exception {
+        User user = TestDatabase.createUser(dbHelper, "rejected");
+        String authorization = authorization(user.getUsername(), "wrong-password");
+
+        assertEquals(401, client.send(request(authorization, "application/x-ndjson", batch(0)),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals(415, client.send(request(authorization(user.getUsername(), TestDatabase.PASSWORD), "text/plain", batch(0)),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals(405, client.send(HttpRequest.newBuilder(uri).GET().build(),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals(0, storedRows(List.of(user)));
+    }
+
+    private static HttpResponse<String> post(User user, String body) throws Exception {
+        return client.send(request(authorization(user.getUsername(), TestDatabase.PASSWORD), "application/x-ndjson", body),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpRequest request(String authorization, String contentType, String body) {
+        return HttpRequest.newBuilder(uri)
+                .header("Authorization", authorization)
+                .header("Content-Type", contentType)
+                .timeout(Duration.ofSeconds(60))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static String authorization(String username, String password) {
+        return "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns BATCH step, water and exercise events in turn, dated over the last 30 days, with event ids from first on.
+     */
+    private static String batch(int first) {
+        LocalDate today = LocalDate.now();
+        StringBuilder body = new StringBuilder(BATCH * 80);
+        for (int n = first; n < first + BATCH; n++) {
+            String date = today.minusDays(n % 30).toString();
+            body.append("{\"event_id\":\"e").append(n).append("\",\"date\":\"").append(date).append('"');
+            switch (n % 3) {
+                case 0:
+                    body.append(",\"type\":\"steps\",\"steps\":").append(500 + n % 15_000);
+                    break;
+                case 1:
+                    body.append(",\"type\":\"water_intake\",\"liters\":").append(0.25 + n % 8 * 0.25);
+                    break;
+                default:
+                    body.append(",\"type\":\"exercise\",\"duration\":").append(10 + n % 80)
+                            .append(",\"calories_burned\":").append(50 + n % 600);
+                    break;
+            }
+            body.append("}\n");
+        }
+        return body.toString();
+    }
+
+    private static int count(Pattern pattern, String json) {
+        Matcher matcher = pattern.matcher(json);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+    }
+
+    /**
+     * Counts the users' activities in the database. The server only answers once the activities of a request are saved.
+     */
+    private static long storedRows(List<User> users) throws Exception {
+        LongAdder rows = new LongAdder();
+        for (User user : users) {
+            for (ActivityType type : ActivityType.values()) {
+                dbHelper.getActivityStore().forEach(type, user, record -> rows.increment());
+            }
+        }
+        return rows.sum();
+    }
+}
@@ -0,0 +1,153 @@
+package org.healthtracker.tracking;
+
+import org.healthtracker.user.User;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * A match in the EventIdFilter is trusted without asking the database, so a false positive silently drops a new
+ * activity. These tests check that look-alike keys neither collide nor match. The filter is shared by the whole
+ * process, so every test uses user ids of its own.
+ */
+class EventIdFilterTest {
+    private static final int KEYS = 50_000; // Well below the capacity of a bucket, so nothing rotates out
+    private static final AtomicInteger userIds = new AtomicInteger(1_000_000);
+
+    @BeforeAll
+    static void checkEnabled() {
+        assumeTrue(Boolean.parseBoolean(System.getProperty("healthtracker.dedup.enabled", "true")), "Filter is disabled");
+    }
+
+    @Test
+    void similarKeysHaveDistinctFingerprints() {
+        // Sequential event ids of neighbouring users, types and days: the keys real clients send
+        ActivityType[] types = ActivityType.values();
+        LocalDate today = LocalDate.of(2026, 10, 18);
+        long[] fingerprints = new long[64 * types.length * 30 * 200];
+        int n = 0;
+        for (int user = 1; user <= 64; user++) {
+            for (ActivityType type : types) {
+                for (int day = 0; day < 30; day++) {
+                    for (int event = 0; event < 200; event++) {
+                        fingerprints[n++] = EventIdFilter.fingerprint(type, user, 0, today.minusDays(day), "e" + event);
+                    }
+                }
+            }
+        }
+        Arrays.sort(fingerprints);
+        for (int i = 1; i < fingerprints.length; i++) {
+            assertTrue(fingerprints[i] != fingerprints[i - 1], "Two of " + fingerprints.length + " keys share a fingerprint");
+        }
+        assertTrue(fingerprints[0] != 0, "0 marks an empty slot");
+    }
+
+    @Test
+    void unseenEventIdsAreNeverRejected() {
+        User user = newUser();
+        for (int i = 0; i < KEYS; i++) {
+            assertTrue(EventIdFilter.tryAdd(steps(user, "saved-" + i)));
+        }
+
+        long duplicatesBefore = EventIdFilter.getDuplicateCount();
+        int falsePositives = 0;
+        for (int i = 0; i < KEYS; i++) {
+            if (!EventIdFilter.tryAdd(steps(user, "new-" + i))) {
+                falsePositives++;
+            }
+        }
+        assertEquals(0, falsePositives, "False positives among " + KEYS + " new event ids");
+        assertEquals(duplicatesBefore, EventIdFilter.getDuplicateCount());
+
+        for (int i = 0; i < KEYS; i++) {
+            assertFalse(EventIdFilter.tryAdd(steps(user, "saved-" + i)), "Repeat of saved-" + i + " was accepted");
+        }
+        assertEquals(duplicatesBefore + KEYS, EventIdFilter.getDuplicateCount());
+    }
+
+    @Test
+    void sameEventIdOfAnotherUserTypeOrDayIsNotADuplicate() {
+        User user = newUser();
+        StepActivity saved = steps(user, "event-1");
+        assertTrue(EventIdFilter.tryAdd(saved));
+
+        assertTrue(EventIdFilter.tryAdd(steps(newUser(), "event-1")));
+        WaterIntakeActivity water = new WaterIntakeActivity(0.5, user);
+        water.setEventId("event-1");
+        assertTrue(EventIdFilter.tryAdd(water));
+        StepActivity yesterday = steps(user, "event-1");
+        yesterday.setDate(saved.getDate().minusDays(1));
+        assertTrue(EventIdFilter.tryAdd(yesterday));
+    }
+
+    @Test
+    void repeatDuringTheSaveFollowsTheSave() {
+        User user = newUser();
+        StepActivity first = steps(user, "slow");
+        assertNull(EventIdFilter.tryBegin(first));
+
+        CompletableFuture<Void> repeat = EventIdFilter.tryBegin(steps(user, "slow"));
+        assertNotNull(repeat);
+        assertFalse(repeat.isDone(), "Repeat was answered before the save completed");
+
+        EventIdFilter.end(first, null);
+        assertTrue(repeat.isDone() && !repeat.isCompletedExceptionally());
+        assertTrue(EventIdFilter.tryBegin(steps(user, "slow")).isDone());
+    }
+
+    @Test
+    void repeatDuringAFailedSaveFailsAndCanBeRetried() {
+        User user = newUser();
+        StepActivity first = steps(user, "retry");
+        assertNull(EventIdFilter.tryBegin(first));
+        CompletableFuture<Void> repeat = EventIdFilter.tryBegin(steps(user, "retry"));
+
+        SQLException failure = new SQLException("Database unavailable");
+        EventIdFilter.end(first, new CompletionException(failure));
+
+        CompletionException error = assertThrows(CompletionException.class, repeat::join);
+        assertSame(failure, error.getCause());
+        StepActivity retry = steps(user, "retry");
+        assertNull(EventIdFilter.tryBegin(retry), "Event id of the failed save is still claimed");
+        EventIdFilter.end(retry, null);
+    }
+
+    @Test
+    void forgettingAUserKeepsTheOtherUsersEventIds() {
+        User reset = newUser();
+        User other = newUser();
+        assertTrue(EventIdFilter.tryAdd(steps(reset, "e1")));
+        assertTrue(EventIdFilter.tryAdd(steps(other, "e1")));
+
+        EventIdFilter.forget(reset.getId());
+
+        assertTrue(EventIdFilter.tryAdd(steps(reset, "e1")));
+        assertFalse(EventIdFilter.tryAdd(steps(other, "e1")));
+    }
+
+    private static User newUser() {
+        int id = userIds.incrementAndGet();
+        return new User(id, "filter" + id, "unused", null);
+    }
+
+    private static StepActivity steps(User user, String eventId) {
+        StepActivity activity = new StepActivity(1_000, user);
+        activity.setEventId(eventId);
+        return activity;
+    }
+}
@@ -0,0 +1,132 @@
+package org.healthtracker.user;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Many threads hitting the throttle at once, with the default limits: 5 attempts per username and 20 per source,
+ * refilled at 5 and 60 per minute. Every test uses its own keys, as the buckets are shared by the whole process.
+ * LoginThrottleBenchmark measures the throughput of the same patterns.
+ */
+class LoginThrottleStressTest {
+    private static final int THREADS = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+    private static final int ATTEMPTS_PER_THREAD = 20_000;
+    private static final AtomicInteger runs = new AtomicInteger();
+
+    @BeforeAll
+    static void checkEnabled() {
+        assumeTrue(Boolean.parseBoolean(System.getProperty("healthtracker.throttle.enabled", "true")), "Throttle is disabled");
+    }
+
+    @Test
+    void hotUsernameLetsOnlyItsCapacityThrough() throws Exception {
+        String username = "admin-" + runs.incrementAndGet();
+        long start = System.currentTimeMillis();
+
+        int allowed = hammer(thread -> i -> LoginThrottle.tryAcquire(username, "10." + thread + "." + (i >> 8 & 0xff) + "." + (i & 0xff)));
+
+        // One more token refills every 12 seconds
+        long refilled = (System.currentTimeMillis() - start) / 12_000;
+        assertTrue(allowed >= 5 && allowed <= 5 + refilled, "Allowed " + allowed + " attempts");
+    }
+
+    @Test
+    void hotSourceLetsOnlyItsCapacityThrough() throws Exception {
+        String source = "192.0.2." + runs.incrementAndGet();
+        String prefix = "stuffing-" + runs.get() + "-";
+        long start = System.currentTimeMillis();
+
+        int allowed = hammer(thread -> i -> LoginThrottle.tryAcquire(prefix + thread + "-" + i, source));
+
+        // One more token refills every second
+        long refilled = (System.currentTimeMillis() - start) / 1_000;
+        assertTrue(allowed >= 20 && allowed <= 20 + refilled, "Allowed " + allowed + " attempts");
+    }
+
+    @Test
+    void throttledSourceDoesNotLockOutTheUser() throws Exception {
+        String username = "victim-" + runs.incrementAndGet();
+        String source = "198.51.100." + runs.get();
+        for (int i = 0; i < 20; i++) {
+            LoginThrottle.tryAcquire("spray-" + runs.get() + "-" + i, source); // Uses up the source
+        }
+
+        long start = System.currentTimeMillis();
+
+        int allowed = hammer(thread -> i -> LoginThrottle.tryAcquire(username, source));
+
+        // The source refills one token a second, and only those attempts reach the username
+        long refilled = (System.currentTimeMillis() - start) / 1_000 + 1;
+        assertTrue(allowed <= refilled, "Allowed " + allowed + " attempts");
+        if (allowed < 5) {
+            assertEquals(0, LoginThrottle.tryAcquire(username, "203.0.113.1"), "User was locked out by another source");
+        }
+    }
+
+    @Test
+    void distinctKeysNeverThrottleEachOther() throws Exception {
+        String prefix = "user-" + runs.incrementAndGet() + "-";
+        long throttledBefore = LoginThrottle.getThrottledUserCount() + LoginThrottle.getThrottledSourceCount();
+
+        // Every attempt has its own username and source, so each takes the first token of two new buckets
+        int allowed = hammer(thread -> i -> LoginThrottle.tryAcquire(prefix + thread + "-" + i, prefix + thread + "/" + i));
+
+        assertEquals(THREADS * ATTEMPTS_PER_THREAD, allowed);
+        assertEquals(throttledBefore, LoginThrottle.getThrottledUserCount() + LoginThrottle.getThrottledSourceCount());
+    }
+
+    /**
+     * Starts all threads at once, each making ATTEMPTS_PER_THREAD attempts.
+     * return The number of attempts that were allowed.
+     */
+    private static int hammer(ThreadAttempts attempts) throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                Attempt attempt = attempts.forThread(t);
+                Callable<Integer> worker = () -> {
+                    barrier.await();
+                    int allowed = 0;
+                    for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                        if (attempt.tryAcquire(i) == 0) {
+                            allowed++;
+                        }
+                    }
+                    return allowed;
+                };
+                results.add(executor.submit(worker));
+            }
+            int allowed = 0;
+            for (Future<Integer> result : results) {
+                allowed += result.get(60, TimeUnit.SECONDS);
+            }
+            return allowed;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface ThreadAttempts {
+        Attempt forThread(int thread);
+    }
+
+    private interface Attempt {
+        long tryAcquire(int i);
+    }
+}